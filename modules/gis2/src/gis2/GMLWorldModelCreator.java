@@ -11,6 +11,7 @@ import rescuecore2.misc.geometry.Point2D;
 import rescuecore2.misc.geometry.GeometryTools2D;
 
 import rescuecore2.scenario.exceptions.ScenarioException;
+import rescuecore2.standard.entities.ColumnarWorldModel;
 import rescuecore2.standard.entities.StandardWorldModel;
 import rescuecore2.standard.entities.Building;
 import rescuecore2.standard.entities.Road;
@@ -52,6 +53,7 @@ public class GMLWorldModelCreator implements WorldModelCreator {
 	private static final String BUILDING_CODE_PLACEMENT_TYPE = "gis.map.building-code-placement.random";
 	private static final String RANDOM_BUILDING_CODE_RATE = "gis.map.building-code-placement.random.code-rate.";
 	private static final String MAX_BUILDING_CODE = "gis.map.max-building-code";
+	private static final String COLUMNAR_KEY = "gis.worldmodel.columnar";
 	
 	private static final double SQ_MM_TO_SQ_M = 0.000001;
 
@@ -73,7 +75,8 @@ public class GMLWorldModelCreator implements WorldModelCreator {
 	public WorldModel<? extends Entity> buildWorldModel(Config config)
 			throws KernelException {
 		try {
-			StandardWorldModel result = new StandardWorldModel();
+			StandardWorldModel result = config.getBooleanValue(COLUMNAR_KEY, false)
+					? new ColumnarWorldModel() : new StandardWorldModel();
 			File dir = new File(config.getValue(MAP_DIRECTORY_KEY));
 			File mapFile = new File(dir, config.getValue(MAP_FILE_KEY,
 					DEFAULT_MAP_FILE));
@@ -98,7 +101,9 @@ public class GMLWorldModelCreator implements WorldModelCreator {
 
 	@Override
 	public EntityID generateID() {
-		return new EntityID(nextID++);
+		synchronized (this) {
+			return new EntityID(nextID++);
+		}
 	}
 
 	private void readMapData(File mapFile, StandardWorldModel result, Config config)
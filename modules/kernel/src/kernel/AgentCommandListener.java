@@ -0,0 +1,15 @@
+package kernel;
+
+import rescuecore2.messages.Command;
+
+/**
+   Interface for objects that want to know when an agent sends a command.
+ */
+public interface AgentCommandListener {
+    /**
+       Notification that an agent command has been received. This is called on the thread that read the command from the agent's connection.
+       @param agent The agent that sent the command.
+       @param c The command.
+    */
+    void commandReceived(AgentProxy agent, Command c);
+}
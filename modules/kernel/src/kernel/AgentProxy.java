@@ -13,7 +13,9 @@ import rescuecore2.worldmodel.EntityID;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
    This class is the kernel interface to an agent.
@@ -22,6 +24,7 @@ public class AgentProxy extends AbstractKernelComponent {
     private Entity entity;
     private Map<Integer, Collection<Command>> commands;
     private int lastTime;
+    private Set<AgentCommandListener> commandListeners;
 
     /**
        Construct an agent.
@@ -39,6 +42,7 @@ public class AgentProxy extends AbstractKernelComponent {
             }
         };
         lastTime = -1;
+        commandListeners = new HashSet<AgentCommandListener>();
         c.addConnectionListener(new AgentConnectionListener());
     }
 
@@ -74,6 +78,37 @@ public class AgentProxy extends AbstractKernelComponent {
         return result;
     }
 
+    /**
+       Get the commands received so far for a particular time. Unlike {@link #getAgentCommands(int)} this does not discard commands from earlier timesteps.
+       @param timestep The timestep.
+       @return A collection of messages representing the commands.
+     */
+    public Collection<Command> peekAgentCommands(int timestep) {
+        synchronized (commands) {
+            return new ArrayList<Command>(commands.get(timestep));
+        }
+    }
+
+    /**
+       Add an AgentCommandListener.
+       @param l The listener to add.
+     */
+    public void addAgentCommandListener(AgentCommandListener l) {
+        synchronized (commandListeners) {
+            commandListeners.add(l);
+        }
+    }
+
+    /**
+       Remove an AgentCommandListener.
+       @param l The listener to remove.
+     */
+    public void removeAgentCommandListener(AgentCommandListener l) {
+        synchronized (commandListeners) {
+            commandListeners.remove(l);
+        }
+    }
+
     /**
        Notify the of a perception update.
        @param time The current timestep.
@@ -102,6 +137,20 @@ public class AgentProxy extends AbstractKernelComponent {
             result.add(c);
             commands.notifyAll();
         }
+        fireCommandReceived(c);
+    }
+
+    private void fireCommandReceived(Command c) {
+        Set<AgentCommandListener> copy;
+        synchronized (commandListeners) {
+            if (commandListeners.isEmpty()) {
+                return;
+            }
+            copy = new HashSet<AgentCommandListener>(commandListeners);
+        }
+        for (AgentCommandListener next : copy) {
+            next.commandReceived(this, c);
+        }
     }
 
     private class AgentConnectionListener implements ConnectionListener {
@@ -1,6 +1,7 @@
 package kernel;
 
 import kernel.ui.ComponentManagerGUI;
+import rescuecore2.Constants;
 import rescuecore2.GUIComponent;
 import rescuecore2.config.Config;
 import rescuecore2.connection.Connection;
@@ -20,6 +21,8 @@ import rescuecore2.messages.control.SKAcknowledge;
 import rescuecore2.messages.control.SKConnect;
 import rescuecore2.messages.control.VKAcknowledge;
 import rescuecore2.messages.control.VKConnect;
+import rescuecore2.misc.URNDictionary;
+import rescuecore2.registry.Registry;
 import rescuecore2.scenario.Scenario;
 import rescuecore2.scenario.exceptions.UncompatibleScenarioException;
 import rescuecore2.worldmodel.Entity;
@@ -78,6 +81,9 @@ public class ComponentManager implements ConnectionManagerListener,
 
 	private final Scenario scenario;
 
+	// URN dictionaries for version 2 connections, one per registry
+	private final Map<Registry, URNDictionary> dictionaries;
+
 	/**
 	 * Create a ComponentManager.
 	 * 
@@ -98,6 +104,7 @@ public class ComponentManager implements ConnectionManagerListener,
 		agentsToAcknowledge = new HashSet<AgentAck>();
 		simsToAcknowledge = new HashSet<SimulatorAck>();
 		viewersToAcknowledge = new HashSet<ViewerAck>();
+		dictionaries = new HashMap<Registry, URNDictionary>();
 		nextID = STARTING_ID;
 	}
 
@@ -284,6 +291,34 @@ public class ComponentManager implements ConnectionManagerListener,
 		return null;
 	}
 
+	/**
+	 * Choose the wire protocol for a new component. Version 2 is used if both
+	 * the kernel and the component support it.
+	 *
+	 * @param version
+	 *            The protocol version the component asked for.
+	 * @param c
+	 *            The connection to the component.
+	 * @return The URN dictionary to send to the component, or null to stay on
+	 *         version 1.
+	 */
+	private URNDictionary negotiateProtocol(int version, Connection c) {
+		int supported = config.getIntValue(Constants.PROTOCOL_VERSION_KEY,
+				Constants.DEFAULT_PROTOCOL_VERSION);
+		if (Math.min(version, supported) < 2) {
+			return null;
+		}
+		Registry registry = c.getRegistry();
+		synchronized (dictionaries) {
+			URNDictionary result = dictionaries.get(registry);
+			if (result == null) {
+				result = new URNDictionary(registry.getKnownURNs());
+				dictionaries.put(registry, result);
+			}
+			return result;
+		}
+	}
+
 	private void updateGUIUncontrolledAgents() {
 		if (gui != null) {
 			List<String> data = new ArrayList<String>();
@@ -396,8 +431,11 @@ public class ComponentManager implements ConnectionManagerListener,
 							+ entity.getID() + " (" + connection
 							+ " request ID " + requestID + ") connected");
 					// Send an OK
-					reply = new KAConnectOK(requestID, entity.getID(),
+					KAConnectOK ok = new KAConnectOK(requestID, entity.getID(),
 							result.visibleSet, result.config);
+					ok.setURNDictionary(negotiateProtocol(connect.getVersion(),
+							connection));
+					reply = ok;
                     try {
                         connection.sendMessage(reply);
                     } catch (ConnectionException e) {
@@ -438,8 +476,10 @@ public class ComponentManager implements ConnectionManagerListener,
 						connection));
 			}
 			// Send an OK
-			sim.send(Collections.singleton(new KSConnectOK(simID, requestID,
-					world.getAllEntities(), config)));
+			KSConnectOK ok = new KSConnectOK(simID, requestID,
+					world.getAllEntities(), config);
+			ok.setURNDictionary(negotiateProtocol(msg.getVersion(), connection));
+			sim.send(Collections.singleton(ok));
 			sendAdditionalInfoToSim(sim);
 			updateGUISimulatorAck();
 		}
@@ -483,8 +523,10 @@ public class ComponentManager implements ConnectionManagerListener,
 						requestID, connection));
 			}
 			// Send an OK
-			viewer.send(Collections.singleton(new KVConnectOK(viewerID,
-					requestID, world.getAllEntities(), config)));
+			KVConnectOK ok = new KVConnectOK(viewerID, requestID,
+					world.getAllEntities(), config);
+			ok.setURNDictionary(negotiateProtocol(msg.getVersion(), connection));
+			viewer.send(Collections.singleton(ok));
 			updateGUIViewerAck();
 		}
 
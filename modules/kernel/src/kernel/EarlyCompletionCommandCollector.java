@@ -0,0 +1,116 @@
+package kernel;
+
+import rescuecore2.config.Config;
+import rescuecore2.messages.Command;
+import rescuecore2.log.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+   A CommandCollector that returns as soon as every agent has sent a command for the current timestep, or when the think time expires, whichever comes first. Agents wake the collector when their commands arrive so there is no polling.
+*/
+public class EarlyCompletionCommandCollector implements CommandCollector {
+    private static final int DEFAULT_TIME = 1000;
+    private static final String TIME_KEY = "kernel.agents.think-time";
+
+    private long time;
+
+    @Override
+    public void initialise(Config config) {
+        time = config.getIntValue(TIME_KEY, DEFAULT_TIME);
+    }
+
+    @Override
+    public Collection<Command> getAgentCommands(Collection<AgentProxy> agents, int timestep) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        long end = start + time;
+        CompletionMonitor monitor = new CompletionMonitor(timestep);
+        // Register the listener before checking for commands that have already arrived so none are missed
+        for (AgentProxy next : agents) {
+            next.addAgentCommandListener(monitor);
+        }
+        try {
+            synchronized (monitor) {
+                for (AgentProxy next : agents) {
+                    if (!isFinished(next.peekAgentCommands(timestep))) {
+                        monitor.waiting.add(next);
+                    }
+                }
+                long now = System.currentTimeMillis();
+                while (!monitor.waiting.isEmpty() && now < end) {
+                    long diff = end - now;
+                    Logger.trace(this + " waiting for " + diff + "ms for " + monitor.waiting.size() + " agents");
+                    monitor.wait(diff);
+                    now = System.currentTimeMillis();
+                }
+                if (monitor.waiting.isEmpty()) {
+                    Logger.info("Timestep " + timestep + ": all agents done at " + (now - start) + "ms");
+                }
+                else {
+                    Logger.info("Timestep " + timestep + ": " + monitor.waiting.size() + " of " + agents.size() + " agents not done after " + (now - start) + "ms");
+                }
+            }
+        }
+        finally {
+            for (AgentProxy next : agents) {
+                next.removeAgentCommandListener(monitor);
+            }
+        }
+        Collection<Command> result = new ArrayList<Command>();
+        for (AgentProxy next : agents) {
+            Collection<Command> commands = next.getAgentCommands(timestep);
+            result.addAll(commands);
+        }
+        Logger.trace(this + " returning " + result.size() + " commands");
+        Logger.trace(this + " returning " + result);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Early completion command collector";
+    }
+
+    /**
+       Find out if a command marks the end of an agent's turn. By default any command does; subclasses can ignore commands that agents send before their final action, such as communication.
+       @param c The command to check.
+       @return True if the agent has finished once it has sent this command.
+    */
+    protected boolean isCompletionCommand(Command c) {
+        return true;
+    }
+
+    private boolean isFinished(Collection<Command> commands) {
+        for (Command next : commands) {
+            if (isCompletionCommand(next)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class CompletionMonitor implements AgentCommandListener {
+        private int timestep;
+        private Set<AgentProxy> waiting;
+
+        CompletionMonitor(int timestep) {
+            this.timestep = timestep;
+            waiting = new HashSet<AgentProxy>();
+        }
+
+        @Override
+        public void commandReceived(AgentProxy agent, Command c) {
+            if (c.getTime() != timestep || !isCompletionCommand(c)) {
+                return;
+            }
+            synchronized (this) {
+                if (waiting.remove(agent) && waiting.isEmpty()) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
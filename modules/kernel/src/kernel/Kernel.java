@@ -7,10 +7,12 @@ import rescuecore2.components.Agent;
 import rescuecore2.components.Simulator;
 import rescuecore2.components.Viewer;
 import rescuecore2.config.Config;
+import rescuecore2.log.AsyncLogWriter;
 import rescuecore2.log.CommandsRecord;
 import rescuecore2.log.ConfigRecord;
 import rescuecore2.log.EndLogRecord;
 import rescuecore2.log.FileLogWriter;
+import rescuecore2.log.IndexedLogWriter;
 import rescuecore2.log.InitialConditionsRecord;
 import rescuecore2.log.LogException;
 import rescuecore2.log.LogWriter;
@@ -19,10 +21,12 @@ import rescuecore2.log.PerceptionRecord;
 import rescuecore2.log.StartLogRecord;
 import rescuecore2.log.UpdatesRecord;
 import rescuecore2.messages.Command;
+import rescuecore2.messages.MulticastMessage;
 import rescuecore2.messages.control.KASense;
 import rescuecore2.messages.control.KSCommands;
 import rescuecore2.messages.control.KSUpdate;
 import rescuecore2.messages.control.KVTimestep;
+import rescuecore2.registry.Registry;
 import rescuecore2.score.ScoreFunction;
 import rescuecore2.worldmodel.ChangeSet;
 import rescuecore2.worldmodel.Entity;
@@ -36,9 +40,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 //import rescuecore2.misc.gui.ChangeSetComponent;
 
@@ -49,11 +61,14 @@ public class Kernel {
     /** The log context for kernel log messages. */
     public static final String KERNEL_LOG_CONTEXT = "kernel";
 
+    private static final long NANOS_PER_MILLI = 1000000;
+
     private Config config;
     private Perception perception;
     private CommunicationModel communicationModel;
     private WorldModel<? extends Entity> worldModel;
     private LogWriter log;
+    private boolean nolog;
 
     private Set<KernelListener> listeners;
 
@@ -77,6 +92,11 @@ public class Kernel {
     private List<Agent> agents;
     private Collection<Command> agentCommands;
 
+    private ExecutorService perceptionService;
+    private PerceptionCache perceptionCache;
+    private boolean recordFullPerception;
+    private ExecutorService simulatorService;
+
     //    private ChangeSetComponent simulatorChanges;
 
     /**
@@ -127,8 +147,9 @@ public class Kernel {
             });
             viewerProxies = new HashSet<ViewerProxy>();
             time = 0;
+            nolog = config.getBooleanValue("nolog");
             try {
-                if (!config.getBooleanValue("nolog")) {
+                if (!nolog) {
                     String logName = config.getValue("kernel.logname");
                     Logger.info("Logging to " + logName);
                     File logFile = new File(logName);
@@ -138,10 +159,20 @@ public class Kernel {
                     if (logFile.createNewFile()) {
                         Logger.info("Created log file: " + logFile.getAbsolutePath());
                     }
-                    log = new FileLogWriter(logFile);
+                    if (config.getBooleanValue(KernelConstants.LOG_COMPRESSED_KEY, false)) {
+                        log = new IndexedLogWriter(logFile);
+                    }
+                    else {
+                        log = new FileLogWriter(logFile);
+                    }
+                    // The initial conditions record refers to live entities so it must be written before the world changes
                     log.writeRecord(new StartLogRecord());
                     log.writeRecord(new InitialConditionsRecord(worldModel));
                     log.writeRecord(new ConfigRecord(config));
+                    int queueSize = config.getIntValue(KernelConstants.LOG_QUEUE_SIZE_KEY, AsyncLogWriter.DEFAULT_CAPACITY);
+                    if (queueSize > 0) {
+                        log = new AsyncLogWriter(log, queueSize);
+                    }
                 }
             }
             catch (IOException e) {
@@ -163,6 +194,21 @@ public class Kernel {
             termination.initialise(config);
             commandCollector.initialise(config);
 
+            int perceptionThreads = config.getIntValue(KernelConstants.PERCEPTION_THREADS_KEY, 1);
+            if (perceptionThreads > 1) {
+                perceptionService = Executors.newFixedThreadPool(perceptionThreads, new KernelThreadFactory("Perception worker"));
+            }
+            if (config.getBooleanValue(KernelConstants.PERCEPTION_DELTA_KEY, false)) {
+                perceptionCache = new PerceptionCache();
+            }
+            // Score functions such as DiscoveryScoreFunction look at what each agent could see
+            recordFullPerception = config.getBooleanValue(KernelConstants.PERCEPTION_DELTA_RECORD_FULL_KEY, true);
+            boolean parallelSimulators = config.getBooleanValue(KernelConstants.SIMULATORS_PARALLEL_KEY, true);
+            if (parallelSimulators) {
+                // Most of these threads spend their time waiting for remote simulators so the pool is not bounded by the number of processors
+                simulatorService = Executors.newCachedThreadPool(new KernelThreadFactory("Simulator worker"));
+            }
+
             isShutdown = false;
 
             viewers = new ArrayList<>();
@@ -177,6 +223,9 @@ public class Kernel {
             Logger.info("Score function: " + score);
             Logger.info("Termination condition: " + termination);
             Logger.info("Command collector: " + collector);
+            Logger.info("Perception threads: " + perceptionThreads);
+            Logger.info("Perception deltas: " + (perceptionCache != null));
+            Logger.info("Parallel simulators: " + parallelSimulators);
         }
         finally {
             Logger.popLogContext();
@@ -207,6 +256,8 @@ public class Kernel {
         synchronized (this) {
             agentProxies.add(agent);
         }
+        // An agent that reconnects has lost what it was told before
+        forgetPerception(agent);
         fireAgentAdded(agent);
     }
 
@@ -229,6 +280,7 @@ public class Kernel {
         synchronized (this) {
             agentProxies.remove(agent);
         }
+        forgetPerception(agent);
         fireAgentRemoved(agent);
     }
 
@@ -405,7 +457,7 @@ public class Kernel {
                 Collection<Command> commands = waitForCommands(time);
 
                 nextTimestep.setCommands(commands);
-                if (!config.getBooleanValue("nolog")) {
+                if (!nolog) {
                     log.writeRecord(new CommandsRecord(time, commands));
                 }
                 long commandsTime = System.currentTimeMillis();
@@ -413,7 +465,7 @@ public class Kernel {
                 ChangeSet changes = sendCommandsToSimulators(time, commands);
                 //                simulatorUpdates.show(changes);
                 nextTimestep.setChangeSet(changes);
-                if (!config.getBooleanValue("nolog")) {
+                if (!nolog) {
                     log.writeRecord(new UpdatesRecord(time, changes));
                 }
                 long updatesTime = System.currentTimeMillis();
@@ -499,7 +551,7 @@ public class Kernel {
 //                Logger.warn("Interrupted during shutdown");
 //            }
             try {
-                if (!config.getBooleanValue("nolog")) {
+                if (!nolog) {
                     log.writeRecord(new EndLogRecord());
                     log.close();
                 }
@@ -507,6 +559,12 @@ public class Kernel {
             catch (LogException e) {
                 Logger.error("Error closing log", e);
             }
+            if (perceptionService != null) {
+                perceptionService.shutdownNow();
+            }
+            if (simulatorService != null) {
+                simulatorService.shutdownNow();
+            }
             Logger.info("Kernel has shut down");
             isShutdown = true;
             fireShutdown();
@@ -516,33 +574,93 @@ public class Kernel {
     private void sendAgentUpdates(Timestep timestep, Collection<Command> commandsLastTimestep) throws InterruptedException, KernelException, LogException {
         perception.setTime(time);
         communicationModel.process(time, commandsLastTimestep);
+        // Work out what everyone can see first (possibly in parallel), then send the results in agent order
+        List<PerceptionTask> tasks = new ArrayList<PerceptionTask>(agentProxies.size() + agents.size());
+        for (AgentProxy next : agentProxies) {
+            tasks.add(new ProxyPerceptionTask(perception, next));
+        }
+        for (Agent next : agents) {
+            tasks.add(new AgentPerceptionTask(perception, next.getID()));
+        }
+        List<ChangeSet> allVisible = computePerception(tasks);
+        int index = 0;
         for (AgentProxy next : agentProxies) {
             if (Thread.interrupted()) {
                 throw new InterruptedException();
             }
-            ChangeSet visible = perception.getVisibleEntities(next);
             Collection<Command> heard = communicationModel.getHearing(next.getControlledEntity());
             EntityID id = next.getControlledEntity().getID();
-            timestep.registerPerception(id, visible, heard);
-            if (!config.getBooleanValue("nolog")) {
-                log.writeRecord(new PerceptionRecord(time, id, visible, heard));
+            ChangeSet visible = allVisible.get(index++);
+            ChangeSet sent = filterPerception(id, visible);
+            ChangeSet recorded = recordFullPerception ? visible : sent;
+            timestep.registerPerception(id, recorded, heard);
+            if (!nolog) {
+                log.writeRecord(new PerceptionRecord(time, id, recorded, heard));
             }
-            next.sendPerceptionUpdate(time, visible, heard);
+            next.sendPerceptionUpdate(time, sent, heard);
         }
 
         agentCommands.clear();
         for (Agent agent : agents) {
-            ChangeSet visible = perception.getVisibleEntities(agent.getID());
             Collection<Command> heard = communicationModel.getHearing(getWorldModel().getEntity(agent.getID()));
-            timestep.registerPerception(agent.getID(), visible, heard);
-            if (!config.getBooleanValue("nolog")) {
-                log.writeRecord(new PerceptionRecord(time, agent.getID(), visible, heard));
+            ChangeSet visible = allVisible.get(index++);
+            ChangeSet sent = filterPerception(agent.getID(), visible);
+            ChangeSet recorded = recordFullPerception ? visible : sent;
+            timestep.registerPerception(agent.getID(), recorded, heard);
+            if (!nolog) {
+                log.writeRecord(new PerceptionRecord(time, agent.getID(), recorded, heard));
             }
-            agent.processSense(new KASense(agent.getID(), time, visible, heard));
+            agent.processSense(new KASense(agent.getID(), time, sent, heard));
             agentCommands.addAll(agent.getLastCommands());
         }
     }
 
+    /**
+       Work out what to send to an agent. If perception deltas are enabled then only the properties that have changed since the agent's last update are sent.
+       @param id The ID of the agent.
+       @param visible Everything the agent can see.
+       @return The ChangeSet to send.
+    */
+    private ChangeSet filterPerception(EntityID id, ChangeSet visible) {
+        if (perceptionCache == null) {
+            return visible;
+        }
+        return perceptionCache.filter(id, visible);
+    }
+
+    private void forgetPerception(AgentProxy agent) {
+        if (perceptionCache != null) {
+            perceptionCache.forget(agent.getControlledEntity().getID());
+        }
+    }
+
+    /**
+       Run a set of perception tasks. If a perception thread pool is configured then the tasks run concurrently, otherwise they run one after another on the calling thread. The world model is not modified while this method runs.
+       @param tasks The tasks to run.
+       @return The visible sets in the same order as the tasks.
+    */
+    private List<ChangeSet> computePerception(List<PerceptionTask> tasks) throws InterruptedException, KernelException {
+        List<ChangeSet> result = new ArrayList<ChangeSet>(tasks.size());
+        if (perceptionService == null) {
+            for (PerceptionTask next : tasks) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                result.add(next.call());
+            }
+            return result;
+        }
+        try {
+            for (Future<ChangeSet> next : perceptionService.invokeAll(tasks)) {
+                result.add(next.get());
+            }
+        }
+        catch (ExecutionException e) {
+            throw new KernelException("Error computing perception", e.getCause());
+        }
+        return result;
+    }
+
     private Collection<Command> waitForCommands(int timestep) throws InterruptedException {
         Collection<Command> commands = commandCollector.getAgentCommands(agentProxies, timestep);
         // add the commands from agents
@@ -555,31 +673,67 @@ public class Kernel {
     }
 
     /**
-       Send commands to all simulators and return which entities have been updated by the simulators.
+       Send commands to all simulators and return which entities have been updated by the simulators. If parallel simulators are enabled then the kernel waits for all simulators at once and in-JVM simulators run concurrently, otherwise simulators are handled one after another. Either way the updates are merged in the same fixed simulator order, because several simulators can update the same property (for example road blockades from the clear and collapse simulators) and the last one merged wins.
     */
-    private ChangeSet sendCommandsToSimulators(int timestep, Collection<Command> commands) throws InterruptedException {
+    private ChangeSet sendCommandsToSimulators(int timestep, Collection<Command> commands) throws InterruptedException, KernelException {
+        long start = System.nanoTime();
+        if (!simProxies.isEmpty()) {
+            // Encode the commands once and only change the target ID for each simulator
+            MulticastMessage message = new MulticastMessage(new KSCommands(0, timestep, commands));
+            for (SimulatorProxy next : simProxies) {
+                next.sendAgentCommands(message);
+            }
+        }
+        List<SimulatorTask> tasks = new ArrayList<SimulatorTask>(simProxies.size() + sims.size());
         for (SimulatorProxy next : simProxies) {
-            next.sendAgentCommands(timestep, commands);
+            tasks.add(new ProxySimulatorTask(next, timestep));
+        }
+        for (Simulator next : sims) {
+            tasks.add(new InlineSimulatorTask(next, timestep, commands, Registry.getCurrentRegistry()));
         }
-        // Wait until all simulators have sent updates
         ChangeSet result = new ChangeSet();
-        for (SimulatorProxy next : simProxies) {
-            Logger.debug("Fetching updates from " + next);
-            result.merge(next.getUpdates(timestep));
+        Map<String, Long> roundTripTimes = new LinkedHashMap<String, Long>();
+        if (simulatorService == null) {
+            for (SimulatorTask next : tasks) {
+                Logger.debug("Fetching updates from " + next.getName());
+                result.merge(next.call());
+                roundTripTimes.put(next.getName(), (next.getFinishTime() - start) / NANOS_PER_MILLI);
+            }
         }
-
-        for (Simulator sim : sims) {
-            ChangeSet simChange = new ChangeSet();
-            KSCommands cmds = new KSCommands(sim.getID(), timestep, commands);
-            sim.processCommands(cmds, simChange);
-            result.merge(simChange);
+        else {
+            List<Future<ChangeSet>> futures = new ArrayList<Future<ChangeSet>>(tasks.size());
+            try {
+                for (SimulatorTask next : tasks) {
+                    futures.add(simulatorService.submit(next));
+                }
+                // Wait in task order so that the merged result does not depend on which simulator finishes first
+                for (int i = 0; i < tasks.size(); ++i) {
+                    SimulatorTask task = tasks.get(i);
+                    result.merge(futures.get(i).get());
+                    roundTripTimes.put(task.getName(), (task.getFinishTime() - start) / NANOS_PER_MILLI);
+                    Logger.debug("Received updates from " + task.getName());
+                }
+            }
+            catch (ExecutionException e) {
+                throw new KernelException("Error fetching simulator updates", e.getCause());
+            }
+            finally {
+                for (Future<ChangeSet> next : futures) {
+                    next.cancel(true);
+                }
+            }
         }
+        Logger.debug("Simulator round trip times: " + roundTripTimes);
+        fireSimulatorUpdatesReceived(timestep, roundTripTimes);
         return result;
     }
 
     private void sendUpdatesToSimulators(int timestep, ChangeSet updates) throws InterruptedException {
-        for (SimulatorProxy next : simProxies) {
-            next.sendUpdate(timestep, updates);
+        if (!simProxies.isEmpty()) {
+            MulticastMessage message = new MulticastMessage(new KSUpdate(0, timestep, updates));
+            for (SimulatorProxy next : simProxies) {
+                next.sendUpdate(message);
+            }
         }
         for (Simulator sim : sims) {
             sim.handleUpdate(new KSUpdate(sim.getID(), timestep, updates));
@@ -587,8 +741,11 @@ public class Kernel {
     }
 
     private void sendToViewers(Timestep timestep) {
-        for (ViewerProxy next : viewerProxies) {
-            next.sendTimestep(timestep);
+        if (!viewerProxies.isEmpty()) {
+            MulticastMessage message = new MulticastMessage(new KVTimestep(0, timestep.getTime(), timestep.getCommands(), timestep.getChangeSet()));
+            for (ViewerProxy next : viewerProxies) {
+                next.sendTimestep(message);
+            }
         }
         for (Viewer next : viewers) {
             KVTimestep kvTimestep = new KVTimestep(next.getID(), timestep.getTime(), timestep.getCommands(), timestep.getChangeSet());
@@ -663,4 +820,137 @@ public class Kernel {
             next.viewerRemoved(this, viewer);
         }
     }
+
+    private void fireSimulatorUpdatesReceived(int timestep, Map<String, Long> roundTripTimes) {
+        Map<String, Long> times = Collections.unmodifiableMap(roundTripTimes);
+        for (KernelListener next : getListeners()) {
+            next.simulatorUpdatesReceived(this, timestep, times);
+        }
+    }
+
+    private abstract static class PerceptionTask implements Callable<ChangeSet> {
+        @Override
+        public abstract ChangeSet call();
+    }
+
+    private static final class ProxyPerceptionTask extends PerceptionTask {
+        private Perception perception;
+        private AgentProxy agent;
+
+        ProxyPerceptionTask(Perception perception, AgentProxy agent) {
+            this.perception = perception;
+            this.agent = agent;
+        }
+
+        @Override
+        public ChangeSet call() {
+            return perception.getVisibleEntities(agent);
+        }
+    }
+
+    private static final class AgentPerceptionTask extends PerceptionTask {
+        private Perception perception;
+        private EntityID id;
+
+        AgentPerceptionTask(Perception perception, EntityID id) {
+            this.perception = perception;
+            this.id = id;
+        }
+
+        @Override
+        public ChangeSet call() {
+            return perception.getVisibleEntities(id);
+        }
+    }
+
+    /**
+       A task that waits for the updates from one simulator. The time the updates arrived is recorded so the kernel can report which simulators are slowest.
+    */
+    private abstract static class SimulatorTask implements Callable<ChangeSet> {
+        private final String name;
+        private volatile long finishTime;
+
+        SimulatorTask(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public ChangeSet call() throws InterruptedException {
+            Logger.pushLogContext(KERNEL_LOG_CONTEXT);
+            try {
+                ChangeSet result = getUpdates();
+                finishTime = System.nanoTime();
+                return result;
+            }
+            finally {
+                Logger.popLogContext();
+            }
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getFinishTime() {
+            return finishTime;
+        }
+
+        protected abstract ChangeSet getUpdates() throws InterruptedException;
+    }
+
+    private static final class ProxySimulatorTask extends SimulatorTask {
+        private SimulatorProxy sim;
+        private int timestep;
+
+        ProxySimulatorTask(SimulatorProxy sim, int timestep) {
+            super(sim.getName() + " (" + sim.getID() + ")");
+            this.sim = sim;
+            this.timestep = timestep;
+        }
+
+        @Override
+        protected ChangeSet getUpdates() throws InterruptedException {
+            return sim.getUpdates(timestep);
+        }
+    }
+
+    private static final class InlineSimulatorTask extends SimulatorTask {
+        private Simulator sim;
+        private int timestep;
+        private Collection<Command> commands;
+        private Registry registry;
+
+        InlineSimulatorTask(Simulator sim, int timestep, Collection<Command> commands, Registry registry) {
+            super(sim.getName() + " (" + sim.getID() + ")");
+            this.sim = sim;
+            this.timestep = timestep;
+            this.commands = commands;
+            this.registry = registry;
+        }
+
+        @Override
+        protected ChangeSet getUpdates() {
+            // Pool threads are shared so make sure this one is using the kernel registry
+            Registry.setCurrentRegistry(registry);
+            ChangeSet result = new ChangeSet();
+            sim.processCommands(new KSCommands(sim.getID(), timestep, commands), result);
+            return result;
+        }
+    }
+
+    private static final class KernelThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private int count;
+
+        KernelThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread result = new Thread(r, prefix + " " + (++count));
+            result.setDaemon(true);
+            return result;
+        }
+    }
 }
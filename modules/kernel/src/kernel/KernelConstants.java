@@ -10,6 +10,24 @@ public final class KernelConstants {
     /** The config key for perception implementations. */
     public static final String PERCEPTION_KEY = "kernel.perception";
 
+    /** The config key for the number of threads used to compute agent perception. */
+    public static final String PERCEPTION_THREADS_KEY = "kernel.perception.threads";
+
+    /** The config key for whether agents are only sent the visible properties that have changed since their last perception update. */
+    public static final String PERCEPTION_DELTA_KEY = "kernel.perception.delta";
+
+    /** The config key for whether the timestep and the log record everything each agent can see, rather than just what it was sent, when perception deltas are enabled. */
+    public static final String PERCEPTION_DELTA_RECORD_FULL_KEY = "kernel.perception.delta.record-full";
+
+    /** The config key for whether simulators are handled concurrently. */
+    public static final String SIMULATORS_PARALLEL_KEY = "kernel.simulators.parallel";
+
+    /** The config key for whether to write the log in the compressed, indexed format. */
+    public static final String LOG_COMPRESSED_KEY = "kernel.log.compressed";
+
+    /** The config key for the number of log records that can be queued for writing. 0 writes the log on the kernel thread. */
+    public static final String LOG_QUEUE_SIZE_KEY = "kernel.log.queue-size";
+
     /** The config key for communication model implementations. */
     public static final String COMMUNICATION_MODEL_KEY = "kernel.communication";
 
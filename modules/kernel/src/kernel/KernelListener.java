@@ -3,6 +3,8 @@ package kernel;
 import rescuecore2.Timestep;
 import rescuecore2.components.Viewer;
 
+import java.util.Map;
+
 /**
    Interface for objects that are interested in kernel events.
  */
@@ -69,4 +71,12 @@ public interface KernelListener {
        @param viewer The viewer that was removed.
      */
     void viewerRemoved(Kernel kernel, ViewerProxy viewer);
+
+    /**
+       Notification that updates have been received from every simulator for a timestep.
+       @param kernel The kernel.
+       @param time The timestep.
+       @param roundTripTimes The time in milliseconds from sending commands to receiving updates, keyed by simulator name. Entries are in the order the updates were received.
+     */
+    void simulatorUpdatesReceived(Kernel kernel, int time, Map<String, Long> roundTripTimes);
 }
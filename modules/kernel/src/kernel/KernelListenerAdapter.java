@@ -3,6 +3,8 @@ package kernel;
 import rescuecore2.Timestep;
 import rescuecore2.components.Viewer;
 
+import java.util.Map;
+
 /**
    Abstract class for objects that want to implement a subset of the KernelListener interface. All default method implementations do nothing.
  */
@@ -38,4 +40,7 @@ public class KernelListenerAdapter implements KernelListener {
 
     @Override
     public void viewerRemoved(Kernel kernel, ViewerProxy viewer) {}
+
+    @Override
+    public void simulatorUpdatesReceived(Kernel kernel, int time, Map<String, Long> roundTripTimes) {}
 }
@@ -0,0 +1,78 @@
+package kernel;
+
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.Property;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+   Remembers the property values that have been sent to each agent so that later perception updates only need to contain the properties that have changed. Agents keep what they have been told in their own world model, so an entity that drops out of view and comes back unchanged is not sent again. Property values are compared with equals, so properties with values that do not implement it are always sent.
+   <p>
+   An entity whose visible properties have all been sent before is left out of the update altogether, so the changed entities of the result are not everything the agent can see.
+   <p>
+   This class is thread-safe.
+ */
+public class PerceptionCache {
+    // Agent ID -> entity ID -> property URN -> last property sent
+    private Map<EntityID, Map<EntityID, Map<String, Property>>> sent;
+
+    /**
+       Construct an empty PerceptionCache.
+    */
+    public PerceptionCache() {
+        sent = new HashMap<EntityID, Map<EntityID, Map<String, Property>>>();
+    }
+
+    /**
+       Work out what an agent needs to be sent and remember it.
+       @param agentID The ID of the agent.
+       @param visible Everything the agent can perceive this timestep. This must not be modified afterwards.
+       @return A ChangeSet with the properties that differ from the last ones sent to the agent, and all deleted entities.
+    */
+    public synchronized ChangeSet filter(EntityID agentID, ChangeSet visible) {
+        Map<EntityID, Map<String, Property>> known = sent.get(agentID);
+        if (known == null) {
+            known = new HashMap<EntityID, Map<String, Property>>();
+            sent.put(agentID, known);
+        }
+        ChangeSet result = new ChangeSet();
+        for (Map.Entry<EntityID, Map<String, Property>> entity : visible.getChangeMap().entrySet()) {
+            EntityID id = entity.getKey();
+            String urn = visible.getEntityURN(id);
+            Map<String, Property> properties = known.get(id);
+            if (properties == null) {
+                properties = new HashMap<String, Property>();
+                known.put(id, properties);
+            }
+            for (Property next : entity.getValue().values()) {
+                if (!same(properties.get(next.getURN()), next)) {
+                    result.addChange(id, urn, next);
+                    properties.put(next.getURN(), next);
+                }
+            }
+        }
+        for (EntityID next : visible.getDeletedEntities()) {
+            result.entityDeleted(next);
+            known.remove(next);
+        }
+        return result;
+    }
+
+    /**
+       Forget everything that has been sent to an agent so that its next update is complete.
+       @param agentID The ID of the agent.
+    */
+    public synchronized void forget(EntityID agentID) {
+        sent.remove(agentID);
+    }
+
+    private static boolean same(Property old, Property p) {
+        if (old == null || old.isDefined() != p.isDefined()) {
+            return false;
+        }
+        return !p.isDefined() || Objects.deepEquals(old.getValue(), p.getValue());
+    }
+}
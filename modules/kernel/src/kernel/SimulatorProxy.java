@@ -4,6 +4,7 @@ import rescuecore2.connection.Connection;
 import rescuecore2.connection.ConnectionListener;
 import rescuecore2.messages.Message;
 import rescuecore2.messages.Command;
+import rescuecore2.messages.MulticastMessage;
 import rescuecore2.messages.control.SKUpdate;
 import rescuecore2.messages.control.KSUpdate;
 import rescuecore2.messages.control.KSCommands;
@@ -68,6 +69,14 @@ public class SimulatorProxy extends AbstractKernelComponent {
         send(new KSUpdate(id, time, update));
     }
 
+    /**
+       Send a pre-encoded update message to this simulator.
+       @param update A KSUpdate message shared by all simulators.
+    */
+    public void sendUpdate(MulticastMessage update) {
+        send(update.forTarget(id));
+    }
+
     /**
        Send a set of agent commands to this simulator.
        @param time The current time.
@@ -77,6 +86,22 @@ public class SimulatorProxy extends AbstractKernelComponent {
         send(new KSCommands(id, time, commands));
     }
 
+    /**
+       Send a pre-encoded set of agent commands to this simulator.
+       @param commands A KSCommands message shared by all simulators.
+    */
+    public void sendAgentCommands(MulticastMessage commands) {
+        send(commands.forTarget(id));
+    }
+
+    /**
+       Get the ID of this simulator.
+       @return The simulator ID.
+    */
+    public int getID() {
+        return id;
+    }
+
     @Override
     public String toString() {
         return getName() + " (" + id + "): " + getConnection().toString();
@@ -22,6 +22,7 @@ import rescuecore2.config.ConfigException;
 import rescuecore2.config.IntegerValueConstraint;
 import rescuecore2.connection.ConnectionException;
 import rescuecore2.connection.ConnectionManager;
+import rescuecore2.connection.NIOConnection;
 import rescuecore2.log.LogException;
 import rescuecore2.log.Logger;
 import rescuecore2.messages.control.KSAfterShocksInfo;
@@ -331,7 +332,12 @@ public final class StartKernel {
 
         if (!config.getBooleanValue(KernelConstants.INLINE_ONLY_KEY, false)) {
             // Start the connection manager
-            ConnectionManager connectionManager = new ConnectionManager();
+            boolean nio = config.getBooleanValue(Constants.CONNECTION_NIO_KEY,
+                    Constants.DEFAULT_CONNECTION_NIO);
+            if (nio) {
+                NIOConnection.configure(config);
+            }
+            ConnectionManager connectionManager = new ConnectionManager(nio);
             try {
                 connectionManager.listen(
                         config.getIntValue(Constants.KERNEL_PORT_NUMBER_KEY),
@@ -1,6 +1,7 @@
 package kernel;
 
 import rescuecore2.connection.Connection;
+import rescuecore2.messages.MulticastMessage;
 import rescuecore2.messages.control.KVTimestep;
 import rescuecore2.Timestep;
 
@@ -29,6 +30,14 @@ public class ViewerProxy extends AbstractKernelComponent {
         send(new KVTimestep(id, time.getTime(), time.getCommands(), time.getChangeSet()));
     }
 
+    /**
+       Send a pre-encoded timestep to this viewer.
+       @param timestep A KVTimestep message shared by all viewers.
+    */
+    public void sendTimestep(MulticastMessage timestep) {
+        send(timestep.forTarget(id));
+    }
+
     @Override
     public String toString() {
         return getName() + " (" + id + "): " + getConnection().toString();
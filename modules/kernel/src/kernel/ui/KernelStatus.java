@@ -12,6 +12,7 @@ import rescuecore2.misc.gui.ListModelList;
 import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Map;
 
 /**
    A status panel for the kernel.
@@ -124,4 +125,8 @@ public class KernelStatus extends JPanel implements KernelListener {
     public void viewerRemoved(Kernel k, ViewerProxy info) {
         viewers.remove(info);
     }
+
+    @Override
+    public void simulatorUpdatesReceived(Kernel k, int time, Map<String, Long> roundTripTimes) {
+    }
 }
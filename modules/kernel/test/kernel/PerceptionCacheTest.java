@@ -0,0 +1,106 @@
+package kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.Property;
+import rescuecore2.worldmodel.properties.IntProperty;
+
+import java.util.Collections;
+import java.util.HashSet;
+
+public class PerceptionCacheTest {
+    private static final String ENTITY_URN = "test:entity";
+    private static final String HP_URN = "test:hp";
+    private static final String DAMAGE_URN = "test:damage";
+    private static final EntityID AGENT = new EntityID(1);
+    private static final EntityID OTHER_AGENT = new EntityID(2);
+    private static final EntityID ENTITY = new EntityID(10);
+
+    private PerceptionCache cache;
+
+    @Before
+    public void setup() {
+        cache = new PerceptionCache();
+    }
+
+    @Test
+    public void testFirstUpdateIsComplete() {
+        ChangeSet sent = cache.filter(AGENT, see(new IntProperty(HP_URN, 100), new IntProperty(DAMAGE_URN, 5)));
+        assertEquals(Collections.singleton(ENTITY), sent.getChangedEntities());
+        assertEquals(2, sent.getChangedProperties(ENTITY).size());
+        assertEquals(ENTITY_URN, sent.getEntityURN(ENTITY));
+    }
+
+    @Test
+    public void testUnchanged() {
+        cache.filter(AGENT, see(new IntProperty(HP_URN, 100), new IntProperty(DAMAGE_URN, 5)));
+        ChangeSet sent = cache.filter(AGENT, see(new IntProperty(HP_URN, 100), new IntProperty(DAMAGE_URN, 5)));
+        // An entity with nothing new is left out altogether
+        assertTrue(sent.getChangedEntities().isEmpty());
+        assertTrue(sent.getDeletedEntities().isEmpty());
+    }
+
+    @Test
+    public void testChanged() {
+        cache.filter(AGENT, see(new IntProperty(HP_URN, 100), new IntProperty(DAMAGE_URN, 5)));
+        ChangeSet sent = cache.filter(AGENT, see(new IntProperty(HP_URN, 90), new IntProperty(DAMAGE_URN, 5)));
+        assertEquals(1, sent.getChangedProperties(ENTITY).size());
+        assertEquals(90, ((IntProperty)sent.getChangedProperty(ENTITY, HP_URN)).getValue().intValue());
+        assertNull(sent.getChangedProperty(ENTITY, DAMAGE_URN));
+    }
+
+    @Test
+    public void testUndefined() {
+        cache.filter(AGENT, see(new IntProperty(HP_URN, 100)));
+        ChangeSet sent = cache.filter(AGENT, see(new IntProperty(HP_URN)));
+        Property hp = sent.getChangedProperty(ENTITY, HP_URN);
+        assertFalse(hp.isDefined());
+        // Still undefined
+        assertTrue(cache.filter(AGENT, see(new IntProperty(HP_URN))).getChangedEntities().isEmpty());
+        // Defined again with the value it had before it was undefined
+        hp = cache.filter(AGENT, see(new IntProperty(HP_URN, 100))).getChangedProperty(ENTITY, HP_URN);
+        assertEquals(100, ((IntProperty)hp).getValue().intValue());
+    }
+
+    @Test
+    public void testDeleted() {
+        cache.filter(AGENT, see(new IntProperty(HP_URN, 100)));
+        ChangeSet deleted = new ChangeSet();
+        deleted.entityDeleted(ENTITY);
+        ChangeSet sent = cache.filter(AGENT, deleted);
+        assertEquals(Collections.singleton(ENTITY), new HashSet<EntityID>(sent.getDeletedEntities()));
+        // Deletions are passed on every time
+        assertEquals(Collections.singleton(ENTITY), new HashSet<EntityID>(cache.filter(AGENT, deleted).getDeletedEntities()));
+        // An entity with the same ID that turns up again is sent in full
+        assertEquals(1, cache.filter(AGENT, see(new IntProperty(HP_URN, 100))).getChangedProperties(ENTITY).size());
+    }
+
+    @Test
+    public void testAgentsAreSeparate() {
+        cache.filter(AGENT, see(new IntProperty(HP_URN, 100)));
+        assertEquals(1, cache.filter(OTHER_AGENT, see(new IntProperty(HP_URN, 100))).getChangedProperties(ENTITY).size());
+    }
+
+    @Test
+    public void testForget() {
+        cache.filter(AGENT, see(new IntProperty(HP_URN, 100)));
+        cache.forget(AGENT);
+        assertEquals(1, cache.filter(AGENT, see(new IntProperty(HP_URN, 100))).getChangedProperties(ENTITY).size());
+    }
+
+    private ChangeSet see(Property... properties) {
+        ChangeSet result = new ChangeSet();
+        for (Property next : properties) {
+            result.addChange(ENTITY, ENTITY_URN, next);
+        }
+        return result;
+    }
+}
@@ -35,6 +35,20 @@ public final class Constants {
     public static final String GIS_PORT_NUMBER_KEY = "gis.port";
     /** Default gis port number. */
     public static final int DEFAULT_GIS_PORT_NUMBER = 7001;
+    /** Config key for specifying whether to use non-blocking connections. */
+    public static final String CONNECTION_NIO_KEY = "connection.nio";
+    /** Default non-blocking connection setting. */
+    public static final boolean DEFAULT_CONNECTION_NIO = false;
+    /** Config key for the number of threads that decode messages from non-blocking connections. */
+    public static final String CONNECTION_NIO_THREADS_KEY = "connection.nio.threads";
+    /** Config key for the largest message frame, in bytes, that a non-blocking connection will accept. */
+    public static final String CONNECTION_MAX_FRAME_SIZE_KEY = "connection.max-frame-size";
+    /** Default largest message frame. */
+    public static final int DEFAULT_CONNECTION_MAX_FRAME_SIZE = 1 << 28;
+    /** Config key for the highest wire protocol version a component or the kernel will use. */
+    public static final String PROTOCOL_VERSION_KEY = "connection.protocol";
+    /** Default wire protocol version. */
+    public static final int DEFAULT_PROTOCOL_VERSION = 1;
 
     /** The random seed key. */
     public static final String RANDOM_SEED_KEY = "random.seed";
@@ -1,5 +1,6 @@
 package rescuecore2.components;
 
+import rescuecore2.Constants;
 import rescuecore2.config.Config;
 import rescuecore2.connection.Connection;
 import rescuecore2.connection.ConnectionException;
@@ -62,7 +63,7 @@ public abstract class AbstractAgent<T extends WorldModel<? extends Entity>, E ex
     public void connect(Connection connection, RequestIDGenerator generator, Config config) throws ConnectionException, ComponentConnectionException, InterruptedException {
         this.config = config;
         int requestID = generator.generateRequestID();
-        AKConnect connect = new AKConnect(requestID, 1, getName(), getRequestedEntityURNs());
+        AKConnect connect = new AKConnect(requestID, config.getIntValue(Constants.PROTOCOL_VERSION_KEY, Constants.DEFAULT_PROTOCOL_VERSION), getName(), getRequestedEntityURNs());
         CountDownLatch latch = new CountDownLatch(1);
         AgentConnectionListener l = new AgentConnectionListener(requestID, latch);
         connection.addConnectionListener(l);
@@ -1,6 +1,7 @@
 package rescuecore2.components;
 
 import kernel.EntityIDGenerator;
+import rescuecore2.Constants;
 import rescuecore2.connection.Connection;
 import rescuecore2.connection.ConnectionListener;
 import rescuecore2.connection.ConnectionException;
@@ -78,7 +79,7 @@ public abstract class AbstractSimulator<T extends WorldModel<? extends Entity>>
     public void connect(Connection connection, RequestIDGenerator generator, Config config) throws ConnectionException, ComponentConnectionException, InterruptedException {
         this.config = config;
         int requestID = generator.generateRequestID();
-        SKConnect connect = new SKConnect(requestID, 1, getName());
+        SKConnect connect = new SKConnect(requestID, config.getIntValue(Constants.PROTOCOL_VERSION_KEY, Constants.DEFAULT_PROTOCOL_VERSION), getName());
         CountDownLatch latch = new CountDownLatch(1);
         SimulatorConnectionListener l = new SimulatorConnectionListener(requestID, latch);
         connection.addConnectionListener(l);
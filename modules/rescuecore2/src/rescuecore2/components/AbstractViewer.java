@@ -1,5 +1,6 @@
 package rescuecore2.components;
 
+import rescuecore2.Constants;
 import rescuecore2.connection.Connection;
 import rescuecore2.connection.ConnectionListener;
 import rescuecore2.connection.ConnectionException;
@@ -63,7 +64,7 @@ public abstract class AbstractViewer<T extends WorldModel<? extends Entity>> ext
     public void connect(Connection connection, RequestIDGenerator generator, Config config) throws ConnectionException, ComponentConnectionException, InterruptedException {
         this.config = config;
         int requestID = generator.generateRequestID();
-        VKConnect connect = new VKConnect(requestID, 1, getName());
+        VKConnect connect = new VKConnect(requestID, config.getIntValue(Constants.PROTOCOL_VERSION_KEY, Constants.DEFAULT_PROTOCOL_VERSION), getName());
         CountDownLatch latch = new CountDownLatch(1);
         ViewerConnectionListener l = new ViewerConnectionListener(requestID, latch);
         connection.addConnectionListener(l);
@@ -1,7 +1,9 @@
 package rescuecore2.components;
 
+import rescuecore2.Constants;
 import rescuecore2.config.Config;
 import rescuecore2.connection.Connection;
+import rescuecore2.connection.NIOConnection;
 import rescuecore2.connection.TCPConnection;
 import rescuecore2.connection.ConnectionException;
 
@@ -13,6 +15,7 @@ import java.io.IOException;
 public class TCPComponentLauncher extends ComponentLauncher {
     private String host;
     private int port;
+    private boolean nio;
 
     /**
        Construct a new TCPComponentLauncher.
@@ -24,11 +27,18 @@ public class TCPComponentLauncher extends ComponentLauncher {
         super(config);
         this.host = host;
         this.port = port;
+        this.nio = config.getBooleanValue(Constants.CONNECTION_NIO_KEY, Constants.DEFAULT_CONNECTION_NIO);
+        if (nio) {
+            NIOConnection.configure(config);
+        }
     }
 
     @Override
     protected Connection makeConnection() throws ConnectionException {
         try {
+            if (nio) {
+                return new NIOConnection(host, port);
+            }
             return new TCPConnection(host, port);
         }
         catch (IOException e) {
@@ -2,13 +2,17 @@ package rescuecore2.connection;
 
 import rescuecore2.log.Logger;
 import rescuecore2.messages.Message;
+import rescuecore2.messages.control.ConnectOK;
+import rescuecore2.misc.ByteBufferInputStream;
+import rescuecore2.misc.ByteBufferOutputStream;
+import rescuecore2.misc.EncodingTools;
+import rescuecore2.misc.URNDictionary;
 import rescuecore2.misc.WorkerThread;
 import rescuecore2.registry.Registry;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -16,8 +20,8 @@ import java.util.LinkedList;
 import java.util.List;
 
 import static rescuecore2.misc.EncodingTools.readMessage;
-import static rescuecore2.misc.EncodingTools.writeInt32;
 import static rescuecore2.misc.EncodingTools.writeMessage;
+import static rescuecore2.misc.EncodingTools.writeWireURN;
 
 /**
    Abstract base class for Connection implementations.
@@ -34,6 +38,7 @@ public abstract class AbstractConnection implements Connection {
     private String name;
 
     private volatile State state;
+    private volatile URNDictionary dictionary;
 
     private final Object stateLock = new Object();
 
@@ -61,8 +66,10 @@ public abstract class AbstractConnection implements Connection {
                 Registry old = Registry.getCurrentRegistry();
                 Registry.setCurrentRegistry(registry);
                 try {
-                    broadcast = new MessageBroadcastThread();
-                    broadcast.start();
+                    if (useBroadcastThread()) {
+                        broadcast = new MessageBroadcastThread();
+                        broadcast.start();
+                    }
                     startupImpl();
                     state = State.STARTED;
                 }
@@ -77,12 +84,14 @@ public abstract class AbstractConnection implements Connection {
     public final void shutdown() {
         synchronized (stateLock) {
             if (state == State.STARTED) {
-                try {
-                    broadcast.kill();
-//                    Logger.fatal("Killed mb thread:" + broadcast.getName());
-                }
-                catch (InterruptedException e) {
-                    Logger.error("AbstractConnection interrupted while shutting down broadcast thread", e);
+                if (broadcast != null) {
+                    try {
+                        broadcast.kill();
+//                        Logger.fatal("Killed mb thread:" + broadcast.getName());
+                    }
+                    catch (InterruptedException e) {
+                        Logger.error("AbstractConnection interrupted while shutting down broadcast thread", e);
+                    }
                 }
                 shutdownImpl();
                 state = State.SHUTDOWN;
@@ -137,13 +146,17 @@ public abstract class AbstractConnection implements Connection {
                 throw new ConnectionException("Connection is dead");
             }
         }
+        URNDictionary old = EncodingTools.getWireDictionary();
+        ByteBufferOutputStream out = ByteBufferOutputStream.acquire();
         try {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            EncodingTools.setWireDictionary(dictionary);
             for (Message next : messages) {
                 writeMessage(next, out);
+                // Everything after a ConnectOK with a dictionary uses the new protocol
+                switchProtocol(next);
             }
-            // Add a zero to indicate no more messages
-            writeInt32(0, out);
+            // Add an empty URN to indicate no more messages
+            writeWireURN("", out);
             // Send the bytes
             if (logBytes) {
                 ByteLogger.log(out.toByteArray());
@@ -153,6 +166,20 @@ public abstract class AbstractConnection implements Connection {
         catch (IOException e) {
             throw new ConnectionException(e);
         }
+        finally {
+            EncodingTools.setWireDictionary(old);
+            out.release();
+        }
+    }
+
+    @Override
+    public void setURNDictionary(URNDictionary newDictionary) {
+        dictionary = newDictionary;
+    }
+
+    @Override
+    public URNDictionary getURNDictionary() {
+        return dictionary;
     }
 
     @Override
@@ -205,11 +232,22 @@ public abstract class AbstractConnection implements Connection {
        @param b The received bytes.
     */
     protected void bytesReceived(byte[] b) {
-        InputStream decode = new ByteArrayInputStream(b);
+        InputStream decode = new ByteBufferInputStream(ByteBuffer.wrap(b));
         Message m = null;
+        URNDictionary old = EncodingTools.getWireDictionary();
         try {
             do {
-                m = readMessage(decode);
+                // Listeners may be notified on this thread so only decode with the dictionary
+                EncodingTools.setWireDictionary(dictionary);
+                try {
+                    m = readMessage(decode);
+                    if (m != null) {
+                        switchProtocol(m);
+                    }
+                }
+                finally {
+                    EncodingTools.setWireDictionary(old);
+                }
                 if (m != null) {
                     fireMessageReceived(m);
                 }
@@ -233,17 +271,50 @@ public abstract class AbstractConnection implements Connection {
         // CHECKSTYLE:ON:IllegalCatch
     }
 
+    private void switchProtocol(Message m) {
+        if (m instanceof ConnectOK) {
+            URNDictionary newDictionary = ((ConnectOK)m).getURNDictionary();
+            if (newDictionary != null) {
+                dictionary = newDictionary;
+                EncodingTools.setWireDictionary(newDictionary);
+            }
+        }
+    }
+
+    /**
+       Find out whether received messages are handed to listeners on a dedicated broadcast thread. Subclasses that already decode messages on their own dispatch threads can return false so that listeners are notified directly by {@link #fireMessageReceived(Message)}. The default implementation returns true.
+       @return True if this connection needs a broadcast thread.
+    */
+    protected boolean useBroadcastThread() {
+        return true;
+    }
+
     /**
        Fire a messageReceived event to all registered listeners.
        @param m The message that was received.
     */
     protected void fireMessageReceived(Message m) {
+        if (broadcast == null) {
+            notifyListeners(m);
+            return;
+        }
         synchronized (toSend) {
             toSend.add(m);
             toSend.notifyAll();
         }
     }
 
+    private void notifyListeners(Message m) {
+        ConnectionListener[] l;
+        synchronized (listeners) {
+            l = new ConnectionListener[listeners.size()];
+            listeners.toArray(l);
+        }
+        for (ConnectionListener next : l) {
+            next.messageReceived(this, m);
+        }
+    }
+
     /**
        The state of this connection: either not yet started, started or shut down.
     */
@@ -274,14 +345,7 @@ public abstract class AbstractConnection implements Connection {
             if (m == null) {
                 return true;
             }
-            ConnectionListener[] l;
-            synchronized (listeners) {
-                l = new ConnectionListener[listeners.size()];
-                listeners.toArray(l);
-            }
-            for (ConnectionListener next : l) {
-                next.messageReceived(AbstractConnection.this, m);
-            }
+            notifyListeners(m);
             return true;
         }
     }
@@ -1,6 +1,7 @@
 package rescuecore2.connection;
 
 import rescuecore2.messages.Message;
+import rescuecore2.misc.URNDictionary;
 import rescuecore2.registry.Registry;
 
 import java.util.Collection;
@@ -80,4 +81,16 @@ public interface Connection {
        @return The Registry in use.
     */
     Registry getRegistry();
+
+    /**
+       Set the URN dictionary for version 2 of the wire protocol. Messages sent or received after this call use the dictionary. Connections also switch automatically when they send or receive a {@link rescuecore2.messages.control.ConnectOK} message that carries a dictionary.
+       @param dictionary The dictionary to use, or null for version 1.
+    */
+    void setURNDictionary(URNDictionary dictionary);
+
+    /**
+       Get the URN dictionary in use on this connection.
+       @return The dictionary, or null if this connection uses version 1 of the wire protocol.
+    */
+    URNDictionary getURNDictionary();
 }
@@ -1,7 +1,9 @@
 package rescuecore2.connection;
 
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.io.InterruptedIOException;
 import java.io.IOException;
 
@@ -18,6 +20,7 @@ import rescuecore2.log.Logger;
 public class ConnectionManager {
     private Set<Reader> readers;
     private boolean shutdown;
+    private boolean nio;
 
     private final Object lock = new Object();
 
@@ -25,8 +28,17 @@ public class ConnectionManager {
        Construct a new ConnectionManager.
     */
     public ConnectionManager() {
+        this(false);
+    }
+
+    /**
+       Construct a new ConnectionManager.
+       @param nio Whether to wrap incoming connections in an {@link NIOConnection} rather than a {@link TCPConnection}.
+    */
+    public ConnectionManager(boolean nio) {
         readers = new HashSet<Reader>();
         shutdown = false;
+        this.nio = nio;
     }
 
     /**
@@ -42,9 +54,18 @@ public class ConnectionManager {
                 throw new IOException("Connection manager has been shut down");
             }
             Logger.info("Listening for connections on port " + port);
-            ServerSocket socket = new ServerSocket(port);
+            ServerSocket socket;
+            if (nio) {
+                // Sockets accepted from a channel's server socket have channels of their own
+                socket = ServerSocketChannel.open().socket();
+                socket.setReuseAddress(true);
+                socket.bind(new InetSocketAddress(port));
+            }
+            else {
+                socket = new ServerSocket(port);
+                socket.setReuseAddress(true);
+            }
             socket.setSoTimeout(1000);
-            socket.setReuseAddress(true);
             Reader r = new Reader(socket, registry, listener);
             readers.add(r);
             r.start();
@@ -96,7 +117,7 @@ public class ConnectionManager {
         protected boolean work() {
             try {
                 Socket s = socket.accept();
-                TCPConnection conn = new TCPConnection(s);
+                AbstractConnection conn = nio ? new NIOConnection(s.getChannel()) : new TCPConnection(s);
                 if (ConnectionManager.this.isAlive()) {
                     conn.setRegistry(registry);
                     callback.newConnection(conn);
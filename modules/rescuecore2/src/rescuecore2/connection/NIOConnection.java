@@ -0,0 +1,366 @@
+package rescuecore2.connection;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rescuecore2.Constants;
+import rescuecore2.config.Config;
+import rescuecore2.log.Logger;
+import rescuecore2.registry.Registry;
+
+/**
+   TCP implementation of a Connection that uses non-blocking channels. All NIOConnections share a single selector thread for reading and writing instead of using two threads each, and received messages are decoded on a fixed-size shared pool of dispatch threads. Messages from any one connection are always delivered to listeners in order and by one thread at a time. Listeners should not block for long because they hold up other connections that share the pool.
+   <p>
+   Frames with a negative size or larger than the configured maximum are rejected and the connection is closed, so a corrupt or hostile length prefix cannot make the reader allocate a huge buffer.
+   <p>
+   The bytes on the wire are identical to {@link TCPConnection} so either end can use either implementation.
+ */
+public class NIOConnection extends AbstractConnection {
+    /** Stop reading from the socket when this many frames are waiting to be dispatched. */
+    private static final int MAX_PENDING_FRAMES = 64;
+    /** Start reading again when the number of waiting frames drops to this level. */
+    private static final int RESUME_PENDING_FRAMES = 16;
+    /** Maximum number of frames to hand to the channel in one gathering write. */
+    private static final int MAX_WRITE_BATCH = 32;
+    /** Maximum number of frames to dispatch before giving other connections a turn on the pool. */
+    private static final int MAX_DISPATCH_BATCH = 16;
+
+    private static int dispatchThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static ExecutorService dispatcher;
+    private static volatile int maxFrameSize = Constants.DEFAULT_CONNECTION_MAX_FRAME_SIZE;
+
+    private final SocketChannel channel;
+    private final SelectorThread selector;
+    private SelectionKey key;
+
+    // Read state. Only touched by the selector thread.
+    private final ByteBuffer header;
+    private byte[] frame;
+    private int frameOffset;
+
+    // Frames waiting to be dispatched
+    private final Queue<byte[]> inbox;
+    private final AtomicInteger pending;
+    private final AtomicBoolean dispatching;
+    private final Runnable dispatchTask;
+    private volatile boolean failed;
+
+    // Write state. The batch is only touched by the selector thread.
+    private final Queue<ByteBuffer[]> outbox;
+    private final ByteBuffer[] batch;
+    private int batchStart;
+    private int batchEnd;
+
+    private volatile boolean closing;
+    private volatile boolean closed;
+
+    /**
+       Make a connection to the local host on a given port.
+       @param port The port to connect to.
+       @throws IOException If the host cannot be contacted.
+    */
+    public NIOConnection(int port) throws IOException {
+        this(null, port);
+    }
+
+    /**
+       Make a connection to a specific host on a given port.
+       @param address The address of the host.
+       @param port The port to connect to.
+       @throws IOException If the host cannot be contacted.
+    */
+    public NIOConnection(String address, int port) throws IOException {
+        this(SocketChannel.open(new InetSocketAddress(InetAddress.getByName(address), port)));
+    }
+
+    /**
+       Create an NIOConnection from an existing connected channel.
+       @param channel The channel to attach to.
+       @throws IOException If there is a problem configuring the channel.
+    */
+    public NIOConnection(SocketChannel channel) throws IOException {
+        super();
+        this.channel = channel;
+        this.selector = SelectorThread.getDefault();
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        header = ByteBuffer.allocate(4);
+        inbox = new ConcurrentLinkedQueue<byte[]>();
+        pending = new AtomicInteger();
+        dispatching = new AtomicBoolean();
+        dispatchTask = new Runnable() {
+                @Override
+                public void run() {
+                    dispatch();
+                }
+            };
+        outbox = new ConcurrentLinkedQueue<ByteBuffer[]>();
+        batch = new ByteBuffer[MAX_WRITE_BATCH * 2];
+        Socket socket = channel.socket();
+        setName("NIOConnection: local port " + socket.getLocalPort() + ", endpoint = " + socket.getInetAddress() + ":" + socket.getPort());
+    }
+
+    /**
+       Read the number of dispatch threads and the maximum frame size from a config. The number of threads only takes effect if no NIOConnection has received a message yet.
+       @param config The config to read.
+    */
+    public static synchronized void configure(Config config) {
+        dispatchThreads = Math.max(1, config.getIntValue(Constants.CONNECTION_NIO_THREADS_KEY, dispatchThreads));
+        maxFrameSize = config.getIntValue(Constants.CONNECTION_MAX_FRAME_SIZE_KEY, Constants.DEFAULT_CONNECTION_MAX_FRAME_SIZE);
+    }
+
+    private static synchronized ExecutorService getDispatcher() {
+        if (dispatcher == null) {
+            dispatcher = Executors.newFixedThreadPool(dispatchThreads, new DispatchThreadFactory());
+        }
+        return dispatcher;
+    }
+
+    @Override
+    protected boolean useBroadcastThread() {
+        // Messages are already delivered on a dispatch thread
+        return false;
+    }
+
+    @Override
+    protected void startupImpl() {
+        Logger.debug("Starting " + this + ". Registry: " + Registry.getCurrentRegistry());
+        try {
+            channel.configureBlocking(false);
+        }
+        catch (IOException e) {
+            Logger.error("Error configuring " + this, e);
+            close();
+            return;
+        }
+        selector.register(this);
+    }
+
+    @Override
+    public boolean isAlive() {
+        return super.isAlive() && !closed;
+    }
+
+    @Override
+    protected void shutdownImpl() {
+        Logger.info("Shutting down " + this);
+        // The selector thread closes the channel once everything queued so far has been written
+        closing = true;
+        selector.update(this);
+    }
+
+    @Override
+    protected void sendBytes(byte[] b) throws IOException {
+        if (closed) {
+            throw new IOException(this + " is closed");
+        }
+        ByteBuffer size = ByteBuffer.allocate(4);
+        size.putInt(b.length);
+        size.flip();
+        outbox.add(new ByteBuffer[] {size, ByteBuffer.wrap(b)});
+        selector.update(this);
+    }
+
+    /**
+       Get the channel this connection uses.
+       @return The channel.
+    */
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+       Notification that the channel has been registered with the selector.
+       @param newKey The selection key for the channel.
+    */
+    void registered(SelectionKey newKey) {
+        key = newKey;
+        updateInterest();
+    }
+
+    /**
+       Recompute which operations the selector should wait for. Called on the selector thread.
+    */
+    void updateInterest() {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        boolean writing = batchStart < batchEnd || !outbox.isEmpty();
+        if (closing && !writing) {
+            close();
+            return;
+        }
+        int ops = 0;
+        if (pending.get() < MAX_PENDING_FRAMES) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (writing) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+    }
+
+    /**
+       Read whatever is available from the channel and queue any complete frames for dispatch. Called on the selector thread.
+       @param buffer A scratch buffer to read into.
+       @throws IOException If the channel cannot be read.
+    */
+    void handleRead(ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int count = channel.read(buffer);
+        if (count < 0) {
+            close();
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            if (frame == null) {
+                while (header.hasRemaining() && buffer.hasRemaining()) {
+                    header.put(buffer.get());
+                }
+                if (header.hasRemaining()) {
+                    break;
+                }
+                header.flip();
+                int size = header.getInt();
+                header.clear();
+                // Empty frames are ignored, just like StreamConnection does
+                if (size == 0) {
+                    continue;
+                }
+                if (size < 0) {
+                    throw new IOException("Frame has a negative size: " + size);
+                }
+                if (size > maxFrameSize) {
+                    throw new IOException("Frame of " + size + " bytes is larger than the limit of " + maxFrameSize + " bytes");
+                }
+                frame = new byte[size];
+                frameOffset = 0;
+            }
+            int length = Math.min(buffer.remaining(), frame.length - frameOffset);
+            buffer.get(frame, frameOffset, length);
+            frameOffset += length;
+            if (frameOffset == frame.length) {
+                queue(frame);
+                frame = null;
+            }
+        }
+    }
+
+    /**
+       Write as much queued data as the channel will accept. Called on the selector thread.
+       @throws IOException If the channel cannot be written.
+    */
+    void handleWrite() throws IOException {
+        while (true) {
+            if (batchStart == batchEnd) {
+                batchStart = 0;
+                batchEnd = 0;
+                ByteBuffer[] next;
+                while (batchEnd < batch.length && (next = outbox.poll()) != null) {
+                    batch[batchEnd++] = next[0];
+                    batch[batchEnd++] = next[1];
+                }
+                if (batchEnd == 0) {
+                    break;
+                }
+            }
+            channel.write(batch, batchStart, batchEnd - batchStart);
+            while (batchStart < batchEnd && !batch[batchStart].hasRemaining()) {
+                batch[batchStart++] = null;
+            }
+            if (batchStart < batchEnd) {
+                // The socket buffer is full. Wait until the selector says we can write again.
+                return;
+            }
+        }
+        updateInterest();
+    }
+
+    /**
+       Close the channel. Frames that have already been read will still be dispatched.
+    */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            Logger.error("Error closing " + this, e);
+        }
+        Logger.debug(this + " closed");
+    }
+
+    private void queue(byte[] b) {
+        inbox.add(b);
+        if (pending.incrementAndGet() >= MAX_PENDING_FRAMES) {
+            // Listeners are not keeping up. Stop reading and let TCP flow control slow the sender down.
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+        if (dispatching.compareAndSet(false, true)) {
+            getDispatcher().execute(dispatchTask);
+        }
+    }
+
+    private void dispatch() {
+        Registry.setCurrentRegistry(getRegistry());
+        do {
+            byte[] next;
+            int count = 0;
+            while ((next = inbox.poll()) != null) {
+                if (!failed) {
+                    try {
+                        bytesReceived(next);
+                    }
+                    // CHECKSTYLE:OFF:IllegalCatch
+                    catch (RuntimeException e) {
+                        // Already logged by bytesReceived. A StreamConnection would lose its read thread here so treat this connection as dead too.
+                        failed = true;
+                        closing = true;
+                        selector.update(this);
+                    }
+                    // CHECKSTYLE:ON:IllegalCatch
+                }
+                if (pending.decrementAndGet() == RESUME_PENDING_FRAMES) {
+                    selector.update(this);
+                }
+                if (++count == MAX_DISPATCH_BATCH && !inbox.isEmpty()) {
+                    // Go to the back of the queue so that a busy connection cannot starve the others
+                    getDispatcher().execute(dispatchTask);
+                    return;
+                }
+            }
+            dispatching.set(false);
+            // Another frame might have been queued after the inbox was found empty but before the flag was cleared
+        } while (!inbox.isEmpty() && dispatching.compareAndSet(false, true));
+    }
+
+    private static class DispatchThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread result = new Thread(r, "NIOConnection dispatcher " + count.incrementAndGet());
+            result.setDaemon(true);
+            return result;
+        }
+    }
+}
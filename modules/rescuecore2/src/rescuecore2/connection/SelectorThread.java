@@ -0,0 +1,123 @@
+package rescuecore2.connection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import rescuecore2.log.Logger;
+import rescuecore2.misc.WorkerThread;
+
+/**
+   Worker thread that owns a Selector and services all {@link NIOConnection}s registered with it. Reads and writes happen on this thread; decoded messages are handed to listeners elsewhere so that a slow listener cannot stall other connections.
+ */
+final class SelectorThread extends WorkerThread {
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private static SelectorThread defaultInstance;
+
+    private final Selector selector;
+    private final Queue<NIOConnection> registrations;
+    private final Queue<NIOConnection> updates;
+    private final ByteBuffer readBuffer;
+
+    private SelectorThread() throws IOException {
+        super();
+        selector = Selector.open();
+        registrations = new ConcurrentLinkedQueue<NIOConnection>();
+        updates = new ConcurrentLinkedQueue<NIOConnection>();
+        readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        setName("NIO selector");
+        setDaemon(true);
+    }
+
+    /**
+       Get the shared SelectorThread, starting it if necessary.
+       @return The shared SelectorThread.
+       @throws IOException If the selector cannot be opened.
+    */
+    static synchronized SelectorThread getDefault() throws IOException {
+        if (defaultInstance == null || !defaultInstance.isRunning()) {
+            defaultInstance = new SelectorThread();
+            defaultInstance.start();
+        }
+        return defaultInstance;
+    }
+
+    /**
+       Register a connection with the selector.
+       @param c The connection to register.
+    */
+    void register(NIOConnection c) {
+        registrations.add(c);
+        selector.wakeup();
+    }
+
+    /**
+       Ask the selector to recompute the interest set of a connection, for example because it has bytes to write.
+       @param c The connection to update.
+    */
+    void update(NIOConnection c) {
+        updates.add(c);
+        selector.wakeup();
+    }
+
+    @Override
+    protected boolean work() {
+        try {
+            selector.select();
+        }
+        catch (IOException e) {
+            Logger.error("Error selecting", e);
+            return false;
+        }
+        if (Thread.interrupted()) {
+            return false;
+        }
+        NIOConnection next;
+        while ((next = registrations.poll()) != null) {
+            try {
+                next.registered(next.getChannel().register(selector, 0, next));
+            }
+            catch (ClosedChannelException e) {
+                next.close();
+            }
+        }
+        while ((next = updates.poll()) != null) {
+            next.updateInterest();
+        }
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            NIOConnection c = (NIOConnection)key.attachment();
+            try {
+                if (key.isValid() && key.isReadable()) {
+                    c.handleRead(readBuffer);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    c.handleWrite();
+                }
+            }
+            catch (IOException e) {
+                Logger.debug("Error on " + c, e);
+                c.close();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void cleanup() {
+        try {
+            selector.close();
+        }
+        catch (IOException e) {
+            Logger.error("Error closing selector", e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package rescuecore2.log;
+
+import rescuecore2.misc.WorkerThread;
+
+/**
+   A LogWriter that hands records to a background thread so that callers do not wait for encoding or disk I/O. Records are queued in a bounded ring buffer and written to another LogWriter in batches. If the buffer is full then {@link #writeRecord(LogRecord)} blocks until there is space, so a slow disk slows the caller down rather than using unbounded memory.
+   <p>
+   Records are encoded on the background thread, so a record and anything it refers to must not be modified after it has been passed to this writer. {@link #close()} writes every queued record before closing the underlying writer.
+ */
+public class AsyncLogWriter implements LogWriter {
+    /** The default number of records that can be queued. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final LogWriter delegate;
+    private final LogRecord[] buffer;
+    private final Object lock;
+    private final WriterThread writer;
+    // Index of the oldest queued record
+    private int head;
+    // Number of queued records
+    private int size;
+    // Number of records taken by the writer thread that have not been written yet
+    private int writing;
+    private boolean closed;
+    private LogException error;
+
+    /**
+       Create an AsyncLogWriter with the default capacity.
+       @param delegate The LogWriter that records are written to.
+    */
+    public AsyncLogWriter(LogWriter delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    /**
+       Create an AsyncLogWriter.
+       @param delegate The LogWriter that records are written to.
+       @param capacity The maximum number of records that can be queued.
+    */
+    public AsyncLogWriter(LogWriter delegate, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.delegate = delegate;
+        buffer = new LogRecord[capacity];
+        lock = new Object();
+        head = 0;
+        size = 0;
+        writing = 0;
+        closed = false;
+        writer = new WriterThread();
+        writer.start();
+    }
+
+    @Override
+    public void writeRecord(LogRecord entry) throws LogException {
+        synchronized (lock) {
+            while (size == buffer.length && error == null && !closed) {
+                waitForWriter();
+            }
+            checkState();
+            buffer[(head + size) % buffer.length] = entry;
+            ++size;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+       Wait until every record written so far has been passed to the underlying writer.
+       @throws LogException If a record could not be written.
+    */
+    public void flush() throws LogException {
+        synchronized (lock) {
+            while ((size > 0 || writing > 0) && error == null) {
+                waitForWriter();
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        }
+        catch (InterruptedException e) {
+            Logger.error("Interrupted while waiting for log writer to finish", e);
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+
+    private void waitForWriter() throws LogException {
+        try {
+            lock.wait();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LogException("Interrupted while waiting for log writer", e);
+        }
+    }
+
+    private void checkState() throws LogException {
+        if (error != null) {
+            throw error;
+        }
+        if (closed) {
+            throw new LogException("Log writer has been closed");
+        }
+    }
+
+    private class WriterThread extends WorkerThread {
+        private final LogRecord[] batch;
+
+        WriterThread() {
+            batch = new LogRecord[buffer.length];
+            setName("Log writer");
+            setDaemon(true);
+        }
+
+        @Override
+        protected boolean work() {
+            int count;
+            synchronized (lock) {
+                while (size == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException e) {
+                        // Only close() stops this thread so that queued records are never lost
+                        continue;
+                    }
+                }
+                if (size == 0) {
+                    return false;
+                }
+                // Take everything that is queued in one go
+                count = size;
+                for (int i = 0; i < count; ++i) {
+                    int index = (head + i) % buffer.length;
+                    batch[i] = buffer[index];
+                    buffer[index] = null;
+                }
+                head = (head + count) % buffer.length;
+                size = 0;
+                writing = count;
+                lock.notifyAll();
+            }
+            LogException failure = null;
+            for (int i = 0; i < count; ++i) {
+                if (failure == null) {
+                    try {
+                        delegate.writeRecord(batch[i]);
+                    }
+                    catch (LogException e) {
+                        Logger.error("Error writing log record", e);
+                        failure = e;
+                    }
+                }
+                batch[i] = null;
+            }
+            synchronized (lock) {
+                writing = 0;
+                if (failure != null && error == null) {
+                    error = failure;
+                }
+                lock.notifyAll();
+            }
+            return true;
+        }
+    }
+}
@@ -1,21 +1,22 @@
 package rescuecore2.log;
 
-import static rescuecore2.misc.EncodingTools.readBytes;
 import static rescuecore2.misc.EncodingTools.readInt32;
-import static rescuecore2.misc.EncodingTools.reallySkip;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.EOFException;
-import java.io.RandomAccessFile;
+import java.io.InputStream;
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
-import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 import rescuecore2.worldmodel.Entity;
 import rescuecore2.worldmodel.EntityID;
@@ -26,18 +27,40 @@ import rescuecore2.config.Config;
 import rescuecore2.registry.Registry;
 
 /**
-   A log reader that reads from a file.
+   A log reader that reads from a file. Both legacy logs written by {@link FileLogWriter} and compressed logs written by {@link IndexedLogWriter} can be read. Legacy logs, and indexed logs that were not closed properly, are scanned once when they are opened; indexed logs with an index are opened by reading the index alone.
+   <p>
+   The file is memory-mapped and records are decoded straight from the mapping. Key frames are placed at regular intervals the first time a world model past the last key frame is requested, by replaying updates from the latest world model already cached, so opening a log reads only the index and the header records and only the blocks that are needed are decompressed. Key frames are never evicted, so once one has been placed, getting the world model at any earlier time applies fewer updates than the key frame interval, however the log is read. The key frames and a least-recently-used cache of other world models share a fixed memory budget; if the key frames would not fit they are placed further apart.
  */
 public class FileLogReader extends AbstractLogReader {
-    private static final int KEY_FRAME_BUFFER_MAX_SIZE = 10;
+    /** The default number of timesteps between key frames. */
+    public static final int DEFAULT_KEY_FRAME_INTERVAL = 10;
+    /** The default memory budget for cached world models in bytes. */
+    public static final long DEFAULT_CACHE_SIZE = 256L * 1024 * 1024;
 
-    private RandomAccessFile file;
+    // Room kept for world models that are not key frames so that stepping through the log does not go back to a key frame every time
+    private static final int MIN_RECENT_FRAMES = 2;
+
+    private MappedLogFile file;
     private int maxTime;
-    private NavigableMap<Integer, WorldModel<? extends Entity>> keyFrames;
+    private int keyFrameInterval;
+    private long cacheSize;
+    private KeyFrameCache keyFrames;
+    // The time of the latest key frame placed so far
+    private int lastKeyFrame;
+    // Set when a timestep without updates stops key frames being placed
+    private boolean keyFramesStopped;
     private Map<Integer, Map<EntityID, Long>> perceptionIndices;
     private Map<Integer, Long> updatesIndices;
     private Map<Integer, Long> commandsIndices;
     private Config config;
+    private long initialConditionsPosition;
+    private long configPosition;
+
+    // Indexed logs only
+    private boolean indexed;
+    private long[] blockOffsets;
+    private int cachedBlock;
+    private byte[] cachedBlockData;
 
     /**
        Construct a new FileLogReader.
@@ -58,10 +81,36 @@ public class FileLogReader extends AbstractLogReader {
        @throws LogException If there is a problem reading the log.
     */
     public FileLogReader(File file, Registry registry) throws IOException, LogException {
+        this(file, registry, DEFAULT_KEY_FRAME_INTERVAL, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+       Construct a new FileLogReader.
+       @param file The file object to read.
+       @param registry The registry to use for reading log entries.
+       @param keyFrameInterval The number of timesteps between key frames. Key frames are placed further apart if they would not fit in the memory budget.
+       @param cacheSize The memory budget for cached world models in bytes. The size of each world model is estimated from the decoded initial conditions.
+       @throws IOException If the file cannot be read.
+       @throws LogException If there is a problem reading the log.
+    */
+    public FileLogReader(File file, Registry registry, int keyFrameInterval, long cacheSize) throws IOException, LogException {
         super(registry);
+        if (keyFrameInterval < 1) {
+            throw new IllegalArgumentException("Key frame interval must be positive: " + keyFrameInterval);
+        }
         Logger.info("Reading file log: " + file.getAbsolutePath());
-        this.file = new RandomAccessFile(file, "r");
-        index();
+        this.file = new MappedLogFile(file);
+        this.keyFrameInterval = keyFrameInterval;
+        this.cacheSize = cacheSize;
+        Registry.setCurrentRegistry(registry);
+        createIndices();
+        if (isIndexed()) {
+            openIndexed();
+        }
+        else {
+            index();
+        }
+        readHeaderRecords();
     }
 
     @Override
@@ -77,30 +126,48 @@ public class FileLogReader extends AbstractLogReader {
     @Override
     public WorldModel<? extends Entity> getWorldModel(int time) throws LogException {
         Logger.debug("Getting world model at time " + time);
-        WorldModel<? extends Entity> result = new DefaultWorldModel<Entity>(Entity.class);
-        // Look for a key frame
-        Map.Entry<Integer, WorldModel<? extends Entity>> entry = keyFrames.floorEntry(time);
+        if (time < 0 || time > maxTime) {
+            throw new LogException("Invalid timestep: " + time);
+        }
+        WorldModel<? extends Entity> cached = keyFrames.get(time);
+        if (cached != null) {
+            Logger.trace("Found cached frame " + time);
+            return cached;
+        }
+        placeKeyFrames(time);
+        cached = keyFrames.get(time);
+        if (cached != null) {
+            return cached;
+        }
+        // Start from the nearest earlier frame
+        Map.Entry<Integer, WorldModel<? extends Entity>> entry = keyFrames.floor(time);
         int startTime = entry.getKey();
         Logger.trace("Found key frame " + startTime);
-        // Copy the initial conditions
-        Logger.trace("Cloning initial conditions");
-        for (Entity next : entry.getValue()) {
-            result.addEntity(next.copy());
-        }
+        WorldModel<? extends Entity> result = copy(entry.getValue());
         // Go through updates and apply them all
         for (int i = startTime + 1; i <= time; ++i) {
-            ChangeSet updates = getUpdates(i).getChangeSet();
+            UpdatesRecord record = getUpdates(i);
+            if (record == null) {
+                throw new LogException("No updates for timestep " + i);
+            }
+            ChangeSet updates = record.getChangeSet();
             Logger.trace("Merging " + updates.getChangedEntities().size() + " updates for timestep " + i);
             result.merge(updates);
         }
         Logger.trace("Done");
-        // Remove stale key frames
-        removeStaleKeyFrames();
-        // Store this as a key frame - it's quite likely that the next timestep will be viewed soon.
+        // Store this frame too - it's quite likely that the next timestep will be viewed soon.
         keyFrames.put(time, result);
         return result;
     }
 
+    /**
+       Get the number of key frames placed so far, including the initial conditions.
+       @return The number of key frames.
+    */
+    int getKeyFrameCount() {
+        return keyFrames.getKeyFrameCount();
+    }
+
     @Override
     public Set<EntityID> getEntitiesWithUpdates(int time) throws LogException {
         Map<EntityID, Long> timestepMap = perceptionIndices.get(time);
@@ -121,10 +188,7 @@ public class FileLogReader extends AbstractLogReader {
             return null;
         }
         try {
-            file.seek(l);
-            int size = readInt32(file);
-            byte[] bytes = readBytes(size, file);
-            return new PerceptionRecord(new ByteArrayInputStream(bytes));
+            return new PerceptionRecord(openRecord(l));
         }
         catch (IOException e) {
             throw new LogException(e);
@@ -138,10 +202,7 @@ public class FileLogReader extends AbstractLogReader {
             return null;
         }
         try {
-            file.seek(index);
-            int size = readInt32(file);
-            byte[] bytes = readBytes(size, file);
-            return new CommandsRecord(new ByteArrayInputStream(bytes));
+            return new CommandsRecord(openRecord(index));
         }
         catch (IOException e) {
             throw new LogException(e);
@@ -155,37 +216,122 @@ public class FileLogReader extends AbstractLogReader {
             return null;
         }
         try {
-            file.seek(index);
-            int size = readInt32(file);
-            byte[] bytes = readBytes(size, file);
-            return new UpdatesRecord(new ByteArrayInputStream(bytes));
+            return new UpdatesRecord(openRecord(index));
+        }
+        catch (IOException e) {
+            throw new LogException(e);
+        }
+    }
+
+    /**
+       Get a stream over the content of a record.
+       @param position The position of the record's size field: a file offset for legacy logs, or a block and offset for indexed logs.
+    */
+    private InputStream openRecord(long position) throws IOException, LogException {
+        if (!indexed) {
+            int size = file.readInt(position);
+            return file.open(position + 4, size);
+        }
+        byte[] block = getBlock(IndexedLogFormat.block(position));
+        int offset = IndexedLogFormat.offset(position);
+        int size = readInt32(block, offset);
+        return new ByteArrayInputStream(block, offset + 4, size);
+    }
+
+    private WorldModel<? extends Entity> copy(WorldModel<? extends Entity> world) {
+        WorldModel<? extends Entity> result = new DefaultWorldModel<Entity>(Entity.class);
+        for (Entity next : world) {
+            result.addEntity(next.copy());
+        }
+        return result;
+    }
+
+    private void createIndices() {
+        perceptionIndices = new HashMap<Integer, Map<EntityID, Long>>();
+        updatesIndices = new HashMap<Integer, Long>();
+        commandsIndices = new HashMap<Integer, Long>();
+        initialConditionsPosition = -1;
+        configPosition = -1;
+    }
+
+    private void readHeaderRecords() throws LogException {
+        if (initialConditionsPosition < 0) {
+            throw new LogException("Log does not contain initial conditions");
+        }
+        try {
+            WorldModel<? extends Entity> initial = new InitialConditionsRecord(openRecord(initialConditionsPosition)).getWorldModel();
+            // Use the size of the initial conditions as an estimate of the size of every world model
+            long frameSize = Math.max(1, KeyFrameCache.estimateSize(initial));
+            long frames = Math.max(1, cacheSize / frameSize);
+            long keyFrameCount = Math.max(1, frames - MIN_RECENT_FRAMES);
+            if (maxTime / keyFrameInterval + 1 > keyFrameCount) {
+                // Spread the key frames we can afford evenly over the log
+                keyFrameInterval = keyFrameCount > 1 ? (int)((maxTime + keyFrameCount - 2) / (keyFrameCount - 1)) : maxTime + 1;
+            }
+            keyFrames = new KeyFrameCache((int)Math.min(Integer.MAX_VALUE, frames - Math.min(keyFrameCount, maxTime / keyFrameInterval + 1)));
+            keyFrames.pin(0, initial);
+            lastKeyFrame = 0;
+            keyFramesStopped = false;
+            Logger.debug("World models use about " + frameSize + " bytes, placing key frames every " + keyFrameInterval + " timesteps and caching up to " + keyFrames.getMaxRecent() + " other world models");
+            if (configPosition >= 0) {
+                config = new ConfigRecord(openRecord(configPosition)).getConfig();
+            }
         }
         catch (IOException e) {
             throw new LogException(e);
         }
     }
 
+    /**
+       Place the key frames up to a timestep that have not been placed yet. Updates are replayed from the latest cached world model before the first missing key frame. Placing stops for good at the first timestep without updates, so a truncated log can still be read up to that point.
+       @param time The timestep that is about to be read.
+    */
+    private void placeKeyFrames(int time) throws LogException {
+        int last = time - time % keyFrameInterval;
+        if (keyFramesStopped || last <= lastKeyFrame) {
+            return;
+        }
+        Map.Entry<Integer, WorldModel<? extends Entity>> entry = keyFrames.floor(lastKeyFrame + keyFrameInterval);
+        int current = entry.getKey();
+        WorldModel<? extends Entity> world = copy(entry.getValue());
+        for (int i = lastKeyFrame + keyFrameInterval; i <= last; i += keyFrameInterval) {
+            for (int j = current + 1; j <= i; ++j) {
+                UpdatesRecord record = getUpdates(j);
+                if (record == null) {
+                    Logger.warn("No updates for timestep " + j + ", not placing any more key frames");
+                    keyFramesStopped = true;
+                    return;
+                }
+                world.merge(record.getChangeSet());
+            }
+            current = i;
+            // The last one is not changed again so it does not need copying
+            keyFrames.pin(i, i == last ? world : copy(world));
+            lastKeyFrame = i;
+        }
+        Logger.debug("Placed " + keyFrames.getKeyFrameCount() + " key frames up to timestep " + lastKeyFrame);
+    }
+
     private void index() throws LogException {
         try {
-            Registry.setCurrentRegistry(registry);
-            keyFrames = new TreeMap<Integer, WorldModel<? extends Entity>>();
-            perceptionIndices = new HashMap<Integer, Map<EntityID, Long>>();
-            updatesIndices = new HashMap<Integer, Long>();
-            commandsIndices = new HashMap<Integer, Long>();
-            file.seek(0);
-            int id;
+            long position = 0;
             RecordType type;
             boolean startFound = false;
             do {
-                id = readInt32(file);
-                type = RecordType.fromID(id);
+                type = RecordType.fromID(file.readInt(position));
                 if (!startFound) {
                     if (!RecordType.START_OF_LOG.equals(type)) {
                         throw new LogException("Log does not start with correct magic number");
                     }
                     startFound = true;
                 }
-                indexRecord(type);
+                position += 4;
+                int size = file.readInt(position);
+                if (size < 0) {
+                    throw new LogException("Invalid " + type + " record size: " + size);
+                }
+                indexRecord(type, position, size);
+                position += 4 + size;
             } while (!RecordType.END_OF_LOG.equals(type));
         }
         catch (EOFException e) {
@@ -196,116 +342,204 @@ public class FileLogReader extends AbstractLogReader {
         }
     }
 
-    private void indexRecord(RecordType type) throws IOException, LogException {
+    private void indexRecord(RecordType type, long position, int size) throws IOException, LogException {
+        // Make sure the whole record is present before indexing it
+        InputStream in = file.open(position + 4, size);
         switch (type) {
         case START_OF_LOG:
-            indexStart();
+        case END_OF_LOG:
             break;
         case INITIAL_CONDITIONS:
-            indexInitialConditions();
+        case CONFIG:
+            addIndex(type, IndexedLogFormat.NO_TIME, null, position);
             break;
         case PERCEPTION:
-            indexPerception();
+            PerceptionRecord perception = new PerceptionRecord(in);
+            addIndex(type, perception.getTime(), perception.getEntityID(), position);
             break;
         case COMMANDS:
-            indexCommands();
+            addIndex(type, new CommandsRecord(in).getTime(), null, position);
             break;
         case UPDATES:
-            indexUpdates();
-            break;
-        case CONFIG:
-            indexConfig();
-            break;
-        case END_OF_LOG:
-            indexEnd();
+            addIndex(type, new UpdatesRecord(in).getTime(), null, position);
             break;
         default:
             throw new LogException("Unexpected record type: " + type);
         }
     }
 
-    private void indexStart() throws IOException {
-        int size = readInt32(file);
-        reallySkip(file, size);
+    private boolean isIndexed() throws IOException {
+        return file.length() >= IndexedLogFormat.HEADER_SIZE && file.readInt(0) == IndexedLogFormat.MAGIC;
     }
 
-    private void indexEnd() throws IOException {
-        int size = readInt32(file);
-        reallySkip(file, size);
-    }
-
-    private void indexInitialConditions() throws IOException, LogException {
-        int size = readInt32(file);
-        if (size < 0) {
-            throw new LogException("Invalid initial conditions size: " + size);
+    private void openIndexed() throws IOException, LogException {
+        indexed = true;
+        cachedBlock = -1;
+        int version = file.readInt(4);
+        if (version != IndexedLogFormat.VERSION) {
+            throw new LogException("Unsupported log version: " + version);
+        }
+        if (!readIndex()) {
+            Logger.warn("Log has no index, scanning all blocks");
+            scanBlocks();
         }
-        byte[] bytes = readBytes(size, file);
-        InitialConditionsRecord record = new InitialConditionsRecord(new ByteArrayInputStream(bytes));
-        keyFrames.put(0, record.getWorldModel());
     }
 
-    private void indexPerception() throws IOException, LogException {
-        long position = file.getFilePointer();
-        int size = readInt32(file);
-        byte[] bytes = readBytes(size, file);
-        PerceptionRecord record = new PerceptionRecord(new ByteArrayInputStream(bytes));
-        int time = record.getTime();
-        EntityID agentID = record.getEntityID();
-        Map<EntityID, Long> timestepMap = perceptionIndices.get(time);
-        if (timestepMap == null) {
-            timestepMap = new HashMap<EntityID, Long>();
-            perceptionIndices.put(time, timestepMap);
+    /**
+       Read the index at the end of an indexed log.
+       @return False if the log does not have a valid index.
+    */
+    private boolean readIndex() throws IOException, LogException {
+        long length = file.length();
+        if (length < IndexedLogFormat.HEADER_SIZE + IndexedLogFormat.TRAILER_SIZE) {
+            return false;
+        }
+        long indexPosition = file.readLong(length - IndexedLogFormat.TRAILER_SIZE);
+        if (file.readInt(length - 4) != IndexedLogFormat.TRAILER_MAGIC || indexPosition < IndexedLogFormat.HEADER_SIZE || indexPosition > length - IndexedLogFormat.TRAILER_SIZE) {
+            return false;
         }
-        timestepMap.put(agentID, position);
+        DataInputStream in = new DataInputStream(file.open(indexPosition, (int)(length - IndexedLogFormat.TRAILER_SIZE - indexPosition)));
+        blockOffsets = new long[in.readInt()];
+        for (int i = 0; i < blockOffsets.length; ++i) {
+            blockOffsets[i] = in.readLong();
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; ++i) {
+            RecordType type = RecordType.fromID(in.readInt());
+            int time = in.readInt();
+            int entity = in.readInt();
+            int block = in.readInt();
+            int offset = in.readInt();
+            addIndex(type, time, new EntityID(entity), IndexedLogFormat.position(block, offset));
+        }
+        Logger.debug("Read index of " + count + " records in " + blockOffsets.length + " blocks");
+        return true;
     }
 
-    private void indexCommands() throws IOException, LogException {
-        long position = file.getFilePointer();
-        int size = readInt32(file);
-        byte[] bytes = readBytes(size, file);
-        CommandsRecord record = new CommandsRecord(new ByteArrayInputStream(bytes));
-        int time = record.getTime();
-        commandsIndices.put(time, position);
-        maxTime = Math.max(time, maxTime);
+    /**
+       Index an indexed log that does not have an index by decompressing every block. Scanning stops at the first block that is incomplete or corrupt.
+    */
+    private void scanBlocks() throws IOException, LogException {
+        List<Long> offsets = new ArrayList<Long>();
+        long length = file.length();
+        long position = IndexedLogFormat.HEADER_SIZE;
+        boolean done = false;
+        while (!done && position + IndexedLogFormat.BLOCK_HEADER_SIZE <= length) {
+            int rawSize = file.readInt(position);
+            int compressedSize = file.readInt(position + 4);
+            if (rawSize < 0 || compressedSize < 0 || position + IndexedLogFormat.BLOCK_HEADER_SIZE + compressedSize > length) {
+                break;
+            }
+            byte[] data;
+            try {
+                data = readBlock(position);
+            }
+            catch (LogException e) {
+                Logger.warn("Ignoring corrupt block at offset " + position, e);
+                break;
+            }
+            int block = offsets.size();
+            offsets.add(position);
+            int offset = 0;
+            while (offset + 8 <= data.length) {
+                RecordType type = RecordType.fromID(readInt32(data, offset));
+                int size = readInt32(data, offset + 4);
+                InputStream in = new ByteArrayInputStream(data, offset + 8, size);
+                long recordPosition = IndexedLogFormat.position(block, offset + 4);
+                switch (type) {
+                case PERCEPTION:
+                    PerceptionRecord perception = new PerceptionRecord(in);
+                    addIndex(type, perception.getTime(), perception.getEntityID(), recordPosition);
+                    break;
+                case COMMANDS:
+                    addIndex(type, new CommandsRecord(in).getTime(), null, recordPosition);
+                    break;
+                case UPDATES:
+                    addIndex(type, new UpdatesRecord(in).getTime(), null, recordPosition);
+                    break;
+                case END_OF_LOG:
+                    done = true;
+                    break;
+                default:
+                    addIndex(type, IndexedLogFormat.NO_TIME, null, recordPosition);
+                    break;
+                }
+                offset += 8 + size;
+            }
+            position += IndexedLogFormat.BLOCK_HEADER_SIZE + compressedSize;
+        }
+        blockOffsets = new long[offsets.size()];
+        for (int i = 0; i < blockOffsets.length; ++i) {
+            blockOffsets[i] = offsets.get(i);
+        }
     }
 
-    private void indexUpdates() throws IOException, LogException {
-        long position = file.getFilePointer();
-        int size = readInt32(file);
-        byte[] bytes = readBytes(size, file);
-        UpdatesRecord record = new UpdatesRecord(new ByteArrayInputStream(bytes));
-        int time = record.getTime();
-        updatesIndices.put(time, position);
-        maxTime = Math.max(time, maxTime);
+    private void addIndex(RecordType type, int time, EntityID entity, long position) {
+        switch (type) {
+        case INITIAL_CONDITIONS:
+            initialConditionsPosition = position;
+            break;
+        case CONFIG:
+            configPosition = position;
+            break;
+        case PERCEPTION:
+            Map<EntityID, Long> timestepMap = perceptionIndices.get(time);
+            if (timestepMap == null) {
+                timestepMap = new HashMap<EntityID, Long>();
+                perceptionIndices.put(time, timestepMap);
+            }
+            timestepMap.put(entity, position);
+            break;
+        case COMMANDS:
+            commandsIndices.put(time, position);
+            maxTime = Math.max(time, maxTime);
+            break;
+        case UPDATES:
+            updatesIndices.put(time, position);
+            maxTime = Math.max(time, maxTime);
+            break;
+        default:
+            break;
+        }
     }
 
-    private void indexConfig() throws IOException, LogException {
-        int size = readInt32(file);
-        byte[] bytes = readBytes(size, file);
-        ConfigRecord record = new ConfigRecord(new ByteArrayInputStream(bytes));
-        config = record.getConfig();
+    private byte[] getBlock(int block) throws IOException, LogException {
+        if (block != cachedBlock) {
+            if (block < 0 || block >= blockOffsets.length) {
+                throw new LogException("Invalid block number: " + block);
+            }
+            cachedBlockData = readBlock(blockOffsets[block]);
+            cachedBlock = block;
+        }
+        return cachedBlockData;
     }
 
-    private void removeStaleKeyFrames() {
-        Logger.trace("Removing stale key frames");
-        int size = keyFrames.size();
-        if (size < KEY_FRAME_BUFFER_MAX_SIZE) {
-            Logger.trace("Key frame buffer is not full: " + size + (size == 1 ? " entry" : " entries"));
-            return;
-        }
-        // Try to balance the number of key frames.
-        int window = maxTime / KEY_FRAME_BUFFER_MAX_SIZE;
-        for (int i = 0; i < maxTime; i += window) {
-            NavigableMap<Integer, WorldModel<? extends Entity>> next = keyFrames.subMap(i, false, i + window, true);
-            Logger.trace("Window " + i + " -> " + (i + window) + " has " + next.size() + " entries");
-            if (next.size() > 1) {
-                // Remove all but the last entry in this window
-                Map.Entry<Integer, WorldModel<? extends Entity>> last = next.lastEntry();
-                next.clear();
-                next.put(last.getKey(), last.getValue());
-                Logger.trace("Retained entry " + last);
+    private byte[] readBlock(long position) throws IOException, LogException {
+        int rawSize = file.readInt(position);
+        int compressedSize = file.readInt(position + 4);
+        byte[] compressed = file.read(position + IndexedLogFormat.BLOCK_HEADER_SIZE, compressedSize);
+        byte[] result = new byte[rawSize];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int count = 0;
+            while (count < rawSize && !inflater.finished()) {
+                int n = inflater.inflate(result, count, rawSize - count);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += n;
+            }
+            if (count != rawSize) {
+                throw new LogException("Block at offset " + position + " is truncated");
             }
         }
-        Logger.trace("New key frame set: " + keyFrames);
+        catch (DataFormatException e) {
+            throw new LogException("Block at offset " + position + " is corrupt", e);
+        }
+        finally {
+            inflater.end();
+        }
+        return result;
     }
 }
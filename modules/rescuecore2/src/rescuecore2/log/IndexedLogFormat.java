@@ -0,0 +1,88 @@
+package rescuecore2.log;
+
+/**
+   Constants and helpers for the compressed, indexed log format written by {@link IndexedLogWriter}.
+   <p>
+   The file starts with {@link #MAGIC} and {@link #VERSION}. This is followed by a sequence of blocks, each holding the records for one timestep: the uncompressed length, the compressed length and then the Deflate compressed records in the same encoding as {@link StreamLogWriter}. The first block holds the records that do not belong to a timestep, such as the initial conditions and config.
+   <p>
+   After the last block comes the index: the number of blocks and the file offset of each, then the number of records and, for each record, its type, time, entity ID, block number and offset within the uncompressed block. The file ends with the offset of the index and {@link #TRAILER_MAGIC}. A log that was not closed properly has no index; readers can still recover it by scanning the blocks.
+ */
+final class IndexedLogFormat {
+    /** Magic number at the start of an indexed log. Legacy logs start with {@link RecordType#START_OF_LOG} instead. */
+    static final int MAGIC = 0x52434C32;
+    /** The format version. */
+    static final int VERSION = 2;
+    /** Size of the file header in bytes. */
+    static final int HEADER_SIZE = 8;
+    /** Size of each block header in bytes. */
+    static final int BLOCK_HEADER_SIZE = 8;
+    /** Magic number at the end of an indexed log that has an index. */
+    static final int TRAILER_MAGIC = 0x52434C49;
+    /** Size of the trailer in bytes. */
+    static final int TRAILER_SIZE = 12;
+    /** Time of records that do not belong to a timestep. */
+    static final int NO_TIME = -1;
+
+    private static final int OFFSET_BITS = 32;
+    private static final long OFFSET_MASK = 0xFFFFFFFFL;
+
+    private IndexedLogFormat() {}
+
+    /**
+       Get the timestep a record belongs to.
+       @param record The record.
+       @return The timestep, or {@link #NO_TIME}.
+    */
+    static int getTime(LogRecord record) {
+        if (record instanceof PerceptionRecord) {
+            return ((PerceptionRecord)record).getTime();
+        }
+        if (record instanceof CommandsRecord) {
+            return ((CommandsRecord)record).getTime();
+        }
+        if (record instanceof UpdatesRecord) {
+            return ((UpdatesRecord)record).getTime();
+        }
+        return NO_TIME;
+    }
+
+    /**
+       Get the ID of the entity a record belongs to.
+       @param record The record.
+       @return The entity ID, or zero if the record is not a perception record.
+    */
+    static int getEntityID(LogRecord record) {
+        if (record instanceof PerceptionRecord) {
+            return ((PerceptionRecord)record).getEntityID().getValue();
+        }
+        return 0;
+    }
+
+    /**
+       Combine a block number and an offset within the block into a single record position.
+       @param block The block number.
+       @param offset The offset of the record within the uncompressed block.
+       @return The record position.
+    */
+    static long position(int block, int offset) {
+        return ((long)block << OFFSET_BITS) | (offset & OFFSET_MASK);
+    }
+
+    /**
+       Get the block number from a record position.
+       @param position The record position.
+       @return The block number.
+    */
+    static int block(long position) {
+        return (int)(position >>> OFFSET_BITS);
+    }
+
+    /**
+       Get the offset within the block from a record position.
+       @param position The record position.
+       @return The offset within the uncompressed block.
+    */
+    static int offset(long position) {
+        return (int)(position & OFFSET_MASK);
+    }
+}
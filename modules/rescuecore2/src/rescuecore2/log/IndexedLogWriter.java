@@ -0,0 +1,168 @@
+package rescuecore2.log;
+
+import static rescuecore2.misc.EncodingTools.writeInt32;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+   A class for writing the kernel log in the compressed, indexed format described in {@link IndexedLogFormat}. The records for each timestep are compressed together and an index of every record is written when the log is closed so that readers do not need to scan the whole file.
+ */
+public class IndexedLogWriter implements LogWriter {
+    private static final int COMPRESS_BUFFER_SIZE = 1 << 16;
+
+    private DataOutputStream out;
+    private long position;
+
+    private ByteArrayOutputStream block;
+    private int blockTime;
+    private int blockCount;
+    private ByteArrayOutputStream blockOffsets;
+    private DataOutputStream blockOffsetsOut;
+
+    private ByteArrayOutputStream index;
+    private DataOutputStream indexOut;
+    private int recordCount;
+
+    private ByteArrayOutputStream gather;
+    private Deflater deflater;
+    private byte[] compressBuffer;
+    private boolean closed;
+
+    /**
+       Create an indexed log writer and open it for writing.
+       @param name The name of the file to write to.
+       @throws IOException If the log file cannot be opened.
+    */
+    public IndexedLogWriter(String name) throws IOException {
+        this(new File(name));
+    }
+
+    /**
+       Create an indexed log writer and open it for writing.
+       @param file The file to write to.
+       @throws IOException If the log file cannot be opened.
+    */
+    public IndexedLogWriter(File file) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    /**
+       Create an indexed log writer that writes to a stream.
+       @param stream The stream to write to.
+       @throws IOException If the header cannot be written.
+    */
+    public IndexedLogWriter(OutputStream stream) throws IOException {
+        out = new DataOutputStream(stream);
+        out.writeInt(IndexedLogFormat.MAGIC);
+        out.writeInt(IndexedLogFormat.VERSION);
+        position = IndexedLogFormat.HEADER_SIZE;
+        block = new ByteArrayOutputStream();
+        blockTime = IndexedLogFormat.NO_TIME;
+        blockCount = 0;
+        blockOffsets = new ByteArrayOutputStream();
+        blockOffsetsOut = new DataOutputStream(blockOffsets);
+        index = new ByteArrayOutputStream();
+        indexOut = new DataOutputStream(index);
+        recordCount = 0;
+        gather = new ByteArrayOutputStream();
+        // Favour speed over size: the kernel writes the log while the simulation is running
+        deflater = new Deflater(Deflater.BEST_SPEED);
+        compressBuffer = new byte[COMPRESS_BUFFER_SIZE];
+        closed = false;
+    }
+
+    @Override
+    public void writeRecord(LogRecord entry) throws LogException {
+        if (closed) {
+            throw new LogException("Log has been closed");
+        }
+        try {
+            int time = IndexedLogFormat.getTime(entry);
+            if (time != IndexedLogFormat.NO_TIME && time != blockTime) {
+                if (block.size() > 0) {
+                    writeBlock();
+                }
+                blockTime = time;
+            }
+            gather.reset();
+            entry.write(gather);
+            writeInt32(entry.getRecordType().getID(), block);
+            // Records are indexed by the position of their size field, just like FileLogReader does for legacy logs
+            int offset = block.size();
+            writeInt32(gather.size(), block);
+            gather.writeTo(block);
+            indexOut.writeInt(entry.getRecordType().getID());
+            indexOut.writeInt(time);
+            indexOut.writeInt(IndexedLogFormat.getEntityID(entry));
+            indexOut.writeInt(blockCount);
+            indexOut.writeInt(offset);
+            ++recordCount;
+            if (entry.getRecordType() == RecordType.END_OF_LOG) {
+                finish();
+            }
+        }
+        catch (IOException e) {
+            throw new LogException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            finish();
+        }
+        catch (IOException e) {
+            Logger.error("Error closing indexed log", e);
+        }
+    }
+
+    private void finish() throws IOException {
+        closed = true;
+        try {
+            if (block.size() > 0) {
+                writeBlock();
+            }
+            long indexPosition = position;
+            out.writeInt(blockCount);
+            blockOffsets.writeTo(out);
+            out.writeInt(recordCount);
+            index.writeTo(out);
+            out.writeLong(indexPosition);
+            out.writeInt(IndexedLogFormat.TRAILER_MAGIC);
+            out.flush();
+        }
+        finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        byte[] raw = block.toByteArray();
+        block.reset();
+        gather.reset();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int count = deflater.deflate(compressBuffer);
+            gather.write(compressBuffer, 0, count);
+        }
+        blockOffsetsOut.writeLong(position);
+        out.writeInt(raw.length);
+        out.writeInt(gather.size());
+        gather.writeTo(out);
+        position += IndexedLogFormat.BLOCK_HEADER_SIZE + gather.size();
+        ++blockCount;
+    }
+}
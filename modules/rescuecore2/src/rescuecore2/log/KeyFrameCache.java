@@ -0,0 +1,167 @@
+package rescuecore2.log;
+
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.Property;
+import rescuecore2.worldmodel.WorldModel;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+   A cache of decoded world models indexed by timestep. Key frames are pinned and never evicted. Other frames are kept in a least-recently-used cache that holds a fixed number of frames.
+ */
+final class KeyFrameCache {
+    // Rough heap sizes used by estimateSize: an entity with its ID, property set and world model entry, a property with its set entry, a boxed value or small object, a reference and an array or collection header.
+    private static final int ENTITY_BYTES = 256;
+    private static final int PROPERTY_BYTES = 64;
+    private static final int OBJECT_BYTES = 16;
+    private static final int REFERENCE_BYTES = 8;
+    private static final int CONTAINER_BYTES = 40;
+    // Objects that are not one of the common property values, such as an Edge
+    private static final int UNKNOWN_OBJECT_BYTES = 96;
+
+    private final NavigableMap<Integer, WorldModel<? extends Entity>> keyFrames;
+    private final NavigableMap<Integer, WorldModel<? extends Entity>> recent;
+    // Least recently used first
+    private final Set<Integer> order;
+    private final int maxRecent;
+
+    /**
+       Create a KeyFrameCache.
+       @param maxRecent The maximum number of frames other than key frames to keep.
+    */
+    KeyFrameCache(int maxRecent) {
+        keyFrames = new TreeMap<Integer, WorldModel<? extends Entity>>();
+        recent = new TreeMap<Integer, WorldModel<? extends Entity>>();
+        order = new LinkedHashSet<Integer>();
+        this.maxRecent = Math.max(1, maxRecent);
+    }
+
+    /**
+       Estimate the heap used by a decoded world model.
+       @param world The world model.
+       @return An estimate of the number of bytes used by the world model and its entities.
+    */
+    static long estimateSize(WorldModel<? extends Entity> world) {
+        long result = 0;
+        for (Entity next : world) {
+            result += ENTITY_BYTES;
+            for (Property p : next.getProperties()) {
+                result += PROPERTY_BYTES + (p.isDefined() ? estimateSize(p.getValue()) : 0);
+            }
+        }
+        return result;
+    }
+
+    private static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof int[]) {
+            return OBJECT_BYTES + 4L * ((int[])value).length;
+        }
+        if (value instanceof Collection) {
+            long result = CONTAINER_BYTES;
+            for (Object next : (Collection<?>)value) {
+                result += REFERENCE_BYTES + estimateSize(next);
+            }
+            return result;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof EntityID) {
+            return OBJECT_BYTES;
+        }
+        return UNKNOWN_OBJECT_BYTES;
+    }
+
+    /**
+       Get the frame at a particular time.
+       @param time The timestep.
+       @return The frame, or null if it is not cached.
+    */
+    WorldModel<? extends Entity> get(int time) {
+        WorldModel<? extends Entity> result = keyFrames.get(time);
+        if (result != null) {
+            return result;
+        }
+        result = recent.get(time);
+        if (result != null) {
+            touch(time);
+        }
+        return result;
+    }
+
+    /**
+       Get the latest cached frame at or before a particular time.
+       @param time The timestep.
+       @return The nearest earlier frame, or null if there is no such frame.
+    */
+    Map.Entry<Integer, WorldModel<? extends Entity>> floor(int time) {
+        Map.Entry<Integer, WorldModel<? extends Entity>> key = keyFrames.floorEntry(time);
+        Map.Entry<Integer, WorldModel<? extends Entity>> other = recent.floorEntry(time);
+        if (other == null || (key != null && key.getKey() >= other.getKey())) {
+            return key;
+        }
+        touch(other.getKey());
+        return other;
+    }
+
+    /**
+       Add a key frame. Key frames are never evicted.
+       @param time The timestep.
+       @param world The frame.
+    */
+    void pin(int time, WorldModel<? extends Entity> world) {
+        keyFrames.put(time, world);
+        recent.remove(time);
+        order.remove(time);
+    }
+
+    /**
+       Add a frame, evicting the least recently used frames that are not key frames if the cache is full.
+       @param time The timestep.
+       @param world The frame.
+    */
+    void put(int time, WorldModel<? extends Entity> world) {
+        if (keyFrames.containsKey(time)) {
+            return;
+        }
+        recent.put(time, world);
+        touch(time);
+        Iterator<Integer> it = order.iterator();
+        while (recent.size() > maxRecent && it.hasNext()) {
+            Integer next = it.next();
+            if (next != time) {
+                it.remove();
+                recent.remove(next);
+                Logger.trace("Evicted frame " + next);
+            }
+        }
+    }
+
+    /**
+       Get the number of key frames.
+       @return The number of key frames.
+    */
+    int getKeyFrameCount() {
+        return keyFrames.size();
+    }
+
+    /**
+       Get the maximum number of frames other than key frames this cache will hold.
+       @return The maximum number of recent frames.
+    */
+    int getMaxRecent() {
+        return maxRecent;
+    }
+
+    private void touch(int time) {
+        order.remove(time);
+        order.add(time);
+    }
+}
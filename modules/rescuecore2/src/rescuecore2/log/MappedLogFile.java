@@ -0,0 +1,129 @@
+package rescuecore2.log;
+
+import rescuecore2.misc.ByteBufferInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+   A read-only, memory-mapped view of a log file. Files larger than a single mapping allows are mapped in several segments; reads that cross a segment boundary are copied.
+ */
+final class MappedLogFile {
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    private static final int INT_SIZE = 4;
+
+    private final long length;
+    private final MappedByteBuffer[] segments;
+
+    /**
+       Map a file into memory.
+       @param file The file to map.
+       @throws IOException If the file cannot be mapped.
+    */
+    MappedLogFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            length = channel.size();
+            segments = new MappedByteBuffer[(int)((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; ++i) {
+                long start = (long)i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+            }
+        }
+        finally {
+            // The mappings stay valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+       Get the length of the file.
+       @return The length of the file in bytes.
+    */
+    long length() {
+        return length;
+    }
+
+    /**
+       Read a big-endian 32 bit integer.
+       @param position The file offset to read from.
+       @return The integer.
+       @throws EOFException If the integer runs past the end of the file.
+    */
+    int readInt(long position) throws EOFException {
+        check(position, INT_SIZE);
+        int segment = (int)(position >>> SEGMENT_BITS);
+        int offset = (int)(position & (SEGMENT_SIZE - 1));
+        if (offset + INT_SIZE <= segments[segment].limit()) {
+            return segments[segment].getInt(offset);
+        }
+        return ByteBuffer.wrap(read(position, INT_SIZE)).getInt();
+    }
+
+    /**
+       Read a big-endian 64 bit integer.
+       @param position The file offset to read from.
+       @return The integer.
+       @throws EOFException If the integer runs past the end of the file.
+    */
+    long readLong(long position) throws EOFException {
+        return ByteBuffer.wrap(read(position, INT_SIZE * 2)).getLong();
+    }
+
+    /**
+       Copy bytes out of the file.
+       @param position The file offset to read from.
+       @param size The number of bytes to read.
+       @return A new array containing the bytes.
+       @throws EOFException If the range runs past the end of the file.
+    */
+    byte[] read(long position, int size) throws EOFException {
+        check(position, size);
+        byte[] result = new byte[size];
+        int done = 0;
+        while (done < size) {
+            long next = position + done;
+            ByteBuffer segment = segments[(int)(next >>> SEGMENT_BITS)].duplicate();
+            segment.position((int)(next & (SEGMENT_SIZE - 1)));
+            int count = Math.min(size - done, segment.remaining());
+            segment.get(result, done, count);
+            done += count;
+        }
+        return result;
+    }
+
+    /**
+       Get a stream over part of the file. The bytes are read straight from the mapping unless the range crosses a segment boundary.
+       @param position The file offset to start from.
+       @param size The number of bytes in the stream.
+       @return An InputStream over the range.
+       @throws EOFException If the range runs past the end of the file.
+    */
+    InputStream open(long position, int size) throws EOFException {
+        check(position, size);
+        int offset = (int)(position & (SEGMENT_SIZE - 1));
+        MappedByteBuffer segment = segments[(int)(position >>> SEGMENT_BITS)];
+        if (offset + size > segment.limit()) {
+            return new ByteArrayInputStream(read(position, size));
+        }
+        ByteBuffer slice = segment.duplicate();
+        slice.limit(offset + size);
+        slice.position(offset);
+        return new ByteBufferInputStream(slice);
+    }
+
+    private void check(long position, int size) throws EOFException {
+        if (position < 0 || size < 0 || position + size > length) {
+            throw new EOFException("Cannot read " + size + " bytes at offset " + position + " of " + length);
+        }
+    }
+}
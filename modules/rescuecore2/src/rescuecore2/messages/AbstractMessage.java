@@ -14,6 +14,7 @@ import java.io.IOException;
 public abstract class AbstractMessage implements Message {
     private String urn;
     private List<MessageComponent> components;
+    private int optionalStart;
 
     /**
        Construct a message with a given urn.
@@ -22,6 +23,7 @@ public abstract class AbstractMessage implements Message {
     protected AbstractMessage(String urn) {
         this.urn = urn;
         this.components = new ArrayList<MessageComponent>();
+        this.optionalStart = -1;
     }
 
     /**
@@ -50,6 +52,20 @@ public abstract class AbstractMessage implements Message {
        @param component The component to add.
      */
     protected void addMessageComponent(MessageComponent component) {
+        if (optionalStart != -1) {
+            throw new IllegalStateException("Required components must be added before optional components");
+        }
+        components.add(component);
+    }
+
+    /**
+       Add a message component that older versions of the message do not have. Optional components are always written but are only read if the message data has not run out, so they must come after all required components.
+       @param component The component to add.
+     */
+    protected void addOptionalMessageComponent(MessageComponent component) {
+        if (optionalStart == -1) {
+            optionalStart = components.size();
+        }
         components.add(component);
     }
 
@@ -84,8 +100,11 @@ public abstract class AbstractMessage implements Message {
 
     @Override
     public void read(InputStream in) throws IOException {
-        for (MessageComponent next : components) {
-            next.read(in);
+        for (int i = 0; i < components.size(); ++i) {
+            if (optionalStart != -1 && i >= optionalStart && in.available() <= 0) {
+                break;
+            }
+            components.get(i).read(in);
         }
     }
 
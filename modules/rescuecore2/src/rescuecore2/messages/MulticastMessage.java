@@ -0,0 +1,163 @@
+package rescuecore2.messages;
+
+import rescuecore2.messages.components.IntComponent;
+import rescuecore2.misc.ByteBufferOutputStream;
+import rescuecore2.misc.EncodingTools;
+import rescuecore2.misc.URNDictionary;
+import rescuecore2.registry.Registry;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+   A message that is sent to several components where only the target ID differs between recipients, for example KSUpdate or KVTimestep. The rest of the message is encoded once for each wire protocol dictionary in use, the first time a recipient needs it, and the encoded bytes are shared by every message returned by {@link #forTarget(int)}. The template must not be changed after construction.
+ */
+public class MulticastMessage {
+    private final String urn;
+    private final IntComponent target;
+    private final String description;
+    private final List<MessageComponent> shared;
+    // Wire dictionary -> encoded body. Version 1 of the protocol uses the null dictionary.
+    private final Map<URNDictionary, byte[]> bodies;
+
+    /**
+       Construct a MulticastMessage from a template message. The first component of the template must be the IntComponent that holds the target ID; its value is ignored.
+       @param template The message to encode.
+       @throws IllegalArgumentException If the first component of the template is not an IntComponent.
+    */
+    public MulticastMessage(AbstractMessage template) {
+        List<MessageComponent> components = template.getComponents();
+        if (components.isEmpty() || !(components.get(0) instanceof IntComponent)) {
+            throw new IllegalArgumentException("First component of " + template.getURN() + " is not a target ID");
+        }
+        urn = template.getURN();
+        target = (IntComponent)components.get(0);
+        description = template.toString();
+        shared = components.subList(1, components.size());
+        bodies = new HashMap<URNDictionary, byte[]>();
+    }
+
+    /**
+       Get the urn of the message.
+       @return The message urn.
+    */
+    public String getURN() {
+        return urn;
+    }
+
+    /**
+       Get the number of bytes shared by all recipients.
+       @return The length of the shared part of the message.
+    */
+    public int getBodyLength() {
+        return getBody(null).length;
+    }
+
+    // Encode with a dictionary, or for version 1 of the protocol if it is null
+    private synchronized byte[] getBody(URNDictionary dictionary) {
+        byte[] result = bodies.get(dictionary);
+        if (result == null) {
+            URNDictionary old = EncodingTools.getWireDictionary();
+            try {
+                EncodingTools.setWireDictionary(dictionary);
+                result = encode(shared);
+            }
+            catch (IOException e) {
+                // ByteBufferOutputStream does not throw IOExceptions
+                throw new RuntimeException(e);
+            }
+            finally {
+                EncodingTools.setWireDictionary(old);
+            }
+            bodies.put(dictionary, result);
+        }
+        return result;
+    }
+
+    private static byte[] encode(List<MessageComponent> components) throws IOException {
+        ByteBufferOutputStream out = ByteBufferOutputStream.acquire();
+        try {
+            for (MessageComponent next : components) {
+                next.write(out);
+            }
+            return out.toByteArray();
+        }
+        finally {
+            out.release();
+        }
+    }
+
+    /**
+       Get a copy of this message addressed to a particular component. Reading the copy replaces its contents with a message decoded by the current Registry, which is then used for writing too, so the copy round-trips like any other message.
+       @param id The ID of the target component.
+       @return A message addressed to the target.
+    */
+    public Message forTarget(int id) {
+        return new TargetedMessage(id);
+    }
+
+    private class TargetedMessage implements Message {
+        private final IntComponent id;
+        // Set once this message has been read
+        private Message decoded;
+
+        TargetedMessage(int id) {
+            this.id = new IntComponent(target.getName(), id);
+        }
+
+        @Override
+        public String getURN() {
+            return urn;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            if (decoded != null) {
+                decoded.write(out);
+                return;
+            }
+            id.write(out);
+            out.write(getBody(EncodingTools.getWireDictionary()));
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            if (decoded != null) {
+                decoded.write(out);
+                return;
+            }
+            id.write(out);
+            out.write(getBody(null));
+        }
+
+        @Override
+        public void read(InputStream in) throws IOException {
+            Message m = Registry.getCurrentRegistry().createMessage(urn, in);
+            if (m == null) {
+                throw new IOException("Unrecognised message urn: " + urn);
+            }
+            decoded = m;
+        }
+
+        @Override
+        public int getBytesLength() {
+            if (decoded != null) {
+                return decoded.getBytesLength();
+            }
+            return id.getBytesLength() + getBody(null).length;
+        }
+
+        @Override
+        public String toString() {
+            if (decoded != null) {
+                return decoded.toString();
+            }
+            return description + " (target " + id.getValue() + ")";
+        }
+    }
+}
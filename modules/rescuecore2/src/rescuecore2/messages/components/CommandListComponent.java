@@ -12,10 +12,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
 import static rescuecore2.misc.EncodingTools.readMessage;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
 import static rescuecore2.misc.EncodingTools.writeMessage;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    A message component made up of a list of agent commands.
@@ -60,7 +61,7 @@ public class CommandListComponent extends AbstractMessageComponent {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(commands.size(), out);
+        writeWireInt32(commands.size(), out);
         for (Command next : commands) {
             writeMessage(next, out);
         }
@@ -77,7 +78,7 @@ public class CommandListComponent extends AbstractMessageComponent {
     @Override
     public void read(InputStream in) throws IOException {
         commands.clear();
-        int size = readInt32(in);
+        int size = readWireInt32(in);
         for (int i = 0; i < size; ++i) {
             Message m = readMessage(in);
             if (m instanceof Command) {
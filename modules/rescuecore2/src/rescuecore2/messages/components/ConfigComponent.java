@@ -9,10 +9,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Set;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
 import static rescuecore2.misc.EncodingTools.readString;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
 import static rescuecore2.misc.EncodingTools.writeString;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    A Config component to a message.
@@ -58,7 +59,7 @@ public class ConfigComponent extends AbstractMessageComponent {
     @Override
     public void write(OutputStream out) throws IOException {
         Set<String> keys = config.getAllKeys();
-        writeInt32(keys.size(), out);
+        writeWireInt32(keys.size(), out);
         for (String key : keys) {
             writeString(key, out);
             writeString(config.getValue(key), out);
@@ -77,7 +78,7 @@ public class ConfigComponent extends AbstractMessageComponent {
 
     @Override
     public void read(InputStream in) throws IOException {
-        int count = readInt32(in);
+        int count = readWireInt32(in);
         config = new Config();
         for (int i = 0; i < count; ++i) {
             String key = readString(in);
@@ -8,8 +8,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    An EntityID component to a message.
@@ -54,7 +55,7 @@ public class EntityIDComponent extends AbstractMessageComponent {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(value.getValue(), out);
+        writeWireInt32(value.getValue(), out);
     }
 
     @Override
@@ -64,7 +65,7 @@ public class EntityIDComponent extends AbstractMessageComponent {
 
     @Override
     public void read(InputStream in) throws IOException {
-        value = new EntityID(readInt32(in));
+        value = new EntityID(readWireInt32(in));
     }
 
     @Override
@@ -11,8 +11,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    A message component that is a list of entity IDs.
@@ -57,9 +58,9 @@ public class EntityIDListComponent extends AbstractMessageComponent {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(ids.size(), out);
+        writeWireInt32(ids.size(), out);
         for (EntityID next : ids) {
-            writeInt32(next.getValue(), out);
+            writeWireInt32(next.getValue(), out);
         }
     }
 
@@ -74,9 +75,9 @@ public class EntityIDListComponent extends AbstractMessageComponent {
     @Override
     public void read(InputStream in) throws IOException {
         ids.clear();
-        int count = readInt32(in);
+        int count = readWireInt32(in);
         for (int i = 0; i < count; ++i) {
-            ids.add(new EntityID(readInt32(in)));
+            ids.add(new EntityID(readWireInt32(in)));
         }
     }
 
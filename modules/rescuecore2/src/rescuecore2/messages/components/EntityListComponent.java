@@ -12,9 +12,10 @@ import java.util.Collection;
 import java.util.List;
 
 import static rescuecore2.misc.EncodingTools.readEntity;
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeEntity;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    An EntityList component to a message.
@@ -59,7 +60,7 @@ public class EntityListComponent extends AbstractMessageComponent {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(entities.size(), out);
+        writeWireInt32(entities.size(), out);
         for (Entity next : entities) {
             writeEntity(next, out);
         }
@@ -76,7 +77,7 @@ public class EntityListComponent extends AbstractMessageComponent {
     @Override
     public void read(InputStream in) throws IOException {
         entities.clear();
-        int size = readInt32(in);
+        int size = readWireInt32(in);
         for (int i = 0; i < size; ++i) {
             Entity e = readEntity(in);
             if (e != null) {
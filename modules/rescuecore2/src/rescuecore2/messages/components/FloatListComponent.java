@@ -12,9 +12,10 @@ import java.util.Collections;
 import java.util.List;
 
 import static rescuecore2.misc.EncodingTools.readFloat32;
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeFloat32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
  * A message component that is a list of floats.
@@ -80,7 +81,7 @@ public class FloatListComponent extends AbstractMessageComponent {
 
 	@Override
 	public void write(OutputStream out) throws IOException {
-		writeInt32(data.size(), out);
+		writeWireInt32(data.size(), out);
 		for (Float next : data) {
 			writeFloat32(next.floatValue(), out);
 		}
@@ -97,7 +98,7 @@ public class FloatListComponent extends AbstractMessageComponent {
 	@Override
 	public void read(InputStream in) throws IOException {
 		data.clear();
-		int count = readInt32(in);
+		int count = readWireInt32(in);
 		for (int i = 0; i < count; ++i) {
 			data.add(readFloat32(in));
 		}
@@ -7,8 +7,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    An integer component to a message.
@@ -52,7 +53,7 @@ public class IntComponent extends AbstractMessageComponent {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(value, out);
+        writeWireInt32(value, out);
     }
 
     @Override
@@ -62,7 +63,7 @@ public class IntComponent extends AbstractMessageComponent {
 
     @Override
     public void read(InputStream in) throws IOException {
-        value = readInt32(in);
+        value = readWireInt32(in);
     }
 
     @Override
@@ -10,8 +10,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    A message component that is a list of integers.
@@ -67,9 +68,9 @@ public class IntListComponent extends AbstractMessageComponent {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(data.size(), out);
+        writeWireInt32(data.size(), out);
         for (Integer next : data) {
-            writeInt32(next.intValue(), out);
+            writeWireInt32(next.intValue(), out);
         }
     }
 
@@ -85,9 +86,9 @@ public class IntListComponent extends AbstractMessageComponent {
     @Override
     public void read(InputStream in) throws IOException {
         data.clear();
-        int count = readInt32(in);
+        int count = readWireInt32(in);
         for (int i = 0; i < count; ++i) {
-            data.add(readInt32(in));
+            data.add(readWireInt32(in));
         }
     }
 
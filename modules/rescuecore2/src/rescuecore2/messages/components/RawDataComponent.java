@@ -8,8 +8,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import static rescuecore2.misc.EncodingTools.readBytes;
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    A raw data component to a message.
@@ -57,7 +58,7 @@ public class RawDataComponent extends AbstractMessageComponent {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(data.length, out);
+        writeWireInt32(data.length, out);
         out.write(data);
     }
 
@@ -69,7 +70,7 @@ public class RawDataComponent extends AbstractMessageComponent {
 
     @Override
     public void read(InputStream in) throws IOException {
-        data = readBytes(readInt32(in), in);
+        data = readBytes(readWireInt32(in), in);
     }
 
     @Override
@@ -10,10 +10,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
 import static rescuecore2.misc.EncodingTools.readString;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
 import static rescuecore2.misc.EncodingTools.writeString;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    A message component that is a list of strings.
@@ -69,7 +70,7 @@ public class StringListComponent extends AbstractMessageComponent {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(data.size(), out);
+        writeWireInt32(data.size(), out);
         for (String next : data) {
             writeString(next, out);
         }
@@ -86,7 +87,7 @@ public class StringListComponent extends AbstractMessageComponent {
     @Override
     public void read(InputStream in) throws IOException {
         data.clear();
-        int count = readInt32(in);
+        int count = readWireInt32(in);
         for (int i = 0; i < count; ++i) {
             data.add(readString(in));
         }
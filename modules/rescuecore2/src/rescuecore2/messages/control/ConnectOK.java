@@ -0,0 +1,15 @@
+package rescuecore2.messages.control;
+
+import rescuecore2.messages.Control;
+import rescuecore2.misc.URNDictionary;
+
+/**
+   Interface for the messages that tell a component it has successfully connected to the kernel.
+ */
+public interface ConnectOK extends Control {
+    /**
+       Get the URN dictionary that the kernel wants to use for the rest of the connection.
+       @return The dictionary, or null if the connection stays on version 1 of the wire protocol.
+     */
+    URNDictionary getURNDictionary();
+}
@@ -1,16 +1,18 @@
 package rescuecore2.messages.control;
 
+import java.util.ArrayList;
 import java.util.Collection;
 
-import rescuecore2.messages.Control;
 import rescuecore2.messages.AbstractMessage;
 import rescuecore2.messages.components.IntComponent;
 import rescuecore2.messages.components.EntityIDComponent;
 import rescuecore2.messages.components.EntityListComponent;
 import rescuecore2.messages.components.ConfigComponent;
+import rescuecore2.messages.components.StringListComponent;
 import rescuecore2.worldmodel.Entity;
 import rescuecore2.worldmodel.EntityID;
 import rescuecore2.config.Config;
+import rescuecore2.misc.URNDictionary;
 
 import java.io.InputStream;
 import java.io.IOException;
@@ -18,11 +20,13 @@ import java.io.IOException;
 /**
    A message for signalling a successful connection to the kernel.
  */
-public class KAConnectOK extends AbstractMessage implements Control {
+public class KAConnectOK extends AbstractMessage implements ConnectOK {
     private IntComponent requestID;
     private EntityIDComponent agentID;
     private EntityListComponent world;
     private ConfigComponent config;
+    private StringListComponent urns;
+    private URNDictionary dictionary;
 
     /**
        A KAConnectOK message that populates its data from a stream.
@@ -58,7 +62,9 @@ public class KAConnectOK extends AbstractMessage implements Control {
         addMessageComponent(requestID);
         addMessageComponent(agentID);
         addMessageComponent(world);
+        urns = new StringListComponent("URN dictionary");
         addMessageComponent(config);
+        addOptionalMessageComponent(urns);
     }
 
     /**
@@ -92,4 +98,21 @@ public class KAConnectOK extends AbstractMessage implements Control {
     public Config getConfig() {
         return config.getConfig();
     }
+
+    /**
+       Set the URN dictionary that the component should use for the rest of the connection. Components that do not understand the dictionary ignore it.
+       @param newDictionary The dictionary, or null to stay on version 1 of the wire protocol.
+    */
+    public void setURNDictionary(URNDictionary newDictionary) {
+        dictionary = newDictionary;
+        urns.setValues(newDictionary == null ? new ArrayList<String>() : newDictionary.getURNs());
+    }
+
+    @Override
+    public URNDictionary getURNDictionary() {
+        if (dictionary == null && !urns.getValues().isEmpty()) {
+            dictionary = new URNDictionary(urns.getValues());
+        }
+        return dictionary;
+    }
 }
@@ -0,0 +1,84 @@
+package rescuecore2.misc;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+   An InputStream that reads the remaining bytes of a ByteBuffer. The buffer's position is advanced as bytes are read.
+*/
+public class ByteBufferInputStream extends InputStream {
+    private ByteBuffer buffer;
+
+    /**
+       Construct a ByteBufferInputStream.
+       @param buffer The buffer to read from.
+    */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+       Get a stream over the next bytes of this stream and skip past them. The bytes are not copied.
+       @param size The number of bytes in the new stream.
+       @return A stream over the bytes.
+       @throws EOFException If there are fewer than size bytes left.
+    */
+    public ByteBufferInputStream slice(int size) throws EOFException {
+        if (size < 0 || size > buffer.remaining()) {
+            throw new EOFException("Broken input pipe. Read " + buffer.remaining() + " bytes of " + size + ".");
+        }
+        ByteBuffer result = buffer.duplicate();
+        result.limit(result.position() + size);
+        buffer.position(buffer.position() + size);
+        return new ByteBufferInputStream(result);
+    }
+
+    /**
+       Read a big-endian 32-bit integer.
+       @return The integer.
+       @throws EOFException If there are fewer than four bytes left.
+    */
+    public int readInt() throws EOFException {
+        if (buffer.remaining() < EncodingTools.INT_32_SIZE) {
+            throw new EOFException("Broken input pipe. Read " + buffer.remaining() + " bytes of 4.");
+        }
+        int position = buffer.position();
+        int result = ((buffer.get(position) & 0xFF) << 24) | ((buffer.get(position + 1) & 0xFF) << 16) | ((buffer.get(position + 2) & 0xFF) << 8) | (buffer.get(position + 3) & 0xFF);
+        buffer.position(position + EncodingTools.INT_32_SIZE);
+        return result;
+    }
+
+    @Override
+    public int read() {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int count = (int)Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
@@ -0,0 +1,183 @@
+package rescuecore2.misc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+   An OutputStream that writes into a growable byte array. Unlike ByteArrayOutputStream it allows space to be reserved and filled in later, so that a length prefix can be written after the content it describes without encoding the content twice.
+   <p>
+   Each thread has a pooled stream that can be borrowed with {@link #acquire()} and handed back with {@link #release()}, so that encoding messages does not allocate a new buffer every time.
+*/
+public class ByteBufferOutputStream extends OutputStream {
+    private static final int DEFAULT_CAPACITY = 256;
+    // Pooled streams that grow beyond this are shrunk when they are released
+    private static final int MAX_POOLED_CAPACITY = 1 << 22;
+
+    private static final ThreadLocal<ByteBufferOutputStream> POOL = new ThreadLocal<ByteBufferOutputStream>() {
+        @Override
+        protected ByteBufferOutputStream initialValue() {
+            return new ByteBufferOutputStream();
+        }
+    };
+
+    private byte[] data;
+    private int count;
+    private boolean pooled;
+    private boolean inUse;
+
+    /**
+       Construct an empty ByteBufferOutputStream.
+    */
+    public ByteBufferOutputStream() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+       Construct an empty ByteBufferOutputStream with a given initial capacity.
+       @param capacity The initial capacity in bytes.
+    */
+    public ByteBufferOutputStream(int capacity) {
+        data = new byte[Math.max(1, capacity)];
+    }
+
+    /**
+       Borrow the pooled stream of the current thread. If it is already in use, for example by an enclosing encoder, then a new stream is returned instead.
+       @return An empty stream. Call {@link #release()} when it is no longer needed.
+    */
+    public static ByteBufferOutputStream acquire() {
+        ByteBufferOutputStream result = POOL.get();
+        if (result.inUse) {
+            result = new ByteBufferOutputStream();
+        }
+        else {
+            result.pooled = true;
+            result.inUse = true;
+        }
+        result.count = 0;
+        return result;
+    }
+
+    /**
+       Hand a stream returned by {@link #acquire()} back to the pool. The stream must not be used afterwards.
+    */
+    public void release() {
+        if (pooled) {
+            inUse = false;
+            count = 0;
+            if (data.length > MAX_POOLED_CAPACITY) {
+                data = new byte[DEFAULT_CAPACITY];
+            }
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        data[count++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, data, count, len);
+        count += len;
+    }
+
+    /**
+       Write a big-endian 32-bit integer.
+       @param i The integer to write.
+    */
+    public void writeInt(int i) {
+        ensureCapacity(count + EncodingTools.INT_32_SIZE);
+        putInt(count, i);
+        count += EncodingTools.INT_32_SIZE;
+    }
+
+    /**
+       Reserve space that will be filled in later with {@link #putInt(int, int)} or {@link #put(int, byte)}.
+       @param size The number of bytes to reserve.
+       @return The position of the reserved space.
+    */
+    public int reserve(int size) {
+        ensureCapacity(count + size);
+        int result = count;
+        count += size;
+        return result;
+    }
+
+    /**
+       Overwrite a big-endian 32-bit integer that has already been written or reserved.
+       @param position The position of the integer.
+       @param i The new value.
+    */
+    public void putInt(int position, int i) {
+        EncodingTools.writeInt32(i, data, position);
+    }
+
+    /**
+       Overwrite a byte that has already been written or reserved.
+       @param position The position of the byte.
+       @param b The new value.
+    */
+    public void put(int position, byte b) {
+        data[position] = b;
+    }
+
+    /**
+       Move the bytes from a position to the end of the stream to an earlier position, dropping the bytes in between.
+       @param from The position of the first byte to move.
+       @param to The position to move it to. This must not be after from.
+    */
+    public void compact(int from, int to) {
+        System.arraycopy(data, from, data, to, count - from);
+        count -= from - to;
+    }
+
+    /**
+       Get the number of bytes written so far. This is also the position of the next byte.
+       @return The size of the stream.
+    */
+    public int size() {
+        return count;
+    }
+
+    /**
+       Discard everything that has been written.
+    */
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+       Get the bytes written so far as a ByteBuffer. The buffer shares this stream's storage so it is only valid until the stream is written to, reset or released.
+       @return A buffer positioned at the first byte with the limit at the end of the stream.
+    */
+    public ByteBuffer getBuffer() {
+        return ByteBuffer.wrap(data, 0, count);
+    }
+
+    /**
+       Get a copy of the bytes written so far.
+       @return A new array.
+    */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, count);
+    }
+
+    /**
+       Write the bytes written so far to another stream.
+       @param out The stream to write to.
+       @throws IOException If the other stream throws an IOException.
+    */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(data, 0, count);
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > data.length) {
+            data = Arrays.copyOf(data, Math.max(size, data.length * 2));
+        }
+    }
+}
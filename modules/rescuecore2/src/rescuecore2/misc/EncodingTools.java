@@ -13,6 +13,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
@@ -22,9 +23,18 @@ public final class EncodingTools {
 	/** The size of an INT_32 in bytes. */
 	public static final int INT_32_SIZE = 4;
 
+	/** The largest number of bytes in a varint. */
+	private static final int MAX_VARINT_SIZE = 5;
+
 	/** Charset for encoding/decoding strings. Should always be UTF-8 */
 	private static final Charset CHARSET = Charset.forName("UTF-8");
 
+	/**
+	 * The URN dictionary of the wire protocol in use on this thread, or null
+	 * for version 1.
+	 */
+	private static final ThreadLocal<URNDictionary> WIRE_DICTIONARY = new ThreadLocal<URNDictionary>();
+
 	/**
 	 * Private constructor: this is a utility class.
 	 */
@@ -48,6 +58,10 @@ public final class EncodingTools {
 	 *             If the OutputStream blows up.
 	 */
 	public static void writeInt32(int i, OutputStream out) throws IOException {
+		if (out instanceof ByteBufferOutputStream) {
+			((ByteBufferOutputStream) out).writeInt(i);
+			return;
+		}
 		// Most significant byte first
 		out.write((byte) (i >> 24) & 0xFF);
 		out.write((byte) (i >> 16) & 0xFF);
@@ -100,6 +114,9 @@ public final class EncodingTools {
 	 *             If the end of the stream is reached.
 	 */
 	public static int readInt32(InputStream in) throws IOException {
+		if (in instanceof ByteBufferInputStream) {
+			return ((ByteBufferInputStream) in).readInt();
+		}
 		int first = in.read();
 		if (first == -1) {
 			throw new EOFException("Broken input pipe. Read 0 bytes of 4.");
@@ -175,8 +192,8 @@ public final class EncodingTools {
 	 * @return The next big-endian, 32-bit integer in the buffer.
 	 */
 	public static int readInt32(byte[] in, int offset) {
-		return (in[offset] << 24) | (in[offset + 1] << 16)
-				| (in[offset + 2] << 8) | (in[offset + 3]);
+		return ((in[offset] & 0xFF) << 24) | ((in[offset + 1] & 0xFF) << 16)
+				| ((in[offset + 2] & 0xFF) << 8) | (in[offset + 3] & 0xFF);
 	}
 
 	/**
@@ -633,6 +650,240 @@ public final class EncodingTools {
 		}
 	}
 
+	/**
+	 * Set the URN dictionary used by the stream versions of
+	 * {@link #writeEntity(Entity, OutputStream) writeEntity},
+	 * {@link #writeProperty(Property, OutputStream) writeProperty},
+	 * {@link #writeMessage(Message, OutputStream) writeMessage} and the other
+	 * wire methods on the current thread. With a dictionary these use version 2
+	 * of the wire protocol, which writes URN codes instead of URNs and writes
+	 * integers as varints. Without one they use version 1. The DataInput and
+	 * DataOutput versions always use version 1.
+	 * 
+	 * @param dictionary
+	 *            The dictionary to use, or null for version 1.
+	 */
+	public static void setWireDictionary(URNDictionary dictionary) {
+		if (dictionary == null) {
+			WIRE_DICTIONARY.remove();
+		} else {
+			WIRE_DICTIONARY.set(dictionary);
+		}
+	}
+
+	/**
+	 * Get the URN dictionary used on the current thread.
+	 * 
+	 * @return The dictionary, or null if version 1 of the wire protocol is in
+	 *         use.
+	 */
+	public static URNDictionary getWireDictionary() {
+		return WIRE_DICTIONARY.get();
+	}
+
+	/**
+	 * Write an unsigned varint to an OutputStream. Seven bits are written per
+	 * byte, least significant first, with the top bit set on every byte except
+	 * the last.
+	 * 
+	 * @param i
+	 *            The value to write. Negative values take five bytes.
+	 * @param out
+	 *            The OutputStream to write it to.
+	 * @throws IOException
+	 *             If the OutputStream blows up.
+	 */
+	public static void writeVarint(int i, OutputStream out) throws IOException {
+		while ((i & ~0x7F) != 0) {
+			out.write((i & 0x7F) | 0x80);
+			i >>>= 7;
+		}
+		out.write(i);
+	}
+
+	/**
+	 * Read an unsigned varint from an InputStream.
+	 * 
+	 * @param in
+	 *            The InputStream to read from.
+	 * @return The value that was read.
+	 * @throws IOException
+	 *             If the InputStream blows up or the varint is longer than five
+	 *             bytes.
+	 * @throws EOFException
+	 *             If the end of the stream is reached.
+	 */
+	public static int readVarint(InputStream in) throws IOException {
+		int result = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int next = in.read();
+			if (next == -1) {
+				throw new EOFException("Broken input pipe. Read " + (shift / 7)
+						+ " bytes of a varint.");
+			}
+			result |= (next & 0x7F) << shift;
+			if ((next & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IOException("Varint is longer than 5 bytes");
+	}
+
+	/**
+	 * Write a 32-bit integer in the wire format of the current thread. Version
+	 * 1 writes a big-endian int; version 2 writes a zigzag encoded varint so
+	 * that small positive and negative values both take few bytes.
+	 * 
+	 * @param i
+	 *            The integer to write.
+	 * @param out
+	 *            The OutputStream to write it to.
+	 * @throws IOException
+	 *             If the OutputStream blows up.
+	 */
+	public static void writeWireInt32(int i, OutputStream out)
+			throws IOException {
+		if (WIRE_DICTIONARY.get() == null) {
+			writeInt32(i, out);
+		} else {
+			writeVarint((i << 1) ^ (i >> 31), out);
+		}
+	}
+
+	/**
+	 * Read a 32-bit integer written by {@link #writeWireInt32(int, OutputStream)}.
+	 * 
+	 * @param in
+	 *            The InputStream to read from.
+	 * @return The integer.
+	 * @throws IOException
+	 *             If the InputStream blows up.
+	 * @throws EOFException
+	 *             If the end of the stream is reached.
+	 */
+	public static int readWireInt32(InputStream in) throws IOException {
+		if (WIRE_DICTIONARY.get() == null) {
+			return readInt32(in);
+		}
+		int i = readVarint(in);
+		return (i >>> 1) ^ -(i & 1);
+	}
+
+	/**
+	 * Write a URN in the wire format of the current thread. Version 1 writes
+	 * the URN as a string. Version 2 writes the dictionary code plus one as a
+	 * varint, or a zero followed by the URN as a string if the URN is not in
+	 * the dictionary.
+	 * 
+	 * @param urn
+	 *            The URN to write.
+	 * @param out
+	 *            The OutputStream to write it to.
+	 * @throws IOException
+	 *             If the OutputStream blows up.
+	 */
+	public static void writeWireURN(String urn, OutputStream out)
+			throws IOException {
+		URNDictionary dictionary = WIRE_DICTIONARY.get();
+		if (dictionary == null) {
+			writeString(urn, out);
+			return;
+		}
+		int code = dictionary.getCode(urn);
+		writeVarint(code + 1, out);
+		if (code == -1) {
+			writeString(urn, out);
+		}
+	}
+
+	/**
+	 * Read a URN written by {@link #writeWireURN(String, OutputStream)}.
+	 * 
+	 * @param in
+	 *            The InputStream to read from.
+	 * @return The URN.
+	 * @throws IOException
+	 *             If the InputStream blows up or the URN code is not in the
+	 *             dictionary.
+	 * @throws EOFException
+	 *             If the end of the stream is reached.
+	 */
+	public static String readWireURN(InputStream in) throws IOException {
+		URNDictionary dictionary = WIRE_DICTIONARY.get();
+		if (dictionary == null) {
+			return readString(in);
+		}
+		int code = readVarint(in);
+		if (code == 0) {
+			return readString(in);
+		}
+		if (code < 0 || code > dictionary.size()) {
+			throw new IOException("Unknown URN code " + (code - 1));
+		}
+		return dictionary.getURN(code - 1);
+	}
+
+	// Version 2 writes sizes as unsigned varints since they are never negative
+	private static int readWireSize(InputStream in) throws IOException {
+		if (WIRE_DICTIONARY.get() == null) {
+			return readInt32(in);
+		}
+		return readVarint(in);
+	}
+
+	/**
+	 * Something with a size prefix on the wire: an entity, a property or a
+	 * message.
+	 */
+	private interface Content {
+		void write(OutputStream out) throws IOException;
+	}
+
+	// Write the size of some content followed by the content. The content is
+	// encoded once, straight into a ByteBufferOutputStream, and the size is
+	// filled in afterwards. Other streams get a copy from a pooled buffer.
+	private static void writeSized(Content content, OutputStream out)
+			throws IOException {
+		if (!(out instanceof ByteBufferOutputStream)) {
+			ByteBufferOutputStream buffer = ByteBufferOutputStream.acquire();
+			try {
+				writeSized(content, buffer);
+				buffer.writeTo(out);
+			} finally {
+				buffer.release();
+			}
+			return;
+		}
+		ByteBufferOutputStream buffer = (ByteBufferOutputStream) out;
+		if (WIRE_DICTIONARY.get() == null) {
+			int start = buffer.reserve(INT_32_SIZE);
+			content.write(buffer);
+			buffer.putInt(start, buffer.size() - start - INT_32_SIZE);
+		} else {
+			// Reserve space for the longest varint and close the gap afterwards
+			int start = buffer.reserve(MAX_VARINT_SIZE);
+			content.write(buffer);
+			int size = buffer.size() - start - MAX_VARINT_SIZE;
+			int end = start;
+			while ((size & ~0x7F) != 0) {
+				buffer.put(end++, (byte) ((size & 0x7F) | 0x80));
+				size >>>= 7;
+			}
+			buffer.put(end++, (byte) size);
+			buffer.compact(start + MAX_VARINT_SIZE, end);
+		}
+	}
+
+	// Get a stream over the next size bytes. ByteBufferInputStreams are
+	// sliced rather than copied.
+	private static InputStream readContent(int size, InputStream in)
+			throws IOException {
+		if (in instanceof ByteBufferInputStream) {
+			return ((ByteBufferInputStream) in).slice(size);
+		}
+		return new ByteBufferInputStream(ByteBuffer.wrap(readBytes(size, in)));
+	}
+
 	/**
 	 * Write an entity to a stream.
 	 * 
@@ -645,15 +896,12 @@ public final class EncodingTools {
 	 */
 	public static void writeEntity(Entity e, OutputStream out)
 			throws IOException {
-
 		// Type URN
-		writeString(e.getURN(), out);
+		writeWireURN(e.getURN(), out);
 		// EntityID
-		writeInt32(e.getID().getValue(), out);
-		// Size
-		writeInt32(e.getBytesLength(), out);
-		// Content
-        e.write(out);
+		writeWireInt32(e.getID().getValue(), out);
+		// Size, content
+		writeSized(e::write, out);
 	}
 
 	/**
@@ -688,17 +936,17 @@ public final class EncodingTools {
 	 *             If there is a problem reading from the stream.
 	 */
 	public static Entity readEntity(InputStream in) throws IOException {
-		String urn = readString(in);
+		String urn = readWireURN(in);
 		if ("".equals(urn)) {
 			return null;
 		}
-		int entityID = readInt32(in);
-		int size = readInt32(in);
-		byte[] content = readBytes(size, in);
+		int entityID = readWireInt32(in);
+		int size = readWireSize(in);
+		InputStream content = readContent(size, in);
 		Entity result = Registry.getCurrentRegistry().createEntity(urn,
 				new EntityID(entityID));
 		if (result != null) {
-			result.read(new ByteArrayInputStream(content));
+			result.read(content);
 		}
 		return result;
 	}
@@ -741,13 +989,11 @@ public final class EncodingTools {
 	public static void writeProperty(Property p, OutputStream out)
 			throws IOException {
 		// Type
-		writeString(p.getURN(), out);
+		writeWireURN(p.getURN(), out);
 		writeBoolean(p.isDefined(), out);
 		if (p.isDefined()) {
-			// Size
-			writeInt32(p.getBytesLength(), out);
-			// Data
-            p.write(out);
+			// Size, data
+			writeSized(p::write, out);
 		}
 	}
 
@@ -784,17 +1030,17 @@ public final class EncodingTools {
 	 *             If there is a problem reading from the stream.
 	 */
 	public static Property readProperty(InputStream in) throws IOException {
-		String urn = readString(in);
+		String urn = readWireURN(in);
 		if ("".equals(urn)) {
 			return null;
 		}
 		boolean defined = readBoolean(in);
 		Property result = Registry.getCurrentRegistry().createProperty(urn);
 		if (defined) {
-			int size = readInt32(in);
-			byte[] content = readBytes(size, in);
+			int size = readWireSize(in);
+			InputStream content = readContent(size, in);
 			if (result != null) {
-				result.read(new ByteArrayInputStream(content));
+				result.read(content);
 			}
 		}
 		return result;
@@ -841,11 +1087,9 @@ public final class EncodingTools {
 		// Type URN, size, content
 
 		// Type URN
-		writeString(m.getURN(), out);
-		// Size
-		writeInt32(m.getBytesLength(), out);
-		// Content
-        m.write(out);
+		writeWireURN(m.getURN(), out);
+		// Size, content
+		writeSized(m::write, out);
 	}
 
 	/**
@@ -880,14 +1124,13 @@ public final class EncodingTools {
 	 *             If there is a problem reading from the stream.
 	 */
 	public static Message readMessage(InputStream in) throws IOException {
-		String urn = readString(in);
+		String urn = readWireURN(in);
 		if ("".equals(urn)) {
 			return null;
 		}
-		int size = readInt32(in);
-		byte[] content = readBytes(size, in);
+		int size = readWireSize(in);
 		Message result = Registry.getCurrentRegistry().createMessage(urn,
-				new ByteArrayInputStream(content));
+				readContent(size, in));
 		return result;
 	}
 
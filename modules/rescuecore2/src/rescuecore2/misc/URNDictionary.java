@@ -0,0 +1,92 @@
+package rescuecore2.misc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+   A numbering of entity, property and message URNs. Version 2 of the wire protocol writes the code of a URN instead of the URN itself. The kernel sends its dictionary to each component when it connects so both ends agree on the codes. Dictionaries are immutable.
+ */
+public final class URNDictionary {
+    private final String[] urns;
+    private final Map<String, Integer> codes;
+
+    /**
+       Construct a dictionary. Codes are assigned in iteration order, starting from zero.
+       @param urns The URNs to number. Duplicates are ignored.
+     */
+    public URNDictionary(Collection<String> urns) {
+        List<String> unique = new ArrayList<String>(urns.size());
+        codes = new HashMap<String, Integer>();
+        for (String next : urns) {
+            if (!codes.containsKey(next)) {
+                codes.put(next, unique.size());
+                unique.add(next);
+            }
+        }
+        this.urns = unique.toArray(new String[unique.size()]);
+    }
+
+    /**
+       Get the code for a URN.
+       @param urn The URN to look up.
+       @return The code, or -1 if the URN is not in this dictionary.
+     */
+    public int getCode(String urn) {
+        Integer result = codes.get(urn);
+        return result == null ? -1 : result;
+    }
+
+    /**
+       Get the URN with a particular code.
+       @param code The code to look up.
+       @return The URN.
+       @throws IllegalArgumentException If the code is not in this dictionary.
+     */
+    public String getURN(int code) {
+        if (code < 0 || code >= urns.length) {
+            throw new IllegalArgumentException("Unknown URN code " + code + " (dictionary has " + urns.length + " entries)");
+        }
+        return urns[code];
+    }
+
+    /**
+       Get all URNs in code order.
+       @return The URNs.
+     */
+    public List<String> getURNs() {
+        List<String> result = new ArrayList<String>(urns.length);
+        Collections.addAll(result, urns);
+        return result;
+    }
+
+    /**
+       Get the number of URNs in this dictionary.
+       @return The size of the dictionary.
+     */
+    public int size() {
+        return urns.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof URNDictionary) {
+            return Arrays.equals(urns, ((URNDictionary)o).urns);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(urns);
+    }
+
+    @Override
+    public String toString() {
+        return "URN dictionary (" + urns.length + " entries)";
+    }
+}
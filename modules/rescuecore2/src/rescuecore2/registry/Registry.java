@@ -1,7 +1,12 @@
 package rescuecore2.registry;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.io.InputStream;
 import java.io.IOException;
 
@@ -28,6 +33,11 @@ public final class Registry {
 		}
 	};
 
+	// Property URN -> index. Indices are shared by every registry.
+	private static final ConcurrentMap<String, Integer> PROPERTY_INDICES = new ConcurrentHashMap<String, Integer>();
+	// Index -> property URN. Replaced, never modified, when a URN is added.
+	private static volatile String[] propertyURNs = new String[0];
+
 	static {
 		// Register the ControlMessageFactory
 		SYSTEM_REGISTRY
@@ -104,6 +114,62 @@ public final class Registry {
 		CURRENT_REGISTRY.set(r);
 	}
 
+	/**
+	 * Get the index of a property URN. Each URN is given the next free index
+	 * the first time it is looked up, so indices are small, dense and the same
+	 * for every registry. Entities use them to store their properties in an
+	 * array.
+	 * 
+	 * @param urn
+	 *            The property URN.
+	 * @return The index of the URN.
+	 */
+	public static int getPropertyIndex(String urn) {
+		Integer result = PROPERTY_INDICES.get(urn);
+		if (result != null) {
+			return result;
+		}
+		synchronized (PROPERTY_INDICES) {
+			result = PROPERTY_INDICES.get(urn);
+			if (result == null) {
+				String[] urns = Arrays.copyOf(propertyURNs,
+						propertyURNs.length + 1);
+				result = propertyURNs.length;
+				urns[result] = urn;
+				// Publish the URN before the index so that anyone who has the
+				// index can look it up
+				propertyURNs = urns;
+				PROPERTY_INDICES.put(urn, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the index of a property URN without assigning one if the URN has
+	 * not been seen before.
+	 * 
+	 * @param urn
+	 *            The property URN.
+	 * @return The index of the URN, or -1 if it has not been given one.
+	 */
+	public static int findPropertyIndex(String urn) {
+		Integer result = PROPERTY_INDICES.get(urn);
+		return result == null ? -1 : result;
+	}
+
+	/**
+	 * Get the property URN that has been given an index.
+	 * 
+	 * @param index
+	 *            The index.
+	 * @return The URN, or null if no URN has that index.
+	 */
+	public static String getPropertyURN(int index) {
+		String[] urns = propertyURNs;
+		return index >= 0 && index < urns.length ? urns[index] : null;
+	}
+
 	@Override
 	public String toString() {
 		return getName();
@@ -290,6 +356,29 @@ public final class Registry {
 		return factory.makeMessage(urn, data);
 	}
 
+	/**
+	 * Get the URNs of all entities, properties and messages that this registry
+	 * or any of its parents recognise.
+	 * 
+	 * @return The known URNs in ascending order.
+	 */
+	public Set<String> getKnownURNs() {
+		Set<String> result = new TreeSet<String>();
+		if (parent != null) {
+			result.addAll(parent.getKnownURNs());
+		}
+		synchronized (entityFactories) {
+			result.addAll(entityFactories.keySet());
+		}
+		synchronized (propertyFactories) {
+			result.addAll(propertyFactories.keySet());
+		}
+		synchronized (messageFactories) {
+			result.addAll(messageFactories.keySet());
+		}
+		return result;
+	}
+
 	/**
 	 * Get the entity factory for a URN, delegating to the parent if required.
 	 * 
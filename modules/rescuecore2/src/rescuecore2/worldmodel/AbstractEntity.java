@@ -1,18 +1,22 @@
 package rescuecore2.worldmodel;
 
+import rescuecore2.registry.Registry;
+
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
 import static rescuecore2.misc.EncodingTools.readProperty;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
 import static rescuecore2.misc.EncodingTools.writeProperty;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    Abstract base class for concrete Entity implementations.
@@ -21,6 +25,8 @@ public abstract class AbstractEntity implements Entity {
     private final EntityID id;
     private final Set<EntityListener> listeners;
     private final Set<Property> properties;
+    // Properties indexed by Registry.getPropertyIndex
+    private Property[] slots;
 
     /**
        Construct an AbstractEntity with a set of properties.
@@ -30,6 +36,7 @@ public abstract class AbstractEntity implements Entity {
         this.id = id;
         listeners = new HashSet<EntityListener>();
         properties = new HashSet<Property>();
+        slots = new Property[0];
     }
 
     /**
@@ -58,7 +65,7 @@ public abstract class AbstractEntity implements Entity {
     public Entity copy() {
         Entity result = copyImpl();
         for (Property original : getProperties()) {
-            Property copy = result.getProperty(original.getURN());
+            Property copy = result.getProperty(original.getIndex());
             copy.takeValue(original);
         }
         return result;
@@ -77,7 +84,14 @@ public abstract class AbstractEntity implements Entity {
 
     @Override
     public Property getProperty(String propertyURN) {
-        return null;
+        // No property has a urn that has never been given an index
+        int index = Registry.findPropertyIndex(propertyURN);
+        return index < 0 ? null : getProperty(index);
+    }
+
+    @Override
+    public Property getProperty(int index) {
+        return index < slots.length ? slots[index] : null;
     }
 
     @Override
@@ -93,7 +107,7 @@ public abstract class AbstractEntity implements Entity {
                 ++count;
             }
         }
-        writeInt32(count, out);
+        writeWireInt32(count, out);
         for (Property next : getProperties()) {
             if (next.isDefined()) {
                 writeProperty(next, out);
@@ -119,13 +133,13 @@ public abstract class AbstractEntity implements Entity {
 
     @Override
     public void read(InputStream in) throws IOException {
-        int count = readInt32(in);
+        int count = readWireInt32(in);
         for (int i = 0; i < count; ++i) {
             Property prop = readProperty(in);
             if (prop == null) {
                 continue;
             }
-            Property existing = getProperty(prop.getURN());
+            Property existing = getProperty(prop.getIndex());
             existing.takeValue(prop);
         }
     }
@@ -201,6 +215,11 @@ public abstract class AbstractEntity implements Entity {
     protected void registerProperties(Property... props) {
         for (Property p : props) {
             properties.add(p);
+            int index = p.getIndex();
+            if (index >= slots.length) {
+                slots = Arrays.copyOf(slots, index + 1);
+            }
+            slots[index] = p;
             if (p instanceof AbstractProperty) {
                 ((AbstractProperty)p).setEntity(this);
             }
@@ -1,11 +1,14 @@
 package rescuecore2.worldmodel;
 
+import rescuecore2.registry.Registry;
+
 /**
    Abstract base class for Property implementations.
 */
 public abstract class AbstractProperty implements Property {
     private boolean defined;
     private final String urn;
+    private final int index;
     // CHECKSTYLE:OFF:IllegalType
     private AbstractEntity entity;
     // CHECKSTYLE:ON:IllegalType
@@ -33,6 +36,7 @@ public abstract class AbstractProperty implements Property {
      */
     protected AbstractProperty(String urn, boolean defined) {
         this.urn = urn;
+        this.index = Registry.getPropertyIndex(urn);
         this.defined = defined;
         entity = null;
     }
@@ -51,7 +55,10 @@ public abstract class AbstractProperty implements Property {
        @param other The AbstractProperty to copy.
      */
     protected AbstractProperty(AbstractProperty other) {
-        this(other.getURN(), other.isDefined());
+        this.urn = other.urn;
+        this.index = other.index;
+        this.defined = other.defined;
+        entity = null;
     }
 
     /**
@@ -88,6 +95,11 @@ public abstract class AbstractProperty implements Property {
         return urn;
     }
 
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
     /**
        Notify the entity that this property has changed.
        @param oldValue The old value of this property.
@@ -3,6 +3,7 @@ package rescuecore2.worldmodel;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Collection;
+import java.util.Map;
 
 import rescuecore2.registry.Registry;
 
@@ -75,7 +76,7 @@ public abstract class AbstractWorldModel<T extends Entity> implements WorldModel
             else {
                 Set<Property> props = existing.getProperties();
                 for (Property prop : props) {
-                    Property other = next.getProperty(prop.getURN());
+                    Property other = next.getProperty(prop.getIndex());
                     if (other.isDefined()) {
                         prop.takeValue(other);
                     }
@@ -86,7 +87,8 @@ public abstract class AbstractWorldModel<T extends Entity> implements WorldModel
 
     @Override
     public void merge(ChangeSet changeSet) {
-        for (EntityID e : changeSet.getChangedEntities()) {
+        for (Map.Entry<EntityID, Map<String, Property>> next : changeSet.getChangeMap().entrySet()) {
+            EntityID e = next.getKey();
             Entity existingEntity = getEntity(e);
             boolean add = false;
             if (existingEntity == null) {
@@ -98,8 +100,8 @@ public abstract class AbstractWorldModel<T extends Entity> implements WorldModel
                 }
                 add = true;
             }
-            for (Property p : changeSet.getChangedProperties(e)) {
-                Property existingProperty = existingEntity.getProperty(p.getURN());
+            for (Property p : next.getValue().values()) {
+                Property existingProperty = existingEntity.getProperty(p.getIndex());
                 existingProperty.takeValue(p);
             }
             if (add) {
@@ -16,12 +16,14 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
 import static rescuecore2.misc.EncodingTools.readProperty;
-import static rescuecore2.misc.EncodingTools.readString;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
+import static rescuecore2.misc.EncodingTools.readWireURN;
 import static rescuecore2.misc.EncodingTools.writeInt32;
 import static rescuecore2.misc.EncodingTools.writeProperty;
 import static rescuecore2.misc.EncodingTools.writeString;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
+import static rescuecore2.misc.EncodingTools.writeWireURN;
 
 /**
  * This class is used for accumulating changes to entities.
@@ -244,22 +246,22 @@ public class ChangeSet {
    */
   public void write( OutputStream out ) throws IOException {
     // Number of entity IDs
-    writeInt32( changes.size(), out );
+    writeWireInt32( changes.size(), out );
     for ( Map.Entry<EntityID, Map<String, Property>> next : changes
         .entrySet() ) {
       EntityID id = next.getKey();
       Collection<Property> props = next.getValue().values();
       // EntityID, URN, number of properties
-      writeInt32( id.getValue(), out );
-      writeString( getEntityURN( id ), out );
-      writeInt32( props.size(), out );
+      writeWireInt32( id.getValue(), out );
+      writeWireURN( getEntityURN( id ), out );
+      writeWireInt32( props.size(), out );
       for ( Property prop : props ) {
         writeProperty( prop, out );
       }
     }
-    writeInt32( deleted.size(), out );
+    writeWireInt32( deleted.size(), out );
     for ( EntityID next : deleted ) {
-      writeInt32( next.getValue(), out );
+      writeWireInt32( next.getValue(), out );
     }
   }
 
@@ -296,11 +298,11 @@ public class ChangeSet {
   public void read( InputStream in ) throws IOException {
     changes.clear();
     deleted.clear();
-    int entityCount = readInt32( in );
+    int entityCount = readWireInt32( in );
     for ( int i = 0; i < entityCount; ++i ) {
-      EntityID id = new EntityID( readInt32( in ) );
-      String urn = readString( in );
-      int propCount = readInt32( in );
+      EntityID id = new EntityID( readWireInt32( in ) );
+      String urn = readWireURN( in );
+      int propCount = readWireInt32( in );
       for ( int j = 0; j < propCount; ++j ) {
         Property p = readProperty( in );
         if ( p != null ) {
@@ -308,9 +310,9 @@ public class ChangeSet {
         }
       }
     }
-    int deletedCount = readInt32( in );
+    int deletedCount = readWireInt32( in );
     for ( int i = 0; i < deletedCount; ++i ) {
-      EntityID id = new EntityID( readInt32( in ) );
+      EntityID id = new EntityID( readWireInt32( in ) );
       deleted.add( id );
     }
   }
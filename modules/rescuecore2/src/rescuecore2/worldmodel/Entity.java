@@ -6,6 +6,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Set;
 
+import rescuecore2.registry.Registry;
+
 /**
    Interface for all objects that live in a WorldModel. Entities are made up of a fixed set of properties. The values of those properties may change but the set of properties may not.
  */
@@ -49,6 +51,16 @@ public interface Entity {
     */
     Property getProperty(String urn);
 
+    /**
+       Get a property by the index of its urn. AbstractEntity makes this faster than looking it up by urn; the default implementation looks up the urn.
+       @param index The index to look up. See {@link rescuecore2.registry.Registry#getPropertyIndex(String)}.
+       @return The property with the given index or null if no such property exists.
+    */
+    default Property getProperty(int index) {
+        String urn = Registry.getPropertyURN(index);
+        return urn == null ? null : getProperty(urn);
+    }
+
     /**
        Write this Entity to a stream.
        @param out The stream to write to.
@@ -5,6 +5,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import rescuecore2.registry.Registry;
+
 /**
    Interface for the properties that make up an entity.
  */
@@ -15,6 +17,14 @@ public interface Property {
      */
     String getURN();
 
+    /**
+       Get the index of this property's urn. Implementations should remember it rather than look it up each time.
+       @return The index assigned to the urn by {@link rescuecore2.registry.Registry#getPropertyIndex(String)}.
+     */
+    default int getIndex() {
+        return Registry.getPropertyIndex(getURN());
+    }
+
     /**
        Does this property have a defined value?
        @return True if a value has been set for this property, false otherwise.
@@ -8,8 +8,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    A boolean property.
@@ -102,7 +103,7 @@ public class BooleanProperty extends AbstractProperty {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(value ? 1 : 0, out);
+        writeWireInt32(value ? 1 : 0, out);
     }
 
     @Override
@@ -112,7 +113,7 @@ public class BooleanProperty extends AbstractProperty {
 
     @Override
     public void read(InputStream in) throws IOException {
-        setValue(readInt32(in) != 0);
+        setValue(readWireInt32(in) != 0);
     }
 
     @Override
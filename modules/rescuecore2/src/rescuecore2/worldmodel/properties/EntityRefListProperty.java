@@ -12,8 +12,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
  * A property that refers to a list of entity IDs.
@@ -169,9 +170,9 @@ public class EntityRefListProperty extends AbstractProperty {
 
   @Override
   public void write( OutputStream out ) throws IOException {
-    writeInt32( ids.size(), out );
+    writeWireInt32( ids.size(), out );
     for ( EntityID next : ids ) {
-      writeInt32( next.getValue(), out );
+      writeWireInt32( next.getValue(), out );
     }
   }
 
@@ -186,10 +187,10 @@ public class EntityRefListProperty extends AbstractProperty {
 
   @Override
   public void read( InputStream in ) throws IOException {
-    int count = readInt32( in );
+    int count = readWireInt32( in );
     List<EntityID> newIDs = new ArrayList<EntityID>( count );
     for ( int i = 0; i < count; ++i ) {
-      newIDs.add( new EntityID( readInt32( in ) ) );
+      newIDs.add( new EntityID( readWireInt32( in ) ) );
     }
     setValue( newIDs );
   }
@@ -9,8 +9,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    A property that refers to an entity ID.
@@ -103,7 +104,7 @@ public class EntityRefProperty extends AbstractProperty {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(value.getValue(), out);
+        writeWireInt32(value.getValue(), out);
     }
 
     @Override
@@ -113,7 +114,7 @@ public class EntityRefProperty extends AbstractProperty {
 
     @Override
     public void read(InputStream in) throws IOException {
-        setValue(new EntityID(readInt32(in)));
+        setValue(new EntityID(readWireInt32(in)));
     }
 
     @Override
@@ -11,8 +11,9 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    An integer-array property.
@@ -131,9 +132,9 @@ public class IntArrayProperty extends AbstractProperty {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(data.size(), out);
+        writeWireInt32(data.size(), out);
         for (Integer next : data) {
-            writeInt32(next.intValue(), out);
+            writeWireInt32(next.intValue(), out);
         }
     }
 
@@ -147,10 +148,10 @@ public class IntArrayProperty extends AbstractProperty {
 
     @Override
     public void read(InputStream in) throws IOException {
-        int size = readInt32(in);
+        int size = readWireInt32(in);
         int[] result = new int[size];
         for (int i = 0; i < size; ++i) {
-            result[i] = readInt32(in);
+            result[i] = readWireInt32(in);
         }
         setValue(result);
     }
@@ -8,8 +8,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    A single integer property.
@@ -102,7 +103,7 @@ public class IntProperty extends AbstractProperty {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(value, out);
+        writeWireInt32(value, out);
     }
 
     @Override
@@ -112,7 +113,7 @@ public class IntProperty extends AbstractProperty {
 
     @Override
     public void read(InputStream in) throws IOException {
-        setValue(readInt32(in));
+        setValue(readWireInt32(in));
     }
 
     @Override
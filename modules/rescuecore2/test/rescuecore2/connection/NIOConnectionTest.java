@@ -0,0 +1,109 @@
+package rescuecore2.connection;
+
+import static org.junit.Assert.fail;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import rescuecore2.messages.Message;
+import rescuecore2.misc.Pair;
+
+public class NIOConnectionTest extends ConnectionTestCommon {
+    private static final int SERVER_PORT = 19244;
+
+    private ServerSocketChannel server;
+
+    @Before
+    @Override
+    public void setup() throws IOException {
+	server = ServerSocketChannel.open();
+	server.socket().setReuseAddress(true);
+	server.socket().bind(new InetSocketAddress(SERVER_PORT));
+	super.setup();
+    }
+
+    @After
+    public void shutdown() throws IOException {
+	server.close();
+    }
+
+    @Override
+    protected Pair<Connection, Connection> makeConnectionPair() throws IOException {
+	Connection client = new NIOConnection("localhost", SERVER_PORT);
+	Connection server = new NIOConnection(assertIncomingConnection());
+	return new Pair<Connection, Connection>(client, server);
+    }
+
+    @Test
+    public void testConnectToPort() throws IOException {
+	NIOConnection c = new NIOConnection(SERVER_PORT);
+	assertIncomingConnection();
+    }
+
+    @Test
+    public void testTCPConnectionInterop() throws IOException, InterruptedException, ConnectionException {
+	Connection nio = new NIOConnection("localhost", SERVER_PORT);
+	Connection tcp = new TCPConnection(assertIncomingConnection().socket());
+	nio.setRegistry(registry);
+	tcp.setRegistry(registry);
+	TestConnectionListener nioListener = new TestConnectionListener();
+	TestConnectionListener tcpListener = new TestConnectionListener();
+	nio.addConnectionListener(nioListener);
+	tcp.addConnectionListener(tcpListener);
+	nio.startup();
+	tcp.startup();
+	Message m = new TestMessage("Test message 1");
+	nio.sendMessage(m);
+	tcp.sendMessage(m);
+	tcpListener.waitForMessages(1, TIMEOUT);
+	nioListener.waitForMessages(1, TIMEOUT);
+	assertEquals(1, tcpListener.getMessageCount());
+	assertEquals(1, nioListener.getMessageCount());
+	nio.shutdown();
+	tcp.shutdown();
+    }
+
+    @Test
+    public void testOversizedFrameRejected() throws IOException, InterruptedException {
+	assertFrameRejected(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testNegativeFrameRejected() throws IOException, InterruptedException {
+	assertFrameRejected(-1);
+    }
+
+    private void assertFrameRejected(int size) throws IOException, InterruptedException {
+	SocketChannel raw = SocketChannel.open(new InetSocketAddress("localhost", SERVER_PORT));
+	Connection nio = new NIOConnection(assertIncomingConnection());
+	nio.setRegistry(registry);
+	nio.startup();
+	ByteBuffer header = ByteBuffer.allocate(4);
+	header.putInt(size);
+	header.flip();
+	raw.write(header);
+	long end = System.currentTimeMillis() + TIMEOUT;
+	while (nio.isAlive() && System.currentTimeMillis() < end) {
+	    Thread.sleep(10);
+	}
+	assertFalse(nio.isAlive());
+	raw.close();
+    }
+
+    private SocketChannel assertIncomingConnection() throws IOException {
+	SocketChannel serverSocket = server.accept();
+	if (serverSocket == null) {
+	    fail("No connection made");
+	}
+	return serverSocket;
+    }
+}
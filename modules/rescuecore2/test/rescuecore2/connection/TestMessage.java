@@ -6,6 +6,7 @@ import static rescuecore2.misc.EncodingTools.readInt32;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.io.DataOutput;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.IOException;
@@ -73,6 +74,19 @@ public class TestMessage implements Message {
 	}
     }
 
+    @Override
+    public void write(DataOutput out) throws IOException {
+	writeInt32(data.length, out);
+	for (int next : data) {
+	    writeInt32(next, out);
+	}
+    }
+
+    @Override
+    public int getBytesLength() {
+	return 4 * (data.length + 1);
+    }
+
     @Override
     public void read(InputStream in) throws IOException {
 	data = new int[readInt32(in)];
@@ -0,0 +1,190 @@
+package rescuecore2.connection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import rescuecore2.config.Config;
+import rescuecore2.messages.Message;
+import rescuecore2.messages.MessageComponent;
+import rescuecore2.messages.control.KAConnectOK;
+import rescuecore2.messages.control.KSUpdate;
+import rescuecore2.misc.EncodingTools;
+import rescuecore2.misc.URNDictionary;
+import rescuecore2.registry.PropertyFactory;
+import rescuecore2.registry.Registry;
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.Property;
+import rescuecore2.worldmodel.properties.EntityRefListProperty;
+import rescuecore2.worldmodel.properties.IntProperty;
+
+public class WireProtocolTest {
+    private static final String ENTITY_URN = "urn:test:entity";
+    private static final String INT_URN = "urn:test:int";
+    private static final String LIST_URN = "urn:test:list";
+    private static final int DELAY = 1000;
+
+    private Registry registry;
+    private Registry oldRegistry;
+    private URNDictionary dictionary;
+
+    @Before
+    public void setup() {
+        registry = new Registry("Wire protocol test", Registry.SYSTEM_REGISTRY);
+        registry.registerPropertyFactory(new PropertyFactory() {
+                @Override
+                public Property makeProperty(String urn) {
+                    return INT_URN.equals(urn) ? new IntProperty(urn) : new EntityRefListProperty(urn);
+                }
+
+                @Override
+                public String[] getKnownPropertyURNs() {
+                    return new String[] {INT_URN, LIST_URN};
+                }
+            });
+        oldRegistry = Registry.getCurrentRegistry();
+        Registry.setCurrentRegistry(registry);
+        // Leave LIST_URN out so that it has to be written in full
+        ArrayList<String> urns = new ArrayList<String>(registry.getKnownURNs());
+        urns.remove(LIST_URN);
+        dictionary = new URNDictionary(urns);
+    }
+
+    @After
+    public void cleanup() {
+        EncodingTools.setWireDictionary(null);
+        Registry.setCurrentRegistry(oldRegistry);
+    }
+
+    @Test
+    public void testWireInts() throws IOException {
+        EncodingTools.setWireDictionary(dictionary);
+        int[] values = {0, 1, -1, 63, -64, 64, 127, 128, 1000000, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int next : values) {
+            EncodingTools.writeWireInt32(next, out);
+        }
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        for (int next : values) {
+            assertEquals(next, EncodingTools.readWireInt32(in));
+        }
+        assertEquals(0, in.available());
+        out.reset();
+        EncodingTools.writeWireInt32(-64, out);
+        assertEquals(1, out.size());
+    }
+
+    @Test
+    public void testUpdateRoundTrip() throws IOException {
+        ChangeSet changes = makeChanges();
+        KSUpdate update = new KSUpdate(3, 17, changes);
+        byte[] v1 = encode(update);
+        EncodingTools.setWireDictionary(dictionary);
+        byte[] v2 = encode(update);
+        assertTrue(v2.length < v1.length);
+        KSUpdate decoded = (KSUpdate)decode(v2);
+        assertEquals(3, decoded.getTargetID());
+        assertEquals(17, decoded.getTime());
+        ChangeSet result = decoded.getChangeSet();
+        assertEquals(changes.getChangedEntities(), result.getChangedEntities());
+        assertEquals(changes.getDeletedEntities(), result.getDeletedEntities());
+        for (EntityID next : changes.getChangedEntities()) {
+            assertEquals(ENTITY_URN, result.getEntityURN(next));
+            assertEquals(((IntProperty)changes.getChangedProperty(next, INT_URN)).getValue(), ((IntProperty)result.getChangedProperty(next, INT_URN)).getValue());
+            assertEquals(((EntityRefListProperty)changes.getChangedProperty(next, LIST_URN)).getValue(), ((EntityRefListProperty)result.getChangedProperty(next, LIST_URN)).getValue());
+        }
+        // Version 1 is unchanged
+        EncodingTools.setWireDictionary(null);
+        assertArrayEquals(v1, encode(decode(v1)));
+    }
+
+    @Test
+    public void testConnectOKWithoutDictionary() throws IOException {
+        KAConnectOK ok = new KAConnectOK(1, new EntityID(2), Collections.<Entity>emptyList(), new Config());
+        assertNull(((KAConnectOK)decode(encode(ok))).getURNDictionary());
+        ok.setURNDictionary(dictionary);
+        assertEquals(dictionary, ((KAConnectOK)decode(encode(ok))).getURNDictionary());
+        // An old kernel does not send the dictionary component at all
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (MessageComponent next : ok.getComponents().subList(0, ok.getComponents().size() - 1)) {
+            next.write(content);
+        }
+        KAConnectOK old = new KAConnectOK(new ByteArrayInputStream(content.toByteArray()));
+        assertEquals(2, old.getAgentID().getValue());
+        assertNull(old.getURNDictionary());
+    }
+
+    @Test
+    public void testConnectionSwitch() throws Exception {
+        PipedInputStream serverIn = new PipedInputStream();
+        PipedInputStream clientIn = new PipedInputStream();
+        Connection client = new StreamConnection(clientIn, new PipedOutputStream(serverIn));
+        Connection server = new StreamConnection(serverIn, new PipedOutputStream(clientIn));
+        client.setRegistry(registry);
+        server.setRegistry(registry);
+        TestConnectionListener clientListener = new TestConnectionListener();
+        TestConnectionListener serverListener = new TestConnectionListener();
+        client.addConnectionListener(clientListener);
+        server.addConnectionListener(serverListener);
+        client.startup();
+        server.startup();
+        try {
+            KAConnectOK ok = new KAConnectOK(1, new EntityID(2), Collections.<Entity>emptyList(), new Config());
+            ok.setURNDictionary(dictionary);
+            ChangeSet changes = makeChanges();
+            server.sendMessages(Arrays.asList(ok, new KSUpdate(4, 5, changes)));
+            assertEquals(dictionary, server.getURNDictionary());
+            clientListener.waitForMessages(2, DELAY);
+            assertEquals(2, clientListener.getMessageCount());
+            assertEquals(dictionary, client.getURNDictionary());
+            KSUpdate update = (KSUpdate)clientListener.getMessage(1);
+            assertEquals(changes.getChangedEntities(), update.getChangeSet().getChangedEntities());
+            client.sendMessage(new KSUpdate(6, 7, changes));
+            serverListener.waitForMessages(1, DELAY);
+            assertEquals(1, serverListener.getMessageCount());
+            assertEquals(changes.getDeletedEntities(), ((KSUpdate)serverListener.getMessage(0)).getChangeSet().getDeletedEntities());
+        }
+        finally {
+            client.shutdown();
+            server.shutdown();
+        }
+        assertNull(EncodingTools.getWireDictionary());
+    }
+
+    private ChangeSet makeChanges() {
+        ChangeSet result = new ChangeSet();
+        for (int i = 0; i < 10; ++i) {
+            EntityID id = new EntityID(1000 + i);
+            result.addChange(id, ENTITY_URN, new IntProperty(INT_URN, i * 37 - 100));
+            result.addChange(id, ENTITY_URN, new EntityRefListProperty(LIST_URN, Arrays.asList(new EntityID(i), new EntityID(5000 + i))));
+        }
+        result.entityDeleted(new EntityID(77));
+        return result;
+    }
+
+    private byte[] encode(Message m) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncodingTools.writeMessage(m, out);
+        return out.toByteArray();
+    }
+
+    private Message decode(byte[] b) throws IOException {
+        return EncodingTools.readMessage(new ByteArrayInputStream(b));
+    }
+}
@@ -0,0 +1,67 @@
+package rescuecore2.log;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import rescuecore2.messages.Command;
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.EntityID;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+public class AsyncLogWriterTest {
+    private static final int RECORDS = 1000;
+
+    @Test
+    public void testSameBytesAsSynchronousWriter() throws LogException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        LogWriter sync = new StreamLogWriter(expected);
+        // A small buffer makes the writer block and wrap around
+        LogWriter async = new AsyncLogWriter(new StreamLogWriter(actual), 7);
+        write(sync);
+        write(async);
+        sync.close();
+        async.close();
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void testFlush() throws LogException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        LogWriter sync = new StreamLogWriter(expected);
+        AsyncLogWriter async = new AsyncLogWriter(new StreamLogWriter(actual));
+        write(sync);
+        write(async);
+        async.flush();
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        async.close();
+    }
+
+    @Test
+    public void testWriteAfterClose() {
+        AsyncLogWriter async = new AsyncLogWriter(new StreamLogWriter(new ByteArrayOutputStream()));
+        async.close();
+        try {
+            async.writeRecord(new EndLogRecord());
+            fail("Expected LogException");
+        }
+        catch (LogException e) {
+            // Expected
+        }
+    }
+
+    private void write(LogWriter writer) throws LogException {
+        writer.writeRecord(new StartLogRecord());
+        for (int i = 0; i < RECORDS; ++i) {
+            ChangeSet changes = new ChangeSet();
+            changes.entityDeleted(new EntityID(i));
+            writer.writeRecord(new UpdatesRecord(i, changes));
+            writer.writeRecord(new CommandsRecord(i, new ArrayList<Command>()));
+        }
+        writer.writeRecord(new EndLogRecord());
+    }
+}
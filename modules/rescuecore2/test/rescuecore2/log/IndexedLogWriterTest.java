@@ -0,0 +1,241 @@
+package rescuecore2.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import rescuecore2.config.Config;
+import rescuecore2.messages.Command;
+import rescuecore2.registry.EntityFactory;
+import rescuecore2.registry.PropertyFactory;
+import rescuecore2.registry.Registry;
+import rescuecore2.worldmodel.AbstractEntity;
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.DefaultWorldModel;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.Property;
+import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.worldmodel.properties.IntProperty;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+
+public class IndexedLogWriterTest {
+    private static final int TIMESTEPS = 20;
+    private static final int AGENTS = 5;
+    private static final String COUNTER_URN = "test:entity:counter";
+    private static final String VALUE_URN = "test:property:value";
+    private static final EntityID COUNTER_ID = new EntityID(1);
+    private static final CounterFactory COUNTER_FACTORY = new CounterFactory();
+
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("indexed", ".log");
+    }
+
+    @After
+    public void cleanup() {
+        file.delete();
+    }
+
+    @Test
+    public void testReadIndexed() throws IOException, LogException {
+        write(new IndexedLogWriter(file), true);
+        check(new FileLogReader(file, new Registry()));
+    }
+
+    @Test
+    public void testReadLegacy() throws IOException, LogException {
+        write(new FileLogWriter(file), true);
+        check(new FileLogReader(file, new Registry()));
+    }
+
+    @Test
+    public void testReadWithoutIndex() throws IOException, LogException {
+        write(new IndexedLogWriter(file), true);
+        // Chop off the trailer so the reader has to scan the blocks
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 1);
+        raf.close();
+        check(new FileLogReader(file, new Registry()));
+    }
+
+    @Test
+    public void testWorldModelWithSmallCache() throws IOException, LogException {
+        writeCounter(new IndexedLogWriter(file));
+        Registry registry = new Registry();
+        registry.registerEntityFactory(COUNTER_FACTORY);
+        registry.registerPropertyFactory(COUNTER_FACTORY);
+        // Room for two world models: the initial conditions and one more
+        LogReader reader = new FileLogReader(file, registry, 3, 1);
+        // Seek without reading anything first, then jump around so that frames are evicted
+        assertCounter(reader, TIMESTEPS);
+        assertCounter(reader, 5);
+        assertCounter(reader, TIMESTEPS - 1);
+        assertCounter(reader, 5);
+        for (int time = TIMESTEPS; time >= 0; --time) {
+            assertCounter(reader, time);
+        }
+        for (int time = 0; time <= TIMESTEPS; ++time) {
+            assertCounter(reader, time);
+        }
+        reader = new FileLogReader(file, registry, 3, FileLogReader.DEFAULT_CACHE_SIZE);
+        assertCounter(reader, 7);
+        assertCounter(reader, TIMESTEPS);
+        assertCounter(reader, 0);
+    }
+
+    @Test
+    public void testKeyFramesPlacedLazily() throws IOException, LogException {
+        writeCounter(new IndexedLogWriter(file));
+        Registry registry = new Registry();
+        registry.registerEntityFactory(COUNTER_FACTORY);
+        registry.registerPropertyFactory(COUNTER_FACTORY);
+        FileLogReader reader = new FileLogReader(file, registry, 3, FileLogReader.DEFAULT_CACHE_SIZE);
+        // Only the initial conditions until a world model is read
+        assertEquals(1, reader.getKeyFrameCount());
+        assertCounter(reader, 2);
+        assertEquals(1, reader.getKeyFrameCount());
+        // Frames at 3 and 6
+        assertCounter(reader, 7);
+        assertEquals(3, reader.getKeyFrameCount());
+        assertCounter(reader, 4);
+        assertEquals(3, reader.getKeyFrameCount());
+        assertCounter(reader, TIMESTEPS);
+        assertEquals(TIMESTEPS / 3 + 1, reader.getKeyFrameCount());
+    }
+
+    @Test
+    public void testReadTruncated() throws IOException, LogException {
+        IndexedLogWriter writer = new IndexedLogWriter(file);
+        write(writer, false);
+        writer.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        // Lose the index and about half of the blocks
+        raf.seek(raf.length() - IndexedLogFormat.TRAILER_SIZE);
+        raf.setLength(raf.readLong() / 2);
+        raf.close();
+        LogReader reader = new FileLogReader(file, new Registry());
+        assertEquals(0, reader.getWorldModel(0).getAllEntities().size());
+        assertTrue(reader.getMaxTimestep() < TIMESTEPS);
+        assertNull(reader.getUpdates(TIMESTEPS));
+    }
+
+    private void write(LogWriter writer, boolean close) throws LogException {
+        writer.writeRecord(new StartLogRecord());
+        writer.writeRecord(new InitialConditionsRecord(DefaultWorldModel.create()));
+        Config config = new Config();
+        config.setValue("test.key", "value");
+        writer.writeRecord(new ConfigRecord(config));
+        for (int time = 1; time <= TIMESTEPS; ++time) {
+            for (int agent = 1; agent <= AGENTS; ++agent) {
+                ChangeSet visible = new ChangeSet();
+                visible.entityDeleted(new EntityID(time * 100 + agent));
+                writer.writeRecord(new PerceptionRecord(time, new EntityID(agent), visible, new ArrayList<Command>()));
+            }
+            writer.writeRecord(new CommandsRecord(time, new ArrayList<Command>()));
+            ChangeSet updates = new ChangeSet();
+            updates.entityDeleted(new EntityID(time));
+            writer.writeRecord(new UpdatesRecord(time, updates));
+        }
+        if (close) {
+            writer.writeRecord(new EndLogRecord());
+            writer.close();
+        }
+    }
+
+    // Log a single Counter entity whose value is the timestep
+    private void writeCounter(LogWriter writer) throws LogException {
+        writer.writeRecord(new StartLogRecord());
+        DefaultWorldModel<Entity> world = DefaultWorldModel.create();
+        world.addEntity(new Counter(COUNTER_ID));
+        writer.writeRecord(new InitialConditionsRecord(world));
+        writer.writeRecord(new ConfigRecord(new Config()));
+        for (int time = 1; time <= TIMESTEPS; ++time) {
+            writer.writeRecord(new CommandsRecord(time, new ArrayList<Command>()));
+            ChangeSet updates = new ChangeSet();
+            updates.addChange(COUNTER_ID, COUNTER_URN, new IntProperty(VALUE_URN, time));
+            writer.writeRecord(new UpdatesRecord(time, updates));
+        }
+        writer.writeRecord(new EndLogRecord());
+        writer.close();
+    }
+
+    private void assertCounter(LogReader reader, int time) throws LogException {
+        WorldModel<? extends Entity> world = reader.getWorldModel(time);
+        assertEquals(1, world.getAllEntities().size());
+        assertEquals(time, ((IntProperty)world.getEntity(COUNTER_ID).getProperty(VALUE_URN)).getValue().intValue());
+    }
+
+    private void check(LogReader reader) throws LogException {
+        assertEquals(TIMESTEPS, reader.getMaxTimestep());
+        assertEquals("value", reader.getConfig().getValue("test.key"));
+        assertEquals(0, reader.getWorldModel(0).getAllEntities().size());
+        // Read out of order to make sure blocks are found correctly
+        for (int time = TIMESTEPS; time >= 1; --time) {
+            assertEquals(AGENTS, reader.getEntitiesWithUpdates(time).size());
+            for (int agent = AGENTS; agent >= 1; --agent) {
+                PerceptionRecord perception = reader.getPerception(time, new EntityID(agent));
+                assertEquals(time, perception.getTime());
+                assertEquals(new EntityID(agent), perception.getEntityID());
+                assertEquals(Collections.singleton(new EntityID(time * 100 + agent)), new HashSet<EntityID>(perception.getChangeSet().getDeletedEntities()));
+            }
+            assertEquals(time, reader.getCommands(time).getTime());
+            UpdatesRecord updates = reader.getUpdates(time);
+            assertEquals(time, updates.getTime());
+            assertEquals(Collections.singleton(new EntityID(time)), new HashSet<EntityID>(updates.getChangeSet().getDeletedEntities()));
+        }
+    }
+
+    private static final class Counter extends AbstractEntity {
+        private IntProperty value;
+
+        Counter(EntityID id) {
+            super(id);
+            value = new IntProperty(VALUE_URN, 0);
+            registerProperties(value);
+        }
+
+        @Override
+        public String getURN() {
+            return COUNTER_URN;
+        }
+
+        @Override
+        protected Entity copyImpl() {
+            return new Counter(getID());
+        }
+    }
+
+    private static final class CounterFactory implements EntityFactory, PropertyFactory {
+        @Override
+        public Entity makeEntity(String urn, EntityID id) {
+            return new Counter(id);
+        }
+
+        @Override
+        public String[] getKnownEntityURNs() {
+            return new String[] {COUNTER_URN};
+        }
+
+        @Override
+        public Property makeProperty(String urn) {
+            return new IntProperty(VALUE_URN);
+        }
+
+        @Override
+        public String[] getKnownPropertyURNs() {
+            return new String[] {VALUE_URN};
+        }
+    }
+}
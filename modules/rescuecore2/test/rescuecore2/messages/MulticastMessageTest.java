@@ -0,0 +1,73 @@
+package rescuecore2.messages;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import rescuecore2.messages.control.KSCommands;
+import rescuecore2.messages.control.KSUpdate;
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.EntityID;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static rescuecore2.misc.EncodingTools.writeMessage;
+
+public class MulticastMessageTest {
+    @Test
+    public void testSameBytesAsUpdate() throws IOException {
+        ChangeSet changes = new ChangeSet();
+        changes.entityDeleted(new EntityID(12));
+        changes.entityDeleted(new EntityID(34));
+        MulticastMessage multicast = new MulticastMessage(new KSUpdate(0, 5, changes));
+        assertArrayEquals(encode(new KSUpdate(1, 5, changes)), encode(multicast.forTarget(1)));
+        assertArrayEquals(encode(new KSUpdate(2, 5, changes)), encode(multicast.forTarget(2)));
+    }
+
+    @Test
+    public void testSameBytesAsCommands() throws IOException {
+        MulticastMessage multicast = new MulticastMessage(new KSCommands(0, 7, new ArrayList<Command>()));
+        assertArrayEquals(encode(new KSCommands(3, 7, new ArrayList<Command>())), encode(multicast.forTarget(3)));
+    }
+
+    @Test
+    public void testBytesLength() throws IOException {
+        KSUpdate update = new KSUpdate(9, 1, new ChangeSet());
+        Message m = new MulticastMessage(update).forTarget(9);
+        assertEquals(update.getBytesLength(), m.getBytesLength());
+        assertEquals(update.getURN(), m.getURN());
+    }
+
+    @Test
+    public void testReadRoundTrip() throws IOException {
+        ChangeSet changes = new ChangeSet();
+        changes.entityDeleted(new EntityID(56));
+        MulticastMessage multicast = new MulticastMessage(new KSUpdate(0, 8, changes));
+        Message m = multicast.forTarget(4);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        m.write(content);
+        byte[] expected = content.toByteArray();
+        Message other = multicast.forTarget(5);
+        other.read(new ByteArrayInputStream(expected));
+        content.reset();
+        other.write(content);
+        assertArrayEquals(expected, content.toByteArray());
+        assertEquals(encode(new KSUpdate(4, 8, changes)).length, encode(other).length);
+        // The other targets are not affected
+        assertArrayEquals(encode(new KSUpdate(6, 8, changes)), encode(multicast.forTarget(6)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoTargetID() {
+        new MulticastMessage(new AbstractMessage("urn:test") {});
+    }
+
+    private byte[] encode(Message m) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeMessage(m, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,54 @@
+package rescuecore2.worldmodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import rescuecore2.registry.Registry;
+import rescuecore2.worldmodel.properties.IntProperty;
+
+public class PropertyIndexTest {
+    private static final String VALUE_URN = "test:property-index:value";
+    private static final String UNKNOWN_URN = "test:property-index:unknown";
+
+    @Test
+    public void testLookup() {
+        TestEntity e = new TestEntity();
+        int index = Registry.findPropertyIndex(VALUE_URN);
+        assertEquals(index, e.value.getIndex());
+        assertEquals(VALUE_URN, Registry.getPropertyURN(index));
+        assertSame(e.value, e.getProperty(index));
+        assertSame(e.value, e.getProperty(VALUE_URN));
+    }
+
+    @Test
+    public void testUnknownURN() {
+        TestEntity e = new TestEntity();
+        assertNull(e.getProperty(UNKNOWN_URN));
+        // Looking up a urn that no property has does not give it an index
+        assertEquals(-1, Registry.findPropertyIndex(UNKNOWN_URN));
+        assertNull(Registry.getPropertyURN(-1));
+    }
+
+    private static class TestEntity extends AbstractEntity {
+        private final IntProperty value;
+
+        TestEntity() {
+            super(new EntityID(1));
+            value = new IntProperty(VALUE_URN, 1);
+            registerProperties(value);
+        }
+
+        @Override
+        protected Entity copyImpl() {
+            return new TestEntity();
+        }
+
+        @Override
+        public String getURN() {
+            return "test:property-index:entity";
+        }
+    }
+}
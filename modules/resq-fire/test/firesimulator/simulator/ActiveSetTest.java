@@ -0,0 +1,127 @@
+package firesimulator.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import firesimulator.util.Configuration;
+import firesimulator.world.Building;
+import firesimulator.world.World;
+
+import rescuecore2.config.Config;
+import rescuecore2.config.NoSuchConfigOptionException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+public class ActiveSetTest {
+    private static final String KERNEL_CONFIG = "boot/config/kernel.cfg";
+    // A town of SIZE by SIZE buildings with a fire in two places, so that most of it stays ambient for a while
+    private static final int SIZE = 16;
+    private static final int SPACING = 25000;
+    private static final int MIN_WIDTH = 10000;
+    private static final int MAX_EXTRA = 10000;
+    private static final int MAX_FLOORS = 3;
+    private static final int CODES = 3;
+    private static final long SEED = 5;
+    private static final int TIMESTEPS = 40;
+    private static final int WATER_TIME = 15;
+    private static final int WATER = 3000;
+    private static final double HOT = 100;
+
+    private File rays;
+
+    @Before
+    public void setup() throws Exception {
+        Config config = new Config(new File(KERNEL_CONFIG));
+        Configuration c = new Configuration();
+        c.initialize();
+        for (String next : c.getPropertyNames()) {
+            try {
+                Configuration.setProperty(next, config.getValue(next), true);
+            }
+            catch (NoSuchConfigOptionException e) {
+                // Keep the default
+            }
+        }
+        rays = File.createTempFile("rays", "");
+        rays.delete();
+        rays.mkdir();
+        Configuration.setProperty("resq-fire.rays.dir", rays.getPath(), true);
+        Configuration.setProperty("resq-fire.radiation.threads", "1", true);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        for (File next : rays.listFiles()) {
+            next.delete();
+        }
+        rays.delete();
+    }
+
+    @Test
+    public void testZeroThresholdMatchesFullUpdate() {
+        Building[] full = run(false, "0");
+        Building[] active = run(true, "0");
+        int warm = 0;
+        for (int i = 0; i < full.length; ++i) {
+            assertEquals("Energy of building " + full[i].getID(), Double.doubleToLongBits(full[i].getEnergy()), Double.doubleToLongBits(active[i].getEnergy()));
+            assertEquals(full[i].getWaterQuantity(), active[i].getWaterQuantity());
+            assertEquals(full[i].getFieryness(), active[i].getFieryness());
+            if (full[i].getTemperature() > 1) {
+                ++warm;
+            }
+        }
+        // Make sure heat reached more than the buildings that were set alight
+        assertTrue(warm > 2);
+    }
+
+    private Building[] run(boolean activeSet, String threshold) {
+        Configuration.setProperty("resq-fire.active_set", String.valueOf(activeSet), true);
+        Configuration.setProperty("resq-fire.active_set.threshold", threshold, true);
+        World world = new World();
+        Random random = new Random(SEED);
+        Building[] buildings = new Building[SIZE * SIZE];
+        for (int i = 0; i < buildings.length; ++i) {
+            int x = (i / SIZE) * SPACING + random.nextInt(MAX_EXTRA / 2);
+            int y = (i % SIZE) * SPACING + random.nextInt(MAX_EXTRA / 2);
+            int width = MIN_WIDTH + random.nextInt(MAX_EXTRA);
+            int height = MIN_WIDTH + random.nextInt(MAX_EXTRA);
+            Building b = new Building(i + 1);
+            b.setApexes(new int[] {x, y, x + width, y, x + width, y + height, x, y + height});
+            b.setFloors(1 + random.nextInt(MAX_FLOORS));
+            b.setCode(random.nextInt(CODES));
+            b.setBuildingAreaGround(width / 1000f * height / 1000f);
+            b.setBuildingAreaTotal(width / 1000f * height / 1000f);
+            world.putObject(b);
+            buildings[i] = b;
+        }
+        Simulator simulator = new Simulator(world);
+        simulator.initialize();
+        buildings[0].ignite();
+        buildings[buildings.length / 2 + SIZE / 2].ignite();
+        int leastActive = buildings.length;
+        for (int time = 1; time <= TIMESTEPS; ++time) {
+            if (time == WATER_TIME) {
+                // Put water on some hot buildings so that cooling is covered too
+                for (int i = 0; i < buildings.length; i += 2) {
+                    if (buildings[i].getTemperature() > HOT) {
+                        buildings[i].setWaterQuantity(buildings[i].getWaterQuantity() + WATER);
+                    }
+                }
+            }
+            world.setTime(time);
+            simulator.step(time);
+            leastActive = Math.min(leastActive, simulator.getActiveCount());
+        }
+        if (activeSet) {
+            // Otherwise the comparison proves nothing
+            assertTrue(leastActive < buildings.length / 2);
+        }
+        return buildings;
+    }
+}
@@ -0,0 +1,195 @@
+package firesimulator.simulator;
+
+import firesimulator.util.Configuration;
+import firesimulator.world.Building;
+import firesimulator.world.World;
+
+import gis2.GMLWorldModelCreator;
+
+import rescuecore2.config.Config;
+import rescuecore2.config.NoSuchConfigOptionException;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.StandardWorldModel;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Benchmark for the radiation exchange of the fire simulator. Two copies of a
+ * map are set on fire in the same places, one exchanging radiation with the
+ * sequential scatter and one with the parallel gather. Both copies are
+ * stepped together and their building energies are compared after every
+ * step. The radiation stage is then timed on its own from the same state.
+ * <p>
+ * Usage: RadiationBenchmark &lt;kernel config&gt; &lt;map directory&gt;
+ * [&lt;threads&gt;]
+ */
+public final class RadiationBenchmark {
+    private static final int FIRE_SPACING = 25;
+    private static final int TIMESTEPS = 50;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 200;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private RadiationBenchmark() {}
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args
+     *            The kernel config file, a map directory and optionally the
+     *            number of threads for the gather. The default is one per
+     *            processor.
+     * @throws Exception
+     *             If something goes wrong.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: RadiationBenchmark <kernel config> <map directory> [<threads>]");
+            return;
+        }
+        Config config = new Config(new File(args[0]));
+        config.setValue("gis.map.dir", args[1]);
+        String threads = args.length > 2 ? args[2] : "0";
+        StandardWorldModel model = (StandardWorldModel)new GMLWorldModelCreator().buildWorldModel(config);
+        Configuration c = new Configuration();
+        c.initialize();
+        for (String next : c.getPropertyNames()) {
+            try {
+                Configuration.setProperty(next, config.getValue(next), true);
+            }
+            catch (NoSuchConfigOptionException e) {
+                // Keep the default
+            }
+        }
+        Configuration.setProperty("resq-fire.active_set", "false", true);
+
+        Configuration.setProperty("resq-fire.radiation.threads", "1", true);
+        World scatterWorld = createWorld(model);
+        Simulator scatter = new Simulator(scatterWorld);
+        scatter.initialize();
+        Configuration.setProperty("resq-fire.radiation.threads", threads, true);
+        World gatherWorld = createWorld(model);
+        Simulator gather = new Simulator(gatherWorld);
+        gather.initialize();
+        Building[] scatterBuildings = sortedBuildings(scatterWorld);
+        Building[] gatherBuildings = sortedBuildings(gatherWorld);
+        for (int i = 0; i < scatterBuildings.length; i += FIRE_SPACING) {
+            scatterBuildings[i].ignite();
+            gatherBuildings[i].ignite();
+        }
+        System.out.println(args[1] + ": " + scatterBuildings.length + " buildings, " + countConnections(scatterBuildings) + " connections, gather threads " + threads);
+
+        long scatterTime = 0;
+        long gatherTime = 0;
+        int mismatches = 0;
+        for (int time = 1; time <= TIMESTEPS; ++time) {
+            scatterWorld.setTime(time);
+            gatherWorld.setTime(time);
+            long start = System.nanoTime();
+            scatter.step(time);
+            long middle = System.nanoTime();
+            gather.step(time);
+            long end = System.nanoTime();
+            scatterTime += middle - start;
+            gatherTime += end - middle;
+            for (int i = 0; i < scatterBuildings.length; ++i) {
+                if (Double.doubleToLongBits(scatterBuildings[i].getEnergy()) != Double.doubleToLongBits(gatherBuildings[i].getEnergy())) {
+                    ++mismatches;
+                }
+            }
+        }
+        System.out.println("After " + TIMESTEPS + " timesteps: scatter total energy " + totalEnergy(scatterBuildings) + ", gather total energy " + totalEnergy(gatherBuildings) + ", " + burning(scatterBuildings) + " buildings burning");
+        System.out.println("Building energies that differed: " + mismatches + (mismatches == 0 ? "" : " MISMATCH"));
+        System.out.println("Whole timestep: scatter " + format(scatterTime / (TIMESTEPS * NANOS_PER_MILLI)) + " ms, gather " + format(gatherTime / (TIMESTEPS * NANOS_PER_MILLI)) + " ms");
+
+        double[] energies = new double[scatterBuildings.length];
+        for (int i = 0; i < energies.length; ++i) {
+            energies[i] = scatterBuildings[i].getEnergy();
+        }
+        for (int round = 0; round < WARMUP_ROUNDS; ++round) {
+            timeRadiation(scatter, scatterBuildings, energies);
+            timeRadiation(gather, gatherBuildings, energies);
+        }
+        scatterTime = 0;
+        gatherTime = 0;
+        for (int round = 0; round < ROUNDS; ++round) {
+            scatterTime += timeRadiation(scatter, scatterBuildings, energies);
+            gatherTime += timeRadiation(gather, gatherBuildings, energies);
+        }
+        System.out.println("Radiation stage: scatter " + format(scatterTime / (ROUNDS * NANOS_PER_MILLI)) + " ms, gather " + format(gatherTime / (ROUNDS * NANOS_PER_MILLI)) + " ms");
+        System.out.println("Total energy after one stage: scatter " + totalEnergy(scatterBuildings) + ", gather " + totalEnergy(gatherBuildings));
+    }
+
+    private static World createWorld(StandardWorldModel model) {
+        World world = new World();
+        for (StandardEntity next : model) {
+            if (next instanceof rescuecore2.standard.entities.Building) {
+                rescuecore2.standard.entities.Building oldB = (rescuecore2.standard.entities.Building)next;
+                Building newB = new Building(oldB.getID().getValue());
+                newB.setFloors(oldB.getFloors());
+                newB.setAttributes(oldB.getBuildingAttributes());
+                newB.setCode(oldB.getBuildingCode());
+                newB.setBuildingAreaGround(oldB.getGroundArea());
+                newB.setBuildingAreaTotal(oldB.getTotalArea());
+                newB.setApexes(oldB.getApexList());
+                newB.setX(oldB.getX());
+                newB.setY(oldB.getY());
+                world.putObject(newB);
+            }
+        }
+        return world;
+    }
+
+    private static Building[] sortedBuildings(World world) {
+        Building[] result = world.getBuildings().toArray(new Building[0]);
+        Arrays.sort(result, new Comparator<Building>() {
+                @Override
+                public int compare(Building a, Building b) {
+                    return Integer.compare(a.getID(), b.getID());
+                }
+            });
+        return result;
+    }
+
+    private static long timeRadiation(Simulator sim, Building[] buildings, double[] energies) {
+        for (int i = 0; i < buildings.length; ++i) {
+            buildings[i].setEnergy(energies[i]);
+        }
+        long start = System.nanoTime();
+        sim.exchangeRadiation();
+        return System.nanoTime() - start;
+    }
+
+    private static int countConnections(Building[] buildings) {
+        int result = 0;
+        for (Building next : buildings) {
+            result += next.connectedBuilding.length;
+        }
+        return result;
+    }
+
+    private static double totalEnergy(Building[] buildings) {
+        double result = 0;
+        for (Building next : buildings) {
+            result += next.getEnergy();
+        }
+        return result;
+    }
+
+    private static int burning(Building[] buildings) {
+        int result = 0;
+        for (Building next : buildings) {
+            int fieryness = next.getFieryness();
+            if (fieryness >= 1 && fieryness <= 3) {
+                ++result;
+            }
+        }
+        return result;
+    }
+
+    private static String format(double d) {
+        return String.format("%.3f", d);
+    }
+}
@@ -67,29 +67,6 @@ public abstract class Area extends StandardEntity {
         return new Pair<Integer, Integer>(x.getValue(), y.getValue());
     }
 
-    @Override
-    public Property getProperty(String urn) {
-        StandardPropertyURN type;
-        try {
-            type = StandardPropertyURN.fromString(urn);
-        }
-        catch (IllegalArgumentException e) {
-            return super.getProperty(urn);
-        }
-        switch (type) {
-        case X:
-            return x;
-        case Y:
-            return y;
-        case EDGES:
-            return edges;
-        case BLOCKADES:
-            return blockades;
-        default:
-            return super.getProperty(urn);
-        }
-    }
-
     /**
        Get the X property.
        @return The X property.
@@ -75,31 +75,6 @@ public class Blockade extends StandardEntity {
         return StandardEntityURN.BLOCKADE;
     }
 
-    @Override
-    public Property getProperty(String urn) {
-        StandardPropertyURN type;
-        try {
-            type = StandardPropertyURN.fromString(urn);
-        }
-        catch (IllegalArgumentException e) {
-            return super.getProperty(urn);
-        }
-        switch (type) {
-        case X:
-            return x;
-        case Y:
-            return y;
-        case POSITION:
-            return position;
-        case APEXES:
-            return apexes;
-        case REPAIR_COST:
-            return repairCost;
-        default:
-            return super.getProperty(urn);
-        }
-    }
-
     /**
        Get the X property.
        @return The X property.
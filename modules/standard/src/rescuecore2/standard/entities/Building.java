@@ -2,7 +2,6 @@ package rescuecore2.standard.entities;
 
 import rescuecore2.worldmodel.Entity;
 import rescuecore2.worldmodel.EntityID;
-import rescuecore2.worldmodel.Property;
 import rescuecore2.worldmodel.properties.IntProperty;
 import rescuecore2.worldmodel.properties.BooleanProperty;
 
@@ -81,41 +80,6 @@ public class Building extends Area {
         return "Building";
     }
 
-    @Override
-    public Property getProperty(String urn) {
-        StandardPropertyURN type;
-        try {
-            type = StandardPropertyURN.fromString(urn);
-        }
-        catch (IllegalArgumentException e) {
-            return super.getProperty(urn);
-        }
-        switch (type) {
-        case FLOORS:
-            return floors;
-        case IGNITION:
-            return ignition;
-        case FIERYNESS:
-            return fieryness;
-        case BROKENNESS:
-            return brokenness;
-        case BUILDING_CODE:
-            return code;
-        case BUILDING_ATTRIBUTES:
-            return attributes;
-        case BUILDING_AREA_GROUND:
-            return groundArea;
-        case BUILDING_AREA_TOTAL:
-            return totalArea;
-        case TEMPERATURE:
-            return temperature;
-        case IMPORTANCE:
-            return importance;
-        default:
-            return super.getProperty(urn);
-        }
-    }
-
     /**
        Get the floors property.
        @return The floors property.
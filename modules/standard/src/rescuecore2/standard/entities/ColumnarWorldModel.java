@@ -0,0 +1,227 @@
+package rescuecore2.standard.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rescuecore2.registry.Registry;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.EntityListener;
+import rescuecore2.worldmodel.Property;
+import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.worldmodel.WorldModelListener;
+import rescuecore2.worldmodel.properties.EntityRefProperty;
+import rescuecore2.worldmodel.properties.IntProperty;
+
+/**
+   A StandardWorldModel with a read-side index that copies the integer properties of its entities into dense columns, one table per entity type. Code that scans the whole world, such as a score function, can walk an int array instead of visiting every entity and property object. The columns follow every change to the entities, whether it comes from a ChangeSet or from a setter, without allocating.
+   <p>
+   The entities and their properties remain the primary storage and the columns are a copy kept alongside them, so this model uses more memory than a plain StandardWorldModel and every change costs an extra listener call. Use it only where whole-world scans matter more than that.
+   <p>
+   IntProperty and EntityRefProperty values have columns. Entity references are stored as the ID value and undefined properties as {@link #UNDEFINED}. Rows are not in any particular order and move when entities are removed.
+ */
+public class ColumnarWorldModel extends StandardWorldModel {
+    /** The value stored in a column when a property is undefined. */
+    public static final int UNDEFINED = Integer.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Map<StandardEntityURN, Table> tables;
+    private Map<EntityID, Integer> rows;
+    private EntityListener columnUpdater;
+
+    /**
+       Create an empty ColumnarWorldModel.
+    */
+    public ColumnarWorldModel() {
+        tables = new EnumMap<StandardEntityURN, Table>(StandardEntityURN.class);
+        rows = new HashMap<EntityID, Integer>();
+        columnUpdater = new ColumnUpdater();
+        addWorldModelListener(new RowListener());
+    }
+
+    /**
+       Get the table that holds a type of entity.
+       @param urn The entity type.
+       @return The table. It will be empty if there are no entities of that type.
+    */
+    public Table getTable(StandardEntityURN urn) {
+        Table result = tables.get(urn);
+        if (result == null) {
+            result = new Table(StandardEntityFactory.INSTANCE.makeEntity(urn, new EntityID(0)));
+            tables.put(urn, result);
+        }
+        return result;
+    }
+
+    /**
+       Get the row of an entity in the table for its type.
+       @param id The ID of the entity.
+       @return The row, or -1 if the entity is not in this world model.
+    */
+    public int getRow(EntityID id) {
+        Integer result = rows.get(id);
+        return result == null ? -1 : result;
+    }
+
+    private static int toColumnValue(Object value) {
+        if (value instanceof Integer) {
+            return (Integer)value;
+        }
+        if (value instanceof EntityID) {
+            return ((EntityID)value).getValue();
+        }
+        return UNDEFINED;
+    }
+
+    /**
+       The columns for one type of entity.
+    */
+    public static final class Table {
+        private final String[] urns;
+        private final int[] propertyIndices;
+        // Registry property index -> column or -1
+        private final int[] columnByIndex;
+        private StandardEntity[] entities;
+        private int[][] columns;
+        private int size;
+
+        private Table(StandardEntity prototype) {
+            List<String> found = new ArrayList<String>();
+            for (Property next : prototype.getProperties()) {
+                if (next instanceof IntProperty || next instanceof EntityRefProperty) {
+                    found.add(next.getURN());
+                }
+            }
+            Collections.sort(found);
+            urns = found.toArray(new String[found.size()]);
+            propertyIndices = new int[urns.length];
+            int max = -1;
+            for (int i = 0; i < urns.length; ++i) {
+                propertyIndices[i] = Registry.getPropertyIndex(urns[i]);
+                max = Math.max(max, propertyIndices[i]);
+            }
+            columnByIndex = new int[max + 1];
+            Arrays.fill(columnByIndex, -1);
+            for (int i = 0; i < urns.length; ++i) {
+                columnByIndex[propertyIndices[i]] = i;
+            }
+            entities = new StandardEntity[INITIAL_CAPACITY];
+            columns = new int[urns.length][INITIAL_CAPACITY];
+        }
+
+        /**
+           Get the number of rows.
+           @return The number of entities in this table.
+        */
+        public int size() {
+            return size;
+        }
+
+        /**
+           Get the entity in a row.
+           @param row The row.
+           @return The entity.
+        */
+        public StandardEntity getEntity(int row) {
+            return entities[row];
+        }
+
+        /**
+           Get the values of a property for every row. The array belongs to the table: it must not be modified, only the first {@link #size()} values are meaningful, and it is replaced when the table grows.
+           @param property The property.
+           @return The column, or null if this type of entity does not have an integer property with that urn.
+        */
+        public int[] getColumn(StandardPropertyURN property) {
+            int index = Registry.findPropertyIndex(property.toString());
+            if (index < 0 || index >= columnByIndex.length || columnByIndex[index] < 0) {
+                return null;
+            }
+            return columns[columnByIndex[index]];
+        }
+
+        private int add(StandardEntity e) {
+            if (size == entities.length) {
+                int capacity = size * 2;
+                entities = Arrays.copyOf(entities, capacity);
+                for (int i = 0; i < columns.length; ++i) {
+                    columns[i] = Arrays.copyOf(columns[i], capacity);
+                }
+            }
+            int row = size++;
+            entities[row] = e;
+            for (int i = 0; i < columns.length; ++i) {
+                Property p = e.getProperty(propertyIndices[i]);
+                columns[i][row] = p.isDefined() ? toColumnValue(p.getValue()) : UNDEFINED;
+            }
+            return row;
+        }
+
+        // Fill a row with the last row. Returns the entity that moved, or null if the last row was removed.
+        private StandardEntity remove(int row) {
+            int last = --size;
+            StandardEntity moved = entities[last];
+            entities[row] = moved;
+            entities[last] = null;
+            for (int[] next : columns) {
+                next[row] = next[last];
+            }
+            return row == last ? null : moved;
+        }
+
+        private void set(int row, int propertyIndex, Object value) {
+            if (propertyIndex < columnByIndex.length && columnByIndex[propertyIndex] >= 0) {
+                columns[columnByIndex[propertyIndex]][row] = toColumnValue(value);
+            }
+        }
+    }
+
+    // Remove the row of an entity ID and stop following the entity that was in it
+    private void removeRow(EntityID id) {
+        Integer row = rows.remove(id);
+        if (row == null) {
+            return;
+        }
+        // The entity in the row is not necessarily the one the caller has, or even of the same type, if the ID was reused
+        for (Table table : tables.values()) {
+            if (row < table.size() && table.getEntity(row).getID().equals(id)) {
+                table.getEntity(row).removeEntityListener(columnUpdater);
+                StandardEntity moved = table.remove(row);
+                if (moved != null) {
+                    rows.put(moved.getID(), row);
+                }
+                return;
+            }
+        }
+    }
+
+    private class RowListener implements WorldModelListener<StandardEntity> {
+        @Override
+        public void entityAdded(WorldModel<? extends StandardEntity> model, StandardEntity e) {
+            // addEntity replaces any entity with the same ID without telling listeners it was removed
+            removeRow(e.getID());
+            rows.put(e.getID(), getTable(e.getStandardURN()).add(e));
+            e.addEntityListener(columnUpdater);
+        }
+
+        @Override
+        public void entityRemoved(WorldModel<? extends StandardEntity> model, StandardEntity e) {
+            removeRow(e.getID());
+        }
+    }
+
+    private class ColumnUpdater implements EntityListener {
+        @Override
+        public void propertyChanged(Entity e, Property p, Object oldValue, Object newValue) {
+            Integer row = rows.get(e.getID());
+            if (row != null) {
+                tables.get(((StandardEntity)e).getStandardURN()).set(row, p.getIndex(), newValue);
+            }
+        }
+    }
+}
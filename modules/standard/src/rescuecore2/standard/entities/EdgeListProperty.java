@@ -12,8 +12,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readWireInt32;
 import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeWireInt32;
 
 /**
    A property that defines a list of Edges.
@@ -120,17 +121,17 @@ public class EdgeListProperty extends AbstractProperty {
 
     @Override
     public void write(OutputStream out) throws IOException {
-        writeInt32(edges.size(), out);
+        writeWireInt32(edges.size(), out);
         for (Edge next : edges) {
-            writeInt32(next.getStartX(), out);
-            writeInt32(next.getStartY(), out);
-            writeInt32(next.getEndX(), out);
-            writeInt32(next.getEndY(), out);
+            writeWireInt32(next.getStartX(), out);
+            writeWireInt32(next.getStartY(), out);
+            writeWireInt32(next.getEndX(), out);
+            writeWireInt32(next.getEndY(), out);
             if (next.isPassable()) {
-                writeInt32(next.getNeighbour().getValue(), out);
+                writeWireInt32(next.getNeighbour().getValue(), out);
             }
             else {
-                writeInt32(0, out);
+                writeWireInt32(0, out);
             }
         }
     }
@@ -154,15 +155,15 @@ public class EdgeListProperty extends AbstractProperty {
 
     @Override
     public void read(InputStream in) throws IOException {
-        int count = readInt32(in);
+        int count = readWireInt32(in);
         edges.clear();
         for (int i = 0; i < count; ++i) {
-            int startX = readInt32(in);
-            int startY = readInt32(in);
-            int endX = readInt32(in);
-            int endY = readInt32(in);
+            int startX = readWireInt32(in);
+            int startY = readWireInt32(in);
+            int endX = readWireInt32(in);
+            int endY = readWireInt32(in);
             EntityID neighbour = null;
-            int id = readInt32(in);
+            int id = readWireInt32(in);
             if (id != 0) {
                 neighbour = new EntityID(id);
             }
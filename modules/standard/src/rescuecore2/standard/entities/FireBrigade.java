@@ -2,7 +2,6 @@ package rescuecore2.standard.entities;
 
 import rescuecore2.worldmodel.Entity;
 import rescuecore2.worldmodel.EntityID;
-import rescuecore2.worldmodel.Property;
 import rescuecore2.worldmodel.properties.IntProperty;
 
 /**
@@ -41,23 +40,6 @@ public class FireBrigade extends Human {
         return StandardEntityURN.FIRE_BRIGADE;
     }
 
-    @Override
-    public Property getProperty(String urn) {
-        StandardPropertyURN type;
-        try {
-            type = StandardPropertyURN.fromString(urn);
-        }
-        catch (IllegalArgumentException e) {
-            return super.getProperty(urn);
-        }
-        switch (type) {
-        case WATER_QUANTITY:
-            return water;
-        default:
-            return super.getProperty(urn);
-        }
-    }
-
     /**
        Get the water property.
        @return The water property.
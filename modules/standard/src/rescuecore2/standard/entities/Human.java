@@ -2,7 +2,6 @@ package rescuecore2.standard.entities;
 
 import rescuecore2.worldmodel.EntityID;
 import rescuecore2.worldmodel.WorldModel;
-import rescuecore2.worldmodel.Property;
 import rescuecore2.worldmodel.properties.IntProperty;
 import rescuecore2.worldmodel.properties.IntArrayProperty;
 import rescuecore2.worldmodel.properties.EntityRefProperty;
@@ -61,41 +60,6 @@ public abstract class Human extends StandardEntity {
         registerProperties(x, y, position, positionHistory, travelDistance, direction, stamina, hp, damage, buriedness);
     }
 
-    @Override
-    public Property getProperty(String urn) {
-        StandardPropertyURN type;
-        try {
-            type = StandardPropertyURN.fromString(urn);
-        }
-        catch (IllegalArgumentException e) {
-            return super.getProperty(urn);
-        }
-        switch (type) {
-        case POSITION:
-            return position;
-        case POSITION_HISTORY:
-            return positionHistory;
-        case DIRECTION:
-            return direction;
-        case STAMINA:
-            return stamina;
-        case HP:
-            return hp;
-        case X:
-            return x;
-        case Y:
-            return y;
-        case DAMAGE:
-            return damage;
-        case BURIEDNESS:
-            return buriedness;
-        case TRAVEL_DISTANCE:
-            return travelDistance;
-        default:
-            return super.getProperty(urn);
-        }
-    }
-
     @Override
     public Pair<Integer, Integer> getLocation(WorldModel<? extends StandardEntity> world) {
         if (x.isDefined() && y.isDefined()) {
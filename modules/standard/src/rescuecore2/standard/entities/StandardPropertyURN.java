@@ -2,6 +2,9 @@ package rescuecore2.standard.entities;
 
 import static rescuecore2.standard.Constants.PROPERTY_URN_PREFIX;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
    URNs for standard property types.
  */
@@ -46,6 +49,14 @@ public enum StandardPropertyURN {
 
     // CHECKSTYLE:ON:JavadocVariableCheck
 
+    private static final Map<String, StandardPropertyURN> BY_URN = new HashMap<String, StandardPropertyURN>();
+
+    static {
+        for (StandardPropertyURN next : values()) {
+            BY_URN.put(next.urn, next);
+        }
+    }
+
     private String urn;
 
     private StandardPropertyURN(String urn) {
@@ -63,11 +74,10 @@ public enum StandardPropertyURN {
        @return A StandardPropertyURN.
     */
     public static StandardPropertyURN fromString(String s) {
-        for (StandardPropertyURN next : StandardPropertyURN.values()) {
-            if (next.urn.equals(s)) {
-                return next;
-            }
+        StandardPropertyURN result = BY_URN.get(s);
+        if (result == null) {
+            throw new IllegalArgumentException(s);
         }
-        throw new IllegalArgumentException(s);
+        return result;
     }
 }
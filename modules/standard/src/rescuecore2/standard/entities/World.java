@@ -2,7 +2,6 @@ package rescuecore2.standard.entities;
 
 import rescuecore2.worldmodel.Entity;
 import rescuecore2.worldmodel.EntityID;
-import rescuecore2.worldmodel.Property;
 import rescuecore2.worldmodel.properties.IntProperty;
 
 /**
@@ -53,31 +52,6 @@ public class World extends StandardEntity {
         return StandardEntityURN.WORLD;
     }
 
-    @Override
-    public Property getProperty(String urn) {
-        StandardPropertyURN type;
-        try {
-            type = StandardPropertyURN.fromString(urn);
-        }
-        catch (IllegalArgumentException e) {
-            return super.getProperty(urn);
-        }
-        switch (type) {
-        case START_TIME:
-            return startTime;
-        case LONGITUDE:
-            return longitude;
-        case LATITUDE:
-            return latitude;
-        case WIND_FORCE:
-            return windForce;
-        case WIND_DIRECTION:
-            return windDirection;
-        default:
-            return super.getProperty(urn);
-        }
-    }
-
     /**
        Get the startTime property.
        @return The startTime property.
@@ -0,0 +1,231 @@
+package rescuecore2.standard.kernel;
+
+import rescuecore2.config.Config;
+import rescuecore2.log.Logger;
+import rescuecore2.misc.geometry.GeometryTools2D;
+import rescuecore2.misc.geometry.Line2D;
+import rescuecore2.misc.geometry.Point2D;
+import rescuecore2.standard.entities.AmbulanceTeam;
+import rescuecore2.standard.entities.Area;
+import rescuecore2.standard.entities.Blockade;
+import rescuecore2.standard.entities.Building;
+import rescuecore2.standard.entities.Edge;
+import rescuecore2.standard.entities.Human;
+import rescuecore2.standard.entities.Road;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.StandardPropertyURN;
+import rescuecore2.standard.entities.StandardWorldModel;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.EntityListener;
+import rescuecore2.worldmodel.Property;
+import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.worldmodel.WorldModelListener;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+   Line of sight perception that casts rays through a uniform grid of edges instead of testing every nearby edge for every ray. Building and road edges are indexed once when the perception is initialised. Blockade edges are re-indexed at the start of each timestep for blockades that have been added, removed or changed shape since the last timestep.
+   <p>
+   The visible set is the same as {@link LineOfSightPerception} with two exceptions. Where a blocking edge and another edge are hit at exactly the same distance along a ray, {@link LineOfSightPerception} keeps whichever one it happened to find first and this implementation keeps both. And {@link LineOfSightPerception} finds nearby blockades through the world model's spatial index, which is built when the perception is initialised and not rebuilt afterwards, so rays never hit blockades created during the run; this implementation sees them from the timestep after they appear. Both still report the blockades of every road they can see.
+ */
+public class GridLineOfSightPerception extends LineOfSightPerception {
+    private static final int DEFAULT_CELL_SIZE = 5000;
+
+    private static final String CELL_SIZE_KEY = "perception.los.grid.cell-size";
+
+    private LineGrid grid;
+    private Map<EntityID, int[]> blockadeSegments;
+    private Set<EntityID> changedBlockades;
+    private EntityListener blockadeListener;
+    private ThreadLocal<LineGrid.Caster> casters;
+
+    /**
+       Create a GridLineOfSightPerception object.
+    */
+    public GridLineOfSightPerception() {
+    }
+
+    @Override
+    public void initialise(Config config, WorldModel<? extends Entity> model) {
+        super.initialise(config, model);
+        StandardWorldModel world = getWorld();
+        int cellSize = config.getIntValue(CELL_SIZE_KEY, DEFAULT_CELL_SIZE);
+        long start = System.currentTimeMillis();
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (StandardEntity next : world) {
+            if (next instanceof Area) {
+                for (Edge edge : ((Area)next).getEdges()) {
+                    minX = Math.min(minX, Math.min(edge.getStartX(), edge.getEndX()));
+                    minY = Math.min(minY, Math.min(edge.getStartY(), edge.getEndY()));
+                    maxX = Math.max(maxX, Math.max(edge.getStartX(), edge.getEndX()));
+                    maxY = Math.max(maxY, Math.max(edge.getStartY(), edge.getEndY()));
+                }
+            }
+        }
+        if (minX > maxX) {
+            minX = 0;
+            minY = 0;
+            maxX = 0;
+            maxY = 0;
+        }
+        grid = new LineGrid(minX, minY, maxX, maxY, cellSize);
+        blockadeSegments = new HashMap<EntityID, int[]>();
+        changedBlockades = new HashSet<EntityID>();
+        blockadeListener = new BlockadeListener();
+        int count = 0;
+        for (StandardEntity next : world) {
+            if (next instanceof Building) {
+                for (Edge edge : ((Building)next).getEdges()) {
+                    grid.add(edge.getLine(), next, !edge.isPassable());
+                    ++count;
+                }
+            }
+            else if (next instanceof Road) {
+                for (Edge edge : ((Road)next).getEdges()) {
+                    grid.add(edge.getLine(), next, false);
+                    ++count;
+                }
+            }
+            else if (next instanceof Blockade) {
+                next.addEntityListener(blockadeListener);
+                changedBlockades.add(next.getID());
+            }
+        }
+        world.addWorldModelListener(new BlockadeTracker());
+        updateBlockades();
+        final LineGrid casterGrid = grid;
+        casters = new ThreadLocal<LineGrid.Caster>() {
+            @Override
+            protected LineGrid.Caster initialValue() {
+                return new LineGrid.Caster(casterGrid);
+            }
+        };
+        long end = System.currentTimeMillis();
+        Logger.info("Indexed " + count + " static edges in " + (end - start) + "ms");
+    }
+
+    @Override
+    public String toString() {
+        return "Grid line of sight perception";
+    }
+
+    @Override
+    public void setTime(int timestep) {
+        super.setTime(timestep);
+        updateBlockades();
+    }
+
+    @Override
+    protected Collection<StandardEntity> findVisible(StandardEntity agentEntity, Point2D location, Collection<StandardEntity> nearby) {
+        LineGrid.Caster caster = casters.get();
+        int rayCount = getRayCount();
+        double viewDistance = getViewDistance();
+        double x = location.getX();
+        double y = location.getY();
+        // CHECKSTYLE:OFF:MagicNumber
+        double dAngle = Math.PI * 2 / rayCount;
+        // CHECKSTYLE:ON:MagicNumber
+        Collection<StandardEntity> result = new HashSet<StandardEntity>();
+        for (int i = 0; i < rayCount; ++i) {
+            double angle = i * dAngle;
+            // Build the direction the same way Line2D does so that intersections are identical
+            double dx = (x + Math.sin(angle) * viewDistance) - x;
+            double dy = (y + Math.cos(angle) * viewDistance) - y;
+            caster.cast(x, y, dx, dy, result);
+        }
+        // Now look for humans
+        for (StandardEntity next : nearby) {
+            if (next instanceof Human) {
+                Human h = (Human)next;
+                if (canSee(caster, agentEntity, x, y, h)) {
+                    result.add(h);
+                }
+            }
+        }
+        // Add self
+        result.add(agentEntity);
+        Logger.debug(agentEntity + " can see " + result);
+        return result;
+    }
+
+    private boolean canSee(LineGrid.Caster caster, StandardEntity agent, double x, double y, Human h) {
+        if (h.isXDefined() && h.isYDefined()) {
+            return caster.isClear(x, y, h.getX() - x, h.getY() - y);
+        }
+        else if (h.isPositionDefined()) {
+            if (h.getPosition().equals(agent.getID())) {
+                return true;
+            }
+            Entity e = getWorld().getEntity(h.getPosition());
+            if (e instanceof AmbulanceTeam) {
+                return canSee(caster, agent, x, y, (Human)e);
+            }
+        }
+        return false;
+    }
+
+    private void updateBlockades() {
+        if (changedBlockades.isEmpty()) {
+            return;
+        }
+        for (EntityID next : changedBlockades) {
+            int[] old = blockadeSegments.remove(next);
+            if (old != null) {
+                for (int index : old) {
+                    grid.remove(index);
+                }
+            }
+            StandardEntity e = getWorld().getEntity(next);
+            if (e instanceof Blockade && ((Blockade)e).isApexesDefined()) {
+                int[] apexes = ((Blockade)e).getApexes();
+                if (apexes.length == 0) {
+                    continue;
+                }
+                List<Line2D> lines = GeometryTools2D.pointsToLines(GeometryTools2D.vertexArrayToPoints(apexes), true);
+                int[] indices = new int[lines.size()];
+                for (int i = 0; i < indices.length; ++i) {
+                    indices[i] = grid.add(lines.get(i), e, false);
+                }
+                blockadeSegments.put(next, indices);
+            }
+        }
+        Logger.debug("Re-indexed " + changedBlockades.size() + " blockades");
+        changedBlockades.clear();
+    }
+
+    private class BlockadeTracker implements WorldModelListener<StandardEntity> {
+        @Override
+        public void entityAdded(WorldModel<? extends StandardEntity> model, StandardEntity e) {
+            if (e instanceof Blockade) {
+                e.addEntityListener(blockadeListener);
+                changedBlockades.add(e.getID());
+            }
+        }
+
+        @Override
+        public void entityRemoved(WorldModel<? extends StandardEntity> model, StandardEntity e) {
+            if (e instanceof Blockade) {
+                e.removeEntityListener(blockadeListener);
+                changedBlockades.add(e.getID());
+            }
+        }
+    }
+
+    private class BlockadeListener implements EntityListener {
+        @Override
+        public void propertyChanged(Entity e, Property p, Object oldValue, Object newValue) {
+            if (StandardPropertyURN.APEXES.toString().equals(p.getURN())) {
+                changedBlockades.add(e.getID());
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package rescuecore2.standard.kernel;
+
+import rescuecore2.misc.geometry.Line2D;
+import rescuecore2.standard.entities.StandardEntity;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+   A uniform grid of line segments used for casting line of sight rays. Each segment belongs to an entity and is either blocking or non-blocking. Segments are stored in flat arrays and each grid cell holds the indices of the segments whose bounding box overlaps it.
+   <p>
+   The grid itself is not thread safe: segments must not be added or removed while rays are being cast. Each thread that casts rays needs its own {@link Caster}.
+ */
+final class LineGrid {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int INITIAL_CELL_CAPACITY = 4;
+    // Cells are padded slightly so that rounding errors during traversal never miss a segment that touches a cell boundary
+    private static final double PADDING = 1;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+
+    private final int[][] cells;
+    private final int[] cellCounts;
+
+    private double[] originX;
+    private double[] originY;
+    private double[] directionX;
+    private double[] directionY;
+    private boolean[] blocking;
+    private StandardEntity[] owners;
+    private int size;
+
+    private int[] free;
+    private int freeCount;
+
+    /**
+       Construct an empty LineGrid covering a rectangle.
+       @param minX The minimum X coordinate.
+       @param minY The minimum Y coordinate.
+       @param maxX The maximum X coordinate.
+       @param maxY The maximum Y coordinate.
+       @param cellSize The width and height of each cell.
+    */
+    LineGrid(double minX, double minY, double maxX, double maxY, double cellSize) {
+        this.cellSize = cellSize;
+        this.minX = minX;
+        this.minY = minY;
+        this.columns = Math.max(1, (int)Math.ceil((maxX - minX) / cellSize));
+        this.rows = Math.max(1, (int)Math.ceil((maxY - minY) / cellSize));
+        this.maxX = minX + columns * cellSize;
+        this.maxY = minY + rows * cellSize;
+        cells = new int[columns * rows][];
+        cellCounts = new int[columns * rows];
+        originX = new double[INITIAL_CAPACITY];
+        originY = new double[INITIAL_CAPACITY];
+        directionX = new double[INITIAL_CAPACITY];
+        directionY = new double[INITIAL_CAPACITY];
+        blocking = new boolean[INITIAL_CAPACITY];
+        owners = new StandardEntity[INITIAL_CAPACITY];
+        free = new int[INITIAL_CAPACITY];
+        size = 0;
+        freeCount = 0;
+    }
+
+    /**
+       Add a segment to the grid.
+       @param line The segment to add.
+       @param owner The entity that owns the segment.
+       @param blocks Whether the segment blocks line of sight.
+       @return The index of the new segment.
+    */
+    int add(Line2D line, StandardEntity owner, boolean blocks) {
+        int index;
+        if (freeCount > 0) {
+            index = free[--freeCount];
+        }
+        else {
+            if (size == originX.length) {
+                grow();
+            }
+            index = size++;
+        }
+        originX[index] = line.getOrigin().getX();
+        originY[index] = line.getOrigin().getY();
+        directionX[index] = line.getDirection().getX();
+        directionY[index] = line.getDirection().getY();
+        blocking[index] = blocks;
+        owners[index] = owner;
+        int x1 = column(Math.min(originX[index], originX[index] + directionX[index]) - PADDING);
+        int x2 = column(Math.max(originX[index], originX[index] + directionX[index]) + PADDING);
+        int y1 = row(Math.min(originY[index], originY[index] + directionY[index]) - PADDING);
+        int y2 = row(Math.max(originY[index], originY[index] + directionY[index]) + PADDING);
+        for (int x = x1; x <= x2; ++x) {
+            for (int y = y1; y <= y2; ++y) {
+                addToCell(y * columns + x, index);
+            }
+        }
+        return index;
+    }
+
+    /**
+       Remove a segment from the grid.
+       @param index The index of the segment to remove.
+    */
+    void remove(int index) {
+        int x1 = column(Math.min(originX[index], originX[index] + directionX[index]) - PADDING);
+        int x2 = column(Math.max(originX[index], originX[index] + directionX[index]) + PADDING);
+        int y1 = row(Math.min(originY[index], originY[index] + directionY[index]) - PADDING);
+        int y2 = row(Math.max(originY[index], originY[index] + directionY[index]) + PADDING);
+        for (int x = x1; x <= x2; ++x) {
+            for (int y = y1; y <= y2; ++y) {
+                removeFromCell(y * columns + x, index);
+            }
+        }
+        owners[index] = null;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCount++] = index;
+    }
+
+    /**
+       Get the number of segment slots in use, including free slots.
+       @return The segment capacity.
+    */
+    int capacity() {
+        return size;
+    }
+
+    private void grow() {
+        int newLength = originX.length * 2;
+        originX = Arrays.copyOf(originX, newLength);
+        originY = Arrays.copyOf(originY, newLength);
+        directionX = Arrays.copyOf(directionX, newLength);
+        directionY = Arrays.copyOf(directionY, newLength);
+        blocking = Arrays.copyOf(blocking, newLength);
+        owners = Arrays.copyOf(owners, newLength);
+    }
+
+    private void addToCell(int cell, int index) {
+        int[] contents = cells[cell];
+        if (contents == null) {
+            contents = new int[INITIAL_CELL_CAPACITY];
+            cells[cell] = contents;
+        }
+        else if (cellCounts[cell] == contents.length) {
+            contents = Arrays.copyOf(contents, contents.length * 2);
+            cells[cell] = contents;
+        }
+        contents[cellCounts[cell]++] = index;
+    }
+
+    private void removeFromCell(int cell, int index) {
+        int[] contents = cells[cell];
+        int count = cellCounts[cell];
+        for (int i = 0; i < count; ++i) {
+            if (contents[i] == index) {
+                contents[i] = contents[count - 1];
+                cellCounts[cell] = count - 1;
+                return;
+            }
+        }
+    }
+
+    private int column(double x) {
+        return clamp((int)Math.floor((x - minX) / cellSize), columns);
+    }
+
+    private int row(double y) {
+        return clamp((int)Math.floor((y - minY) / cellSize), rows);
+    }
+
+    private static int clamp(int i, int count) {
+        return Math.max(0, Math.min(count - 1, i));
+    }
+
+    /**
+       Per-thread ray caster. Rays are walked through the grid cell by cell so only segments near the ray are tested, and each segment is tested at most once per ray. Intersections are computed with {@link SegmentBuffer#intersect} so the results match a brute force test against every segment.
+    */
+    static final class Caster {
+        private final LineGrid grid;
+        private int[] stamps;
+        private int stamp;
+        private int[] hits;
+        private double[] hitDistances;
+        private int hitCount;
+
+        /**
+           Construct a Caster for a grid.
+           @param grid The grid to cast rays through.
+        */
+        Caster(LineGrid grid) {
+            this.grid = grid;
+            stamps = new int[0];
+            stamp = 0;
+            hits = new int[INITIAL_CELL_CAPACITY];
+            hitDistances = new double[INITIAL_CELL_CAPACITY];
+        }
+
+        /**
+           Cast a ray and add the owner of every segment it crosses up to and including the nearest blocking segment.
+           @param x The X coordinate of the ray origin.
+           @param y The Y coordinate of the ray origin.
+           @param dx The X component of the ray direction.
+           @param dy The Y component of the ray direction.
+           @param result The collection to add visible entities to.
+           @return The visible length of the ray as a fraction of its direction vector.
+        */
+        double cast(double x, double y, double dx, double dy, Collection<StandardEntity> result) {
+            double nearest = traverse(x, y, dx, dy, Double.NEGATIVE_INFINITY);
+            for (int i = 0; i < hitCount; ++i) {
+                if (hitDistances[i] <= nearest) {
+                    result.add(grid.owners[hits[i]]);
+                }
+            }
+            return Math.min(nearest, 1);
+        }
+
+        /**
+           Find out if a ray reaches its end point without being blocked.
+           @param x The X coordinate of the ray origin.
+           @param y The Y coordinate of the ray origin.
+           @param dx The X component of the ray direction.
+           @param dy The Y component of the ray direction.
+           @return True if no blocking segment crosses the ray before its end point.
+        */
+        boolean isClear(double x, double y, double dx, double dy) {
+            return traverse(x, y, dx, dy, 1) >= 1;
+        }
+
+        /**
+           Walk a ray through the grid, recording every segment it crosses.
+           @return The distance to the nearest blocking segment, or positive infinity if nothing blocks the ray.
+        */
+        private double traverse(double x, double y, double dx, double dy, double stopBelow) {
+            nextStamp();
+            hitCount = 0;
+            double nearest = Double.POSITIVE_INFINITY;
+            // Clip the ray to the grid bounds
+            double tMin = 0;
+            double tMax = 1;
+            if (dx == 0) {
+                if (x < grid.minX || x > grid.maxX) {
+                    return nearest;
+                }
+            }
+            else {
+                double a = (grid.minX - x) / dx;
+                double b = (grid.maxX - x) / dx;
+                tMin = Math.max(tMin, Math.min(a, b));
+                tMax = Math.min(tMax, Math.max(a, b));
+            }
+            if (dy == 0) {
+                if (y < grid.minY || y > grid.maxY) {
+                    return nearest;
+                }
+            }
+            else {
+                double a = (grid.minY - y) / dy;
+                double b = (grid.maxY - y) / dy;
+                tMin = Math.max(tMin, Math.min(a, b));
+                tMax = Math.min(tMax, Math.max(a, b));
+            }
+            if (tMin > tMax) {
+                return nearest;
+            }
+            int column = grid.column(x + tMin * dx);
+            int row = grid.row(y + tMin * dy);
+            int stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+            int stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+            double nextX = stepX == 0 ? Double.POSITIVE_INFINITY : (grid.minX + (column + (stepX > 0 ? 1 : 0)) * grid.cellSize - x) / dx;
+            double nextY = stepY == 0 ? Double.POSITIVE_INFINITY : (grid.minY + (row + (stepY > 0 ? 1 : 0)) * grid.cellSize - y) / dy;
+            double deltaX = stepX == 0 ? Double.POSITIVE_INFINITY : grid.cellSize / Math.abs(dx);
+            double deltaY = stepY == 0 ? Double.POSITIVE_INFINITY : grid.cellSize / Math.abs(dy);
+            double entry = tMin;
+            while (entry <= nearest) {
+                int cell = row * grid.columns + column;
+                int[] contents = grid.cells[cell];
+                int count = grid.cellCounts[cell];
+                for (int i = 0; i < count; ++i) {
+                    int index = contents[i];
+                    if (stamps[index] == stamp) {
+                        continue;
+                    }
+                    stamps[index] = stamp;
+                    double d = SegmentBuffer.intersect(x, y, dx, dy, grid.originX[index], grid.originY[index], grid.directionX[index], grid.directionY[index]);
+                    if (Double.isNaN(d)) {
+                        continue;
+                    }
+                    addHit(index, d);
+                    if (grid.blocking[index] && d < nearest) {
+                        nearest = d;
+                        if (d < stopBelow) {
+                            return nearest;
+                        }
+                    }
+                }
+                if (nextX < nextY) {
+                    entry = nextX;
+                    column += stepX;
+                    nextX += deltaX;
+                }
+                else {
+                    entry = nextY;
+                    row += stepY;
+                    nextY += deltaY;
+                }
+                if (entry > tMax || column < 0 || column >= grid.columns || row < 0 || row >= grid.rows) {
+                    break;
+                }
+            }
+            return nearest;
+        }
+
+        private void addHit(int index, double distance) {
+            if (hitCount == hits.length) {
+                hits = Arrays.copyOf(hits, hits.length * 2);
+                hitDistances = Arrays.copyOf(hitDistances, hitDistances.length * 2);
+            }
+            hits[hitCount] = index;
+            hitDistances[hitCount] = distance;
+            ++hitCount;
+        }
+
+        private void nextStamp() {
+            if (stamps.length < grid.capacity()) {
+                stamps = Arrays.copyOf(stamps, Math.max(grid.capacity(), stamps.length * 2));
+            }
+            ++stamp;
+            if (stamp == 0) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+        }
+    }
+}
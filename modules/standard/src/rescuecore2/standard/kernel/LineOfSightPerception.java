@@ -7,10 +7,8 @@ import rescuecore2.config.Config;
 import rescuecore2.log.Logger;
 import rescuecore2.misc.Pair;
 import rescuecore2.misc.collections.LazyMap;
-import rescuecore2.misc.geometry.GeometryTools2D;
 import rescuecore2.misc.geometry.Line2D;
 import rescuecore2.misc.geometry.Point2D;
-import rescuecore2.misc.geometry.Vector2D;
 import rescuecore2.misc.gui.ScreenTransform;
 import rescuecore2.standard.entities.AmbulanceTeam;
 import rescuecore2.standard.entities.Area;
@@ -42,10 +40,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -63,8 +58,6 @@ public class LineOfSightPerception implements Perception, GUIComponent {
     private static final String HP_PRECISION_KEY = "perception.los.precision.hp";
     private static final String DAMAGE_PRECISION_KEY = "perception.los.precision.damage";
 
-    private static final IntersectionSorter INTERSECTION_SORTER = new IntersectionSorter();
-
     private int viewDistance;
     private int hpPrecision;
     private int damagePrecision;
@@ -75,6 +68,13 @@ public class LineOfSightPerception implements Perception, GUIComponent {
 
     private LOSView view;
 
+    private ThreadLocal<SegmentBuffer> segments = new ThreadLocal<SegmentBuffer>() {
+        @Override
+        protected SegmentBuffer initialValue() {
+            return new SegmentBuffer();
+        }
+    };
+
     /**
        Create a LineOfSightPerception object.
     */
@@ -89,6 +89,8 @@ public class LineOfSightPerception implements Perception, GUIComponent {
         hpPrecision = config.getIntValue(HP_PRECISION_KEY, DEFAULT_HP_PRECISION);
         damagePrecision = config.getIntValue(DAMAGE_PRECISION_KEY, DEFAULT_DAMAGE_PRECISION);
         rayCount = config.getIntValue(RAY_COUNT_KEY, DEFAULT_RAY_COUNT);
+        // Build the spatial index now so that concurrent lookups from the kernel's perception threads never trigger a lazy re-index
+        world.index();
         view = null;
     }
 
@@ -269,10 +271,44 @@ public class LineOfSightPerception implements Perception, GUIComponent {
         return value;
     }
 
-    private Collection<StandardEntity> findVisible(StandardEntity agentEntity, Point2D location, Collection<StandardEntity> nearby) {
+    /**
+       Get the world model this perception is looking at.
+       @return The world model.
+    */
+    protected StandardWorldModel getWorld() {
+        return world;
+    }
+
+    /**
+       Get the maximum view distance.
+       @return The view distance.
+    */
+    protected int getViewDistance() {
+        return viewDistance;
+    }
+
+    /**
+       Get the number of rays cast for each agent.
+       @return The ray count.
+    */
+    protected int getRayCount() {
+        return rayCount;
+    }
+
+    /**
+       Find out which entities an agent can see.
+       @param agentEntity The agent that is looking.
+       @param location The location of the agent.
+       @param nearby All entities within view distance of the agent.
+       @return The visible entities.
+    */
+    protected Collection<StandardEntity> findVisible(StandardEntity agentEntity, Point2D location, Collection<StandardEntity> nearby) {
         Logger.debug("Finding visible entities from " + location);
         Logger.debug(nearby.size() + " nearby entities");
-        Collection<LineInfo> lines = getAllLines(nearby);
+        SegmentBuffer lines = segments.get();
+        fillSegments(nearby, lines);
+        double x = location.getX();
+        double y = location.getY();
         // Cast rays
         // CHECKSTYLE:OFF:MagicNumber
         double dAngle = Math.PI * 2 / rayCount;
@@ -280,14 +316,12 @@ public class LineOfSightPerception implements Perception, GUIComponent {
         Collection<StandardEntity> result = new HashSet<StandardEntity>();
         for (int i = 0; i < rayCount; ++i) {
             double angle = i * dAngle;
-            Vector2D vector = new Vector2D(Math.sin(angle), Math.cos(angle)).scale(viewDistance);
-            Ray ray = new Ray(new Line2D(location, vector), lines);
-            for (LineInfo hit : ray.getLinesHit()) {
-                StandardEntity e = hit.getEntity();
-                result.add(e);
-            }
+            // Build the direction the same way Line2D does so the ray is identical to new Line2D(location, vector)
+            double dx = (x + Math.sin(angle) * viewDistance) - x;
+            double dy = (y + Math.cos(angle) * viewDistance) - y;
+            double length = lines.cast(x, y, dx, dy, result);
             if (view != null) {
-                view.addRay(agentEntity, ray);
+                view.addRay(agentEntity, new Ray(new Line2D(x, y, dx, dy), length));
             }
         }
         // Now look for humans
@@ -299,21 +333,20 @@ public class LineOfSightPerception implements Perception, GUIComponent {
                 }
             }
         }
+        lines.clear();
         // Add self
         result.add(agentEntity);
         Logger.debug(agentEntity + " can see " + result);
         return result;
     }
 
-    private boolean canSee(StandardEntity agent, Point2D location, Human h, Collection<LineInfo> lines) {
+    private boolean canSee(StandardEntity agent, Point2D location, Human h, SegmentBuffer lines) {
         if (h.isXDefined() && h.isYDefined()) {
-            int x = h.getX();
-            int y = h.getY();
-            Point2D humanLocation = new Point2D(x, y);
-            Ray ray = new Ray(new Line2D(location, humanLocation), lines);
-            if (ray.getVisibleLength() >= 1) {
+            double dx = h.getX() - location.getX();
+            double dy = h.getY() - location.getY();
+            if (lines.isClear(location.getX(), location.getY(), dx, dy)) {
                 if (view != null) {
-                    view.addRay(agent, ray);
+                    view.addRay(agent, new Ray(new Line2D(location.getX(), location.getY(), dx, dy), 1));
                 }
                 return true;
             }
@@ -330,34 +363,23 @@ public class LineOfSightPerception implements Perception, GUIComponent {
         return false;
     }
 
-    private Collection<LineInfo> getAllLines(Collection<StandardEntity> entities) {
-        Collection<LineInfo> result = new LinkedList<LineInfo>();
+    private void fillSegments(Collection<StandardEntity> entities, SegmentBuffer result) {
+        result.clear();
         for (StandardEntity next : entities) {
             if (next instanceof Building) {
                 for (Edge edge : ((Building)next).getEdges()) {
-                    Line2D line = edge.getLine();
-                    result.add(new LineInfo(line, next, !edge.isPassable()));
+                    result.add(edge.getLine(), next, !edge.isPassable());
                 }
             }
-            if (next instanceof Road) {
+            else if (next instanceof Road) {
                 for (Edge edge : ((Road)next).getEdges()) {
-                    Line2D line = edge.getLine();
-                    result.add(new LineInfo(line, next, false));
+                    result.add(edge.getLine(), next, false);
                 }
             }
             else if (next instanceof Blockade) {
-                int[] apexes = ((Blockade)next).getApexes();
-                List<Point2D> points = GeometryTools2D.vertexArrayToPoints(apexes);
-                List<Line2D> lines = GeometryTools2D.pointsToLines(points, true);
-                for (Line2D line : lines) {
-                    result.add(new LineInfo(line, next, false));
-                }
-            }
-            else {
-                continue;
+                result.addPolygon(((Blockade)next).getApexes(), next);
             }
         }
-        return result;
     }
 
     private static class Ray {
@@ -365,31 +387,10 @@ public class LineOfSightPerception implements Perception, GUIComponent {
         private Line2D ray;
         /** The visible length of the ray. */
         private double length;
-        /** List of lines hit in order. */
-        private List<LineInfo> hit;
 
-        public Ray(Line2D ray, Collection<LineInfo> otherLines) {
+        public Ray(Line2D ray, double length) {
             this.ray = ray;
-            List<Pair<LineInfo, Double>> intersections = new ArrayList<Pair<LineInfo, Double>>();
-            // Find intersections with other lines
-            for (LineInfo other : otherLines) {
-                double d1 = ray.getIntersection(other.getLine());
-                double d2 = other.getLine().getIntersection(ray);
-                if (d2 >= 0 && d2 <= 1 && d1 > 0 && d1 <= 1) {
-                    intersections.add(new Pair<LineInfo, Double>(other, d1));
-                }
-            }
-            Collections.sort(intersections, INTERSECTION_SORTER);
-            hit = new ArrayList<LineInfo>();
-            length = 1;
-            for (Pair<LineInfo, Double> next : intersections) {
-                LineInfo l = next.first();
-                hit.add(l);
-                if (l.isBlocking()) {
-                    length = next.second();
-                    break;
-                }
-            }
+            this.length = length;
         }
 
         public Line2D getRay() {
@@ -399,49 +400,6 @@ public class LineOfSightPerception implements Perception, GUIComponent {
         public double getVisibleLength() {
             return length;
         }
-
-        public List<LineInfo> getLinesHit() {
-            return Collections.unmodifiableList(hit);
-        }
-    }
-
-    private static class LineInfo {
-        private Line2D line;
-        private StandardEntity entity;
-        private boolean blocking;
-
-        public LineInfo(Line2D line, StandardEntity entity, boolean blocking) {
-            this.line = line;
-            this.entity = entity;
-            this.blocking = blocking;
-        }
-
-        public Line2D getLine() {
-            return line;
-        }
-
-        public StandardEntity getEntity() {
-            return entity;
-        }
-
-        public boolean isBlocking() {
-            return blocking;
-        }
-    }
-
-    private static class IntersectionSorter implements Comparator<Pair<LineInfo, Double>>, java.io.Serializable {
-        @Override
-        public int compare(Pair<LineInfo, Double> a, Pair<LineInfo, Double> b) {
-            double d1 = a.second();
-            double d2 = b.second();
-            if (d1 < d2) {
-                return -1;
-            }
-            if (d1 > d2) {
-                return 1;
-            }
-            return 0;
-        }
     }
 
     private class LOSView extends JPanel {
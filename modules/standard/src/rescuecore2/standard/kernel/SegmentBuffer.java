@@ -0,0 +1,223 @@
+package rescuecore2.standard.kernel;
+
+import rescuecore2.misc.geometry.GeometryTools2D;
+import rescuecore2.misc.geometry.Line2D;
+import rescuecore2.standard.entities.StandardEntity;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+   A reusable list of line segments stored as flat arrays, with a ray intersection test that does not allocate. Each segment belongs to an entity and is either blocking or non-blocking.
+   <p>
+   A SegmentBuffer is not thread safe. Perception code keeps one per thread and clears it for each agent.
+ */
+final class SegmentBuffer {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final double REJECT_MARGIN = 1.000001;
+
+    private double[] originX;
+    private double[] originY;
+    private double[] directionX;
+    private double[] directionY;
+    private boolean[] blocking;
+    private StandardEntity[] owners;
+    private int size;
+
+    private int[] hits;
+    private double[] hitDistances;
+    private int hitCount;
+
+    /**
+       Construct an empty SegmentBuffer.
+    */
+    SegmentBuffer() {
+        originX = new double[INITIAL_CAPACITY];
+        originY = new double[INITIAL_CAPACITY];
+        directionX = new double[INITIAL_CAPACITY];
+        directionY = new double[INITIAL_CAPACITY];
+        blocking = new boolean[INITIAL_CAPACITY];
+        owners = new StandardEntity[INITIAL_CAPACITY];
+        hits = new int[INITIAL_CAPACITY];
+        hitDistances = new double[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+       Remove all segments.
+    */
+    void clear() {
+        Arrays.fill(owners, 0, size, null);
+        size = 0;
+    }
+
+    /**
+       Get the number of segments.
+       @return The number of segments.
+    */
+    int size() {
+        return size;
+    }
+
+    /**
+       Add a segment.
+       @param line The segment to add.
+       @param owner The entity that owns the segment.
+       @param blocks Whether the segment blocks line of sight.
+    */
+    void add(Line2D line, StandardEntity owner, boolean blocks) {
+        add(line.getOrigin().getX(), line.getOrigin().getY(), line.getDirection().getX(), line.getDirection().getY(), owner, blocks);
+    }
+
+    /**
+       Add the outline of a polygon as non-blocking segments. The polygon is closed automatically.
+       @param apexes The polygon vertices in x, y order.
+       @param owner The entity that owns the polygon.
+    */
+    void addPolygon(int[] apexes, StandardEntity owner) {
+        if (apexes.length < 2) {
+            return;
+        }
+        int count = apexes.length / 2;
+        for (int i = 1; i < count; ++i) {
+            addBetween(apexes[2 * i - 2], apexes[2 * i - 1], apexes[2 * i], apexes[2 * i + 1], owner);
+        }
+        int lastX = apexes[2 * count - 2];
+        int lastY = apexes[2 * count - 1];
+        if (lastX != apexes[0] || lastY != apexes[1]) {
+            addBetween(lastX, lastY, apexes[0], apexes[1], owner);
+        }
+    }
+
+    /**
+       Cast a ray and add the owner of every segment it crosses up to and including the nearest blocking segment.
+       @param x The X coordinate of the ray origin.
+       @param y The Y coordinate of the ray origin.
+       @param dx The X component of the ray direction.
+       @param dy The Y component of the ray direction.
+       @param result The collection to add visible entities to.
+       @return The visible length of the ray as a fraction of its direction vector.
+    */
+    double cast(double x, double y, double dx, double dy, Collection<StandardEntity> result) {
+        double nearest = Double.POSITIVE_INFINITY;
+        hitCount = 0;
+        for (int i = 0; i < size; ++i) {
+            double d = intersect(x, y, dx, dy, originX[i], originY[i], directionX[i], directionY[i]);
+            // Hits further away than the nearest blocking segment can never be visible
+            if (Double.isNaN(d) || d > nearest) {
+                continue;
+            }
+            if (blocking[i]) {
+                nearest = d;
+            }
+            if (hitCount == hits.length) {
+                hits = Arrays.copyOf(hits, hits.length * 2);
+                hitDistances = Arrays.copyOf(hitDistances, hitDistances.length * 2);
+            }
+            hits[hitCount] = i;
+            hitDistances[hitCount] = d;
+            ++hitCount;
+        }
+        for (int i = 0; i < hitCount; ++i) {
+            if (hitDistances[i] <= nearest) {
+                result.add(owners[hits[i]]);
+            }
+        }
+        return Math.min(nearest, 1);
+    }
+
+    /**
+       Find out if a ray reaches its end point without being blocked.
+       @param x The X coordinate of the ray origin.
+       @param y The Y coordinate of the ray origin.
+       @param dx The X component of the ray direction.
+       @param dy The Y component of the ray direction.
+       @return True if no blocking segment crosses the ray before its end point.
+    */
+    boolean isClear(double x, double y, double dx, double dy) {
+        for (int i = 0; i < size; ++i) {
+            if (blocking[i] && intersect(x, y, dx, dy, originX[i], originY[i], directionX[i], directionY[i]) < 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+       Intersect a ray with a segment. The arithmetic is the same as {@link Line2D#getIntersection(Line2D)} so results match the object based geometry code exactly.
+       @param x The X coordinate of the ray origin.
+       @param y The Y coordinate of the ray origin.
+       @param dx The X component of the ray direction.
+       @param dy The Y component of the ray direction.
+       @param ox The X coordinate of the segment origin.
+       @param oy The Y coordinate of the segment origin.
+       @param sx The X component of the segment direction.
+       @param sy The Y component of the segment direction.
+       @return The distance along the ray to the intersection point in the range (0, 1], or NaN if the ray does not cross the segment.
+    */
+    static double intersect(double x, double y, double dx, double dy, double ox, double oy, double sx, double sy) {
+        // Distance along the ray is t / d
+        double d = (dx * sy) - (dy * sx);
+        if (GeometryTools2D.nearlyZero(d)) {
+            return Double.NaN;
+        }
+        double t = ((ox - x) * sy) - ((oy - y) * sx);
+        // Cheap rejection of intersections that are clearly behind the ray origin or beyond its end before paying for the division
+        if (definitelyOutside(t, d)) {
+            return Double.NaN;
+        }
+        double d1 = t / d;
+        if (!(d1 > 0 && d1 <= 1)) {
+            return Double.NaN;
+        }
+        // Distance along the segment is u / e
+        double e = (sx * dy) - (sy * dx);
+        if (GeometryTools2D.nearlyZero(e)) {
+            return Double.NaN;
+        }
+        double u = ((x - ox) * dy) - ((y - oy) * dx);
+        if (definitelyOutside(u, e)) {
+            return Double.NaN;
+        }
+        double d2 = u / e;
+        if (d2 >= 0 && d2 <= 1) {
+            return d1;
+        }
+        return Double.NaN;
+    }
+
+    /**
+       Find out if the quotient n / d is certainly outside the range [0, 1]. This only rejects quotients that are outside the range by a margin much larger than the rounding error of the division so that the exact test that follows decides all borderline cases.
+    */
+    private static boolean definitelyOutside(double n, double d) {
+        if (d > 0) {
+            return n < 0 || n > d * REJECT_MARGIN;
+        }
+        return n > 0 || n < d * REJECT_MARGIN;
+    }
+
+    private void addBetween(int x1, int y1, int x2, int y2, StandardEntity owner) {
+        double ox = x1;
+        double oy = y1;
+        add(ox, oy, x2 - ox, y2 - oy, owner, false);
+    }
+
+    private void add(double ox, double oy, double dx, double dy, StandardEntity owner, boolean blocks) {
+        if (size == originX.length) {
+            int newLength = size * 2;
+            originX = Arrays.copyOf(originX, newLength);
+            originY = Arrays.copyOf(originY, newLength);
+            directionX = Arrays.copyOf(directionX, newLength);
+            directionY = Arrays.copyOf(directionY, newLength);
+            blocking = Arrays.copyOf(blocking, newLength);
+            owners = Arrays.copyOf(owners, newLength);
+        }
+        originX[size] = ox;
+        originY[size] = oy;
+        directionX[size] = dx;
+        directionY[size] = dy;
+        blocking[size] = blocks;
+        owners[size] = owner;
+        ++size;
+    }
+}
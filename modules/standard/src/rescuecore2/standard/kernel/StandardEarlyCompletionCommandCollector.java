@@ -0,0 +1,20 @@
+package rescuecore2.standard.kernel;
+
+import rescuecore2.messages.Command;
+
+import kernel.EarlyCompletionCommandCollector;
+
+/**
+   An EarlyCompletionCommandCollector that treats an agent as finished once it has sent a non-communication command.
+*/
+public class StandardEarlyCompletionCommandCollector extends EarlyCompletionCommandCollector {
+    @Override
+    protected boolean isCompletionCommand(Command c) {
+        return StandardCommandCollector.isTriggerCommand(c);
+    }
+
+    @Override
+    public String toString() {
+        return "Standard early completion command collector";
+    }
+}
@@ -10,7 +10,10 @@ import java.util.Map;
 import java.util.EnumMap;
 
 import rescuecore2.standard.entities.Building;
+import rescuecore2.standard.entities.ColumnarWorldModel;
 import rescuecore2.standard.entities.StandardEntityConstants;
+import rescuecore2.standard.entities.StandardEntityURN;
+import rescuecore2.standard.entities.StandardPropertyURN;
 
 /**
    Score function that measures the amount of damage done to buildings by fire.
@@ -26,7 +29,11 @@ public class BuildingDamageScoreFunction extends AbstractScoreFunction {
     private static final String BURNT_OUT_FACTOR = "score.standard.building-fire.burnt-out";
     private static final String ABSOLUTE_KEY = "score.standard.building-fire.absolute";
 
+    private static final StandardEntityURN[] TYPES = StandardEntityURN.values();
+
     private Map<StandardEntityConstants.Fieryness, Double> factors;
+    // Factors indexed by fieryness value
+    private double[] fierynessFactors;
     private boolean absolute;
 
     /**
@@ -49,13 +56,39 @@ public class BuildingDamageScoreFunction extends AbstractScoreFunction {
         factors.put(StandardEntityConstants.Fieryness.SEVERE_DAMAGE, config.getFloatValue(SEVERE_DAMAGE_FACTOR));
         factors.put(StandardEntityConstants.Fieryness.BURNT_OUT, config.getFloatValue(BURNT_OUT_FACTOR));
         absolute = config.getBooleanValue(ABSOLUTE_KEY, false);
+        StandardEntityConstants.Fieryness[] all = StandardEntityConstants.Fieryness.values();
+        fierynessFactors = new double[all.length];
+        for (int i = 0; i < all.length; ++i) {
+            fierynessFactors[i] = factors.get(all[i]);
+        }
     }
 
     @Override
     public double score(WorldModel<? extends Entity> world, Timestep timestep) {
         double sum = 0;
         double max = 0;
-        // TODO: we can improve the performance if we iterate over buildings
+        if (world instanceof ColumnarWorldModel) {
+            // Walk the columns of every type of entity that has a total area
+            ColumnarWorldModel columnar = (ColumnarWorldModel)world;
+            for (StandardEntityURN urn : TYPES) {
+                ColumnarWorldModel.Table table = columnar.getTable(urn);
+                int[] totalArea = table.getColumn(StandardPropertyURN.BUILDING_AREA_TOTAL);
+                if (totalArea == null) {
+                    continue;
+                }
+                int[] importance = table.getColumn(StandardPropertyURN.IMPORTANCE);
+                int[] fieryness = table.getColumn(StandardPropertyURN.FIERYNESS);
+                for (int row = 0; row < table.size(); ++row) {
+                    if (totalArea[row] == ColumnarWorldModel.UNDEFINED) {
+                        continue;
+                    }
+                    double area = (double)totalArea[row] * (importance[row] == ColumnarWorldModel.UNDEFINED ? 1 : importance[row]);
+                    sum += area * (fieryness[row] == ColumnarWorldModel.UNDEFINED ? 1 : fierynessFactors[fieryness[row]]);
+                    max += area;
+                }
+            }
+            return absolute ? sum : sum / max;
+        }
         for (Entity next : world) {
             if (next instanceof Building) {
                 Building b = (Building)next;
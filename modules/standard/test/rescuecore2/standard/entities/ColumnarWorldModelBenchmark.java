@@ -0,0 +1,94 @@
+package rescuecore2.standard.entities;
+
+import gis2.GMLWorldModelCreator;
+
+import rescuecore2.Timestep;
+import rescuecore2.config.Config;
+import rescuecore2.standard.score.BuildingDamageScoreFunction;
+import rescuecore2.worldmodel.ChangeSet;
+
+import java.io.File;
+
+/**
+   Benchmark that compares a StandardWorldModel with a ColumnarWorldModel built from the same map. It reports the heap used by each world model, the size of the columns, the time to merge a ChangeSet that covers the whole world and the time taken by BuildingDamageScoreFunction.
+   <p>
+   Usage: ColumnarWorldModelBenchmark &lt;kernel config&gt; &lt;map directory&gt;
+ */
+public final class ColumnarWorldModelBenchmark {
+    private static final int ROUNDS = 50;
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private ColumnarWorldModelBenchmark() {}
+
+    /**
+       Run the benchmark.
+       @param args The kernel config file and a map directory.
+       @throws Exception If something goes wrong.
+    */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: ColumnarWorldModelBenchmark <kernel config> <map directory>");
+            return;
+        }
+        Config config = new Config(new File(args[0]));
+        config.setValue("gis.map.dir", args[1]);
+        config.setValue("gis.worldmodel.columnar", "false");
+        long before = usedMemory();
+        StandardWorldModel standard = (StandardWorldModel)new GMLWorldModelCreator().buildWorldModel(config);
+        long standardBytes = usedMemory() - before;
+        config.setValue("gis.worldmodel.columnar", "true");
+        before = usedMemory();
+        ColumnarWorldModel columnar = (ColumnarWorldModel)new GMLWorldModelCreator().buildWorldModel(config);
+        long columnarBytes = usedMemory() - before;
+        long columnBytes = 0;
+        for (StandardEntityURN urn : StandardEntityURN.values()) {
+            ColumnarWorldModel.Table table = columnar.getTable(urn);
+            int count = 0;
+            for (StandardPropertyURN property : StandardPropertyURN.values()) {
+                if (table.getColumn(property) != null) {
+                    ++count;
+                }
+            }
+            columnBytes += (long)table.size() * (count * Integer.BYTES + Integer.BYTES);
+        }
+        System.out.println(args[1] + ": " + standard.getAllEntities().size() + " entities");
+        System.out.println("Heap: StandardWorldModel " + format(standardBytes / BYTES_PER_MEGABYTE) + " MB, ColumnarWorldModel " + format(columnarBytes / BYTES_PER_MEGABYTE) + " MB, "
+                           + format(columnBytes / BYTES_PER_MEGABYTE) + " MB of column data");
+        run("StandardWorldModel", standard, config);
+        run("ColumnarWorldModel", columnar, config);
+    }
+
+    private static void run(String name, StandardWorldModel world, Config config) {
+        ChangeSet all = new ChangeSet();
+        all.addAll(world.getAllEntities());
+        BuildingDamageScoreFunction score = new BuildingDamageScoreFunction();
+        score.initialise(world, config);
+        Timestep timestep = new Timestep(1);
+        double result = 0;
+        long merge = Long.MAX_VALUE;
+        long scan = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            world.merge(all);
+            long merged = System.nanoTime();
+            result = score.score(world, timestep);
+            long scored = System.nanoTime();
+            merge = Math.min(merge, merged - start);
+            scan = Math.min(scan, scored - merged);
+        }
+        System.out.println(name + ": merge " + format(merge / NANOS_PER_MILLI) + " ms, building damage score " + format(scan / NANOS_PER_MILLI) + " ms (" + result + ")");
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String format(double d) {
+        return String.format("%.3f", d);
+    }
+}
@@ -0,0 +1,113 @@
+package rescuecore2.standard.entities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.properties.IntProperty;
+
+public class ColumnarWorldModelTest {
+    private ColumnarWorldModel model;
+    private Civilian civ1;
+    private Civilian civ2;
+    private Civilian civ3;
+
+    @Before
+    public void setup() {
+        model = new ColumnarWorldModel();
+        civ1 = makeCivilian(1, 10000);
+        civ2 = makeCivilian(2, 9000);
+        civ3 = makeCivilian(3, 8000);
+        model.addEntity(civ1);
+        model.addEntity(civ2);
+        model.addEntity(civ3);
+    }
+
+    @Test
+    public void testAdd() {
+        ColumnarWorldModel.Table table = model.getTable(StandardEntityURN.CIVILIAN);
+        assertEquals(3, table.size());
+        assertEquals(0, model.getTable(StandardEntityURN.BUILDING).size());
+        assertNull(table.getColumn(StandardPropertyURN.FIERYNESS));
+        assertEquals(-1, model.getRow(new EntityID(4)));
+        assertColumns();
+        int row = model.getRow(civ2.getID());
+        assertEquals(civ2, table.getEntity(row));
+        assertEquals(9000, table.getColumn(StandardPropertyURN.HP)[row]);
+        assertEquals(ColumnarWorldModel.UNDEFINED, table.getColumn(StandardPropertyURN.DAMAGE)[row]);
+    }
+
+    @Test
+    public void testChanges() {
+        ChangeSet changes = new ChangeSet();
+        changes.addChange(civ2, new IntProperty(StandardPropertyURN.HP, 500));
+        model.merge(changes);
+        civ3.setPosition(new EntityID(99));
+        civ1.undefineHP();
+        ColumnarWorldModel.Table table = model.getTable(StandardEntityURN.CIVILIAN);
+        assertEquals(500, table.getColumn(StandardPropertyURN.HP)[model.getRow(civ2.getID())]);
+        assertEquals(99, table.getColumn(StandardPropertyURN.POSITION)[model.getRow(civ3.getID())]);
+        assertEquals(ColumnarWorldModel.UNDEFINED, table.getColumn(StandardPropertyURN.HP)[model.getRow(civ1.getID())]);
+        assertColumns();
+    }
+
+    @Test
+    public void testRemove() {
+        model.removeEntity(civ1.getID());
+        assertEquals(2, model.getTable(StandardEntityURN.CIVILIAN).size());
+        assertEquals(-1, model.getRow(civ1.getID()));
+        assertColumns();
+        // Removed entities are no longer followed
+        civ1.setHP(1);
+        model.removeAllEntities();
+        assertEquals(0, model.getTable(StandardEntityURN.CIVILIAN).size());
+        model.addEntity(civ2);
+        assertColumns();
+    }
+
+    @Test
+    public void testReplace() {
+        Civilian replacement = makeCivilian(2, 7000);
+        model.addEntity(replacement);
+        model.addEntity(replacement);
+        ColumnarWorldModel.Table table = model.getTable(StandardEntityURN.CIVILIAN);
+        assertEquals(3, table.size());
+        assertEquals(replacement, table.getEntity(model.getRow(replacement.getID())));
+        // The replaced entity is no longer followed
+        civ2.setHP(1);
+        assertColumns();
+        // Replace with a different type of entity
+        PoliceForce police = new PoliceForce(new EntityID(2));
+        police.setHP(6000);
+        model.addEntity(police);
+        assertEquals(2, table.size());
+        assertEquals(1, model.getTable(StandardEntityURN.POLICE_FORCE).size());
+        assertEquals(0, model.getRow(police.getID()));
+        replacement.setHP(1);
+        assertColumns();
+        assertEquals(6000, model.getTable(StandardEntityURN.POLICE_FORCE).getColumn(StandardPropertyURN.HP)[0]);
+    }
+
+    private void assertColumns() {
+        ColumnarWorldModel.Table table = model.getTable(StandardEntityURN.CIVILIAN);
+        int[] hp = table.getColumn(StandardPropertyURN.HP);
+        int[] position = table.getColumn(StandardPropertyURN.POSITION);
+        for (int row = 0; row < table.size(); ++row) {
+            Civilian c = (Civilian)table.getEntity(row);
+            assertEquals(row, model.getRow(c.getID()));
+            assertEquals(c.isHPDefined() ? c.getHP() : ColumnarWorldModel.UNDEFINED, hp[row]);
+            assertEquals(c.isPositionDefined() ? c.getPosition().getValue() : ColumnarWorldModel.UNDEFINED, position[row]);
+        }
+    }
+
+    private Civilian makeCivilian(int id, int hp) {
+        Civilian result = new Civilian(new EntityID(id));
+        result.setHP(hp);
+        result.setPosition(new EntityID(100 + id));
+        return result;
+    }
+}
@@ -0,0 +1,96 @@
+package rescuecore2.standard.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rescuecore2.config.Config;
+import rescuecore2.standard.entities.Blockade;
+import rescuecore2.standard.entities.Edge;
+import rescuecore2.standard.entities.PoliceForce;
+import rescuecore2.standard.entities.Road;
+import rescuecore2.standard.entities.StandardWorldModel;
+import rescuecore2.worldmodel.EntityID;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class GridLineOfSightPerceptionTest {
+    private static final EntityID NEAR_ROAD = new EntityID(1);
+    private static final EntityID FAR_ROAD = new EntityID(2);
+    private static final EntityID AGENT = new EntityID(3);
+    private static final EntityID BLOCKADE = new EntityID(4);
+    // Well beyond the default view distance of 30000
+    private static final int FAR = 100000;
+
+    private StandardWorldModel world;
+    private PoliceForce agent;
+    private Road farRoad;
+
+    @Before
+    public void setup() {
+        world = new StandardWorldModel();
+        world.addEntity(makeRoad(NEAR_ROAD, 0));
+        farRoad = makeRoad(FAR_ROAD, FAR);
+        world.addEntity(farRoad);
+        agent = new PoliceForce(AGENT);
+        agent.setPosition(NEAR_ROAD);
+        agent.setX(2000);
+        agent.setY(5000);
+        world.addEntity(agent);
+    }
+
+    @Test
+    public void testBlockadeAddedDuringRun() {
+        LineOfSightPerception baseline = new LineOfSightPerception();
+        GridLineOfSightPerception grid = new GridLineOfSightPerception();
+        baseline.initialise(new Config(), world);
+        grid.initialise(new Config(), world);
+        assertEquals(baseline.getVisibleEntities(agent).getChangedEntities(), grid.getVisibleEntities(agent).getChangedEntities());
+
+        // A blockade that belongs to a road out of view but spills into the agent's road, as rubble from a collapse can
+        Blockade blockade = new Blockade(BLOCKADE);
+        blockade.setPosition(FAR_ROAD);
+        blockade.setX(6500);
+        blockade.setY(5000);
+        blockade.setApexes(new int[] {6000, 4000, 7000, 4000, 7000, 6000, 6000, 6000});
+        blockade.setRepairCost(1);
+        world.addEntity(blockade);
+        farRoad.setBlockades(Collections.singletonList(BLOCKADE));
+        baseline.setTime(1);
+        grid.setTime(1);
+
+        // The baseline's spatial index was built before the blockade existed, so its rays never test the blockade
+        assertFalse(baseline.getVisibleEntities(agent).getChangedEntities().contains(BLOCKADE));
+        // The grid re-indexes blockades each timestep, so the agent sees the rubble in front of it
+        assertTrue(grid.getVisibleEntities(agent).getChangedEntities().contains(BLOCKADE));
+        // That is what the baseline sees too once its index is current
+        world.index();
+        assertEquals(baseline.getVisibleEntities(agent).getChangedEntities(), grid.getVisibleEntities(agent).getChangedEntities());
+
+        // Clearing the blockade takes it out of view again
+        world.removeEntity(BLOCKADE);
+        farRoad.setBlockades(new ArrayList<EntityID>());
+        grid.setTime(2);
+        assertFalse(grid.getVisibleEntities(agent).getChangedEntities().contains(BLOCKADE));
+    }
+
+    // A 10000 by 10000 square road with its lower left corner at (x, 0)
+    private Road makeRoad(EntityID id, int x) {
+        Road result = new Road(id);
+        List<Edge> edges = new ArrayList<Edge>();
+        edges.add(new Edge(x, 0, x + 10000, 0));
+        edges.add(new Edge(x + 10000, 0, x + 10000, 10000));
+        edges.add(new Edge(x + 10000, 10000, x, 10000));
+        edges.add(new Edge(x, 10000, x, 0));
+        result.setEdges(edges);
+        result.setX(x + 5000);
+        result.setY(5000);
+        result.setBlockades(new ArrayList<EntityID>());
+        return result;
+    }
+}
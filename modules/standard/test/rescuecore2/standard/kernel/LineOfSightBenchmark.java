@@ -0,0 +1,206 @@
+package rescuecore2.standard.kernel;
+
+import gis2.GMLWorldModelCreator;
+
+import rescuecore2.config.Config;
+import rescuecore2.misc.Pair;
+import rescuecore2.misc.geometry.GeometryTools2D;
+import rescuecore2.misc.geometry.Line2D;
+import rescuecore2.misc.geometry.Point2D;
+import rescuecore2.misc.geometry.Vector2D;
+import rescuecore2.standard.entities.Blockade;
+import rescuecore2.standard.entities.Building;
+import rescuecore2.standard.entities.Edge;
+import rescuecore2.standard.entities.Human;
+import rescuecore2.standard.entities.Road;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.StandardWorldModel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+   Benchmark that compares the flat array ray kernel in {@link SegmentBuffer} with the object based ray casting that {@link LineOfSightPerception} used previously. Rays are cast from the position of every human on each map and the visible sets are checked for equality.
+   <p>
+   Usage: LineOfSightBenchmark &lt;kernel config&gt; &lt;map directory&gt; [&lt;map directory&gt; ...]
+ */
+public final class LineOfSightBenchmark {
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 10;
+    private static final int VIEW_DISTANCE = 30000;
+    private static final int RAY_COUNT = 720;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private LineOfSightBenchmark() {}
+
+    /**
+       Run the benchmark.
+       @param args The kernel config file followed by one or more map directories.
+       @throws Exception If something goes wrong.
+    */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: LineOfSightBenchmark <kernel config> <map directory> [<map directory> ...]");
+            return;
+        }
+        for (int i = 1; i < args.length; ++i) {
+            Config config = new Config(new File(args[0]));
+            config.setValue("gis.map.dir", args[i]);
+            StandardWorldModel world = (StandardWorldModel)new GMLWorldModelCreator().buildWorldModel(config);
+            world.index();
+            List<Pair<Point2D, Collection<StandardEntity>>> origins = new ArrayList<Pair<Point2D, Collection<StandardEntity>>>();
+            for (StandardEntity next : world) {
+                if (next instanceof Human) {
+                    Pair<Integer, Integer> location = next.getLocation(world);
+                    if (location != null) {
+                        origins.add(new Pair<Point2D, Collection<StandardEntity>>(new Point2D(location.first(), location.second()),
+                                                                                 world.getObjectsInRange(location.first(), location.second(), VIEW_DISTANCE)));
+                    }
+                }
+            }
+            System.out.println(args[i] + ": " + origins.size() + " viewpoints, " + RAY_COUNT + " rays each");
+            for (int round = 0; round < WARMUP_ROUNDS; ++round) {
+                runLegacy(origins);
+                runKernel(origins);
+            }
+            long legacy = 0;
+            long kernel = 0;
+            for (int round = 0; round < ROUNDS; ++round) {
+                long start = System.nanoTime();
+                runLegacy(origins);
+                long middle = System.nanoTime();
+                runKernel(origins);
+                long end = System.nanoTime();
+                legacy += middle - start;
+                kernel += end - middle;
+            }
+            double rays = (double)origins.size() * RAY_COUNT * ROUNDS;
+            System.out.println("  Legacy Ray:    " + (legacy / NANOS_PER_MILLI / ROUNDS) + "ms per round, " + (legacy / rays) + "ns per ray");
+            System.out.println("  SegmentBuffer: " + (kernel / NANOS_PER_MILLI / ROUNDS) + "ms per round, " + (kernel / rays) + "ns per ray");
+            int mismatches = 0;
+            SegmentBuffer buffer = new SegmentBuffer();
+            for (Pair<Point2D, Collection<StandardEntity>> next : origins) {
+                if (!castLegacy(next.first(), next.second()).equals(castKernel(next.first(), next.second(), buffer))) {
+                    ++mismatches;
+                }
+            }
+            System.out.println("  Viewpoints with different visible sets: " + mismatches);
+        }
+    }
+
+    private static int runLegacy(List<Pair<Point2D, Collection<StandardEntity>>> origins) {
+        int total = 0;
+        for (Pair<Point2D, Collection<StandardEntity>> next : origins) {
+            total += castLegacy(next.first(), next.second()).size();
+        }
+        return total;
+    }
+
+    private static int runKernel(List<Pair<Point2D, Collection<StandardEntity>>> origins) {
+        int total = 0;
+        SegmentBuffer buffer = new SegmentBuffer();
+        for (Pair<Point2D, Collection<StandardEntity>> next : origins) {
+            total += castKernel(next.first(), next.second(), buffer).size();
+        }
+        return total;
+    }
+
+    private static Set<StandardEntity> castKernel(Point2D location, Collection<StandardEntity> nearby, SegmentBuffer buffer) {
+        buffer.clear();
+        for (StandardEntity next : nearby) {
+            if (next instanceof Building) {
+                for (Edge edge : ((Building)next).getEdges()) {
+                    buffer.add(edge.getLine(), next, !edge.isPassable());
+                }
+            }
+            else if (next instanceof Road) {
+                for (Edge edge : ((Road)next).getEdges()) {
+                    buffer.add(edge.getLine(), next, false);
+                }
+            }
+            else if (next instanceof Blockade) {
+                buffer.addPolygon(((Blockade)next).getApexes(), next);
+            }
+        }
+        Set<StandardEntity> result = new HashSet<StandardEntity>();
+        double x = location.getX();
+        double y = location.getY();
+        double dAngle = Math.PI * 2 / RAY_COUNT;
+        for (int i = 0; i < RAY_COUNT; ++i) {
+            double angle = i * dAngle;
+            double dx = (x + Math.sin(angle) * VIEW_DISTANCE) - x;
+            double dy = (y + Math.cos(angle) * VIEW_DISTANCE) - y;
+            buffer.cast(x, y, dx, dy, result);
+        }
+        return result;
+    }
+
+    private static Set<StandardEntity> castLegacy(Point2D location, Collection<StandardEntity> nearby) {
+        Collection<LineInfo> lines = new LinkedList<LineInfo>();
+        for (StandardEntity next : nearby) {
+            if (next instanceof Building) {
+                for (Edge edge : ((Building)next).getEdges()) {
+                    lines.add(new LineInfo(edge.getLine(), next, !edge.isPassable()));
+                }
+            }
+            else if (next instanceof Road) {
+                for (Edge edge : ((Road)next).getEdges()) {
+                    lines.add(new LineInfo(edge.getLine(), next, false));
+                }
+            }
+            else if (next instanceof Blockade) {
+                List<Point2D> points = GeometryTools2D.vertexArrayToPoints(((Blockade)next).getApexes());
+                for (Line2D line : GeometryTools2D.pointsToLines(points, true)) {
+                    lines.add(new LineInfo(line, next, false));
+                }
+            }
+        }
+        Set<StandardEntity> result = new HashSet<StandardEntity>();
+        double dAngle = Math.PI * 2 / RAY_COUNT;
+        for (int i = 0; i < RAY_COUNT; ++i) {
+            double angle = i * dAngle;
+            Vector2D vector = new Vector2D(Math.sin(angle), Math.cos(angle)).scale(VIEW_DISTANCE);
+            Line2D ray = new Line2D(location, vector);
+            List<Pair<LineInfo, Double>> intersections = new ArrayList<Pair<LineInfo, Double>>();
+            for (LineInfo other : lines) {
+                double d1 = ray.getIntersection(other.line);
+                double d2 = other.line.getIntersection(ray);
+                if (d2 >= 0 && d2 <= 1 && d1 > 0 && d1 <= 1) {
+                    intersections.add(new Pair<LineInfo, Double>(other, d1));
+                }
+            }
+            Collections.sort(intersections, new Comparator<Pair<LineInfo, Double>>() {
+                    @Override
+                    public int compare(Pair<LineInfo, Double> a, Pair<LineInfo, Double> b) {
+                        return Double.compare(a.second(), b.second());
+                    }
+                });
+            for (Pair<LineInfo, Double> next : intersections) {
+                result.add(next.first().entity);
+                if (next.first().blocking) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static final class LineInfo {
+        private final Line2D line;
+        private final StandardEntity entity;
+        private final boolean blocking;
+
+        LineInfo(Line2D line, StandardEntity entity, boolean blocking) {
+            this.line = line;
+            this.entity = entity;
+            this.blocking = blocking;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package rescuecore2.standard.messages;
+
+import gis2.GMLWorldModelCreator;
+
+import rescuecore2.config.Config;
+import rescuecore2.messages.Command;
+import rescuecore2.messages.Message;
+import rescuecore2.messages.control.KASense;
+import rescuecore2.messages.control.KSUpdate;
+import rescuecore2.messages.control.KVTimestep;
+import rescuecore2.misc.ByteBufferInputStream;
+import rescuecore2.misc.ByteBufferOutputStream;
+import rescuecore2.misc.EncodingTools;
+import rescuecore2.misc.URNDictionary;
+import rescuecore2.registry.Registry;
+import rescuecore2.standard.entities.Human;
+import rescuecore2.standard.entities.Road;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.StandardEntityFactory;
+import rescuecore2.standard.entities.StandardPropertyFactory;
+import rescuecore2.standard.entities.StandardWorldModel;
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.EntityID;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+   Benchmark for encoding and decoding KASense, KSUpdate and KVTimestep messages made up from a map. Each message is encoded into a ByteArrayOutputStream, as a caller outside the connection code would, and into a pooled ByteBufferOutputStream, as the connections do, then decoded from a ByteArrayInputStream and from a ByteBufferInputStream. Both versions of the wire protocol are measured and every round trip is checked to give the same bytes.
+   <p>
+   Usage: SerialisationBenchmark &lt;kernel config&gt; &lt;map directory&gt; [rounds]
+ */
+public final class SerialisationBenchmark {
+    private static final int VIEW_DISTANCE = 30000;
+    private static final int PATH_LENGTH = 10;
+    private static final int DEFAULT_ROUNDS = 20;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private SerialisationBenchmark() {}
+
+    /**
+       Run the benchmark.
+       @param args The kernel config file, a map directory and optionally the number of timed rounds.
+       @throws Exception If something goes wrong.
+    */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: SerialisationBenchmark <kernel config> <map directory> [rounds]");
+            return;
+        }
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROUNDS;
+        Registry registry = new Registry("Serialisation benchmark", Registry.SYSTEM_REGISTRY);
+        registry.registerEntityFactory(StandardEntityFactory.INSTANCE);
+        registry.registerPropertyFactory(StandardPropertyFactory.INSTANCE);
+        registry.registerMessageFactory(StandardMessageFactory.INSTANCE);
+        Registry.setCurrentRegistry(registry);
+        URNDictionary dictionary = new URNDictionary(registry.getKnownURNs());
+        Map<String, List<Message>> messages = makeMessages(args[0], args[1]);
+        int mismatches = 0;
+        for (URNDictionary next : Arrays.asList(null, dictionary)) {
+            System.out.println("Wire protocol version " + (next == null ? 1 : 2));
+            EncodingTools.setWireDictionary(next);
+            try {
+                for (Map.Entry<String, List<Message>> entry : messages.entrySet()) {
+                    mismatches += run(entry.getKey(), entry.getValue(), rounds);
+                }
+            }
+            finally {
+                EncodingTools.setWireDictionary(null);
+            }
+        }
+        System.out.println("Round trips that changed the bytes: " + mismatches + (mismatches == 0 ? "" : " MISMATCH"));
+    }
+
+    private static Map<String, List<Message>> makeMessages(String configFile, String mapDir) throws Exception {
+        Config config = new Config(new File(configFile));
+        config.setValue("gis.map.dir", mapDir);
+        StandardWorldModel world = (StandardWorldModel)new GMLWorldModelCreator().buildWorldModel(config);
+        world.index();
+        List<Message> sense = new ArrayList<Message>();
+        List<Command> moves = new ArrayList<Command>();
+        ChangeSet all = new ChangeSet();
+        all.addAll(world.getAllEntities());
+        for (StandardEntity next : world) {
+            if (next instanceof Human) {
+                Collection<StandardEntity> nearby = world.getObjectsInRange(next, VIEW_DISTANCE);
+                ChangeSet visible = new ChangeSet();
+                visible.addAll(nearby);
+                sense.add(new KASense(next.getID(), 1, visible, new ArrayList<Command>()));
+                List<EntityID> path = new ArrayList<EntityID>();
+                for (StandardEntity road : nearby) {
+                    if (road instanceof Road && path.size() < PATH_LENGTH) {
+                        path.add(road.getID());
+                    }
+                }
+                moves.add(new AKMove(next.getID(), 1, path));
+            }
+        }
+        System.out.println(mapDir + ": " + world.getAllEntities().size() + " entities, " + sense.size() + " humans");
+        Map<String, List<Message>> result = new LinkedHashMap<String, List<Message>>();
+        result.put("KASense", sense);
+        result.put("KSUpdate", Arrays.<Message>asList(new KSUpdate(1, 1, all)));
+        result.put("KVTimestep", Arrays.<Message>asList(new KVTimestep(1, 1, moves, all)));
+        return result;
+    }
+
+    private static int run(String name, List<Message> messages, int rounds) throws IOException {
+        int mismatches = 0;
+        List<byte[]> encoded = new ArrayList<byte[]>(messages.size());
+        long bytes = 0;
+        for (Message next : messages) {
+            byte[] stream = encodeStream(next);
+            byte[] buffer = encodeBuffer(next);
+            if (!Arrays.equals(stream, buffer)
+                || !Arrays.equals(buffer, encodeBuffer(decodeBuffer(buffer)))
+                || !Arrays.equals(buffer, encodeBuffer(decodeStream(buffer)))) {
+                ++mismatches;
+            }
+            encoded.add(buffer);
+            bytes += buffer.length;
+        }
+        long[] times = new long[4];
+        for (int round = 0; round < WARMUP_ROUNDS + rounds; ++round) {
+            long start = System.nanoTime();
+            for (Message next : messages) {
+                encodeStream(next);
+            }
+            long encodedStream = System.nanoTime();
+            for (Message next : messages) {
+                encodeBuffer(next);
+            }
+            long encodedBuffer = System.nanoTime();
+            for (byte[] next : encoded) {
+                decodeStream(next);
+            }
+            long decodedStream = System.nanoTime();
+            for (byte[] next : encoded) {
+                decodeBuffer(next);
+            }
+            long decodedBuffer = System.nanoTime();
+            if (round >= WARMUP_ROUNDS) {
+                times[0] += encodedStream - start;
+                times[1] += encodedBuffer - encodedStream;
+                times[2] += decodedStream - encodedBuffer;
+                times[3] += decodedBuffer - decodedStream;
+            }
+        }
+        System.out.println("  " + name + ": " + messages.size() + " messages, " + bytes + " bytes, encode " + format(times[0], rounds) + " ms (stream) vs "
+                           + format(times[1], rounds) + " ms (buffer), decode " + format(times[2], rounds) + " ms (stream) vs " + format(times[3], rounds) + " ms (buffer)");
+        return mismatches;
+    }
+
+    private static byte[] encodeStream(Message m) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncodingTools.writeMessage(m, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeBuffer(Message m) throws IOException {
+        ByteBufferOutputStream out = ByteBufferOutputStream.acquire();
+        try {
+            EncodingTools.writeMessage(m, out);
+            return out.toByteArray();
+        }
+        finally {
+            out.release();
+        }
+    }
+
+    private static Message decodeStream(byte[] b) throws IOException {
+        return EncodingTools.readMessage(new ByteArrayInputStream(b));
+    }
+
+    private static Message decodeBuffer(byte[] b) throws IOException {
+        return EncodingTools.readMessage(new ByteBufferInputStream(ByteBuffer.wrap(b)));
+    }
+
+    private static String format(long nanos, int rounds) {
+        return String.format("%.3f", nanos / (rounds * NANOS_PER_MILLI));
+    }
+}
@@ -0,0 +1,230 @@
+package rescuecore2.standard.messages;
+
+import gis2.GMLWorldModelCreator;
+
+import rescuecore2.config.Config;
+import rescuecore2.log.CommandsRecord;
+import rescuecore2.log.FileLogReader;
+import rescuecore2.log.LogReader;
+import rescuecore2.log.PerceptionRecord;
+import rescuecore2.log.UpdatesRecord;
+import rescuecore2.messages.Command;
+import rescuecore2.messages.Message;
+import rescuecore2.messages.control.KASense;
+import rescuecore2.messages.control.KSCommands;
+import rescuecore2.messages.control.KSConnectOK;
+import rescuecore2.messages.control.KSUpdate;
+import rescuecore2.misc.EncodingTools;
+import rescuecore2.misc.URNDictionary;
+import rescuecore2.registry.Registry;
+import rescuecore2.standard.entities.Human;
+import rescuecore2.standard.entities.Road;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.StandardEntityFactory;
+import rescuecore2.standard.entities.StandardPropertyFactory;
+import rescuecore2.standard.entities.StandardWorldModel;
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.Property;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+   Benchmark that compares the size of messages in version 1 and version 2 of the wire protocol. Messages are either rebuilt from a log file, with one KASense per agent perception record plus the KSCommands and KSUpdate of every timestep, or made up from a map, with a KSConnectOK for the whole world and one KASense and AKMove per human covering the entities around it. Every message is decoded again from both encodings to check that nothing is lost.
+   <p>
+   Usage: WireProtocolBenchmark &lt;log file&gt; | &lt;kernel config&gt; &lt;map directory&gt;
+ */
+public final class WireProtocolBenchmark {
+    private static final int VIEW_DISTANCE = 30000;
+    private static final int PATH_LENGTH = 10;
+    private static final int ROUNDS = 10;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private WireProtocolBenchmark() {}
+
+    /**
+       Run the benchmark.
+       @param args Either a log file, or the kernel config file and a map directory.
+       @throws Exception If something goes wrong.
+    */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: WireProtocolBenchmark <log file> | <kernel config> <map directory>");
+            return;
+        }
+        Registry registry = new Registry("Wire protocol benchmark", Registry.SYSTEM_REGISTRY);
+        registry.registerEntityFactory(StandardEntityFactory.INSTANCE);
+        registry.registerPropertyFactory(StandardPropertyFactory.INSTANCE);
+        registry.registerMessageFactory(StandardMessageFactory.INSTANCE);
+        Registry.setCurrentRegistry(registry);
+        URNDictionary dictionary = new URNDictionary(registry.getKnownURNs());
+        Map<String, List<Message>> messages = args.length == 1 ? readLog(new File(args[0]), registry) : makeMessages(args[0], args[1]);
+        KSConnectOK connect = new KSConnectOK(0, 0, new ArrayList<StandardEntity>(), new Config());
+        int without = encode(connect, null).length;
+        connect.setURNDictionary(dictionary);
+        System.out.println("URN dictionary: " + dictionary.size() + " URNs, adds " + (encode(connect, null).length - without) + " bytes to each ConnectOK");
+        long totalV1 = 0;
+        long totalV2 = 0;
+        int mismatches = 0;
+        for (Map.Entry<String, List<Message>> next : messages.entrySet()) {
+            long v1 = 0;
+            long v2 = 0;
+            long v1Decode = 0;
+            long v2Decode = 0;
+            for (Message m : next.getValue()) {
+                byte[] old = encode(m, null);
+                byte[] wire = encode(m, dictionary);
+                v1 += old.length;
+                v2 += wire.length;
+                if (!canonical(decode(old, null)).equals(canonical(decode(wire, dictionary)))) {
+                    ++mismatches;
+                }
+            }
+            for (int round = 0; round < ROUNDS; ++round) {
+                v1Decode += timeDecode(next.getValue(), null);
+                v2Decode += timeDecode(next.getValue(), dictionary);
+            }
+            totalV1 += v1;
+            totalV2 += v2;
+            System.out.println(next.getKey() + ": " + next.getValue().size() + " messages, version 1 " + v1 + " bytes, version 2 " + v2 + " bytes (" + percent(v2, v1) + "), decode "
+                               + format(v1Decode / (ROUNDS * NANOS_PER_MILLI)) + " ms vs " + format(v2Decode / (ROUNDS * NANOS_PER_MILLI)) + " ms");
+        }
+        System.out.println("Total: version 1 " + totalV1 + " bytes, version 2 " + totalV2 + " bytes (" + percent(totalV2, totalV1) + ")");
+        System.out.println("Messages that decoded differently: " + mismatches + (mismatches == 0 ? "" : " MISMATCH"));
+    }
+
+    private static Map<String, List<Message>> readLog(File file, Registry registry) throws Exception {
+        LogReader log = new FileLogReader(file, registry);
+        Map<String, List<Message>> result = new LinkedHashMap<String, List<Message>>();
+        List<Message> sense = new ArrayList<Message>();
+        List<Message> commands = new ArrayList<Message>();
+        List<Message> updates = new ArrayList<Message>();
+        int max = log.getMaxTimestep();
+        for (int time = 1; time <= max; ++time) {
+            for (EntityID next : log.getEntitiesWithUpdates(time)) {
+                PerceptionRecord record = log.getPerception(time, next);
+                if (record != null) {
+                    sense.add(new KASense(next, time, record.getChangeSet(), record.getHearing()));
+                }
+            }
+            CommandsRecord c = log.getCommands(time);
+            if (c != null) {
+                commands.add(new KSCommands(1, time, c.getCommands()));
+            }
+            UpdatesRecord u = log.getUpdates(time);
+            if (u != null) {
+                updates.add(new KSUpdate(1, time, u.getChangeSet()));
+            }
+        }
+        System.out.println(file + ": " + max + " timesteps");
+        result.put("KASense", sense);
+        result.put("KSCommands", commands);
+        result.put("KSUpdate", updates);
+        return result;
+    }
+
+    private static Map<String, List<Message>> makeMessages(String configFile, String mapDir) throws Exception {
+        Config config = new Config(new File(configFile));
+        config.setValue("gis.map.dir", mapDir);
+        StandardWorldModel world = (StandardWorldModel)new GMLWorldModelCreator().buildWorldModel(config);
+        world.index();
+        Map<String, List<Message>> result = new LinkedHashMap<String, List<Message>>();
+        List<Message> sense = new ArrayList<Message>();
+        List<Command> moves = new ArrayList<Command>();
+        ChangeSet all = new ChangeSet();
+        for (StandardEntity next : world) {
+            if (next instanceof Human) {
+                Human human = (Human)next;
+                Collection<StandardEntity> nearby = world.getObjectsInRange(human, VIEW_DISTANCE);
+                ChangeSet visible = new ChangeSet();
+                visible.addAll(nearby);
+                sense.add(new KASense(human.getID(), 1, visible, new ArrayList<Command>()));
+                List<EntityID> path = new ArrayList<EntityID>();
+                for (StandardEntity road : nearby) {
+                    if (road instanceof Road && path.size() < PATH_LENGTH) {
+                        path.add(road.getID());
+                    }
+                }
+                moves.add(new AKMove(human.getID(), 1, path));
+                all.addAll(Arrays.asList(human));
+            }
+        }
+        System.out.println(mapDir + ": " + world.getAllEntities().size() + " entities, " + sense.size() + " humans");
+        result.put("KSConnectOK", Arrays.<Message>asList(new KSConnectOK(1, 1, world.getAllEntities(), new Config())));
+        result.put("KASense", sense);
+        result.put("KSCommands", Arrays.<Message>asList(new KSCommands(1, 1, moves)));
+        result.put("KSUpdate", Arrays.<Message>asList(new KSUpdate(1, 1, all)));
+        return result;
+    }
+
+    // Entities keep their properties in a hash set so compare entities property by property
+    private static Object canonical(Message m) throws IOException {
+        if (!(m instanceof KSConnectOK)) {
+            return ByteBuffer.wrap(encode(m, null));
+        }
+        List<String> result = new ArrayList<String>();
+        for (Entity next : ((KSConnectOK)m).getEntities()) {
+            List<String> properties = new ArrayList<String>();
+            for (Property p : next.getProperties()) {
+                properties.add(p.getURN() + "=" + Arrays.deepToString(new Object[] {p.isDefined() ? p.getValue() : null}));
+            }
+            Collections.sort(properties);
+            result.add(next.getID() + " " + next.getURN() + " " + properties);
+        }
+        return result;
+    }
+
+    private static long timeDecode(List<Message> messages, URNDictionary dictionary) throws IOException {
+        List<byte[]> encoded = new ArrayList<byte[]>(messages.size());
+        for (Message next : messages) {
+            encoded.add(encode(next, dictionary));
+        }
+        long start = System.nanoTime();
+        for (byte[] next : encoded) {
+            decode(next, dictionary);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static byte[] encode(Message m, URNDictionary dictionary) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncodingTools.setWireDictionary(dictionary);
+        try {
+            EncodingTools.writeMessage(m, out);
+        }
+        finally {
+            EncodingTools.setWireDictionary(null);
+        }
+        return out.toByteArray();
+    }
+
+    private static Message decode(byte[] b, URNDictionary dictionary) throws IOException {
+        EncodingTools.setWireDictionary(dictionary);
+        try {
+            return EncodingTools.readMessage(new ByteArrayInputStream(b));
+        }
+        finally {
+            EncodingTools.setWireDictionary(null);
+        }
+    }
+
+    private static String percent(long part, long whole) {
+        return whole == 0 ? "-" : String.format("%.1f%%", part * 100.0 / whole);
+    }
+
+    private static String format(double d) {
+        return String.format("%.3f", d);
+    }
+}
@@ -0,0 +1,126 @@
+package traffic3.manager;
+
+import traffic3.objects.TrafficAgent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+   A uniform grid of cells that records which agents are in each cell. Agents are moved between cells as they move, so finding the agents near a point only needs a look at the surrounding cells and does not allocate anything. Points outside the grid are clamped to the nearest cell.
+*/
+public class AgentGrid {
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final List<List<TrafficAgent>> cells;
+    private final Map<TrafficAgent, Integer> agentCells;
+
+    /**
+       Construct an empty AgentGrid.
+       @param minX The lowest X coordinate covered by the grid.
+       @param minY The lowest Y coordinate covered by the grid.
+       @param maxX The highest X coordinate covered by the grid.
+       @param maxY The highest Y coordinate covered by the grid.
+       @param cellSize The width and height of each cell.
+    */
+    public AgentGrid(double minX, double minY, double maxX, double maxY, double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        columns = Math.max(1, (int)Math.ceil((maxX - minX) / cellSize));
+        rows = Math.max(1, (int)Math.ceil((maxY - minY) / cellSize));
+        cells = new ArrayList<List<TrafficAgent>>(columns * rows);
+        for (int i = 0; i < columns * rows; ++i) {
+            cells.add(null);
+        }
+        agentCells = new HashMap<TrafficAgent, Integer>();
+    }
+
+    /**
+       Add an agent to the grid or move it to the cell that contains its current location.
+       @param agent The agent to update.
+    */
+    public void update(TrafficAgent agent) {
+        int cell = getRow(agent.getY()) * columns + getColumn(agent.getX());
+        Integer old = agentCells.get(agent);
+        if (old != null) {
+            if (old == cell) {
+                return;
+            }
+            cells.get(old).remove(agent);
+        }
+        List<TrafficAgent> list = cells.get(cell);
+        if (list == null) {
+            list = new ArrayList<TrafficAgent>();
+            cells.set(cell, list);
+        }
+        list.add(agent);
+        agentCells.put(agent, cell);
+    }
+
+    /**
+       Remove an agent from the grid.
+       @param agent The agent to remove.
+    */
+    public void remove(TrafficAgent agent) {
+        Integer old = agentCells.remove(agent);
+        if (old != null) {
+            cells.get(old).remove(agent);
+        }
+    }
+
+    /**
+       Get the column that contains an X coordinate.
+       @param x The X coordinate.
+       @return The column index.
+    */
+    public int getColumn(double x) {
+        return clamp((int)Math.floor((x - minX) / cellSize), columns);
+    }
+
+    /**
+       Get the row that contains a Y coordinate.
+       @param y The Y coordinate.
+       @return The row index.
+    */
+    public int getRow(double y) {
+        return clamp((int)Math.floor((y - minY) / cellSize), rows);
+    }
+
+    /**
+       Get the number of columns.
+       @return The number of columns.
+    */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+       Get the number of rows.
+       @return The number of rows.
+    */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+       Get the agents in a cell. The returned list is owned by the grid and must not be modified.
+       @param column The column of the cell.
+       @param row The row of the cell.
+       @return The agents in the cell, or null if the cell has never held an agent.
+    */
+    public List<TrafficAgent> getCell(int column, int row) {
+        return cells.get(row * columns + column);
+    }
+
+    private static int clamp(int index, int size) {
+        return Math.max(0, Math.min(size - 1, index));
+    }
+}
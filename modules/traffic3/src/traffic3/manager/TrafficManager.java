@@ -3,6 +3,7 @@ package traffic3.manager;
 import traffic3.objects.TrafficArea;
 import traffic3.objects.TrafficBlockade;
 import traffic3.objects.TrafficAgent;
+import traffic3.simulator.TrafficConstants;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -41,6 +42,9 @@ public class TrafficManager {
     private Map<TrafficArea, Collection<TrafficArea>> areaNeighbours;
 
     private SpatialIndex index;
+    private AgentGrid grid;
+    private boolean agentGridEnabled;
+    private WallIndex walls;
 
     /**
        Construct a new TrafficManager.
@@ -120,6 +124,8 @@ public class TrafficManager {
         blockadeByID.clear();
         index = new RTree();
         index.init(new Properties());
+        grid = null;
+        walls = null;
     }
 
     /**
@@ -139,6 +145,35 @@ public class TrafficManager {
     */
     public void register(TrafficAgent agent) {
         agents.put(agent.getHuman(), agent);
+        if (grid != null) {
+            grid.update(agent);
+        }
+    }
+
+    /**
+       Notify the manager that an agent has moved.
+       @param agent The agent that moved.
+    */
+    public void agentMoved(TrafficAgent agent) {
+        if (grid != null && agents.get(agent.getHuman()) == agent) {
+            grid.update(agent);
+        }
+    }
+
+    /**
+       Set whether to keep a grid of agent positions for finding nearby agents. The grid is much faster than looking through the agents of neighbouring areas, but the forces from nearby agents are then added up in a different order, so results differ from older runs in the last bits. Takes effect at the next call to {@link #cacheInformation(StandardWorldModel)}.
+       @param enabled Whether to keep the grid.
+    */
+    public void setAgentGridEnabled(boolean enabled) {
+        agentGridEnabled = enabled;
+    }
+
+    /**
+       Get the grid that records where agents are. The grid cells are as wide as the agent force cutoff.
+       @return The agent grid, or null if {@link #cacheInformation(StandardWorldModel)} has not been called or the grid is not enabled.
+    */
+    public AgentGrid getAgentGrid() {
+        return grid;
     }
 
     /**
@@ -202,6 +237,24 @@ public class TrafficManager {
                 computeNeighbours((Area)next, world);
             }
         }
+        buildGrids();
+    }
+
+    /**
+       Get the index of walls and blockade lines. The grid cells are as wide as the wall force cutoff.
+       @return The wall index, or null if {@link #cacheInformation(StandardWorldModel)} has not been called.
+    */
+    public WallIndex getWallIndex() {
+        return walls;
+    }
+
+    /**
+       Update the wall index after blockades have changed. This must not be called while agents are being stepped.
+    */
+    public void updateWallIndex() {
+        if (walls != null) {
+            walls.update(areas.values());
+        }
     }
 
     /**
@@ -231,6 +284,35 @@ public class TrafficManager {
         return agents.get(h);
     }
 
+    private void buildGrids() {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (TrafficArea next : areas.values()) {
+            Rectangle bounds = next.getBounds();
+            minX = Math.min(minX, bounds.min[0]);
+            minY = Math.min(minY, bounds.min[1]);
+            maxX = Math.max(maxX, bounds.max[0]);
+            maxY = Math.max(maxY, bounds.max[1]);
+        }
+        if (areas.isEmpty()) {
+            minX = 0;
+            minY = 0;
+            maxX = 0;
+            maxY = 0;
+        }
+        grid = null;
+        if (agentGridEnabled) {
+            grid = new AgentGrid(minX, minY, maxX, maxY, TrafficConstants.getAgentDistanceCutoff());
+            for (TrafficAgent next : agents.values()) {
+                grid.update(next);
+            }
+        }
+        walls = new WallIndex(minX, minY, maxX, maxY, TrafficConstants.getWallDistanceCutoff());
+        walls.build(areas.values());
+    }
+
     private void computeNeighbours(Area a, StandardWorldModel world) {
         Collection<TrafficArea> neighbours = areaNeighbours.get(getTrafficArea(a));
         neighbours.clear();
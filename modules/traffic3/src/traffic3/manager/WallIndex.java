@@ -0,0 +1,311 @@
+package traffic3.manager;
+
+import traffic3.objects.TrafficArea;
+
+import rescuecore2.misc.geometry.GeometryTools2D;
+import rescuecore2.misc.geometry.Line2D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+   A uniform grid of cells that records which walls cross each cell. Impassable area edges never change so they are kept in a static layer that is built once. Blockade lines are kept in a separate layer that is rebuilt when the blockades of any area change. Each layer stores the walls of all cells in one array indexed by cell, so queries do not allocate anything except their result. Points outside the grid are clamped to the nearest cell.
+   <p>
+   Queries may run concurrently but must not overlap with {@link #build(Collection)} or {@link #update(Collection)}.
+*/
+public class WallIndex {
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+
+    // Walls are numbered with static walls first. Each wall uses four consecutive coordinates.
+    private double[] coordinates;
+    private Line2D[] lines;
+    private TrafficArea[] areas;
+    private int staticCount;
+    private int count;
+
+    // Walls in cell c are staticWalls[staticStart[c]] to staticWalls[staticStart[c + 1] - 1]
+    private int[] staticStart;
+    private int[] staticWalls;
+    private int[] dynamicStart;
+    private int[] dynamicWalls;
+
+    private final Map<TrafficArea, Integer> blockadeVersions;
+    private int version;
+
+    /**
+       Construct an empty WallIndex.
+       @param minX The lowest X coordinate covered by the grid.
+       @param minY The lowest Y coordinate covered by the grid.
+       @param maxX The highest X coordinate covered by the grid.
+       @param maxY The highest Y coordinate covered by the grid.
+       @param cellSize The width and height of each cell.
+    */
+    public WallIndex(double minX, double minY, double maxX, double maxY, double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        columns = Math.max(1, (int)Math.ceil((maxX - minX) / cellSize));
+        rows = Math.max(1, (int)Math.ceil((maxY - minY) / cellSize));
+        coordinates = new double[0];
+        lines = new Line2D[0];
+        areas = new TrafficArea[0];
+        staticStart = new int[columns * rows + 1];
+        staticWalls = new int[0];
+        dynamicStart = new int[columns * rows + 1];
+        dynamicWalls = new int[0];
+        blockadeVersions = new HashMap<TrafficArea, Integer>();
+    }
+
+    /**
+       Index the impassable edges and blockades of a set of areas, replacing anything already in the index.
+       @param trafficAreas The areas to index.
+    */
+    public void build(Collection<TrafficArea> trafficAreas) {
+        count = 0;
+        for (TrafficArea area : trafficAreas) {
+            for (Line2D line : area.getBlockingLines()) {
+                add(line, area);
+            }
+        }
+        staticCount = count;
+        staticWalls = fillCells(0, staticCount, staticStart);
+        rebuildBlockades(trafficAreas);
+    }
+
+    /**
+       Rebuild the blockade layer if the blockades of any area have changed since the last call to this method or {@link #build(Collection)}.
+       @param trafficAreas The areas in the index.
+       @return True if the blockade layer was rebuilt.
+    */
+    public boolean update(Collection<TrafficArea> trafficAreas) {
+        for (TrafficArea area : trafficAreas) {
+            Integer old = blockadeVersions.get(area);
+            if (old == null || old != area.getBlockadeVersion()) {
+                rebuildBlockades(trafficAreas);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+       Get the version of the index. The version changes whenever the walls in the index change.
+       @return The version.
+    */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+       Get the cell that contains a point.
+       @param x The X coordinate.
+       @param y The Y coordinate.
+       @return The cell index.
+    */
+    public int getCell(double x, double y) {
+        return getRow(y) * columns + getColumn(x);
+    }
+
+    /**
+       Find the walls that may be within a certain distance of any point in a cell.
+       @param cell The cell index.
+       @param range The distance.
+       @return The IDs of the walls in ascending order without duplicates. Walls further away may also be included.
+    */
+    public int[] getWalls(int cell, double range) {
+        int column = cell % columns;
+        int row = cell / columns;
+        double cellX = minX + column * cellSize;
+        double cellY = minY + row * cellSize;
+        int minColumn = getColumn(cellX - range);
+        int maxColumn = getColumn(cellX + cellSize + range);
+        int minRow = getRow(cellY - range);
+        int maxRow = getRow(cellY + cellSize + range);
+        int size = 0;
+        for (int r = minRow; r <= maxRow; ++r) {
+            for (int c = minColumn; c <= maxColumn; ++c) {
+                int next = r * columns + c;
+                size += staticStart[next + 1] - staticStart[next] + dynamicStart[next + 1] - dynamicStart[next];
+            }
+        }
+        int[] result = new int[size];
+        size = 0;
+        for (int r = minRow; r <= maxRow; ++r) {
+            for (int c = minColumn; c <= maxColumn; ++c) {
+                int next = r * columns + c;
+                int n = staticStart[next + 1] - staticStart[next];
+                System.arraycopy(staticWalls, staticStart[next], result, size, n);
+                size += n;
+                n = dynamicStart[next + 1] - dynamicStart[next];
+                System.arraycopy(dynamicWalls, dynamicStart[next], result, size, n);
+                size += n;
+            }
+        }
+        // Walls that cross several cells appear more than once
+        Arrays.sort(result);
+        int unique = 0;
+        for (int i = 0; i < size; ++i) {
+            if (unique == 0 || result[unique - 1] != result[i]) {
+                result[unique++] = result[i];
+            }
+        }
+        return unique == size ? result : Arrays.copyOf(result, unique);
+    }
+
+    /**
+       Find out whether a line crosses any wall of an area.
+       @param line The line to test.
+       @param area The area whose walls should be tested.
+       @return True if the line crosses a wall of the area.
+    */
+    public boolean crosses(Line2D line, TrafficArea area) {
+        double x1 = line.getOrigin().getX();
+        double y1 = line.getOrigin().getY();
+        double x2 = line.getEndPoint().getX();
+        double y2 = line.getEndPoint().getY();
+        double lowX = Math.min(x1, x2);
+        double lowY = Math.min(y1, y2);
+        double highX = Math.max(x1, x2);
+        double highY = Math.max(y1, y2);
+        for (int r = getRow(lowY); r <= getRow(highY); ++r) {
+            for (int c = getColumn(lowX); c <= getColumn(highX); ++c) {
+                int cell = r * columns + c;
+                if (crosses(line, area, lowX, lowY, highX, highY, staticWalls, staticStart[cell], staticStart[cell + 1])
+                    || crosses(line, area, lowX, lowY, highX, highY, dynamicWalls, dynamicStart[cell], dynamicStart[cell + 1])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+       Get a wall.
+       @param wall The ID of the wall.
+       @return The wall.
+    */
+    public Line2D getLine(int wall) {
+        return lines[wall];
+    }
+
+    /**
+       Get the area a wall belongs to.
+       @param wall The ID of the wall.
+       @return The area.
+    */
+    public TrafficArea getArea(int wall) {
+        return areas[wall];
+    }
+
+    private boolean crosses(Line2D line, TrafficArea area, double lowX, double lowY, double highX, double highY, int[] walls, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            int wall = walls[i];
+            if (areas[wall] != area) {
+                continue;
+            }
+            int offset = wall * 4;
+            double wx1 = coordinates[offset];
+            double wy1 = coordinates[offset + 1];
+            double wx2 = coordinates[offset + 2];
+            double wy2 = coordinates[offset + 3];
+            if (Math.max(wx1, wx2) < lowX || Math.min(wx1, wx2) > highX || Math.max(wy1, wy2) < lowY || Math.min(wy1, wy2) > highY) {
+                continue;
+            }
+            if (GeometryTools2D.getSegmentIntersectionPoint(line, lines[wall]) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rebuildBlockades(Collection<TrafficArea> trafficAreas) {
+        count = staticCount;
+        blockadeVersions.clear();
+        for (TrafficArea area : trafficAreas) {
+            for (Line2D line : area.getBlockadeLines()) {
+                add(line, area);
+            }
+            blockadeVersions.put(area, area.getBlockadeVersion());
+        }
+        dynamicWalls = fillCells(staticCount, count, dynamicStart);
+        ++version;
+    }
+
+    private void add(Line2D line, TrafficArea area) {
+        if (count == lines.length) {
+            int size = Math.max(16, count * 2);
+            coordinates = Arrays.copyOf(coordinates, size * 4);
+            lines = Arrays.copyOf(lines, size);
+            areas = Arrays.copyOf(areas, size);
+        }
+        int offset = count * 4;
+        coordinates[offset] = line.getOrigin().getX();
+        coordinates[offset + 1] = line.getOrigin().getY();
+        coordinates[offset + 2] = line.getEndPoint().getX();
+        coordinates[offset + 3] = line.getEndPoint().getY();
+        lines[count] = line;
+        areas[count] = area;
+        ++count;
+    }
+
+    // Put walls first to last - 1 into every cell their bounding box touches
+    private int[] fillCells(int first, int last, int[] start) {
+        List<int[]> ranges = new ArrayList<int[]>(last - first);
+        Arrays.fill(start, 0);
+        for (int wall = first; wall < last; ++wall) {
+            int[] range = getCellRange(wall);
+            ranges.add(range);
+            for (int r = range[2]; r <= range[3]; ++r) {
+                for (int c = range[0]; c <= range[1]; ++c) {
+                    ++start[r * columns + c + 1];
+                }
+            }
+        }
+        for (int i = 1; i < start.length; ++i) {
+            start[i] += start[i - 1];
+        }
+        int[] result = new int[start[start.length - 1]];
+        int[] next = Arrays.copyOf(start, start.length - 1);
+        for (int wall = first; wall < last; ++wall) {
+            int[] range = ranges.get(wall - first);
+            for (int r = range[2]; r <= range[3]; ++r) {
+                for (int c = range[0]; c <= range[1]; ++c) {
+                    result[next[r * columns + c]++] = wall;
+                }
+            }
+        }
+        return result;
+    }
+
+    private int[] getCellRange(int wall) {
+        int offset = wall * 4;
+        double x1 = coordinates[offset];
+        double y1 = coordinates[offset + 1];
+        double x2 = coordinates[offset + 2];
+        double y2 = coordinates[offset + 3];
+        return new int[] {getColumn(Math.min(x1, x2)), getColumn(Math.max(x1, x2)), getRow(Math.min(y1, y2)), getRow(Math.max(y1, y2))};
+    }
+
+    private int getColumn(double x) {
+        return clamp((int)Math.floor((x - minX) / cellSize), columns);
+    }
+
+    private int getRow(double y) {
+        return clamp((int)Math.floor((y - minY) / cellSize), rows);
+    }
+
+    private static int clamp(int index, int size) {
+        return Math.max(0, Math.min(size - 1, index));
+    }
+}
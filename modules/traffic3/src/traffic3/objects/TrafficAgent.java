@@ -8,6 +8,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 
+import org.uncommons.maths.number.NumberGenerator;
+
 import rescuecore2.log.Logger;
 import rescuecore2.misc.geometry.GeometryTools2D;
 import rescuecore2.misc.geometry.Line2D;
@@ -17,7 +19,9 @@ import rescuecore2.standard.entities.Building;
 import rescuecore2.standard.entities.Civilian;
 import rescuecore2.standard.entities.Human;
 import rescuecore2.standard.entities.Road;
+import traffic3.manager.AgentGrid;
 import traffic3.manager.TrafficManager;
+import traffic3.manager.WallIndex;
 import traffic3.simulator.PathElement;
 import traffic3.simulator.TrafficConstants;
 
@@ -147,6 +151,11 @@ public class TrafficAgent {
 
 	private static final double NEARBY_THRESHOLD_SQUARED = 1000000;
 
+	// Agents moving slower than this (in mm/ms) with less force than
+	// IDLE_FORCE acting on them are considered idle
+	private static final double IDLE_VELOCITY = 1e-3;
+	private static final double IDLE_FORCE = 1e-8;
+
 	// Force towards destination
 	private final double[] destinationForce = new double[D];
 
@@ -165,8 +174,23 @@ public class TrafficAgent {
 	// Force
 	private final double[] force = new double[D];
 
+	// Location computed by the last call to prepareStep
+	private final double[] nextLocation = new double[D];
+	private boolean moving;
+
+	// Parked agents are not stepped until they are woken
+	private boolean parked;
+	private boolean wakeRequested;
+	// Parked agents that were within the force cutoff in the last step
+	private final List<TrafficAgent> parkedNeighbours = new ArrayList<TrafficAgent>();
+
 	// List of blocking lines near the agent.
 	private List<WallInfo> blockingLines;
+	// The wall index cell, version and range that blockingLines were found
+	// for. They stay valid while the agent is in the same cell and area.
+	private int wallCell;
+	private int wallVersion;
+	private double wallRange;
 
 	private double radius;
 	private double velocityLimit;
@@ -197,6 +221,9 @@ public class TrafficAgent {
 	private boolean colocated;
 	private boolean verbose;
 
+	// Source of co-location nudges, or null to use the shared generator
+	private NumberGenerator<Double> nudge;
+
 	private TrafficArea startPosition;
 
 	/**
@@ -223,6 +250,7 @@ public class TrafficAgent {
 		positionHistoryFrequency = DEFAULT_POSITION_HISTORY_FREQUENCY;
 		mobile = true;
 		blockingLines = new ArrayList<WallInfo>();
+		wallCell = -1;
 	}
 
 	/**
@@ -471,7 +499,7 @@ public class TrafficAgent {
 			}
 
 			currentArea = newArea;
-			findBlockingLines();
+			wallCell = -1;
 			currentArea.addAgent(this);
 		}
 		// Check current destination
@@ -508,6 +536,7 @@ public class TrafficAgent {
 		}
 		location[0] = x;
 		location[1] = y;
+		manager.agentMoved(this);
 	}
 
 	private boolean haveThisAreaInPath(TrafficArea newArea) {
@@ -522,7 +551,8 @@ public class TrafficAgent {
 	 * Perform any pre-timestep activities required.
 	 */
 	public void beginTimestep() {
-		findBlockingLines();
+		// The agent may have been moved since the last timestep
+		wallCell = -1;
 		if (insideBlockade()) {
 			Logger.debug(this + " inside blockade");
 			setMobile(false);
@@ -537,7 +567,22 @@ public class TrafficAgent {
 	 *            The amount of time to simulate in ms.
 	 */
 	public void step(double dt) {
-		if (mobile) {
+		prepareStep(dt);
+		commitStep();
+	}
+
+	/**
+	 * Compute the next location of this agent without moving it. Other agents
+	 * only ever see the location from the previous microstep, so this method
+	 * can be called for several agents at once as long as
+	 * {@link #commitStep()} is not called at the same time.
+	 *
+	 * @param dt
+	 *            The amount of time to simulate in ms.
+	 */
+	public void prepareStep(double dt) {
+		moving = false;
+		if (mobile && !parked) {
 			updateWalls(dt);
 			updateGoals();
 			computeForces(dt);
@@ -545,6 +590,83 @@ public class TrafficAgent {
 		}
 	}
 
+	/**
+	 * Move this agent to the location computed by the last call to
+	 * {@link #prepareStep(double)}. This updates the agent lists of the areas
+	 * involved so it must not be called for several agents at once.
+	 */
+	public void commitStep() {
+		if (moving) {
+			moving = false;
+			setLocation(nextLocation[0], nextLocation[1]);
+		}
+	}
+
+	/**
+	 * Find out whether this agent is idle: it is mobile, it has no path left
+	 * to follow except possibly its final destination, and both its velocity
+	 * and the force on it were negligible in the last step.
+	 *
+	 * @return True if this agent is idle.
+	 */
+	public boolean isIdle() {
+		return mobile && currentPathElement == null && path.isEmpty() && Math.hypot(velocity[0], velocity[1]) < IDLE_VELOCITY
+				&& Math.hypot(force[0], force[1]) < IDLE_FORCE;
+	}
+
+	/**
+	 * Park or unpark this agent. Parked agents do nothing when stepped but
+	 * still push other agents away.
+	 *
+	 * @param b
+	 *            True to park this agent, false to unpark it.
+	 */
+	public void setParked(boolean b) {
+		parked = b;
+		wakeRequested = false;
+	}
+
+	/**
+	 * Find out whether this agent is parked.
+	 *
+	 * @return True if this agent is parked.
+	 */
+	public boolean isParked() {
+		return parked;
+	}
+
+	/**
+	 * Ask every parked agent that was within the force cutoff in the last step
+	 * to wake up.
+	 */
+	public void wakeNeighbours() {
+		for (int i = 0; i < parkedNeighbours.size(); ++i) {
+			parkedNeighbours.get(i).wakeRequested = true;
+		}
+	}
+
+	/**
+	 * Find out whether a neighbour has asked this agent to wake up since it
+	 * was last parked or unparked.
+	 *
+	 * @return True if this agent should be woken.
+	 */
+	public boolean isWakeRequested() {
+		return wakeRequested;
+	}
+
+	/**
+	 * Set the generator used to nudge this agent when it is co-located with
+	 * another agent. By default all agents share one generator, which makes
+	 * the result depend on the order in which agents are stepped.
+	 *
+	 * @param generator
+	 *            The new generator, or null to use the shared generator.
+	 */
+	public void setNudgeGenerator(NumberGenerator<Double> generator) {
+		nudge = generator;
+	}
+
 	/**
 	 * Perform any post-timestep activities required.
 	 */
@@ -729,7 +851,9 @@ public class TrafficAgent {
 			for (WallInfo wall : blockingLines) {
 				wall.decreaseDistance(dist);
 			}
-			setLocation(x, y);
+			nextLocation[0] = x;
+			nextLocation[1] = y;
+			moving = true;
 		}
 	}
 
@@ -770,20 +894,7 @@ public class TrafficAgent {
 	}
 
 	private boolean hasLos(Point2D source, Point2D target, TrafficArea area) {
-		Line2D line = new Line2D(source, target);
-		double dist = line.getDirection().getLength();
-
-		for (WallInfo wall : blockingLines) {
-			if (wall.getDistance() > dist || wall.getArea() != area) {
-				break;
-			}
-
-			Line2D next = wall.getWall();
-			if (GeometryTools2D.getSegmentIntersectionPoint(line, next) != null) {
-				return false;
-			}
-		}
-		return true;
+		return !manager.getWallIndex().crosses(new Line2D(source, target), area);
 	}
 
 	private boolean insideBlockade() {
@@ -837,18 +948,20 @@ public class TrafficAgent {
 		return false;
 	}
 
-	private void findBlockingLines() {
+	private void findBlockingLines(WallIndex walls, int cell, double range) {
 		blockingLines.clear();
 		if (currentArea != null) {
-			for (Line2D line : currentArea.getAllBlockingLines()) {
-				blockingLines.add(new WallInfo(line, currentArea));
-			}
-			for (TrafficArea neighbour : manager.getNeighbours(currentArea)) {
-				for (Line2D line : neighbour.getAllBlockingLines()) {
-					blockingLines.add(new WallInfo(line, neighbour));
+			Collection<TrafficArea> neighbours = manager.getNeighbours(currentArea);
+			for (int wall : walls.getWalls(cell, range)) {
+				TrafficArea area = walls.getArea(wall);
+				if (area == currentArea || neighbours.contains(area)) {
+					blockingLines.add(new WallInfo(walls.getLine(wall), area));
 				}
 			}
 		}
+		wallCell = cell;
+		wallVersion = walls.getVersion();
+		wallRange = range;
 	}
 
 	private void updateWalls(double dt) {
@@ -857,6 +970,11 @@ public class TrafficAgent {
 		double forceCutoff = TrafficConstants.getWallDistanceCutoff();
 		double cutoff = Math.max(forceCutoff, crossingCutoff);
 		// double dist;
+		WallIndex walls = manager.getWallIndex();
+		int cell = walls.getCell(location[0], location[1]);
+		if (cell != wallCell || walls.getVersion() != wallVersion || cutoff > wallRange) {
+			findBlockingLines(walls, cell, cutoff);
+		}
 
 		for (WallInfo wall : blockingLines) {
 			if (wall.getDistance() > cutoff) {
@@ -934,62 +1052,55 @@ public class TrafficAgent {
 	private void computeAgentsForce(double[] result) {
 		result[0] = 0;
 		result[1] = 0;
+		parkedNeighbours.clear();
 		if (currentArea == null) {
 			return;
 		}
 
-		double xSum = 0;
-		double ySum = 0;
-
-		double cutoff = TrafficConstants.getAgentDistanceCutoff();
-		double a = TrafficConstants.getAgentForceCoefficientA();
-		double b = TrafficConstants.getAgentForceCoefficientB();
-		double k = TrafficConstants.getAgentForceCoefficientK();
-		double forceLimit = TrafficConstants.getAgentForceLimit();
-
-		Collection<TrafficAgent> nearby = manager.getNearbyAgents(this);
-		for (TrafficAgent agent : nearby) {
-			if (!agent.isMobile()) {
-				continue;
-			}
-			double dx = agent.getX() - location[0];
-			double dy = agent.getY() - location[1];
-
-			if (Math.abs(dx) > cutoff) {
-				continue;
-			}
-			if (Math.abs(dy) > cutoff) {
-				continue;
-			}
-
-			double totalRadius = radius + agent.getRadius();
-			double distanceSquared = dx * dx + dy * dy;
-
-			if (distanceSquared == 0) {
-				xSum = TrafficConstants.getColocatedAgentNudge();
-				ySum = TrafficConstants.getColocatedAgentNudge();
-				colocated = true;
-				Logger.debug(this + " is co-located with " + agent);
-				break;
-			}
-			double distance = Math.sqrt(distanceSquared);
-			double dxN = dx / distance;
-			double dyN = dy / distance;
-			double negativeSeparation = totalRadius - distance;
-			double tmp = -a * Math.exp(negativeSeparation * b);
-			if (Double.isInfinite(tmp)) {
-				Logger.warn("calculateAgentsForce(): A result of exp is infinite: exp(" + (negativeSeparation * b) + ")");
-			} else {
-				xSum += tmp * dxN;
-				ySum += tmp * dyN;
+		AgentGrid grid = manager.getAgentGrid();
+		if (grid == null) {
+			// Sum the forces in the same order as before the grid existed so
+			// that old runs are reproduced exactly
+			for (TrafficAgent agent : manager.getNearbyAgents(this)) {
+				if (!addAgentForce(agent, result)) {
+					break;
+				}
 			}
-			if (negativeSeparation > 0) {
-				// Agents overlap
-				xSum += -k * negativeSeparation * dxN;
-				ySum += -k * negativeSeparation * dyN;
+		} else {
+			// Only agents in this area or a neighbouring one are considered.
+			// The grid cells are at least as wide as the cutoff, so at most
+			// 3x3 cells are searched.
+			double cutoff = TrafficConstants.getAgentDistanceCutoff();
+			Collection<TrafficArea> neighbours = manager.getNeighbours(currentArea);
+			int minColumn = grid.getColumn(location[0] - cutoff);
+			int maxColumn = grid.getColumn(location[0] + cutoff);
+			int minRow = grid.getRow(location[1] - cutoff);
+			int maxRow = grid.getRow(location[1] + cutoff);
+			search: for (int row = minRow; row <= maxRow; ++row) {
+				for (int column = minColumn; column <= maxColumn; ++column) {
+					List<TrafficAgent> cell = grid.getCell(column, row);
+					if (cell == null) {
+						continue;
+					}
+					for (int i = 0; i < cell.size(); ++i) {
+						TrafficAgent agent = cell.get(i);
+						if (agent == this) {
+							continue;
+						}
+						if (agent.currentArea != currentArea && !neighbours.contains(agent.currentArea)) {
+							continue;
+						}
+						if (!addAgentForce(agent, result)) {
+							break search;
+						}
+					}
+				}
 			}
 		}
 
+		double xSum = result[0];
+		double ySum = result[1];
+		double forceLimit = TrafficConstants.getAgentForceLimit();
 		double forceSum = Math.hypot(xSum, ySum);
 		if (forceSum > forceLimit) {
 			forceSum /= forceLimit;
@@ -1008,6 +1119,73 @@ public class TrafficAgent {
 		result[1] = ySum;
 	}
 
+	/**
+	 * Add the force from a nearby agent to a running sum.
+	 *
+	 * @param agent
+	 *            The other agent.
+	 * @param sum
+	 *            The running sum of the X and Y forces.
+	 * @return False if the agents are co-located, in which case the sum has
+	 *         been replaced by a nudge and no more agents should be added.
+	 */
+	private boolean addAgentForce(TrafficAgent agent, double[] sum) {
+		if (!agent.isMobile()) {
+			return true;
+		}
+		double cutoff = TrafficConstants.getAgentDistanceCutoff();
+		double dx = agent.getX() - location[0];
+		double dy = agent.getY() - location[1];
+
+		if (Math.abs(dx) > cutoff) {
+			return true;
+		}
+		if (Math.abs(dy) > cutoff) {
+			return true;
+		}
+		if (agent.parked) {
+			parkedNeighbours.add(agent);
+		}
+
+		double a = TrafficConstants.getAgentForceCoefficientA();
+		double b = TrafficConstants.getAgentForceCoefficientB();
+		double k = TrafficConstants.getAgentForceCoefficientK();
+		double totalRadius = radius + agent.getRadius();
+		double distanceSquared = dx * dx + dy * dy;
+
+		if (distanceSquared == 0) {
+			sum[0] = nextNudge();
+			sum[1] = nextNudge();
+			colocated = true;
+			Logger.debug(this + " is co-located with " + agent);
+			return false;
+		}
+		double distance = Math.sqrt(distanceSquared);
+		double dxN = dx / distance;
+		double dyN = dy / distance;
+		double negativeSeparation = totalRadius - distance;
+		double tmp = -a * Math.exp(negativeSeparation * b);
+		if (Double.isInfinite(tmp)) {
+			Logger.warn("calculateAgentsForce(): A result of exp is infinite: exp(" + (negativeSeparation * b) + ")");
+		} else {
+			sum[0] += tmp * dxN;
+			sum[1] += tmp * dyN;
+		}
+		if (negativeSeparation > 0) {
+			// Agents overlap
+			sum[0] += -k * negativeSeparation * dxN;
+			sum[1] += -k * negativeSeparation * dyN;
+		}
+		return true;
+	}
+
+	private double nextNudge() {
+		if (nudge == null) {
+			return TrafficConstants.getColocatedAgentNudge();
+		}
+		return nudge.nextValue();
+	}
+
 	private void computeWallsForce(double[] result, double dt) {
 		double xSum = 0;
 		double ySum = 0;
@@ -2,7 +2,10 @@ package traffic3.objects;
 
 import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Collection;
 import java.util.Collections;
 import java.awt.Color;
@@ -21,6 +24,7 @@ import rescuecore2.misc.gui.ShapeDebugFrame;
 
 import rescuecore2.standard.entities.Area;
 import rescuecore2.standard.entities.Edge;
+import traffic3.simulator.RoutingGraph;
 import traffic3.simulator.TrafficSimulator;
 
 import com.infomatiq.jsi.Rectangle;
@@ -29,6 +33,9 @@ import com.infomatiq.jsi.Rectangle;
  * This class wraps an Area object with some extra information.
  */
 public class TrafficArea {
+	// Allowance for rounding when comparing the bounds of lines that might cross, in millimetres
+	private static final double BOUNDS_MARGIN = 1;
+
 	// private List<TrafficAreaListener> areaListenerList = new
 	// ArrayList<TrafficAreaListener>();
 	private Collection<TrafficAgent> agents;
@@ -44,6 +51,12 @@ public class TrafficArea {
 	private Vector2D baseVector;
 	private ArrayList<Line2D> openLines;
 	private int[][] graph;
+	private RoutingGraph routingGraph;
+	// The last routing graph built and the lines it was built from, so that a rebuild can keep what has not changed
+	private RoutingGraph lastRoutingGraph;
+	private List<Line2D> lastOpenLines;
+	private List<Line2D> lastBlockadeLines;
+	private int blockadeVersion;
 
 	/**
 	 * Construct a TrafficArea.
@@ -215,10 +228,27 @@ public class TrafficArea {
 	 * Clear any cached blockade information.
 	 */
 	public void clearBlockadeCache() {
+		if (routingGraph != null) {
+			lastRoutingGraph = routingGraph;
+			lastOpenLines = openLines;
+			lastBlockadeLines = blockadeLines;
+		}
 		blockadeLines = null;
 		allBlockingLines = null;
 		openLines = null;
 		graph=null;
+		routingGraph = null;
+		++blockadeVersion;
+	}
+
+	/**
+	 * Get the number of times the blockade cache has been cleared. This changes
+	 * whenever the blockades in this area might have changed.
+	 *
+	 * @return The blockade version.
+	 */
+	public int getBlockadeVersion() {
+		return blockadeVersion;
 	}
 
 	/**
@@ -292,6 +322,154 @@ public class TrafficArea {
 		return graph;
 	}
 
+	/**
+	 * Get the routing graph for this area. Nodes are the midpoints of the open
+	 * lines, in the same order as {@link #getOpenLines()}, and node i is joined
+	 * to node j if {@link #getGraph()} would mark the line between them as
+	 * clear. The graph is rebuilt after the blockades in this area change, but
+	 * only the lines between nodes that the change could affect are checked
+	 * again; the rest are copied from the previous graph.
+	 *
+	 * @return The routing graph.
+	 */
+	public RoutingGraph getRoutingGraph() {
+		if (routingGraph == null) {
+			List<Line2D> oLines = getOpenLines();
+			List<Point2D> points = new ArrayList<Point2D>(oLines.size());
+			for (Line2D line : oLines) {
+				points.add(getMidPoint(line.getOrigin(), line.getEndPoint()));
+			}
+			routingGraph = buildRoutingGraph(oLines, points);
+			lastRoutingGraph = null;
+			lastOpenLines = null;
+			lastBlockadeLines = null;
+		}
+		return routingGraph;
+	}
+
+	private RoutingGraph buildRoutingGraph(List<Line2D> oLines, List<Point2D> points) {
+		int n = oLines.size();
+		List<Line2D> blocking = getAllBlockingLines();
+		// Everything that can get in the way: the blocking lines, then the open lines
+		Line2D[] lines = new Line2D[blocking.size() + n];
+		blocking.toArray(lines);
+		for (int i = 0; i < n; ++i) {
+			lines[blocking.size() + i] = oLines.get(i);
+		}
+		double[] bounds = getLineBounds(lines);
+		// Where each node was in the last graph, or -1, and the lines added or removed since then
+		int[] lastIndex = new int[n];
+		Arrays.fill(lastIndex, -1);
+		List<Line2D> changed = new ArrayList<Line2D>();
+		if (lastRoutingGraph != null) {
+			Map<List<Point2D>, Integer> last = getLineIndex(lastOpenLines);
+			Map<List<Point2D>, Integer> current = getLineIndex(oLines);
+			for (int i = 0; i < n; ++i) {
+				Integer index = last.get(getLineKey(oLines.get(i)));
+				if (index != null && index != -1 && current.get(getLineKey(oLines.get(i))) != -1) {
+					lastIndex[i] = index;
+				} else {
+					changed.add(oLines.get(i));
+				}
+			}
+			for (Line2D line : lastOpenLines) {
+				Integer index = current.get(getLineKey(line));
+				if (index == null || index == -1 || last.get(getLineKey(line)) == -1) {
+					changed.add(line);
+				}
+			}
+			Map<List<Point2D>, Integer> lastBlockades = getLineIndex(lastBlockadeLines);
+			Map<List<Point2D>, Integer> currentBlockades = getLineIndex(getBlockadeLines());
+			for (Line2D line : getBlockadeLines()) {
+				if (!lastBlockades.containsKey(getLineKey(line))) {
+					changed.add(line);
+				}
+			}
+			for (Line2D line : lastBlockadeLines) {
+				if (!currentBlockades.containsKey(getLineKey(line))) {
+					changed.add(line);
+				}
+			}
+		}
+		Line2D[] changedLines = changed.toArray(new Line2D[changed.size()]);
+		double[] changedBounds = getLineBounds(changedLines);
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[n];
+		int count = 0;
+		for (int i = 0; i < n; ++i) {
+			offsets[i] = count;
+			for (int j = 0; j < n; ++j) {
+				if (i == j) {
+					continue;
+				}
+				boolean clear;
+				if (lastIndex[i] != -1 && lastIndex[j] != -1 && !crossesAny(points.get(i), points.get(j), changedLines, changedBounds, -1, -1)) {
+					clear = lastRoutingGraph.hasEdge(lastIndex[i], lastIndex[j]);
+				} else {
+					clear = !crossesAny(points.get(i), points.get(j), lines, bounds, blocking.size() + i, blocking.size() + j);
+				}
+				if (clear) {
+					if (count == targets.length) {
+						targets = Arrays.copyOf(targets, count * 2);
+					}
+					targets[count++] = j;
+				}
+			}
+		}
+		offsets[n] = count;
+		return new RoutingGraph(points, offsets, Arrays.copyOf(targets, count));
+	}
+
+	private static List<Point2D> getLineKey(Line2D line) {
+		return Arrays.asList(line.getOrigin(), line.getEndPoint());
+	}
+
+	// Maps the end points of each line to its position in the list, or to -1 if there is more than one such line
+	private static Map<List<Point2D>, Integer> getLineIndex(List<Line2D> lines) {
+		Map<List<Point2D>, Integer> result = new HashMap<List<Point2D>, Integer>();
+		for (int i = 0; i < lines.size(); ++i) {
+			if (result.put(getLineKey(lines.get(i)), i) != null) {
+				result.put(getLineKey(lines.get(i)), -1);
+			}
+		}
+		return result;
+	}
+
+	// Minimum X, minimum Y, maximum X and maximum Y of each line
+	private static double[] getLineBounds(Line2D[] lines) {
+		double[] result = new double[lines.length * 4];
+		for (int i = 0; i < lines.length; ++i) {
+			Point2D origin = lines[i].getOrigin();
+			Point2D end = lines[i].getEndPoint();
+			result[i * 4] = Math.min(origin.getX(), end.getX());
+			result[i * 4 + 1] = Math.min(origin.getY(), end.getY());
+			result[i * 4 + 2] = Math.max(origin.getX(), end.getX());
+			result[i * 4 + 3] = Math.max(origin.getY(), end.getY());
+		}
+		return result;
+	}
+
+	// Whether the line between two points crosses any of the others apart from two to skip. Lines whose bounds are apart cannot cross, which is cheap to check first.
+	private static boolean crossesAny(Point2D from, Point2D to, Line2D[] others, double[] bounds, int skip1, int skip2) {
+		double minX = Math.min(from.getX(), to.getX()) - BOUNDS_MARGIN;
+		double minY = Math.min(from.getY(), to.getY()) - BOUNDS_MARGIN;
+		double maxX = Math.max(from.getX(), to.getX()) + BOUNDS_MARGIN;
+		double maxY = Math.max(from.getY(), to.getY()) + BOUNDS_MARGIN;
+		Line2D line = null;
+		for (int k = 0; k < others.length; ++k) {
+			if (k == skip1 || k == skip2 || bounds[k * 4] > maxX || bounds[k * 4 + 1] > maxY || bounds[k * 4 + 2] < minX || bounds[k * 4 + 3] < minY) {
+				continue;
+			}
+			if (line == null) {
+				line = new Line2D(from, to);
+			}
+			if (GeometryTools2D.getSegmentIntersectionPoint(line, others[k]) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private Point2D getMidPoint(Point2D p1, Point2D p2) {
 		return new Point2D((p1.getX() + p2.getX()) / 2, (p1.getY() + p2.getY()) / 2);
 	}
@@ -0,0 +1,341 @@
+package traffic3.simulator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rescuecore2.misc.geometry.Point2D;
+
+/**
+ * A routing graph for the inside of a single area. Nodes are points in the
+ * area and edges join nodes that can see each other. The graph is stored in
+ * compressed sparse row form and can be searched in two ways:
+ * {@link #findPath(int, int)} finds the path with the fewest hops, which is
+ * what the simulator has always done, and {@link #findShortestPath(int, int)}
+ * finds the shortest path in straight line distance with A*. Paths are
+ * remembered, so asking for the same pair of nodes again costs nothing. A
+ * RoutingGraph never changes; build a new one when the area changes.
+ */
+public class RoutingGraph {
+	private static final int[] NO_PATH = new int[0];
+	private static final int INITIAL_HEAP_SIZE = 16;
+
+	private final Point2D[] points;
+	private final double[] x;
+	private final double[] y;
+	// Edges of node i are targets[offsets[i]] to targets[offsets[i + 1] - 1], in increasing order
+	private final int[] offsets;
+	private final int[] targets;
+
+	private final Map<Long, int[]> paths;
+	private final Map<Long, int[]> shortestPaths;
+
+	// Search state, reused between searches
+	private final double[] cost;
+	private final int[] parent;
+	private final int[] visited;
+	private int search;
+	private int[] heapNodes;
+	private double[] heapKeys;
+	private int heapSize;
+	private final int[] frontier;
+	private final int[] nextFrontier;
+
+	/**
+	 * Construct a RoutingGraph from an adjacency matrix.
+	 *
+	 * @param points
+	 *            The position of each node.
+	 * @param adjacency
+	 *            The adjacency matrix. Node i is joined to node j if
+	 *            adjacency[i][j] is 1.
+	 */
+	public RoutingGraph(List<Point2D> points, int[][] adjacency) {
+		this(points, getOffsets(adjacency), getTargets(adjacency));
+	}
+
+	/**
+	 * Construct a RoutingGraph from edges in compressed sparse row form.
+	 *
+	 * @param points
+	 *            The position of each node.
+	 * @param offsets
+	 *            Where the edges of each node start in the targets array,
+	 *            followed by the total number of edges.
+	 * @param targets
+	 *            The node at the end of each edge. The targets of each node
+	 *            must be in increasing order.
+	 */
+	public RoutingGraph(List<Point2D> points, int[] offsets, int[] targets) {
+		int n = points.size();
+		this.points = points.toArray(new Point2D[n]);
+		x = new double[n];
+		y = new double[n];
+		for (int i = 0; i < n; ++i) {
+			x[i] = this.points[i].getX();
+			y[i] = this.points[i].getY();
+		}
+		this.offsets = offsets;
+		this.targets = targets;
+		paths = new HashMap<Long, int[]>();
+		shortestPaths = new HashMap<Long, int[]>();
+		cost = new double[n];
+		parent = new int[n];
+		visited = new int[n];
+		search = 0;
+		heapNodes = new int[INITIAL_HEAP_SIZE];
+		heapKeys = new double[INITIAL_HEAP_SIZE];
+		frontier = new int[n];
+		nextFrontier = new int[n];
+	}
+
+	/**
+	 * Get the number of nodes.
+	 *
+	 * @return The number of nodes.
+	 */
+	public int getNodeCount() {
+		return x.length;
+	}
+
+	/**
+	 * Get the position of a node.
+	 *
+	 * @param node
+	 *            The node.
+	 * @return The position of the node.
+	 */
+	public Point2D getPoint(int node) {
+		return points[node];
+	}
+
+	/**
+	 * Get the number of edges.
+	 *
+	 * @return The number of edges.
+	 */
+	public int getEdgeCount() {
+		return targets.length;
+	}
+
+	/**
+	 * Find out whether there is an edge from one node to another.
+	 *
+	 * @param from
+	 *            The start node.
+	 * @param to
+	 *            The end node.
+	 * @return True if and only if there is an edge from the start node to the
+	 *         end node.
+	 */
+	public boolean hasEdge(int from, int to) {
+		return Arrays.binarySearch(targets, offsets[from], offsets[from + 1], to) >= 0;
+	}
+
+	/**
+	 * Find the path with the fewest hops between two nodes. When several paths
+	 * have the fewest hops, each node on the path is reached from the lowest
+	 * numbered node that can reach it, as the Dijkstra search this graph
+	 * replaced did.
+	 *
+	 * @param from
+	 *            The start node.
+	 * @param to
+	 *            The end node.
+	 * @return The nodes on the path including both ends, or null if there is
+	 *         no path. The returned array must not be modified.
+	 */
+	public int[] findPath(int from, int to) {
+		Long key = getKey(from, to);
+		int[] result = paths.get(key);
+		if (result == null) {
+			result = searchHops(from, to);
+			paths.put(key, result);
+		}
+		return result == NO_PATH ? null : result;
+	}
+
+	/**
+	 * Find the shortest path between two nodes, measuring each edge by the
+	 * distance between its ends.
+	 *
+	 * @param from
+	 *            The start node.
+	 * @param to
+	 *            The end node.
+	 * @return The nodes on the path including both ends, or null if there is
+	 *         no path. The returned array must not be modified.
+	 */
+	public int[] findShortestPath(int from, int to) {
+		Long key = getKey(from, to);
+		int[] result = shortestPaths.get(key);
+		if (result == null) {
+			result = search(from, to);
+			shortestPaths.put(key, result);
+		}
+		return result == NO_PATH ? null : result;
+	}
+
+	private static Long getKey(int from, int to) {
+		return ((long) from << Integer.SIZE) | (to & 0xFFFFFFFFL);
+	}
+
+	private static int[] getOffsets(int[][] adjacency) {
+		int n = adjacency.length;
+		int[] result = new int[n + 1];
+		for (int i = 0; i < n; ++i) {
+			result[i + 1] = result[i];
+			for (int j = 0; j < n; ++j) {
+				if (i != j && adjacency[i][j] == 1) {
+					++result[i + 1];
+				}
+			}
+		}
+		return result;
+	}
+
+	private static int[] getTargets(int[][] adjacency) {
+		int n = adjacency.length;
+		int[] result = new int[getOffsets(adjacency)[n]];
+		int count = 0;
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				if (i != j && adjacency[i][j] == 1) {
+					result[count++] = j;
+				}
+			}
+		}
+		return result;
+	}
+
+	// Breadth first, expanding each level in node order so ties go to the lowest numbered parent
+	private int[] searchHops(int from, int to) {
+		++search;
+		parent[from] = -1;
+		visited[from] = search;
+		if (from == to) {
+			return buildPath(to);
+		}
+		int size = 1;
+		frontier[0] = from;
+		while (size > 0) {
+			Arrays.sort(frontier, 0, size);
+			int nextSize = 0;
+			for (int i = 0; i < size; ++i) {
+				int node = frontier[i];
+				for (int e = offsets[node]; e < offsets[node + 1]; ++e) {
+					int next = targets[e];
+					if (visited[next] == search) {
+						continue;
+					}
+					visited[next] = search;
+					parent[next] = node;
+					if (next == to) {
+						return buildPath(to);
+					}
+					nextFrontier[nextSize++] = next;
+				}
+			}
+			System.arraycopy(nextFrontier, 0, frontier, 0, nextSize);
+			size = nextSize;
+		}
+		return NO_PATH;
+	}
+
+	private int[] search(int from, int to) {
+		++search;
+		heapSize = 0;
+		cost[from] = 0;
+		parent[from] = -1;
+		visited[from] = -search;
+		push(from, distance(from, to));
+		while (heapSize > 0) {
+			int node = pop();
+			if (visited[node] == search) {
+				// Stale heap entry
+				continue;
+			}
+			visited[node] = search;
+			if (node == to) {
+				return buildPath(to);
+			}
+			for (int e = offsets[node]; e < offsets[node + 1]; ++e) {
+				int next = targets[e];
+				if (visited[next] == search) {
+					continue;
+				}
+				double c = cost[node] + distance(node, next);
+				// Nodes reached in this search but not yet expanded are marked with -search
+				if (visited[next] != -search || c < cost[next]) {
+					visited[next] = -search;
+					cost[next] = c;
+					parent[next] = node;
+					push(next, c + distance(next, to));
+				}
+			}
+		}
+		return NO_PATH;
+	}
+
+	private int[] buildPath(int to) {
+		int length = 0;
+		for (int node = to; node != -1; node = parent[node]) {
+			++length;
+		}
+		int[] result = new int[length];
+		for (int node = to; node != -1; node = parent[node]) {
+			result[--length] = node;
+		}
+		return result;
+	}
+
+	private double distance(int i, int j) {
+		return Math.hypot(x[i] - x[j], y[i] - y[j]);
+	}
+
+	private void push(int node, double key) {
+		if (heapSize == heapNodes.length) {
+			heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+			heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+		}
+		int i = heapSize++;
+		while (i > 0) {
+			int up = (i - 1) >>> 1;
+			if (heapKeys[up] <= key) {
+				break;
+			}
+			heapNodes[i] = heapNodes[up];
+			heapKeys[i] = heapKeys[up];
+			i = up;
+		}
+		heapNodes[i] = node;
+		heapKeys[i] = key;
+	}
+
+	private int pop() {
+		int result = heapNodes[0];
+		--heapSize;
+		int node = heapNodes[heapSize];
+		double key = heapKeys[heapSize];
+		int i = 0;
+		while (true) {
+			int child = i * 2 + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+				++child;
+			}
+			if (key <= heapKeys[child]) {
+				break;
+			}
+			heapNodes[i] = heapNodes[child];
+			heapKeys[i] = heapKeys[child];
+			i = child;
+		}
+		heapNodes[i] = node;
+		heapKeys[i] = key;
+		return result;
+	}
+}
@@ -5,6 +5,8 @@ import org.uncommons.maths.number.NumberGenerator;
 
 import rescuecore2.config.Config;
 
+import java.util.Random;
+
 /**
    A bunch of useful constants for the traffic simulator.
 */
@@ -51,6 +53,15 @@ public final class TrafficConstants {
         return nudge.nextValue();
     }
 
+    /**
+       Create a generator of nudges for co-located agents that is independent of the shared one.
+       @param random The source of randomness.
+       @return A new random nudge generator.
+    */
+    public static NumberGenerator<Double> createColocatedAgentNudge(Random random) {
+        return new ContinuousUniformGenerator(-NUDGE_MAGNITUDE, NUDGE_MAGNITUDE, random);
+    }
+
     /**
        Get the maximum distance at which agents affect each other.
        @return The agent force distance cutoff.
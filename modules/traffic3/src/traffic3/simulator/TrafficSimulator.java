@@ -12,7 +12,6 @@ import rescuecore2.misc.geometry.Line2D;
 import rescuecore2.misc.geometry.Point2D;
 import rescuecore2.misc.geometry.Vector2D;
 import rescuecore2.misc.gui.ShapeDebugFrame;
-import rescuecore2.misc.gui.ShapeDebugFrame.Line2DShapeInfo;
 import rescuecore2.standard.components.StandardSimulator;
 import rescuecore2.standard.entities.AmbulanceTeam;
 import rescuecore2.standard.entities.Area;
@@ -48,9 +47,14 @@ import traffic3.objects.TrafficBlockade;
 import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * The Area model traffic simulator.
@@ -60,6 +64,16 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 	private static final double REAL_TIME_S = 60;
 	private static final int MICROSTEPS = (int) ((1000.0 / STEP_TIME_MS) * REAL_TIME_S);
 
+	private static final String PARALLEL_KEY = "traffic3.microsteps.parallel";
+	private static final String THREADS_KEY = "traffic3.microsteps.threads";
+	private static final String SKIP_IDLE_KEY = "traffic3.microsteps.skip-idle";
+	private static final String AGENT_GRID_KEY = "traffic3.agents.grid";
+	private static final String ROUTING_DISTANCE_KEY = "traffic3.routing.distance";
+	// Smallest number of agents worth handing to a separate task
+	private static final int MIN_AGENTS_PER_TASK = 8;
+	// Aim for a few tasks per thread so that the load balances
+	private static final int TASKS_PER_THREAD = 4;
+
 	private static final int RESCUE_AGENT_RADIUS = 500;
 	private static final int CIVILIAN_RADIUS = 200;
 	private static final double RESCUE_AGENT_VELOCITY_MEAN = 0.7;
@@ -76,6 +90,11 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 
 	private TrafficManager manager;
 
+	// Null if microsteps run sequentially
+	private ForkJoinPool pool;
+	private boolean skipIdle;
+	private boolean routeByDistance;
+
 	/**
 	 * Construct a new TrafficSimulator.
 	 */
@@ -116,7 +135,24 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 				convertBlockade((Blockade) next);
 			}
 		}
+		manager.setAgentGridEnabled(config.getBooleanValue(AGENT_GRID_KEY, false));
 		manager.cacheInformation(model);
+		skipIdle = config.getBooleanValue(SKIP_IDLE_KEY, false);
+		routeByDistance = config.getBooleanValue(ROUTING_DISTANCE_KEY, false);
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		if (config.getBooleanValue(PARALLEL_KEY, false)) {
+			int threads = config.getIntValue(THREADS_KEY, Runtime.getRuntime().availableProcessors());
+			pool = new ForkJoinPool(Math.max(1, threads));
+			// Give each agent its own nudge generator so the result does not depend on which thread steps which agent
+			Random random = config.getRandom();
+			for (TrafficAgent agent : getSortedAgents()) {
+				agent.setNudgeGenerator(TrafficConstants.createColocatedAgentNudge(new Random(random.nextLong())));
+			}
+			Logger.info("Running microsteps in parallel on " + pool.getParallelism() + " threads");
+		}
 	}
 
 	@Override
@@ -521,89 +557,24 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 			start = new Point2D(human.getX(), human.getY());
 		else
 			start = getBestPoint(lastEdge,lastArea);
-		Point2D startpoint;
-		if (lastEdge == null)
-			startpoint = start;
-		else
-			startpoint = getMidPoint(lastEdge.getStart(), lastEdge.getEnd());
 		Point2D edgePoint = getBestPoint(nextEdge,nextArea);
-		Point2D centrePoint = new Point2D(lastArea.getX(), lastArea.getY());
-
-		List<ShapeDebugFrame.ShapeInfo> resultGraph = new ArrayList<ShapeDebugFrame.ShapeInfo>();
-		//
-		// resultGraph.add(new AWTShapeInfo(lastArea.getShape(), "path lastarea"
-		// + lastArea, Color.blue, false));
-		// resultGraph.add(new AWTShapeInfo(nextArea.getShape(), "path nextArea"
-		// + nextArea, Color.red, false));
-		resultGraph.add(new Line2DShapeInfo(new Line2D(startpoint, centrePoint), "path start to center", Color.black, false, true));
-		resultGraph.add(new Line2DShapeInfo(new Line2D(centrePoint, getMidPoint(nextEdge.getStart(), nextEdge.getEnd())), "path center to end", Color.white, false, true));
-		// resultGraph.add(new Point2DShapeInfo(start, "Choosedstart",
-		// Color.magenta, true));
-		// resultGraph.add(new Point2DShapeInfo(edgePoint, "Choosedend",
-		// Color.magenta.brighter(), true));
 
 		TrafficArea trafficArea = manager.getTrafficArea(lastArea);
-		int[][] graph = manager.getTrafficArea(lastArea).getGraph();
-		List<Line2D> oLines = manager.getTrafficArea(lastArea).getOpenLines();
-		List<Line2D> graphline = new ArrayList<>();
-		resultGraph.add(new Line2DShapeInfo(oLines, "openLines", Color.green, false, false));
-		for (int i = 0; i < graph.length; i++) {
-			for (int j = 0; j < graph.length; j++) {
-				if (graph[i][j] > 10000)
-					continue;
-				Line2D line = new Line2D(getMidPoint(oLines.get(i).getOrigin(), oLines.get(i).getEndPoint()), getMidPoint(oLines.get(j).getOrigin(), oLines.get(j).getEndPoint()));
-				graphline.add(line);
-			}
-		}
-		// resultGraph.add(new ShapeDebugFrame.Line2DShapeInfo(graphline,
-		// "graph", Color.yellow, false, false));
 		int src = trafficArea.getNearestLineIndex(start);
 		int end = trafficArea.getNearestLineIndex(edgePoint);
-		// if (src != -1)
-		// resultGraph.add(new Line2DShapeInfo(oLines.get(src), "start",
-		// Color.red, true, false));
-		// if (end != -1)
-		// resultGraph.add(new Line2DShapeInfo(oLines.get(end), "end",
-		// Color.cyan, true, false));
-
 		if (src != end && src != -1 && end != -1) {
-			Dijkstra dijkstra = new Dijkstra(graph.length);
-			try {
-				dijkstra.Run(graph, src);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-			try{
-			if (dijkstra.getWeight(end) < 1000 ) {
-				ArrayList<Integer> path = dijkstra.getpathArray(end);
-				if(path.size() > 2){
-    				List<Point2D> points = new ArrayList<Point2D>();
-    				for (Integer integer : path) {
-    					// resultGraph.add(new Line2DShapeInfo(oLines.get(integer),
-    					// "path", Color.white, false, true));
-    					Point2D point = getMidPoint(oLines.get(integer).getOrigin(), oLines.get(integer).getEndPoint());
-    					// resultGraph.add(new Point2DShapeInfo(point, "path",
-    					// Color.white, true));
-    					points.add(point);
-    				}
-
-    				ArrayList<PathElement> result = new ArrayList<PathElement>();
-    				result.add(new PathElement(nextArea.getID(), nextEdge.getLine(), start));
-
-    				for (Point2D point : points)
-    					result.add(new PathElement(nextArea.getID(), nextEdge.getLine(), point));
-
-    				result.add(new PathElement(nextArea.getID(), nextEdge.getLine(), edgePoint));
-    				// debug.show("final graph", resultGraph);
-    				return result;
+			RoutingGraph graph = trafficArea.getRoutingGraph();
+			int[] path = routeByDistance ? graph.findShortestPath(src, end) : graph.findPath(src, end);
+			if (path != null && path.length > 2) {
+				ArrayList<PathElement> result = new ArrayList<PathElement>(path.length + 2);
+				result.add(new PathElement(nextArea.getID(), nextEdge.getLine(), start));
+				for (int node : path) {
+					result.add(new PathElement(nextArea.getID(), nextEdge.getLine(), graph.getPoint(node)));
 				}
-			}
-			}catch(Exception e){
-				e.printStackTrace();
+				result.add(new PathElement(nextArea.getID(), nextEdge.getLine(), edgePoint));
+				return result;
 			}
 		}
-		// debug.show("No path with dijkstra", resultGraph);
-
 		return originalPaths;
 	}
 
@@ -887,13 +858,24 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 
 	private void timestep() {
 		long start = System.currentTimeMillis();
+		manager.updateWallIndex();
 		for (TrafficAgent agent : manager.getAgents()) {
 			agent.beginTimestep();
 		}
 		long pre = System.currentTimeMillis();
 		Logger.debug("Running " + MICROSTEPS + " microsteps");
-		for (int i = 0; i < MICROSTEPS; i++) {
-			microstep();
+		if (skipIdle) {
+			activeMicrosteps();
+		} else if (pool == null) {
+			for (int i = 0; i < MICROSTEPS; i++) {
+				microstep();
+			}
+		} else {
+			TrafficAgent[] agents = getSortedAgents();
+			int grain = getGrain(agents.length);
+			for (int i = 0; i < MICROSTEPS; i++) {
+				parallelMicrostep(agents, agents.length, grain);
+			}
 		}
 
 		long post = System.currentTimeMillis();
@@ -917,4 +899,118 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 			gui.refresh();
 		}
 	}
+
+	/**
+	 * Run a microstep where every agent sees the positions of the other
+	 * agents at the end of the previous microstep. The new positions are
+	 * computed in parallel and then applied in agent ID order, so the result
+	 * does not depend on the number of threads.
+	 */
+	private void parallelMicrostep(TrafficAgent[] agents, int count, int grain) {
+		pool.invoke(new PrepareStepTask(agents, 0, count, grain));
+		for (int i = 0; i < count; ++i) {
+			agents[i].commitStep();
+		}
+		if (gui != null) {
+			gui.refresh();
+		}
+	}
+
+	/**
+	 * Run microsteps for the active agents only. Every mobile agent starts the
+	 * timestep active. Agents that become idle are parked until an active
+	 * agent that is still moving comes within the force cutoff, and the
+	 * timestep ends early if every agent is parked. Without a thread pool the
+	 * agents are stepped in the same order as {@link #microstep()}, so the
+	 * result only differs from the sequential mode once an agent is parked.
+	 */
+	private void activeMicrosteps() {
+		TrafficAgent[] agents = pool == null ? manager.getAgents().toArray(new TrafficAgent[0]) : getSortedAgents();
+		TrafficAgent[] active = new TrafficAgent[agents.length];
+		int count = 0;
+		for (TrafficAgent agent : agents) {
+			agent.setParked(false);
+			if (agent.isMobile()) {
+				active[count++] = agent;
+			}
+		}
+		int grain = pool == null ? 0 : getGrain(agents.length);
+		int initial = count;
+		long total = 0;
+		int microsteps = 0;
+		while (microsteps < MICROSTEPS && count > 0) {
+			if (pool == null) {
+				for (int i = 0; i < count; ++i) {
+					active[i].step(STEP_TIME_MS);
+				}
+				if (gui != null) {
+					gui.refresh();
+				}
+			} else {
+				parallelMicrostep(active, count, grain);
+			}
+			total += count;
+			++microsteps;
+			for (int i = 0; i < count; ++i) {
+				if (!active[i].isIdle()) {
+					active[i].wakeNeighbours();
+				}
+			}
+			count = 0;
+			for (TrafficAgent agent : agents) {
+				if (!agent.isMobile()) {
+					continue;
+				}
+				agent.setParked(!agent.isWakeRequested() && agent.isIdle());
+				if (!agent.isParked()) {
+					active[count++] = agent;
+				}
+			}
+		}
+		Logger.info("Ran " + microsteps + " of " + MICROSTEPS + " microsteps; active agents: " + initial + " at start, " + count + " at end, "
+				+ (microsteps == 0 ? 0 : total / microsteps) + " on average");
+	}
+
+	private int getGrain(int agents) {
+		return Math.max(MIN_AGENTS_PER_TASK, agents / (pool.getParallelism() * TASKS_PER_THREAD));
+	}
+
+	private TrafficAgent[] getSortedAgents() {
+		TrafficAgent[] result = manager.getAgents().toArray(new TrafficAgent[0]);
+		Arrays.sort(result, new Comparator<TrafficAgent>() {
+			@Override
+			public int compare(TrafficAgent a, TrafficAgent b) {
+				return Integer.compare(a.getHuman().getID().getValue(), b.getHuman().getID().getValue());
+			}
+		});
+		return result;
+	}
+
+	private static class PrepareStepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final TrafficAgent[] agents;
+		private final int start;
+		private final int end;
+		private final int grain;
+
+		PrepareStepTask(TrafficAgent[] agents, int start, int end, int grain) {
+			this.agents = agents;
+			this.start = start;
+			this.end = end;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= grain) {
+				for (int i = start; i < end; ++i) {
+					agents[i].prepareStep(STEP_TIME_MS);
+				}
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new PrepareStepTask(agents, start, middle, grain), new PrepareStepTask(agents, middle, end, grain));
+		}
+	}
 }
@@ -0,0 +1,222 @@
+package traffic3.simulator;
+
+import gis2.GMLWorldModelCreator;
+
+import rescuecore2.config.Config;
+import rescuecore2.misc.geometry.Point2D;
+import rescuecore2.standard.entities.Area;
+import rescuecore2.standard.entities.Civilian;
+import rescuecore2.standard.entities.Edge;
+import rescuecore2.standard.entities.Refuge;
+import rescuecore2.standard.entities.Road;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.StandardWorldModel;
+import rescuecore2.worldmodel.EntityID;
+
+import traffic3.manager.AgentGrid;
+import traffic3.manager.TrafficManager;
+import traffic3.objects.TrafficAgent;
+import traffic3.objects.TrafficArea;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+   Benchmark for the traffic simulator with a large crowd of civilians heading for the refuges of a map. Every civilian starts on a road next to a refuge and is sent through the door, so the agent force computation dominates. The neighbour search through {@link AgentGrid} is compared with the area based search in {@link TrafficManager#getNearbyAgents(TrafficAgent)}, and then whole timesteps are timed.
+   <p>
+   Usage: CrowdBenchmark &lt;kernel config&gt; &lt;map directory&gt; [&lt;civilians&gt;]
+ */
+public final class CrowdBenchmark {
+    private static final int DEFAULT_CIVILIANS = 1500;
+    private static final double CIVILIAN_RADIUS = 200;
+    private static final double CIVILIAN_VELOCITY = 0.2;
+    private static final double STEP_TIME_MS = 100;
+    private static final int MICROSTEPS = 600;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int TIMESTEPS = 3;
+    private static final int MAX_PLACEMENT_ATTEMPTS = 100;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private CrowdBenchmark() {}
+
+    /**
+       Run the benchmark.
+       @param args The kernel config file, a map directory and optionally the number of civilians.
+       @throws Exception If something goes wrong.
+    */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: CrowdBenchmark <kernel config> <map directory> [<civilians>]");
+            return;
+        }
+        Config config = new Config(new File(args[0]));
+        config.setValue("gis.map.dir", args[1]);
+        int civilians = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CIVILIANS;
+        StandardWorldModel world = (StandardWorldModel)new GMLWorldModelCreator().buildWorldModel(config);
+        world.index();
+        TrafficConstants.init(config);
+        TrafficManager manager = new TrafficManager();
+        for (StandardEntity next : world) {
+            if (next instanceof Area) {
+                manager.register(new TrafficArea((Area)next));
+            }
+        }
+        List<TrafficAgent> agents = createCrowd(world, manager, civilians, new Random(config.getRandom().nextLong()));
+        manager.setAgentGridEnabled(true);
+        manager.cacheInformation(world);
+        System.out.println(args[1] + ": " + agents.size() + " civilians");
+
+        for (int round = 0; round < WARMUP_ROUNDS; ++round) {
+            countLegacy(manager, agents);
+            countGrid(manager, agents);
+        }
+        long legacyTime = 0;
+        long gridTime = 0;
+        long legacyCount = 0;
+        long gridCount = 0;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            legacyCount = countLegacy(manager, agents);
+            long middle = System.nanoTime();
+            gridCount = countGrid(manager, agents);
+            long end = System.nanoTime();
+            legacyTime += middle - start;
+            gridTime += end - middle;
+        }
+        System.out.println("Neighbour search: area sets " + format(legacyTime / (double)(ROUNDS * agents.size())) + " ns per agent, grid " + format(gridTime / (double)(ROUNDS * agents.size())) + " ns per agent");
+        System.out.println("Neighbours within cutoff: area sets " + legacyCount + ", grid " + gridCount + (legacyCount == gridCount ? "" : " MISMATCH"));
+
+        for (int time = 1; time <= TIMESTEPS; ++time) {
+            long start = System.nanoTime();
+            for (TrafficAgent next : agents) {
+                next.beginTimestep();
+            }
+            for (int i = 0; i < MICROSTEPS; ++i) {
+                for (TrafficAgent next : agents) {
+                    next.step(STEP_TIME_MS);
+                }
+            }
+            for (TrafficAgent next : agents) {
+                next.endTimestep();
+            }
+            long end = System.nanoTime();
+            System.out.println("Timestep " + time + ": " + format((end - start) / NANOS_PER_MILLI) + " ms");
+        }
+    }
+
+    private static List<TrafficAgent> createCrowd(StandardWorldModel world, TrafficManager manager, int count, Random random) {
+        // Find the road side of every refuge door
+        List<Road> roads = new ArrayList<Road>();
+        List<Refuge> refuges = new ArrayList<Refuge>();
+        for (StandardEntity next : world) {
+            if (next instanceof Refuge) {
+                Refuge refuge = (Refuge)next;
+                for (EntityID neighbour : refuge.getNeighbours()) {
+                    StandardEntity e = world.getEntity(neighbour);
+                    if (e instanceof Road) {
+                        roads.add((Road)e);
+                        refuges.add(refuge);
+                    }
+                }
+            }
+        }
+        if (roads.isEmpty()) {
+            throw new IllegalArgumentException("Map has no refuges next to roads");
+        }
+        int nextID = 0;
+        for (StandardEntity next : world) {
+            nextID = Math.max(nextID, next.getID().getValue() + 1);
+        }
+        List<TrafficAgent> result = new ArrayList<TrafficAgent>();
+        for (int i = 0; i < count; ++i) {
+            int door = i % roads.size();
+            Road road = roads.get(door);
+            Refuge refuge = refuges.get(door);
+            Point2D start = randomPoint(road, random);
+            if (start == null) {
+                continue;
+            }
+            Civilian civilian = new Civilian(new EntityID(nextID++));
+            civilian.setPosition(road.getID());
+            TrafficAgent agent = new TrafficAgent(civilian, manager, CIVILIAN_RADIUS, CIVILIAN_VELOCITY);
+            agent.setLocation(start.getX(), start.getY());
+            Edge edge = road.getEdgeTo(refuge.getID());
+            Point2D goal = new Point2D(refuge.getX(), refuge.getY());
+            List<PathElement> path = new ArrayList<PathElement>();
+            path.add(new PathElement(road.getID(), edge.getLine(), edge.getLine().getPoint(0.5)));
+            path.add(new PathElement(refuge.getID(), null, goal));
+            agent.setPath(path);
+            manager.register(agent);
+            result.add(agent);
+        }
+        return result;
+    }
+
+    private static Point2D randomPoint(Area area, Random random) {
+        Rectangle2D bounds = area.getShape().getBounds2D();
+        for (int i = 0; i < MAX_PLACEMENT_ATTEMPTS; ++i) {
+            double x = bounds.getMinX() + random.nextDouble() * bounds.getWidth();
+            double y = bounds.getMinY() + random.nextDouble() * bounds.getHeight();
+            if (area.getShape().contains(x, y)) {
+                return new Point2D(x, y);
+            }
+        }
+        return null;
+    }
+
+    private static long countLegacy(TrafficManager manager, List<TrafficAgent> agents) {
+        double cutoff = TrafficConstants.getAgentDistanceCutoff();
+        long count = 0;
+        for (TrafficAgent agent : agents) {
+            if (agent.getArea() == null) {
+                continue;
+            }
+            for (TrafficAgent other : manager.getNearbyAgents(agent)) {
+                if (Math.abs(other.getX() - agent.getX()) <= cutoff && Math.abs(other.getY() - agent.getY()) <= cutoff) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static long countGrid(TrafficManager manager, List<TrafficAgent> agents) {
+        double cutoff = TrafficConstants.getAgentDistanceCutoff();
+        AgentGrid grid = manager.getAgentGrid();
+        long count = 0;
+        for (TrafficAgent agent : agents) {
+            TrafficArea area = agent.getArea();
+            if (area == null) {
+                continue;
+            }
+            Collection<TrafficArea> neighbours = manager.getNeighbours(area);
+            for (int row = grid.getRow(agent.getY() - cutoff); row <= grid.getRow(agent.getY() + cutoff); ++row) {
+                for (int column = grid.getColumn(agent.getX() - cutoff); column <= grid.getColumn(agent.getX() + cutoff); ++column) {
+                    List<TrafficAgent> cell = grid.getCell(column, row);
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < cell.size(); ++i) {
+                        TrafficAgent other = cell.get(i);
+                        if (other == agent || (other.getArea() != area && !neighbours.contains(other.getArea()))) {
+                            continue;
+                        }
+                        if (Math.abs(other.getX() - agent.getX()) <= cutoff && Math.abs(other.getY() - agent.getY()) <= cutoff) {
+                            ++count;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static String format(double d) {
+        return String.format("%.1f", d);
+    }
+}
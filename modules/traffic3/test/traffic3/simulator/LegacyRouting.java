@@ -0,0 +1,124 @@
+package traffic3.simulator;
+
+import rescuecore2.standard.entities.Blockade;
+import rescuecore2.standard.entities.Road;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.StandardWorldModel;
+import rescuecore2.worldmodel.EntityID;
+
+import traffic3.objects.TrafficArea;
+import traffic3.objects.TrafficBlockade;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+   The search that TrafficSimulator used inside an area before {@link RoutingGraph}, kept for comparison. It runs Dijkstra over the matrix from {@link TrafficArea#getGraph()} with every clear edge costing one hop, and rejects paths that cost 1000 or more, which are the ones that cross a blocking line.
+ */
+final class LegacyRouting {
+    private static final int MAX_COST = 1000;
+    private static final int NO_EDGE = 100000;
+
+    private LegacyRouting() {}
+
+    /**
+       Find the path with the fewest hops between two nodes.
+       @param graph The matrix from {@link TrafficArea#getGraph()}.
+       @param from The start node.
+       @param to The end node.
+       @return The nodes on the path including both ends, or null if there is no path.
+    */
+    static int[] findPath(int[][] graph, int from, int to) {
+        int n = graph.length;
+        long[] cost = new long[n];
+        int[] parent = new int[n];
+        boolean[] done = new boolean[n];
+        for (int i = 0; i < n; ++i) {
+            cost[i] = Long.MAX_VALUE / 2;
+            parent[i] = -1;
+        }
+        cost[from] = 0;
+        while (true) {
+            // Lowest cost first, then lowest index
+            int node = -1;
+            for (int i = 0; i < n; ++i) {
+                if (!done[i] && cost[i] < Long.MAX_VALUE / 2 && (node == -1 || cost[i] < cost[node])) {
+                    node = i;
+                }
+            }
+            if (node == -1) {
+                break;
+            }
+            done[node] = true;
+            for (int i = 0; i < n; ++i) {
+                if (i == node || done[i] || graph[node][i] > NO_EDGE) {
+                    continue;
+                }
+                if (cost[node] + graph[node][i] < cost[i]) {
+                    cost[i] = cost[node] + graph[node][i];
+                    parent[i] = node;
+                }
+            }
+        }
+        if (cost[to] >= MAX_COST) {
+            return null;
+        }
+        int length = 0;
+        for (int node = to; node != -1; node = parent[node]) {
+            ++length;
+        }
+        int[] result = new int[length];
+        for (int node = to; node != -1; node = parent[node]) {
+            result[--length] = node;
+        }
+        return result;
+    }
+
+    /**
+       Get the length of a path through a routing graph.
+       @param graph The graph.
+       @param path The nodes on the path.
+       @return The sum of the distances between consecutive nodes.
+    */
+    static double getLength(RoutingGraph graph, int[] path) {
+        double result = 0;
+        for (int i = 1; i < path.length; ++i) {
+            result += graph.getPoint(path[i - 1]).minus(graph.getPoint(path[i])).getLength();
+        }
+        return result;
+    }
+
+    /**
+       Wrap every road of a world model in a TrafficArea with square blockades spread along its middle.
+       @param world The world model.
+       @param blockades The number of blockades on each road.
+       @return The TrafficAreas.
+    */
+    static List<TrafficArea> makeBlockedRoads(StandardWorldModel world, int blockades) {
+        int nextID = 0;
+        for (StandardEntity next : world) {
+            nextID = Math.max(nextID, next.getID().getValue() + 1);
+        }
+        List<TrafficArea> result = new ArrayList<TrafficArea>();
+        for (StandardEntity next : world) {
+            if (!(next instanceof Road)) {
+                continue;
+            }
+            Road road = (Road)next;
+            TrafficArea area = new TrafficArea(road);
+            Rectangle2D bounds = road.getShape().getBounds2D();
+            double size = Math.min(bounds.getWidth(), bounds.getHeight()) / 8;
+            for (int i = 0; i < blockades; ++i) {
+                double x = bounds.getMinX() + bounds.getWidth() * (i + 1) / (blockades + 1);
+                double y = bounds.getCenterY();
+                Blockade blockade = new Blockade(new EntityID(nextID++));
+                blockade.setApexes(new int[] {(int)(x - size), (int)(y - size), (int)(x + size), (int)(y - size), (int)(x + size), (int)(y + size), (int)(x - size), (int)(y + size)});
+                blockade.setPosition(road.getID());
+                area.addBlockade(new TrafficBlockade(blockade, area));
+            }
+            result.add(area);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+package traffic3.simulator;
+
+import gis2.GMLWorldModelCreator;
+
+import rescuecore2.config.Config;
+import rescuecore2.standard.entities.StandardWorldModel;
+
+import traffic3.objects.TrafficArea;
+import traffic3.objects.TrafficBlockade;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+   Benchmark for planning routes inside areas. Every road of a map gets three blockades, then the same batch of routes between random open lines of random roads is planned several times with {@link RoutingGraph} and with the Dijkstra search it replaced. Each search works on its own copy of the roads and nothing is built before timing starts, so the first round includes building the visibility matrices for Dijkstra and the graphs for RoutingGraph. Later rounds only look up remembered paths. After that one blockade is removed from every road and put back again several times, and the batch is planned after each change, which includes rebuilding the matrices and graphs.
+   <p>
+   Usage: RoutingBenchmark &lt;kernel config&gt; &lt;map directory&gt; [&lt;routes&gt;]
+ */
+public final class RoutingBenchmark {
+    private static final int DEFAULT_ROUTES = 200;
+    private static final int BLOCKADES_PER_ROAD = 3;
+    private static final int ROUNDS = 5;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private RoutingBenchmark() {}
+
+    /**
+       Run the benchmark.
+       @param args The kernel config file, a map directory and optionally the number of routes in each batch.
+       @throws Exception If something goes wrong.
+    */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: RoutingBenchmark <kernel config> <map directory> [<routes>]");
+            return;
+        }
+        Config config = new Config(new File(args[0]));
+        config.setValue("gis.map.dir", args[1]);
+        int routes = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROUTES;
+        StandardWorldModel world = (StandardWorldModel)new GMLWorldModelCreator().buildWorldModel(config);
+        List<TrafficArea> legacyAreas = LegacyRouting.makeBlockedRoads(world, BLOCKADES_PER_ROAD);
+        List<TrafficArea> graphAreas = LegacyRouting.makeBlockedRoads(world, BLOCKADES_PER_ROAD);
+        System.out.println(args[1] + ": " + legacyAreas.size() + " roads");
+        long seed = config.getRandom().nextLong();
+        for (int round = 0; round < ROUNDS; ++round) {
+            run("Round " + (round + 1), legacyAreas, graphAreas, routes, seed);
+        }
+        List<TrafficBlockade> legacyRemoved = new ArrayList<TrafficBlockade>();
+        List<TrafficBlockade> graphRemoved = new ArrayList<TrafficBlockade>();
+        for (int round = 0; round < ROUNDS; ++round) {
+            for (int i = 0; i < legacyAreas.size(); ++i) {
+                if (round % 2 == 0) {
+                    legacyRemoved.add(removeBlockade(legacyAreas.get(i)));
+                    graphRemoved.add(removeBlockade(graphAreas.get(i)));
+                } else {
+                    legacyAreas.get(i).addBlockade(legacyRemoved.get(i));
+                    graphAreas.get(i).addBlockade(graphRemoved.get(i));
+                }
+            }
+            if (round % 2 == 1) {
+                legacyRemoved.clear();
+                graphRemoved.clear();
+            }
+            run((round % 2 == 0 ? "Blockade removed" : "Blockade restored") + " " + (round / 2 + 1), legacyAreas, graphAreas, routes, seed);
+        }
+    }
+
+    private static void run(String name, List<TrafficArea> legacyAreas, List<TrafficArea> graphAreas, int routes, long seed) {
+        Random random = new Random(seed);
+        long legacyTime = 0;
+        long graphTime = 0;
+        int legacyFound = 0;
+        int graphFound = 0;
+        int mismatched = 0;
+        for (int i = 0; i < routes; ++i) {
+            int index = random.nextInt(legacyAreas.size());
+            int from = random.nextInt();
+            int to = random.nextInt();
+            long before = System.nanoTime();
+            int[][] matrix = legacyAreas.get(index).getGraph();
+            int[] legacy = matrix.length < 2 ? null : LegacyRouting.findPath(matrix, mod(from, matrix.length), mod(to, matrix.length));
+            long middle = System.nanoTime();
+            RoutingGraph graph = graphAreas.get(index).getRoutingGraph();
+            int n = graph.getNodeCount();
+            int[] path = n < 2 ? null : graph.findPath(mod(from, n), mod(to, n));
+            long after = System.nanoTime();
+            legacyTime += middle - before;
+            graphTime += after - middle;
+            legacyFound += legacy == null ? 0 : 1;
+            graphFound += path == null ? 0 : 1;
+            mismatched += Arrays.equals(legacy, path) ? 0 : 1;
+        }
+        System.out.println(name + ": " + routes + " routes, Dijkstra " + format(legacyTime) + " ms (" + legacyFound + " found), RoutingGraph "
+                           + format(graphTime) + " ms (" + graphFound + " found)" + (mismatched == 0 ? "" : ", " + mismatched + " MISMATCHED"));
+    }
+
+    private static TrafficBlockade removeBlockade(TrafficArea area) {
+        TrafficBlockade result = area.getBlockades().iterator().next();
+        area.removeBlockade(result);
+        return result;
+    }
+
+    private static int mod(int value, int n) {
+        return Math.abs(value % n);
+    }
+
+    private static String format(long nanos) {
+        return String.format("%.3f", nanos / NANOS_PER_MILLI);
+    }
+}
@@ -0,0 +1,167 @@
+package traffic3.simulator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import gis2.GMLWorldModelCreator;
+
+import rescuecore2.config.Config;
+import rescuecore2.misc.geometry.Point2D;
+import rescuecore2.standard.entities.StandardWorldModel;
+
+import traffic3.objects.TrafficArea;
+import traffic3.objects.TrafficBlockade;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+public class RoutingGraphTest {
+    private static final String KERNEL_CONFIG = "boot/config/kernel.cfg";
+    private static final String TEST_MAP = "maps/gml/test/map";
+    private static final int BLOCKADES_PER_ROAD = 3;
+    private static final double EPSILON = 1e-6;
+    // Matrix values used by TrafficArea.getGraph
+    private static final int CLEAR = 1;
+    private static final int BLOCKED = 100000;
+    private static final int HIDDEN = Integer.MAX_VALUE;
+
+    @Test
+    public void testEqualCostTie() {
+        // A unit square joined round the sides only, so there are two shortest paths from 0 to 3
+        List<Point2D> points = Arrays.asList(new Point2D(0, 0), new Point2D(1, 0), new Point2D(0, 1), new Point2D(1, 1));
+        int[][] matrix = {
+            {CLEAR, CLEAR, CLEAR, HIDDEN},
+            {CLEAR, CLEAR, HIDDEN, CLEAR},
+            {CLEAR, HIDDEN, CLEAR, CLEAR},
+            {HIDDEN, CLEAR, CLEAR, CLEAR},
+        };
+        RoutingGraph graph = new RoutingGraph(points, matrix);
+        int[] path = graph.findPath(0, 3);
+        assertArrayEquals(LegacyRouting.findPath(matrix, 0, 3), path);
+        assertArrayEquals(new int[] {0, 1, 3}, path);
+        assertSame(path, graph.findPath(0, 3));
+        assertArrayEquals(new int[] {3, 1, 0}, graph.findPath(3, 0));
+        path = graph.findShortestPath(0, 3);
+        assertEquals(2, LegacyRouting.getLength(graph, path), EPSILON);
+        assertSame(path, graph.findShortestPath(0, 3));
+        // Ties are broken the same way every time
+        assertArrayEquals(path, new RoutingGraph(points, matrix).findShortestPath(0, 3));
+    }
+
+    @Test
+    public void testUnreachable() {
+        // 2 is on its own and 3 can only be reached across a blocking line
+        List<Point2D> points = Arrays.asList(new Point2D(0, 0), new Point2D(1, 0), new Point2D(2, 0), new Point2D(1, 1));
+        int[][] matrix = {
+            {CLEAR, CLEAR, HIDDEN, HIDDEN},
+            {CLEAR, CLEAR, HIDDEN, BLOCKED},
+            {HIDDEN, HIDDEN, CLEAR, HIDDEN},
+            {HIDDEN, BLOCKED, HIDDEN, CLEAR},
+        };
+        RoutingGraph graph = new RoutingGraph(points, matrix);
+        for (int to : new int[] {2, 3}) {
+            assertNull(LegacyRouting.findPath(matrix, 0, to));
+            assertNull(graph.findPath(0, to));
+            assertNull(graph.findShortestPath(0, to));
+            // Failed searches are remembered too
+            assertNull(graph.findPath(0, to));
+            assertNull(graph.findShortestPath(0, to));
+        }
+        assertArrayEquals(new int[] {1, 0}, graph.findPath(1, 0));
+        assertArrayEquals(new int[] {1, 0}, graph.findShortestPath(1, 0));
+        assertArrayEquals(new int[] {2}, graph.findPath(2, 2));
+        assertArrayEquals(new int[] {2}, graph.findShortestPath(2, 2));
+    }
+
+    @Test
+    public void testMatchesLegacySearchOnTestMap() throws Exception {
+        int paths = 0;
+        for (TrafficArea area : makeBlockedRoads()) {
+            int[][] matrix = area.getGraph();
+            RoutingGraph graph = area.getRoutingGraph();
+            assertSameEdges(area, matrix, graph);
+            double[][] shortest = getShortestDistances(graph, matrix);
+            for (int from = 0; from < matrix.length; ++from) {
+                for (int to = 0; to < matrix.length; ++to) {
+                    int[] legacy = LegacyRouting.findPath(matrix, from, to);
+                    // Counting hops finds exactly the path the old search did
+                    assertArrayEquals(area + " " + from + " to " + to, legacy, graph.findPath(from, to));
+                    int[] path = graph.findShortestPath(from, to);
+                    if (legacy == null) {
+                        assertNull(area + " " + from + " to " + to, path);
+                        continue;
+                    }
+                    assertEquals(from, path[0]);
+                    assertEquals(to, path[path.length - 1]);
+                    for (int i = 1; i < path.length; ++i) {
+                        assertEquals(CLEAR, matrix[path[i - 1]][path[i]]);
+                    }
+                    // Measuring by distance can choose a different path but never a longer one
+                    double length = LegacyRouting.getLength(graph, path);
+                    assertEquals(shortest[from][to], length, EPSILON);
+                    assertTrue(length <= LegacyRouting.getLength(graph, legacy) + EPSILON);
+                    ++paths;
+                }
+            }
+        }
+        assertTrue(paths > 0);
+    }
+
+    @Test
+    public void testRebuildAfterBlockadeChange() throws Exception {
+        int checked = 0;
+        for (TrafficArea area : makeBlockedRoads()) {
+            area.getRoutingGraph();
+            TrafficBlockade blockade = area.getBlockades().iterator().next();
+            // Graphs rebuilt from the previous one must match the ones built from scratch
+            area.removeBlockade(blockade);
+            assertSameEdges(area, area.getGraph(), area.getRoutingGraph());
+            area.addBlockade(blockade);
+            assertSameEdges(area, area.getGraph(), area.getRoutingGraph());
+            checked += area.getRoutingGraph().getNodeCount();
+        }
+        assertTrue(checked > 0);
+    }
+
+    private List<TrafficArea> makeBlockedRoads() throws Exception {
+        Config config = new Config(new File(KERNEL_CONFIG));
+        config.setValue("gis.map.dir", TEST_MAP);
+        StandardWorldModel world = (StandardWorldModel)new GMLWorldModelCreator().buildWorldModel(config);
+        return LegacyRouting.makeBlockedRoads(world, BLOCKADES_PER_ROAD);
+    }
+
+    private void assertSameEdges(TrafficArea area, int[][] matrix, RoutingGraph graph) {
+        assertEquals(matrix.length, graph.getNodeCount());
+        for (int i = 0; i < matrix.length; ++i) {
+            for (int j = 0; j < matrix.length; ++j) {
+                if (i != j) {
+                    assertEquals(area + " " + i + " to " + j, matrix[i][j] == CLEAR, graph.hasEdge(i, j));
+                }
+            }
+        }
+    }
+
+    private double[][] getShortestDistances(RoutingGraph graph, int[][] matrix) {
+        int n = matrix.length;
+        double[][] result = new double[n][n];
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                result[i][j] = i == j ? 0 : matrix[i][j] == CLEAR ? LegacyRouting.getLength(graph, new int[] {i, j}) : Double.POSITIVE_INFINITY;
+            }
+        }
+        for (int k = 0; k < n; ++k) {
+            for (int i = 0; i < n; ++i) {
+                for (int j = 0; j < n; ++j) {
+                    result[i][j] = Math.min(result[i][j], result[i][k] + result[k][j]);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -2,16 +2,18 @@ package firesimulator.simulator;
 
 import firesimulator.util.Configuration;
 import firesimulator.util.Rnd;
+import firesimulator.world.AirGrid;
 import firesimulator.world.Building;
 import firesimulator.world.FireBrigade;
 import firesimulator.world.World;
 import org.apache.log4j.Logger;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class Simulator {
 
@@ -51,6 +53,53 @@ public class Simulator {
 
   private static Simulator me;
 
+  // Pool for updating the air grid, or null to update it sequentially
+  private ForkJoinPool     airPool;
+
+  // Whether only buildings away from ambient conditions are updated
+  private boolean          activeSetEnabled;
+
+  // Temperatures within this distance of ambient count as ambient
+  private double           activeThreshold;
+
+  // Ordinals of the buildings updated this step, in ascending order
+  private int[]            active;
+
+  private int              activeCount;
+
+  // Marks buildings added to the active set in the current pass
+  private int[]            activeMark;
+
+  private int              activeStamp;
+
+  // Radiation energy of each building indexed by ordinal
+  private double[]         radiation;
+
+  // Pool for gathering radiation, or null to scatter it sequentially
+  private ForkJoinPool     radiationPool;
+
+  // Buildings that send radiation to building t are
+  // sources[sourceStart[t]] to sources[sourceStart[t + 1] - 1] in ascending
+  // order, with the share each of them sends in sourceValues
+  private int[]            sourceStart;
+
+  private int[]            sources;
+
+  private float[]          sourceValues;
+
+  // Ordinals of the buildings that gather radiation this step
+  private int[]            targets;
+
+  private int              targetCount;
+
+  // Marks targets found in the current step
+  private int[]            targetMark;
+
+  private int              targetStamp;
+
+  // Parallel gathering splits the targets into tasks of at least this many
+  private static final int MIN_TARGETS_PER_TASK        = 256;
+
 //  private EnergyHistory    energyHistory;
 
 
@@ -103,9 +152,16 @@ public class Simulator {
     //energyHistory = new EnergyHistory( world, timestep );
     refill();
     executeExtinguishRequests();
+    if ( activeSetEnabled ) {
+      findActiveBuildings( false );
+    }
     burn();
     cool();
     updateGrid();
+    if ( activeSetEnabled ) {
+      // Include buildings that are still ambient but sit in air that is not
+      findActiveBuildings( true );
+    }
     exchangeBuilding();
     // FIXED
     cool();
@@ -115,13 +171,100 @@ public class Simulator {
 
 
   private void cool() {
-    for ( Iterator i = world.getBuildings().iterator(); i.hasNext(); ) {
-      Building b = (Building) i.next();
-      waterCooling( b );
+    Building[] table = world.getBuildingTable();
+    for ( int i = 0; i < activeCount; i++ ) {
+      waterCooling( table[active[i]] );
     }
   }
 
 
+  /**
+   * Collect the buildings that have to be updated this step, in ascending
+   * order. A building is active if it holds water, burned last step or its
+   * temperature is more than the threshold away from ambient, and in the
+   * second pass also if one of its air cells is. The connected buildings of
+   * active buildings are added because they receive their radiation. In the
+   * second pass every building that shares an air cell with an added building
+   * is added as well, since exchanging heat with the air changes the cell
+   * before the next building sees it.
+   * <p>
+   * Buildings at exactly ambient temperature emit no radiation, because
+   * Building.getRadiationEnergy never emits more energy than the building
+   * holds, and if their air is ambient too then no part of the step changes
+   * them. With a threshold of zero the result is therefore the same as
+   * updating every building, which ActiveSetTest checks bit for bit. With a
+   * larger threshold the buildings that are left alone keep the energy they
+   * would have radiated and exchanged with the air, so the result is only
+   * approximate.
+   */
+  private void findActiveBuildings( boolean checkAir ) {
+    Building[] table = world.getBuildingTable();
+    activeStamp++;
+    int count = 0;
+    for ( int i = 0; i < table.length; i++ ) {
+      Building b = table[i];
+      if ( isActive( b ) || (checkAir && isAirActive( b )) ) {
+        count = addActive( i, count );
+      }
+    }
+    int seeds = count;
+    for ( int i = 0; i < seeds; i++ ) {
+      for ( Building next : table[active[i]].connectedBuilding ) {
+        count = addActive( next.getOrdinal(), count );
+      }
+    }
+    if ( checkAir ) {
+      // The active buildings so far double as the work list
+      for ( int i = 0; i < count; i++ ) {
+        for ( int[] nextCell : table[active[i]].cells ) {
+          for ( Object next : world.gridToBuilding[nextCell[0]][nextCell[1]] ) {
+            count = addActive( ((Building) ((Object[]) next)[0]).getOrdinal(),
+                count );
+          }
+        }
+      }
+    }
+    Arrays.sort( active, 0, count );
+    activeCount = count;
+  }
+
+
+  /**
+   * Get the number of buildings updated in the last step. This is
+   * package-private so that tests can check that buildings were left alone.
+   */
+  int getActiveCount() {
+    return activeCount;
+  }
+
+
+  private int addActive( int ordinal, int count ) {
+    if ( activeMark[ordinal] == activeStamp ) {
+      return count;
+    }
+    activeMark[ordinal] = activeStamp;
+    active[count] = ordinal;
+    return count + 1;
+  }
+
+
+  private boolean isActive( Building b ) {
+    return b.getWaterQuantity() > 0 || b.getPrevBurned() != 0
+        || Math.abs( b.getEnergy() ) > activeThreshold * b.getCapacity();
+  }
+
+
+  private boolean isAirActive( Building b ) {
+    for ( int[] nextCell : b.cells ) {
+      if ( Math.abs( world.getAirCellTemp( nextCell[0],
+          nextCell[1] ) ) > activeThreshold ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
   private void refill() {
     for ( Iterator i = world.getFirebrigades().iterator(); i.hasNext(); ) {
       FireBrigade fb = ((FireBrigade) i.next());
@@ -142,7 +285,9 @@ public class Simulator {
 
 
   private void burn() {
-    for ( Building b : world.getBuildings() ) {
+    Building[] table = world.getBuildingTable();
+    for ( int i = 0; i < activeCount; i++ ) {
+      Building b = table[active[i]];
       if ( b.getTemperature() >= b.getIgnitionPoint() && b.fuel > 0
           && b.isInflameable() ) {
         float consumed = b.getConsum();
@@ -198,20 +343,31 @@ public class Simulator {
 
 
   private void exchangeBuilding() {
-    for ( Iterator i = world.getBuildings().iterator(); i.hasNext(); ) {
-      Building b = (Building) i.next();
-      exchangeWithAir( b );
-    }
-    double sumdt = 0;
-    Map<Building, Double> radiation = new HashMap<Building, Double>();
-    for ( Iterator i = world.getBuildings().iterator(); i.hasNext(); ) {
-      Building b = (Building) i.next();
-      double radEn = b.getRadiationEnergy();
-      radiation.put( b, radEn );
-    }
-    for ( Iterator i = world.getBuildings().iterator(); i.hasNext(); ) {
-      Building b = (Building) i.next();
-      double radEn = radiation.get( b );
+    Building[] table = world.getBuildingTable();
+    for ( int i = 0; i < activeCount; i++ ) {
+      exchangeWithAir( table[active[i]] );
+    }
+    exchangeRadiation();
+  }
+
+
+  /**
+   * Move radiation energy from the buildings updated this step to their
+   * connected buildings. This is package-private so that benchmarks can time
+   * it on its own.
+   */
+  void exchangeRadiation() {
+    Building[] table = world.getBuildingTable();
+    for ( int i = 0; i < activeCount; i++ ) {
+      radiation[active[i]] = table[active[i]].getRadiationEnergy();
+    }
+    if ( radiationPool != null ) {
+      gatherRadiation( table );
+      return;
+    }
+    for ( int i = 0; i < activeCount; i++ ) {
+      Building b = table[active[i]];
+      double radEn = radiation[active[i]];
       Building[] bs = b.connectedBuilding;
       float[] vs = b.connectedValues;
 
@@ -229,6 +385,102 @@ public class Simulator {
   }
 
 
+  /**
+   * Move radiation energy between buildings by letting every building that
+   * can receive some add up what its sources send, so that buildings can be
+   * handled in parallel without sharing any writes. Each building adds its
+   * incoming energy and removes its own radiation in the same order as the
+   * sequential scatter, so the result is identical.
+   */
+  private void gatherRadiation( Building[] table ) {
+    if ( activeCount == table.length ) {
+      targetCount = table.length;
+      for ( int i = 0; i < targetCount; i++ ) {
+        targets[i] = i;
+      }
+    } else {
+      targetStamp++;
+      targetCount = 0;
+      for ( int i = 0; i < activeCount; i++ ) {
+        markTarget( active[i] );
+        for ( Building next : table[active[i]].connectedBuilding ) {
+          markTarget( next.getOrdinal() );
+        }
+      }
+    }
+    if ( targetCount < 2 * MIN_TARGETS_PER_TASK ) {
+      gather( table, 0, targetCount );
+    } else {
+      radiationPool.invoke( new GatherTask( table, 0, targetCount ) );
+    }
+    // Targets read the radiation of all their sources, so buildings that are
+    // not updated next step must show none
+    for ( int i = 0; i < activeCount; i++ ) {
+      radiation[active[i]] = 0;
+    }
+  }
+
+
+  private void markTarget( int ordinal ) {
+    if ( targetMark[ordinal] != targetStamp ) {
+      targetMark[ordinal] = targetStamp;
+      targets[targetCount++] = ordinal;
+    }
+  }
+
+
+  private void gather( Building[] table, int first, int last ) {
+    for ( int i = first; i < last; i++ ) {
+      int t = targets[i];
+      Building b = table[t];
+      int end = sourceStart[t + 1];
+      boolean sent = false;
+      for ( int k = sourceStart[t]; k < end; k++ ) {
+        if ( !sent && sources[k] > t ) {
+          b.setEnergy( b.getEnergy() - radiation[t] );
+          sent = true;
+        }
+        double connectionValue = sourceValues[k];
+        b.setEnergy( b.getEnergy() + radiation[sources[k]] * connectionValue );
+      }
+      if ( !sent ) {
+        b.setEnergy( b.getEnergy() - radiation[t] );
+      }
+    }
+  }
+
+
+  private class GatherTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Building[] table;
+
+    private final int        first;
+
+    private final int        last;
+
+
+    GatherTask( Building[] table, int first, int last ) {
+      this.table = table;
+      this.first = first;
+      this.last = last;
+    }
+
+
+    @Override
+    protected void compute() {
+      if ( last - first <= MIN_TARGETS_PER_TASK * 2 ) {
+        gather( table, first, last );
+        return;
+      }
+      int middle = (first + last) >>> 1;
+      invokeAll( new GatherTask( table, first, middle ),
+          new GatherTask( table, middle, last ) );
+    }
+  }
+
+
   private void exchangeWithAir( Building b ) {
     // Give/take heat to/from air cells
     double oldTemperature = b.getTemperature();
@@ -255,65 +507,19 @@ public class Simulator {
 
   private void updateGrid() {
     LOG.debug( "Updating air grid" );
-    double[][] airtemp = world.getAirTemp();
-    double[][] newairtemp = new double[airtemp.length][airtemp[0].length];
-    for ( int x = 0; x < airtemp.length; x++ ) {
-      for ( int y = 0; y < airtemp[0].length; y++ ) {
-        double dt = (averageTemp( x, y ) - airtemp[x][y]);
-        double change = (dt * AIR_TO_AIR_COEFFICIENT * TIME_STEP_LENGTH);
-        newairtemp[x][y] = relTemp( airtemp[x][y] + change );
-        if ( !(newairtemp[x][y] > -Double.MAX_VALUE
-            && newairtemp[x][y] < Double.MAX_VALUE) ) {
-          LOG.warn( "Value is not sensible: " + newairtemp[x][y] );
-          newairtemp[x][y] = Double.MAX_VALUE * 0.75;
-        }
-        if ( newairtemp[x][y] == Double.NEGATIVE_INFINITY
-            || newairtemp[x][y] == Double.POSITIVE_INFINITY ) {
-          LOG.warn( "aha" );
-        }
-      }
-    }
-    world.setAirTemp( newairtemp );
+    world.getAirGrid().step( AIR_TO_AIR_COEFFICIENT, TIME_STEP_LENGTH,
+        ENERGY_LOSS, WEIGHT_GRID, airPool );
     // Disable on October 21, 2018 because the wind direction and speed was not
     // correctly implemented.
     // world.setAirTemp( getWindShift().shift( world.getAirTemp(), this ) );
   }
 
 
-  private double relTemp( double deltaT ) {
-    return Math.max( 0, deltaT * ENERGY_LOSS * TIME_STEP_LENGTH );
-  }
-
-
-  private double averageTemp( int x, int y ) {
-    double rv = neighbourCellAverage( x, y ) / weightSummCells( x, y );
-    return rv;
-  }
-
-
-  private double neighbourCellAverage( int x, int y ) {
-    double total = getTempAt( x + 1, y - 1 );
-    total += getTempAt( x + 1, y );
-    total += getTempAt( x + 1, y + 1 );
-    total += getTempAt( x, y - 1 );
-    total += getTempAt( x, y + 1 );
-    total += getTempAt( x - 1, y - 1 );
-    total += getTempAt( x - 1, y );
-    total += getTempAt( x - 1, y + 1 );
-    return total * WEIGHT_GRID;
-  }
-
-
-  private float weightSummCells( int x, int y ) {
-    return 8 * WEIGHT_GRID;
-  }
-
-
   protected double getTempAt( int x, int y ) {
-    if ( x < 0 || y < 0 || x >= world.getAirTemp().length
-        || y >= world.getAirTemp()[0].length )
+    AirGrid grid = world.getAirGrid();
+    if ( x < 0 || y < 0 || x >= grid.getWidth() || y >= grid.getHeight() )
       return 0;
-    return world.getAirTemp()[x][y];
+    return grid.get( x, y );
   }
 
 
@@ -363,11 +569,37 @@ public class Simulator {
     ExtinguishRequest.MAX_DISTANCE = Integer
         .parseInt( Configuration.getValue( "resq-fire.water_distance" ) );
     GAMMA = Float.parseFloat( Configuration.getValue( "resq-fire.gamma" ) );
+    activeSetEnabled = Boolean
+        .parseBoolean( Configuration.getValue( "resq-fire.active_set" ) );
+    activeThreshold = Double.parseDouble(
+        Configuration.getValue( "resq-fire.active_set.threshold" ) );
     Rnd.setSeed( Long.parseLong( Configuration.getValue( "random.seed" ) ) );
+    int airThreads = Integer
+        .parseInt( Configuration.getValue( "resq-fire.air.threads" ) );
+    airPool = createPool( airPool, airThreads );
+    int radiationThreads = Integer
+        .parseInt( Configuration.getValue( "resq-fire.radiation.threads" ) );
+    radiationPool = createPool( radiationPool, radiationThreads );
 
   }
 
 
+  /**
+   * Replace a pool with one that has the given number of threads. One thread
+   * means no pool, and zero or less means one per processor.
+   */
+  private static ForkJoinPool createPool( ForkJoinPool old, int threads ) {
+    if ( old != null ) {
+      old.shutdown();
+    }
+    if ( threads == 1 ) {
+      return null;
+    }
+    return new ForkJoinPool( threads <= 0
+        ? Runtime.getRuntime().availableProcessors() : threads );
+  }
+
+
   public void initialize() {
     try {
       loadVars();
@@ -377,12 +609,66 @@ public class Simulator {
     }
 
     world.initialize();
+    initBuildingState();
+  }
+
+
+  private void initBuildingState() {
+    Building[] table = world.getBuildingTable();
+    int size = table.length;
+    active = new int[size];
+    activeMark = new int[size];
+    activeStamp = 0;
+    radiation = new double[size];
+    if ( activeSetEnabled ) {
+      activeCount = 0;
+    } else {
+      for ( int i = 0; i < size; i++ ) {
+        active[i] = i;
+      }
+      activeCount = size;
+    }
+    if ( radiationPool == null ) {
+      sourceStart = null;
+      sources = null;
+      sourceValues = null;
+      targets = null;
+      targetMark = null;
+      return;
+    }
+    // Transpose the connections. Sources are visited in ascending order so
+    // the sources of each target end up sorted.
+    sourceStart = new int[size + 1];
+    for ( Building b : table ) {
+      for ( Building next : b.connectedBuilding ) {
+        sourceStart[next.getOrdinal() + 1]++;
+      }
+    }
+    for ( int i = 0; i < size; i++ ) {
+      sourceStart[i + 1] += sourceStart[i];
+    }
+    sources = new int[sourceStart[size]];
+    sourceValues = new float[sources.length];
+    int[] fill = Arrays.copyOf( sourceStart, size );
+    for ( int i = 0; i < size; i++ ) {
+      Building[] bs = table[i].connectedBuilding;
+      float[] vs = table[i].connectedValues;
+      for ( int c = 0; c < bs.length; c++ ) {
+        int k = fill[bs[c].getOrdinal()]++;
+        sources[k] = i;
+        sourceValues[k] = vs[c];
+      }
+    }
+    targets = new int[size];
+    targetMark = new int[size];
+    targetStamp = 0;
   }
 
 
   public void reset() {
     loadVars();
     world.reset();
+    initBuildingState();
     informReset();
   }
 }
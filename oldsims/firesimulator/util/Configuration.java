@@ -125,6 +125,11 @@ public class Configuration {
 		Props.add(new Prop(PREFIX + "ambulance_center_inflammable","ambulancecenter_inflammable",null,null,true,null));
 		Props.add(new Prop(PREFIX + "gamma","gamma",null,null,true,null));
 		Props.add(new Prop(PREFIX + "rays.dir","rays",null,null,true,"rays"));
+		Props.add(new Prop(PREFIX + "air.threads","air_threads","Number of threads used for updating the air grid. 0 means one per processor. Default is 1.","threads",true,"1"));
+		Props.add(new Prop(PREFIX + "rays.threads","rays_threads","Number of threads used for sampling radiation when no sample file exists. Default is one per processor.","threads",true,"0"));
+		Props.add(new Prop(PREFIX + "radiation.threads","radiation_threads","Number of threads used for exchanging radiation between buildings. 0 means one per processor. Default is 1.","threads",true,"1"));
+		Props.add(new Prop(PREFIX + "active_set","active_set","Only update buildings that are away from ambient temperature, hold water or are burning. Default is false.","true|false",true,"false"));
+		Props.add(new Prop(PREFIX + "active_set.threshold","active_set_threshold","Temperature difference from ambient below which a building or air cell counts as ambient in active set mode. Default is 0, which gives the same results as updating every building.","degrees",true,"0"));
 		Props.add(new Prop(PREFIX + "burn-rate-average","burn-rate-average",null,null,true,"0.2"));
 		Props.add(new Prop(PREFIX + "burn-rate-variance","burn-rate-variance",null,null,true,"0"));
 	}
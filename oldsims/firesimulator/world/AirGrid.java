@@ -0,0 +1,223 @@
+package firesimulator.world;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The air temperature grid. Temperatures are kept in a flat array, one column
+ * of cells after another, with a border of cells at zero temperature around
+ * the grid so that the neighbours of every cell can be read without bounds
+ * checks. Each step writes into a second array which then replaces the first,
+ * so stepping does not allocate anything.
+ */
+public class AirGrid {
+    private static final Logger LOG = Logger.getLogger(AirGrid.class);
+
+    // Parallel steps split the grid into tasks of at least this many cells
+    private static final int MIN_CELLS_PER_TASK = 16384;
+
+    private final int width;
+    private final int height;
+    // Distance between the first cells of neighbouring columns
+    private final int stride;
+    private double[] current;
+    private double[] next;
+
+    /**
+     * Create an AirGrid with all temperatures at zero.
+     *
+     * @param width
+     *            The number of cells in the X direction.
+     * @param height
+     *            The number of cells in the Y direction.
+     */
+    public AirGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        stride = height + 2;
+        current = new double[(width + 2) * stride];
+        next = new double[current.length];
+    }
+
+    /**
+     * Get the number of cells in the X direction.
+     *
+     * @return The width of the grid.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get the number of cells in the Y direction.
+     *
+     * @return The height of the grid.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the temperature of a cell.
+     *
+     * @param x
+     *            The X index of the cell.
+     * @param y
+     *            The Y index of the cell.
+     * @return The temperature.
+     */
+    public double get(int x, int y) {
+        return current[index(x, y)];
+    }
+
+    /**
+     * Set the temperature of a cell.
+     *
+     * @param x
+     *            The X index of the cell.
+     * @param y
+     *            The Y index of the cell.
+     * @param temp
+     *            The new temperature.
+     */
+    public void set(int x, int y, double temp) {
+        current[index(x, y)] = temp;
+    }
+
+    /**
+     * Set all temperatures to zero.
+     */
+    public void clear() {
+        Arrays.fill(current, 0);
+    }
+
+    /**
+     * Copy the temperatures into a new array indexed by x and then y.
+     *
+     * @return The temperatures.
+     */
+    public double[][] toArray() {
+        double[][] result = new double[width][height];
+        for (int x = 0; x < width; x++) {
+            System.arraycopy(current, index(x, 0), result[x], 0, height);
+        }
+        return result;
+    }
+
+    /**
+     * Copy temperatures from an array indexed by x and then y.
+     *
+     * @param temps
+     *            The temperatures. The array must have the same size as the
+     *            grid.
+     */
+    public void fromArray(double[][] temps) {
+        if (temps.length != width || (width > 0 && temps[0].length != height)) {
+            throw new IllegalArgumentException("Expected a " + width + " x " + height + " array");
+        }
+        for (int x = 0; x < width; x++) {
+            System.arraycopy(temps[x], 0, current, index(x, 0), height);
+        }
+    }
+
+    /**
+     * Exchange heat between neighbouring cells. Each cell moves towards the
+     * weighted average of its eight neighbours, with cells outside the grid
+     * counting as zero, and then loses some of its heat. The arithmetic is done
+     * in the same order as the original per-cell update so the result does not
+     * depend on whether a pool is used.
+     *
+     * @param airToAir
+     *            The air to air heat flow coefficient.
+     * @param timeStep
+     *            The length of the timestep.
+     * @param energyLoss
+     *            The fraction of heat kept by each cell.
+     * @param weight
+     *            The weight of each neighbour.
+     * @param pool
+     *            The pool to run on, or null to update the grid on the calling
+     *            thread.
+     */
+    public void step(float airToAir, float timeStep, float energyLoss, float weight, ForkJoinPool pool) {
+        if (pool == null || (long) width * height < 2 * MIN_CELLS_PER_TASK) {
+            update(0, width, airToAir, timeStep, energyLoss, weight);
+        }
+        else {
+            int grain = Math.max(1, MIN_CELLS_PER_TASK / Math.max(1, height));
+            pool.invoke(new UpdateTask(0, width, grain, airToAir, timeStep, energyLoss, weight));
+        }
+        double[] swap = current;
+        current = next;
+        next = swap;
+    }
+
+    private void update(int firstColumn, int lastColumn, float airToAir, float timeStep, float energyLoss, float weight) {
+        double[] src = current;
+        double[] dst = next;
+        float weightSum = 8 * weight;
+        for (int x = firstColumn; x < lastColumn; x++) {
+            int i = index(x, 0);
+            int end = i + height;
+            for (; i < end; i++) {
+                double total = src[i + stride - 1];
+                total += src[i + stride];
+                total += src[i + stride + 1];
+                total += src[i - 1];
+                total += src[i + 1];
+                total += src[i - stride - 1];
+                total += src[i - stride];
+                total += src[i - stride + 1];
+                double average = total * weight / weightSum;
+                double dt = average - src[i];
+                double change = dt * airToAir * timeStep;
+                double value = Math.max(0, (src[i] + change) * energyLoss * timeStep);
+                if (!(value > -Double.MAX_VALUE && value < Double.MAX_VALUE)) {
+                    LOG.warn("Value is not sensible: " + value);
+                    value = Double.MAX_VALUE * 0.75;
+                }
+                dst[i] = value;
+            }
+        }
+    }
+
+    private int index(int x, int y) {
+        return (x + 1) * stride + y + 1;
+    }
+
+    private class UpdateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int first;
+        private final int last;
+        private final int grain;
+        private final float airToAir;
+        private final float timeStep;
+        private final float energyLoss;
+        private final float weight;
+
+        UpdateTask(int first, int last, int grain, float airToAir, float timeStep, float energyLoss, float weight) {
+            this.first = first;
+            this.last = last;
+            this.grain = grain;
+            this.airToAir = airToAir;
+            this.timeStep = timeStep;
+            this.energyLoss = energyLoss;
+            this.weight = weight;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first <= grain) {
+                update(first, last, airToAir, timeStep, energyLoss, weight);
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new UpdateTask(first, middle, grain, airToAir, timeStep, energyLoss, weight),
+                      new UpdateTask(middle, last, grain, airToAir, timeStep, energyLoss, weight));
+        }
+    }
+}
@@ -69,6 +69,7 @@ public class Building extends StationaryObject {
     private int lwTime = -1;
     private boolean wasEverWatered = false;
     public boolean inflameable = true;
+    private int ordinal = -1;
 
     public static float woodCapacity=4;
     public static float steelCapacity=4;
@@ -198,6 +199,17 @@ public class Building extends StationaryObject {
         return id;
     }
 
+    /**
+     * Get the position of this building in {@link World#getBuildingTable()}.
+     */
+    public int getOrdinal(){
+        return ordinal;
+    }
+
+    void setOrdinal(int ordinal){
+        this.ordinal = ordinal;
+    }
+
     public void initWallValues(World world){
         int totalHits=0;
         int totalRays=0;
@@ -344,8 +356,8 @@ public class Building extends StationaryObject {
 
     public void findCells(World w) {
         LinkedList tmp=new LinkedList();
-        for(int x=0;x<w.getAirTemp().length;x++)
-            for(int y=0;y<w.getAirTemp()[0].length;y++){
+        for(int x=0;x<w.getAirGrid().getWidth();x++)
+            for(int y=0;y<w.getAirGrid().getHeight();y++){
                 int xv=x*w.SAMPLE_SIZE+w.getMinX();
                 int yv=y*w.SAMPLE_SIZE+w.getMinY();
                 if(Geometry.boundingTest(polygon,xv,yv,w.SAMPLE_SIZE,w.SAMPLE_SIZE)){
@@ -372,7 +384,7 @@ public class Building extends StationaryObject {
             LOG.warn(getID()+" has no cell");
             LOG.warn("Sample size: " + w.SAMPLE_SIZE);
             LOG.warn("World min X, Y: " + w.getMinX() + ", " + w.getMinY());
-            LOG.warn("Air grid size: " + w.getAirTemp().length + " x " + w.getAirTemp()[0].length);
+            LOG.warn("Air grid size: " + w.getAirGrid().getWidth() + " x " + w.getAirGrid().getHeight());
             LOG.warn("Building polygon: ");
             for (int i = 0; i < apexes.length; i += 2) {
                 LOG.warn(apexes[i] + ", " + apexes[i + 1]);
@@ -380,8 +392,8 @@ public class Building extends StationaryObject {
             int expectedCellX = (apexes[0] - w.getMinX()) / w.SAMPLE_SIZE;
             int expectedCellY = (apexes[1] - w.getMinY()) / w.SAMPLE_SIZE;
             LOG.warn("Building should be in cell " + expectedCellX + ", " + expectedCellY);
-            for(int x=0;x<w.getAirTemp().length;x++) {
-                for(int y=0;y<w.getAirTemp()[0].length;y++){
+            for(int x=0;x<w.getAirGrid().getWidth();x++) {
+                for(int y=0;y<w.getAirGrid().getHeight();y++){
                     int xv=x*w.SAMPLE_SIZE+w.getMinX();
                     int yv=y*w.SAMPLE_SIZE+w.getMinY();
                     if (Geometry.boundingTest(polygon,xv,yv,w.SAMPLE_SIZE,w.SAMPLE_SIZE)) {
@@ -0,0 +1,169 @@
+package firesimulator.world;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes the binary radiation cache. The file starts with a header
+ * holding a magic number, the format version, the map hash and the ray rate the
+ * values were sampled with. This is followed by the number of buildings and
+ * connections, the building IDs, the offset of each building's first connection
+ * (with one extra offset for the end), the index of each connected building in
+ * the ID table and the weight of each connection. All values are big-endian.
+ */
+final class RayCache {
+    private static final int MAGIC = 0x52415953;
+    private static final int VERSION = 1;
+
+    private RayCache() {}
+
+    /**
+     * Read a cache file and set the connectedBuilding and connectedValues of
+     * every building.
+     *
+     * @param file
+     *            The file to read.
+     * @param hash
+     *            The hash of the current map.
+     * @param rayRate
+     *            The current ray rate.
+     * @param buildings
+     *            All buildings in the map.
+     * @throws IOException
+     *             If the file cannot be read, is corrupt or does not match the
+     *             map and ray rate.
+     */
+    static void read(File file, long hash, float rayRate, Collection<Building> buildings) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a radiation cache file: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported radiation cache version " + version + ": " + file);
+            }
+            long fileHash = buffer.getLong();
+            if (fileHash != hash) {
+                throw new IOException("Radiation cache is for map " + fileHash + " but this map is " + hash);
+            }
+            float fileRate = buffer.getFloat();
+            if (fileRate != rayRate) {
+                throw new IOException("Radiation cache was sampled with ray rate " + fileRate + " but the current rate is " + rayRate);
+            }
+            int count = buffer.getInt();
+            int connections = buffer.getInt();
+            if (count != buildings.size() || connections < 0 || buffer.remaining() != (count * 2L + 1 + connections * 2L) * 4) {
+                throw new IOException("Radiation cache has the wrong size: " + file);
+            }
+            Map<Integer, Building> byID = new HashMap<Integer, Building>();
+            for (Building next : buildings) {
+                byID.put(next.getID(), next);
+            }
+            Building[] table = new Building[count];
+            for (int i = 0; i < count; ++i) {
+                table[i] = byID.remove(buffer.getInt());
+                if (table[i] == null) {
+                    throw new IOException("Radiation cache refers to an unknown or repeated building: " + file);
+                }
+            }
+            int[] offsets = new int[count + 1];
+            for (int i = 0; i <= count; ++i) {
+                offsets[i] = buffer.getInt();
+                if (offsets[i] < (i == 0 ? 0 : offsets[i - 1]) || offsets[i] > connections) {
+                    throw new IOException("Radiation cache has invalid offsets: " + file);
+                }
+            }
+            if (offsets[count] != connections) {
+                throw new IOException("Radiation cache has invalid offsets: " + file);
+            }
+            int[] targets = new int[connections];
+            for (int i = 0; i < connections; ++i) {
+                targets[i] = buffer.getInt();
+                if (targets[i] < 0 || targets[i] >= count) {
+                    throw new IOException("Radiation cache has an invalid building index: " + file);
+                }
+            }
+            for (int i = 0; i < count; ++i) {
+                Building building = table[i];
+                int size = offsets[i + 1] - offsets[i];
+                building.connectedBuilding = new Building[size];
+                building.connectedValues = new float[size];
+                for (int j = 0; j < size; ++j) {
+                    building.connectedBuilding[j] = table[targets[offsets[i] + j]];
+                    building.connectedValues[j] = buffer.getFloat();
+                }
+            }
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Radiation cache is truncated: " + file, e);
+        }
+    }
+
+    /**
+     * Write the connectedBuilding and connectedValues of every building to a
+     * cache file.
+     *
+     * @param file
+     *            The file to write.
+     * @param hash
+     *            The hash of the current map.
+     * @param rayRate
+     *            The ray rate the values were sampled with.
+     * @param buildings
+     *            All buildings in the map.
+     * @throws IOException
+     *             If the file cannot be written.
+     */
+    static void write(File file, long hash, float rayRate, Collection<Building> buildings) throws IOException {
+        Building[] table = buildings.toArray(new Building[buildings.size()]);
+        Arrays.sort(table, (a, b) -> Integer.compare(a.getID(), b.getID()));
+        Map<Building, Integer> index = new HashMap<Building, Integer>();
+        int connections = 0;
+        for (int i = 0; i < table.length; ++i) {
+            index.put(table[i], i);
+            connections += table[i].connectedBuilding.length;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(hash);
+            out.writeFloat(rayRate);
+            out.writeInt(table.length);
+            out.writeInt(connections);
+            for (Building next : table) {
+                out.writeInt(next.getID());
+            }
+            int offset = 0;
+            for (Building next : table) {
+                out.writeInt(offset);
+                offset += next.connectedBuilding.length;
+            }
+            out.writeInt(offset);
+            for (Building next : table) {
+                for (Building target : next.connectedBuilding) {
+                    out.writeInt(index.get(target));
+                }
+            }
+            for (Building next : table) {
+                for (float value : next.connectedValues) {
+                    out.writeFloat(value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package firesimulator.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Samples the radiation exchange between buildings by casting random rays from
+ * every wall and recording which building each ray hits first. This produces
+ * the same statistics as {@link Wall#findHits(World)} but looks up walls through
+ * a uniform grid instead of testing every wall for every ray, and samples
+ * buildings on several threads at once. Every building has its own random
+ * number generator seeded from the building ID, so the result does not depend
+ * on the number of threads.
+ */
+public class RaySampler {
+    private static final Logger LOG = Logger.getLogger(RaySampler.class);
+
+    /** The width and height of a grid cell in mm. */
+    public static final int CELL_SIZE = 5000;
+
+    private static final long PROGRESS_INTERVAL = 5000;
+    private static final long SEED_MIX = 0x9E3779B97F4A7C15L;
+
+    private final Building[] buildings;
+    private final Map<Building, Integer> buildingIndex;
+    private final Wall[] walls;
+    // Wall i runs from (x1[i], y1[i]) to (x2[i], y2[i])
+    private final double[] x1;
+    private final double[] y1;
+    private final double[] x2;
+    private final double[] y2;
+    private final int[] owners;
+
+    private final double minX;
+    private final double minY;
+    private final int columns;
+    private final int rows;
+    // Walls in cell c are cellWalls[cellStart[c]] to cellWalls[cellStart[c + 1] - 1]
+    private final int[] cellStart;
+    private final int[] cellWalls;
+
+    private final long seed;
+    private final AtomicInteger nextBuilding;
+    private final AtomicInteger doneBuildings;
+    private final AtomicLong doneRays;
+    private final AtomicReference<RuntimeException> failure;
+
+    /**
+     * Create a RaySampler.
+     *
+     * @param buildings
+     *            The buildings to sample. Their walls must have been created.
+     * @param seed
+     *            The random seed.
+     */
+    public RaySampler(Collection<Building> buildings, long seed) {
+        this.buildings = buildings.toArray(new Building[buildings.size()]);
+        // Sample in a fixed order so that progress reports are repeatable
+        Arrays.sort(this.buildings, (a, b) -> Integer.compare(a.getID(), b.getID()));
+        this.seed = seed;
+        buildingIndex = new HashMap<Building, Integer>();
+        List<Wall> all = new ArrayList<Wall>();
+        for (int i = 0; i < this.buildings.length; ++i) {
+            buildingIndex.put(this.buildings[i], i);
+            for (Object next : this.buildings[i].walls) {
+                all.add((Wall) next);
+            }
+        }
+        walls = all.toArray(new Wall[all.size()]);
+        x1 = new double[walls.length];
+        y1 = new double[walls.length];
+        x2 = new double[walls.length];
+        y2 = new double[walls.length];
+        owners = new int[walls.length];
+        double lowX = Double.MAX_VALUE;
+        double lowY = Double.MAX_VALUE;
+        double highX = -Double.MAX_VALUE;
+        double highY = -Double.MAX_VALUE;
+        for (int i = 0; i < walls.length; ++i) {
+            Wall w = walls[i];
+            x1[i] = w.x1;
+            y1[i] = w.y1;
+            x2[i] = w.x2;
+            y2[i] = w.y2;
+            owners[i] = buildingIndex.get(w.owner);
+            lowX = Math.min(lowX, Math.min(w.x1, w.x2));
+            lowY = Math.min(lowY, Math.min(w.y1, w.y2));
+            highX = Math.max(highX, Math.max(w.x1, w.x2));
+            highY = Math.max(highY, Math.max(w.y1, w.y2));
+        }
+        if (walls.length == 0) {
+            lowX = 0;
+            lowY = 0;
+            highX = 0;
+            highY = 0;
+        }
+        minX = lowX;
+        minY = lowY;
+        columns = Math.max(1, (int) Math.ceil((highX - lowX) / CELL_SIZE));
+        rows = Math.max(1, (int) Math.ceil((highY - lowY) / CELL_SIZE));
+        cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < walls.length; ++i) {
+            for (int r = getRow(Math.min(y1[i], y2[i])); r <= getRow(Math.max(y1[i], y2[i])); ++r) {
+                for (int c = getColumn(Math.min(x1[i], x2[i])); c <= getColumn(Math.max(x1[i], x2[i])); ++c) {
+                    ++cellStart[r * columns + c + 1];
+                }
+            }
+        }
+        for (int i = 1; i < cellStart.length; ++i) {
+            cellStart[i] += cellStart[i - 1];
+        }
+        cellWalls = new int[cellStart[cellStart.length - 1]];
+        int[] next = Arrays.copyOf(cellStart, cellStart.length - 1);
+        for (int i = 0; i < walls.length; ++i) {
+            for (int r = getRow(Math.min(y1[i], y2[i])); r <= getRow(Math.max(y1[i], y2[i])); ++r) {
+                for (int c = getColumn(Math.min(x1[i], x2[i])); c <= getColumn(Math.max(x1[i], x2[i])); ++c) {
+                    cellWalls[next[r * columns + c]++] = i;
+                }
+            }
+        }
+        nextBuilding = new AtomicInteger();
+        doneBuildings = new AtomicInteger();
+        doneRays = new AtomicLong();
+        failure = new AtomicReference<RuntimeException>();
+    }
+
+    /**
+     * Sample all buildings and fill in their connectedBuilding and
+     * connectedValues arrays.
+     *
+     * @param threads
+     *            The number of threads to use, or zero to use one per
+     *            available processor.
+     * @throws InterruptedException
+     *             If the calling thread is interrupted.
+     * @throws RuntimeException
+     *             If sampling fails on any thread.
+     */
+    public void sample(int threads) throws InterruptedException {
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        threads = Math.max(1, Math.min(threads, buildings.length));
+        LOG.info("Sampling " + buildings.length + " buildings with " + walls.length + " walls on " + threads + " threads");
+        nextBuilding.set(0);
+        doneBuildings.set(0);
+        doneRays.set(0);
+        failure.set(null);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; ++i) {
+            workers[i] = new Thread(new Worker(), "Ray sampler " + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        long start = System.currentTimeMillis();
+        try {
+            for (Thread next : workers) {
+                while (next.isAlive()) {
+                    next.join(PROGRESS_INTERVAL);
+                    if (next.isAlive()) {
+                        logProgress(start, false);
+                    }
+                }
+            }
+        }
+        finally {
+            for (Thread next : workers) {
+                next.interrupt();
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        logProgress(start, true);
+    }
+
+    private void logProgress(long start, boolean finished) {
+        int done = doneBuildings.get();
+        long rays = doneRays.get();
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        long rate = rays * 1000 / elapsed;
+        if (finished) {
+            LOG.info("Sampled " + done + " buildings, " + rays + " rays in " + elapsed + " ms (" + rate + " rays/s)");
+            return;
+        }
+        long sec = done == 0 ? 0 : elapsed * (buildings.length - done) / done / 1000;
+        LOG.info("Sampled " + done + " of " + buildings.length + " buildings, " + rays + " rays (" + rate + " rays/s), time left: ca. " + (sec / 3600) + ":" + ((sec / 60) % 60) + ":" + (sec % 60));
+    }
+
+    private int getColumn(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) / CELL_SIZE)));
+    }
+
+    private int getRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / CELL_SIZE)));
+    }
+
+    private class Worker implements Runnable {
+        // Walls already tested for the current ray are marked with the ray number
+        private final int[] tested = new int[walls.length];
+        private int ray;
+        // Hits on each building by the building being sampled
+        private final int[] hits = new int[buildings.length];
+        private final List<Integer> hitBuildings = new ArrayList<Integer>();
+
+        @Override
+        public void run() {
+            int i;
+            try {
+                while (!Thread.currentThread().isInterrupted() && failure.get() == null && (i = nextBuilding.getAndIncrement()) < buildings.length) {
+                    sampleBuilding(i);
+                }
+            }
+            catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        // Building.connectedBuildings is a raw Hashtable that predates this class
+        @SuppressWarnings("unchecked")
+        private void putConnected(Building building, Building other, int count) {
+            building.connectedBuildings.put(other, count);
+        }
+
+        private void sampleBuilding(int index) {
+            Building building = buildings[index];
+            Random random = new Random(seed ^ (building.getID() * SEED_MIX));
+            int totalRays = 0;
+            int totalHits = 0;
+            int selfHits = 0;
+            for (Object next : building.walls) {
+                Wall wall = (Wall) next;
+                wall.hits = 0;
+                wall.selfHits = 0;
+                wall.strange = 0;
+                for (int emitted = 0; emitted < wall.rays; ++emitted) {
+                    double position = random.nextDouble();
+                    double startX = wall.x1 + (wall.x2 - wall.x1) * position;
+                    double startY = wall.y1 + (wall.y2 - wall.y1) * position;
+                    double angle = random.nextDouble() * 2d * Math.PI;
+                    double dx = Math.sin(angle) * Wall.MAX_SAMPLE_DISTANCE;
+                    double dy = Math.cos(angle) * Wall.MAX_SAMPLE_DISTANCE;
+                    int hit = cast(wall, startX, startY, dx, dy);
+                    if (hit == -1) {
+                        continue;
+                    }
+                    int target = owners[hit];
+                    if (target == index) {
+                        wall.selfHits++;
+                    }
+                    else {
+                        wall.hits++;
+                        if (hits[target]++ == 0) {
+                            hitBuildings.add(target);
+                        }
+                    }
+                }
+                totalRays += wall.rays;
+                totalHits += wall.hits;
+                selfHits += wall.selfHits;
+            }
+            building.connectedBuildings.clear();
+            building.connectedBuilding = new Building[hitBuildings.size()];
+            building.connectedValues = new float[hitBuildings.size()];
+            float base = totalRays;
+            int c = 0;
+            for (int target : hitBuildings) {
+                Building other = buildings[target];
+                putConnected(building, other, hits[target]);
+                building.connectedBuilding[c] = other;
+                building.connectedValues[c] = hits[target] / base;
+                hits[target] = 0;
+                ++c;
+            }
+            hitBuildings.clear();
+            LOG.debug("{" + (((float) totalHits) * 100 / ((float) totalRays)) + "," + totalRays + "," + totalHits + "," + selfHits + "}");
+            doneBuildings.incrementAndGet();
+            doneRays.addAndGet(totalRays);
+        }
+
+        /**
+         * Find the first wall hit by a ray, walking along the grid cells the
+         * ray passes through until a hit is found.
+         *
+         * @return The index of the wall that was hit, or -1 if nothing was hit.
+         */
+        private int cast(Wall source, double startX, double startY, double dx, double dy) {
+            if (++ray == 0) {
+                Arrays.fill(tested, 0);
+                ray = 1;
+            }
+            int column = getColumn(startX);
+            int row = getRow(startY);
+            int stepColumn = dx > 0 ? 1 : -1;
+            int stepRow = dy > 0 ? 1 : -1;
+            // Ray parameters at which the ray crosses the next column and row boundaries
+            double nextColumnT = dx == 0 ? Double.MAX_VALUE : (minX + (column + (dx > 0 ? 1 : 0)) * (double) CELL_SIZE - startX) / dx;
+            double nextRowT = dy == 0 ? Double.MAX_VALUE : (minY + (row + (dy > 0 ? 1 : 0)) * (double) CELL_SIZE - startY) / dy;
+            double columnDeltaT = dx == 0 ? Double.MAX_VALUE : CELL_SIZE / Math.abs(dx);
+            double rowDeltaT = dy == 0 ? Double.MAX_VALUE : CELL_SIZE / Math.abs(dy);
+            int closest = -1;
+            double closestT = Double.MAX_VALUE;
+            while (true) {
+                int cell = row * columns + column;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; ++i) {
+                    int w = cellWalls[i];
+                    if (tested[w] == ray) {
+                        continue;
+                    }
+                    tested[w] = ray;
+                    if (walls[w] == source) {
+                        continue;
+                    }
+                    double t = intersect(startX, startY, dx, dy, w);
+                    if (t < closestT) {
+                        closestT = t;
+                        closest = w;
+                    }
+                }
+                double exitT = Math.min(nextColumnT, nextRowT);
+                // Stop if the closest hit is inside this cell or the ray ends here
+                if (closestT <= exitT || exitT > 1) {
+                    break;
+                }
+                if (nextColumnT < nextRowT) {
+                    column += stepColumn;
+                    nextColumnT += columnDeltaT;
+                    if (column < 0 || column >= columns) {
+                        break;
+                    }
+                }
+                else {
+                    row += stepRow;
+                    nextRowT += rowDeltaT;
+                    if (row < 0 || row >= rows) {
+                        break;
+                    }
+                }
+            }
+            return closest;
+        }
+
+        /**
+         * Intersect a ray with a wall.
+         *
+         * @return The ray parameter of the intersection point between 0 and 1,
+         *         or Double.MAX_VALUE if they do not intersect.
+         */
+        private double intersect(double startX, double startY, double dx, double dy, int w) {
+            double wx = x2[w] - x1[w];
+            double wy = y2[w] - y1[w];
+            double denominator = dx * wy - wx * dy;
+            if (denominator == 0) {
+                return Double.MAX_VALUE;
+            }
+            double s = (dx * (startY - y1[w]) - dy * (startX - x1[w])) / denominator;
+            double t = (wx * (startY - y1[w]) - wy * (startX - x1[w])) / denominator;
+            if (s >= 0 && s <= 1 && t >= 0 && t <= 1) {
+                return t;
+            }
+            return Double.MAX_VALUE;
+        }
+    }
+}
@@ -1,16 +1,17 @@
 package firesimulator.world;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.HashSet;
+import java.util.Map;
 
 import firesimulator.util.Configuration;
 import org.apache.log4j.Logger;
@@ -27,6 +28,7 @@ public class World implements WorldConstants {
     private int time;
     private Collection updatelist;
     private Collection<Building> buildings;
+    private Building[] buildingTable;
     private Collection firebrigades;	
     //    private Collection streetNodes;
     //    private Collection roads;
@@ -34,7 +36,7 @@ public class World implements WorldConstants {
     private int maxY;
     private int minX;
     private int minY;
-    private double[][] airTemp;
+    private AirGrid airGrid;
     public ArrayList[][] gridToBuilding;
     public int SAMPLE_SIZE=5000;
     //    public float INITIAL_TEMP=20;
@@ -161,7 +163,11 @@ public class World implements WorldConstants {
     */
 
     private void initializeBuildings() {
+        buildingTable=new Building[buildings.size()];
+        int ordinal=0;
         for (Building b : buildings) {
+            b.setOrdinal(ordinal);
+            buildingTable[ordinal++]=b;
             int[] ap=b.getApexes();
             for(int n=0;n<ap.length;n++){
                 if(ap[n]>maxX)maxX=ap[n];
@@ -178,12 +184,66 @@ public class World implements WorldConstants {
 	
     private void initRayValues() {		
         long hash=hash();
+        String dir=Configuration.getValue("resq-fire.rays.dir");
+        File cache=new File(dir,hash+".rays.bin");
+        File legacy=new File(dir,hash+".rays");
         boolean loaded=false;
-        String fname=Configuration.getValue("resq-fire.rays.dir") + "/" + hash + ".rays";			
+        boolean migrated=false;
+        if(cache.exists()){
+            try{
+                RayCache.read(cache,hash,Wall.RAY_RATE,buildings);
+                loaded=true;
+                LOG.info("loaded radiation cache file \""+cache+"\"");
+            }catch(IOException e){
+                LOG.warn("unable to load radiation cache file \""+cache+"\"", e);
+            }
+        }
+        if(!loaded&&legacy.exists()){
+            try{
+                readLegacyRays(legacy);
+                loaded=true;
+                migrated=true;
+                LOG.info("loaded radiation sample file \""+legacy+"\"");
+            }catch(Exception e){
+                LOG.warn("unable to load radiation sample file \""+legacy+"\"", e);
+            }
+        }
+        if(!loaded){
+            LOG.warn("no radiation cache file \""+cache+"\", sampling:");
+            String seed=Configuration.getValue("random.seed");
+            RaySampler sampler=new RaySampler(buildings,seed==null?0:Long.parseLong(seed));
+            try{
+                sampler.sample(Integer.parseInt(Configuration.getValue("resq-fire.rays.threads")));
+            }catch(InterruptedException ie){
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("interrupted while sampling radiation", ie);
+            }
+        }		
+        if(!loaded||migrated){
+            try{
+                RayCache.write(cache,hash,Wall.RAY_RATE,buildings);
+                LOG.info("wrote radiation cache file \""+cache+"\"");
+            }catch(IOException e){
+                LOG.error("error while writting radiation cache file \""+cache+"\"", e);
+            }
+        }
+    }
+
+    /**
+     * Read the old text radiation file, which identifies buildings by their
+     * coordinates.
+     */
+    private void readLegacyRays(File f) throws IOException {
+        Map<Long,Building> byLocation=new HashMap<Long,Building>();
+        for (Building b : buildings) {
+            Long key=location(b.getX(),b.getY());
+            if(!byLocation.containsKey(key))
+                byLocation.put(key,b);
+        }
+        BufferedReader br=new BufferedReader(new FileReader(f));
         try{
-            File f=new File(fname);
-            BufferedReader br=new BufferedReader(new FileReader(f));
-            float rayDens=Float.parseFloat(br.readLine());
+            // The ray rate of old files was never checked
+            Float.parseFloat(br.readLine());
             String nl;
             while(null!=(nl=br.readLine())){
                 int x=Integer.parseInt(nl);
@@ -194,64 +254,31 @@ public class World implements WorldConstants {
                 for(int c=0;c<quantity;c++){
                     int ox=Integer.parseInt(br.readLine());
                     int oy=Integer.parseInt(br.readLine());
-                    bl[c]=(Building)getBuilding(ox,oy);
+                    bl[c]=getBuilding(byLocation,ox,oy);
                     wght[c]=Float.parseFloat(br.readLine());
                 }
-                Building b=getBuilding(x,y);
+                Building b=getBuilding(byLocation,x,y);
                 b.connectedBuilding=bl;
                 b.connectedValues=wght;
             }
-            loaded=true;
-            LOG.info("loaded radiation sample file \""+fname+"\"");
-        }catch(Exception e){			
-            LOG.warn("unable to load radiation sample file \""+fname+"\", sampling:");
-            int n=0;
-            long t1=System.currentTimeMillis();
-            for (Building b : buildings) {
-                LOG.info("building "+b.getID()+" ("+(n++)+" of "+buildings.size()+") ");
-                b.initWallValues(this);
-                long dt=System.currentTimeMillis()-t1;
-                dt=dt/n;
-                dt=dt*(buildings.size()-n);
-                long sec=dt/(1000);
-                long min=(sec/60)%60;
-                long hour=sec/(60*60);
-                sec=sec%60;				
-                LOG.info(" time left: ca. "+hour+":"+min+":"+sec);
-            }	
-        }		
-        try{
-            if(!loaded){
-                File f=new File(fname);
-                f.createNewFile();				
-                BufferedWriter bw=new BufferedWriter(new FileWriter(f));				
-                bw.write(Wall.RAY_RATE+"\n");
-                for(Building b : buildings) {
-                    bw.write(b.getX()+"\n");
-                    bw.write(b.getY()+"\n");
-                    bw.write(b.connectedBuilding.length+"\n");
-                    for(int c=0;c<b.connectedBuilding.length;c++){
-                        bw.write(b.connectedBuilding[c].getX()+"\n");
-                        bw.write(b.connectedBuilding[c].getY()+"\n");
-                        bw.write(b.connectedValues[c]+"\n");
-                    }
-                }
-                bw.close();
-                LOG.info("wrote radiation sample file \""+fname+"\"");
-            }			
-        }catch(Exception e){
-            LOG.error("error while writting radiation sample file \""+fname+"\"", e);
+        }finally{
+            br.close();
+        }
+        for (Building b : buildings) {
+            if(b.connectedBuilding==null)
+                throw new IOException("no values for building "+b.getID());
         }
     }
 
+    private static Long location(int x, int y) {
+        return (((long)x)<<32)|(y&0xFFFFFFFFL);
+    }
 
-    private Building getBuilding(int x, int y) {
-        for (Building b : buildings) {
-            if(b.isBuilding(x,y))
-                return b;
-        }
-        LOG.error("parser error");
-        throw new NullPointerException();		
+    private static Building getBuilding(Map<Long,Building> byLocation, int x, int y) throws IOException {
+        Building b=byLocation.get(location(x,y));
+        if(b==null)
+            throw new IOException("no building at "+x+","+y);
+        return b;
     }
 
     public float getMaxDistance(){
@@ -264,10 +291,7 @@ public class World implements WorldConstants {
         int xSamples=1 + (maxX - minX) / SAMPLE_SIZE;		
         int ySamples=1 + (maxY - minY) / SAMPLE_SIZE;
         LOG.info("grid cell size=" + SAMPLE_SIZE + "mm, x*y=" + xSamples + "*" + ySamples + " = " + (xSamples * ySamples));
-        airTemp=new double[xSamples][ySamples];
-        for(int x=0;x<airTemp.length;x++)
-            for(int y=0;y<airTemp[x].length;y++)
-                airTemp[x][y]=0;
+        airGrid=new AirGrid(xSamples,ySamples);
         CAPACITY=(int)(SAMPLE_SIZE*SAMPLE_SIZE*AIR_HEIGHT*AIR_CAPACITY)/1000000;
         //assign buildings
         gridToBuilding=new ArrayList[xSamples][ySamples];
@@ -279,25 +303,41 @@ public class World implements WorldConstants {
         }
     }
 
+    public AirGrid getAirGrid(){
+        return airGrid;
+    }
+
+    /**
+     * Get a copy of the air temperatures indexed by x and then y.
+     */
     public double[][] getAirTemp(){
-        return airTemp;
+        return airGrid.toArray();
     }
 	
     public void setAirTemp(double[][] a){
-        airTemp = a;
+        airGrid.fromArray(a);
     }
 
     public void setAirCellTemp(int x, int y, double temp) {
-        airTemp[x][y] = temp;
+        airGrid.set(x, y, temp);
     }
 
     public double getAirCellTemp(int x, int y) {
-        return airTemp[x][y];
+        return airGrid.get(x, y);
     }
 
     public Collection<Building> getBuildings(){
         return buildings;
     }
+
+    /**
+     * Get all buildings indexed by {@link Building#getOrdinal()}. Ordinals
+     * follow the iteration order of {@link #getBuildings()} and are assigned
+     * when the world is initialised. The returned array must not be modified.
+     */
+    public Building[] getBuildingTable(){
+        return buildingTable;
+    }
 	
     public void addUpdate(RescueObject obj){
         updatelist.add(obj);
@@ -465,9 +505,7 @@ public class World implements WorldConstants {
 	
 	
     private void resetAir() {
-        for(int x=0;x<airTemp.length;x++)
-            for(int y=0;y<airTemp[x].length;y++)
-                airTemp[x][y]=0;
+        airGrid.clear();
     }
 
     public void igniteGISFires(){